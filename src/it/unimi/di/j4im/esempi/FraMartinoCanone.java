@@ -21,9 +21,9 @@ package it.unimi.di.j4im.esempi;
  */
 
 import it.unimi.di.j4im.notazione.Durata;
-import it.unimi.di.j4im.notazione.Nota;
 import it.unimi.di.j4im.notazione.Pausa;
 import it.unimi.di.j4im.notazione.Simbolo;
+import it.unimi.di.j4im.notazione.Trasformazioni;
 import it.unimi.di.j4im.riproduzione.Brano;
 import it.unimi.di.j4im.riproduzione.Parte;
 import it.unimi.di.j4im.riproduzione.Sintetizzatore;
@@ -58,13 +58,7 @@ public class FraMartinoCanone {
 		
 		// costruzione di un array di simboli traspossti di una ottava 
 		
-		Simbolo[] fraMartinoTraslatoTrasposto = new Simbolo[ fraMartino.length ];
-		for ( int i = 0; i < fraMartino.length; i++ )
-			if ( fraMartino[ i ] instanceof Nota ) {
-				final Nota n = (Nota)fraMartino[ i ];
-				fraMartinoTraslatoTrasposto[ i ] = 
-					Nota.fabbricatore().nota( n ).pitch( n.pitch() + 12 ).fabbrica();
-			}
+		Simbolo[] fraMartinoTraslatoTrasposto = Trasformazioni.trasponi( fraMartino, 12 );
 
 		// parte trasposta, con traslazione (in tempo) di una misura
 		
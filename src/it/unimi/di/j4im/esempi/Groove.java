@@ -41,10 +41,7 @@ public class Groove {
 		Brano brano = new Brano();
 		Parte p = new Parte( brano, new Batteria() );
 		
-		p.accodaAccordo( kh );
-		p.accodaAccordo( h );
-		p.accodaAccordo( sh );
-		p.accodaAccordo( h );		
+		p.accodaAccordi( new Nota[][] { kh, h, sh, h } );
 
 		brano.riproduci( 4 );
 
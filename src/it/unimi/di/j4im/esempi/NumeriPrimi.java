@@ -41,7 +41,7 @@ public class NumeriPrimi {
 		
 		for ( int pitch = 24; pitch < 128; pitch++ ) 
 			if ( primo( pitch ) ) 
-				new Nota( pitch ).suonaCon( piano );
+				Nota.di( pitch ).suonaCon( piano );
 
 		Sintetizzatore.spegni();
 
@@ -0,0 +1,136 @@
+package it.unimi.di.j4im.notazione;
+
+/*
+ * Copyright 2014 Massimo Santini
+ *
+ * This file is part of j4im.
+ *
+ * j4im is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * j4im is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * j4im. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Una accordatura nella scala ben temperata.
+ *
+ * <p>
+ * Una accordatura è determinata dalla frequenza (in Hz) del <samp>LA</samp>
+ * centrale, a partire dalla quale sono calcolate (una volta per tutte, alla
+ * costruzione) le frequenze di tutti i 128 pitch; la conversione tra pitch e
+ * frequenza, in entrambe le direzioni, si riduce quindi alla consultazione di
+ * una tabella. L'accordatura {@link #STANDARD} (con il <samp>LA</samp> a
+ * {@link Nota#FREQUENZA_LA} Hz) è quella usata dai metodi
+ * {@link Nota#frequenza()} e {@link Nota.Fabbricatore#frequenza(float)}.
+ * </p>
+ *
+ * @see Nota
+ */
+public final class Accordatura {
+
+	/** L'accordatura standard, con il <samp>LA</samp> a {@link Nota#FREQUENZA_LA} Hz. */
+	public static final Accordatura STANDARD = new Accordatura( Nota.FREQUENZA_LA );
+
+	/** La frequenza del <samp>LA</samp> centrale. */
+	private final double frequenzaLa;
+
+	/** Le frequenze, indicizzate per pitch. */
+	private final float[] frequenze = new float[ 128 ];
+
+	/**
+	 * I confini tra le frequenze dei pitch: l'elemento di indice <samp>i</samp>
+	 * è la minima frequenza che viene associata al pitch <samp>i</samp> (per
+	 * cui l'ultimo elemento è la minima frequenza che eccede il pitch 127).
+	 */
+	private final double[] confini = new double[ 129 ];
+
+	/**
+	 * Costruisce l'accordatura corrispondente alla frequenza data per il
+	 * <samp>LA</samp> centrale.
+	 *
+	 * @param frequenzaLa la frequenza (in Hz) del <samp>LA</samp> centrale.
+	 * @throws IllegalArgumentException se la frequenza non è positiva.
+	 */
+	public Accordatura( final double frequenzaLa ) {
+		if ( !( frequenzaLa > 0 ) || Double.isInfinite( frequenzaLa ) ) throw new IllegalArgumentException( "La frequenza del LA dev'essere positiva." );
+		this.frequenzaLa = frequenzaLa;
+		for ( int pitch = 0; pitch < frequenze.length; pitch++ )
+			frequenze[ pitch ] = (float)( frequenzaLa * Math.pow( Nota.RAPPORTO_DI_FREQUENZA, pitch - Nota.PITCH_LA ) );
+		for ( int pitch = 0; pitch < confini.length; pitch++ )
+			confini[ pitch ] = frequenzaLa * Math.pow( Nota.RAPPORTO_DI_FREQUENZA, pitch - Nota.PITCH_LA - .5 );
+	}
+
+	/**
+	 * Restituisce la frequenza (in Hz) del <samp>LA</samp> centrale.
+	 *
+	 * @return la frequenza.
+	 */
+	public double frequenzaLa() {
+		return frequenzaLa;
+	}
+
+	/**
+	 * Restituisce la frequenza (in Hz) di un pitch.
+	 *
+	 * @param pitch il pitch.
+	 * @return la frequenza.
+	 * @throws IllegalArgumentException se il pitch non è compreso
+	 *             nell'intervallo da 0 a 127.
+	 */
+	public float frequenza( final int pitch ) {
+		if ( pitch < 0 || pitch > 127 ) throw new IllegalArgumentException( "Il pitch dev'essere compreso tra 0 e 127 (estremi inclusi)." );
+		return frequenze[ pitch ];
+	}
+
+	/**
+	 * Restituisce il pitch la cui frequenza è più vicina (in scala
+	 * logaritmica) a quella data.
+	 *
+	 * <p>
+	 * Il pitch è determinato tramite una ricerca binaria tra i confini
+	 * (precalcolati) delle frequenze dei pitch.
+	 * </p>
+	 *
+	 * @param frequenza la frequenza (in Hz).
+	 * @return il pitch.
+	 * @throws IllegalArgumentException se la frequenza è più vicina ad un pitch
+	 *             che non è compreso nell'intervallo da 0 a 127.
+	 */
+	public int pitch( final double frequenza ) {
+		// cerca il numero di confini non superiori alla frequenza
+		int basso = 0, alto = confini.length;
+		while ( basso < alto ) {
+			final int medio = ( basso + alto ) >>> 1;
+			if ( confini[ medio ] <= frequenza ) basso = medio + 1;
+			else alto = medio;
+		}
+		final int pitch = basso - 1;
+		if ( pitch < 0 || pitch > 127 ) throw new IllegalArgumentException( "La frequenza " + frequenza + " eccede l'intervallo D-1, SOL9." );
+		return pitch;
+	}
+
+	@Override
+	public boolean equals( final Object other ) {
+		if ( this == other ) return true;
+		if ( !( other instanceof Accordatura ) ) return false;
+		return Double.compare( frequenzaLa, ( (Accordatura)other ).frequenzaLa ) == 0;
+	}
+
+	@Override
+	public int hashCode() {
+		return Double.hashCode( frequenzaLa );
+	}
+
+	@Override
+	public String toString() {
+		return "LA=" + frequenzaLa;
+	}
+
+}
@@ -0,0 +1,402 @@
+package it.unimi.di.j4im.notazione;
+
+/*
+ * Copyright 2014 Massimo Santini
+ *
+ * This file is part of j4im.
+ *
+ * j4im is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * j4im is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * j4im. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Analizzatore della rappresentazione testuale di un elenco di simboli.
+ *
+ * <p>
+ * Un analizzatore legge (da una {@link CharSequence}, o da un {@link Reader})
+ * un elenco di simboli separati da <samp>,</samp> (eventualmente circondate da
+ * spazi), ciascuno nella forma accettata dai costruttori {@link Nota#Nota(String)}
+ * e {@link Pausa#Pausa(String)}, e restituisce i simboli uno alla volta
+ * attraverso il metodo {@link #prossimo()} (o i loro codici, nel senso di
+ * {@link SimboloArray}, attraverso il metodo {@link #prossimoCodice()}).
+ * Un analizzatore è anche un {@link Iterator} sui simboli letti, per cui può
+ * essere usato per accodare i simboli ad una parte man mano che vengono
+ * letti, senza dover conservare in memoria né il testo, né l'intero vettore
+ * di simboli.
+ * </p>
+ *
+ * <p>
+ * L'analisi avviene in una sola passata, carattere per carattere e senza
+ * costruire stringhe intermedie; gli errori sono segnalati con una
+ * {@link IllegalArgumentException} il cui messaggio riporta la posizione (ossia
+ * il numero di caratteri letti dall'inizio) in cui l'errore è stato
+ * riscontrato.
+ * </p>
+ *
+ * @see Simbolo#simboli(String)
+ * @see Simbolo#stream(Reader)
+ */
+public final class AnalizzatoreSimboli implements Iterator<Simbolo> {
+
+	/** Il valore restituito da {@link #prossimoCodice()} al termine dell'elenco. */
+	public static final long FINE = -1;
+
+	/** La dimensione del buffer usato per leggere da un {@link Reader}. */
+	private static final int DIMENSIONE_BUFFER = 8192;
+
+	/** Il testo da analizzare (se non si legge da un {@link Reader}). */
+	private final CharSequence testo;
+
+	/** Il {@link Reader} da cui leggere (se non si analizza un testo). */
+	private final Reader lettore;
+
+	/** Il buffer usato per leggere dal {@link Reader}. */
+	private final char[] buffer;
+
+	/** Il numero di caratteri validi e la posizione corrente nel buffer. */
+	private int lunghezzaBuffer, posizioneBuffer;
+
+	/** Il numero di caratteri letti dall'inizio. */
+	private long posizione;
+
+	/** Indica se è già stato letto almeno un simbolo. */
+	private boolean iniziato;
+
+	/** Il simbolo letto da {@link #hasNext()} e non ancora restituito. */
+	private Simbolo successivo;
+
+	/* le caratteristiche dell'ultimo simbolo letto */
+
+	private boolean pausa;
+	private Nome nome;
+	private Alterazione alterazione;
+	private int ottava;
+	private Durata durata;
+	private int intensita;
+
+	/**
+	 * Costruisce un analizzatore che legge i simboli dal testo dato.
+	 *
+	 * @param testo il testo.
+	 */
+	public AnalizzatoreSimboli( final CharSequence testo ) {
+		this.testo = testo;
+		this.lettore = null;
+		this.buffer = null;
+	}
+
+	/**
+	 * Costruisce un analizzatore che legge i simboli dal {@link Reader} dato.
+	 *
+	 * <p>
+	 * Il {@link Reader} viene letto a blocchi, man mano che i simboli vengono
+	 * richiesti, e non viene chiuso dall'analizzatore.
+	 * </p>
+	 *
+	 * @param lettore il {@link Reader}.
+	 */
+	public AnalizzatoreSimboli( final Reader lettore ) {
+		this.testo = null;
+		this.lettore = lettore;
+		this.buffer = new char[ DIMENSIONE_BUFFER ];
+	}
+
+	/**
+	 * Restituisce il numero di caratteri letti dall'inizio.
+	 *
+	 * @return la posizione.
+	 */
+	public long posizione() {
+		return posizione;
+	}
+
+	/**
+	 * Restituisce il prossimo simbolo dell'elenco.
+	 *
+	 * @return il simbolo, o <samp>null</samp> se l'elenco è terminato.
+	 * @throws IllegalArgumentException se il testo non rispetta il formato
+	 *             consentito.
+	 * @throws UncheckedIOException se si verifica un errore leggendo dal
+	 *             {@link Reader}.
+	 */
+	public Simbolo prossimo() {
+		if ( successivo != null ) {
+			final Simbolo simbolo = successivo;
+			successivo = null;
+			return simbolo;
+		}
+		if ( !analizza() ) return null;
+		if ( pausa ) return new Pausa( durata );
+		return new Nota( nome, alterazione, ottava, durata, intensita );
+	}
+
+	/**
+	 * Restituisce il codice (nel senso di {@link SimboloArray}) del prossimo
+	 * simbolo dell'elenco.
+	 *
+	 * <p>
+	 * Questo metodo non costruisce né il simbolo, né alcun altro oggetto (fatta
+	 * salva la durata, quando presente nel testo e non canonica).
+	 * </p>
+	 *
+	 * @return il codice, o {@link #FINE} se l'elenco è terminato.
+	 * @throws IllegalArgumentException se il testo non rispetta il formato
+	 *             consentito, o il simbolo non è rappresentabile in forma
+	 *             compatta.
+	 * @throws UncheckedIOException se si verifica un errore leggendo dal
+	 *             {@link Reader}.
+	 */
+	public long prossimoCodice() {
+		if ( successivo != null ) return SimboloArray.codifica( prossimo() );
+		if ( !analizza() ) return FINE;
+		if ( pausa ) return SimboloArray.codificaPausa( durata );
+		return SimboloArray.codificaNota( 12 * ( ottava + 1 ) + nome.semitoni + alterazione.semitoni, intensita, durata );
+	}
+
+	/**
+	 * Indica se l'elenco contiene ancora dei simboli.
+	 *
+	 * @return <samp>true</samp> se l'elenco non è terminato.
+	 * @throws IllegalArgumentException se il testo non rispetta il formato
+	 *             consentito.
+	 * @throws UncheckedIOException se si verifica un errore leggendo dal
+	 *             {@link Reader}.
+	 */
+	@Override
+	public boolean hasNext() {
+		if ( successivo == null ) successivo = prossimo();
+		return successivo != null;
+	}
+
+	/**
+	 * Restituisce il prossimo simbolo dell'elenco.
+	 *
+	 * @return il simbolo.
+	 * @throws NoSuchElementException se l'elenco è terminato.
+	 * @throws IllegalArgumentException se il testo non rispetta il formato
+	 *             consentito.
+	 * @throws UncheckedIOException se si verifica un errore leggendo dal
+	 *             {@link Reader}.
+	 */
+	@Override
+	public Simbolo next() {
+		if ( !hasNext() ) throw new NoSuchElementException();
+		return prossimo();
+	}
+
+	/**
+	 * Analizza il prossimo simbolo dell'elenco, impostandone le
+	 * caratteristiche.
+	 *
+	 * @return <samp>false</samp> se l'elenco è terminato.
+	 */
+	private boolean analizza() {
+		saltaSpazi();
+		int c = guarda();
+		if ( iniziato ) {
+			if ( c == -1 ) return false;
+			if ( c != ',' ) throw errore( "atteso ','" );
+			avanza();
+			saltaSpazi();
+			c = guarda();
+			if ( c == -1 ) return false; // come String.split, una virgola finale è ignorata
+		} else if ( c == -1 ) return false;
+		iniziato = true;
+		durata = Simbolo.DURATA_DEFAULT;
+		if ( c == '_' ) {
+			avanza();
+			pausa = true;
+			if ( guarda() == ':' ) {
+				avanza();
+				durata = durata( numero() );
+			}
+		} else {
+			pausa = false;
+			analizzaAltezza();
+			intensita = Nota.INTENSITA_DEFAULT;
+			if ( guarda() == ':' ) {
+				avanza();
+				final int numero = numero();
+				if ( guarda() == '/' ) {
+					durata = durata( numero );
+					if ( guarda() == ':' ) {
+						avanza();
+						intensita = intensita( numero() );
+					}
+				} else intensita = intensita( numero );
+			}
+		}
+		c = guarda();
+		if ( c != -1 && c != ',' && !spazio( c ) ) throw errore( "carattere inatteso '" + (char)c + "'" );
+		return true;
+	}
+
+	/** Analizza nome, alterazione ed ottava di una nota. */
+	private void analizzaAltezza() {
+		final int c = guarda();
+		if ( c == -1 || "DRMFLS".indexOf( c ) == -1 ) throw errore( c == -1 ? "simbolo mancante" : "nome di nota non valido" );
+		avanza();
+		switch ( c ) {
+			case 'D':
+				atteso( 'O' );
+				nome = Nome.DO;
+				break;
+			case 'R':
+				atteso( 'E' );
+				nome = Nome.RE;
+				break;
+			case 'M':
+				atteso( 'I' );
+				nome = Nome.MI;
+				break;
+			case 'F':
+				atteso( 'A' );
+				nome = Nome.FA;
+				break;
+			case 'L':
+				atteso( 'A' );
+				nome = Nome.LA;
+				break;
+			case 'S':
+				if ( guarda() == 'I' ) {
+					avanza();
+					nome = Nome.SI;
+				} else {
+					atteso( 'O' );
+					atteso( 'L' );
+					nome = Nome.SOL;
+				}
+				break;
+		}
+		switch ( guarda() ) {
+			case '#':
+			case '♯':
+				avanza();
+				alterazione = Alterazione.DIESIS;
+				break;
+			case 'b':
+			case '♭':
+				avanza();
+				alterazione = Alterazione.BEMOLLE;
+				break;
+			default:
+				alterazione = Alterazione.NULLA;
+		}
+		final int c1 = guarda();
+		if ( c1 == '-' ) {
+			avanza();
+			ottava = -numero();
+		} else if ( c1 >= '0' && c1 <= '9' ) {
+			ottava = numero();
+		} else ottava = Nota.OTTAVA_DEFAULT;
+		final long pitch = 12L * ( ottava + 1 ) + nome.semitoni + alterazione.semitoni;
+		if ( pitch < 0 || pitch > 127 ) throw errore( "la nota eccede l'intervallo D-1, SOL9" );
+	}
+
+	/**
+	 * Analizza una durata, dato il numeratore (il prossimo carattere deve
+	 * essere <samp>/</samp>).
+	 *
+	 * @param numeratore il numeratore.
+	 * @return la durata.
+	 */
+	private Durata durata( final int numeratore ) {
+		atteso( '/' );
+		final int denominatore = numero();
+		if ( numeratore == 0 || denominatore == 0 ) throw errore( "durata nulla" );
+		return Durata.di( numeratore, denominatore );
+	}
+
+	/**
+	 * Verifica un'intensità.
+	 *
+	 * @param intensita l'intensità.
+	 * @return l'intensità.
+	 */
+	private int intensita( final int intensita ) {
+		if ( intensita > 127 ) throw errore( "l'intensità dev'essere compresa tra 0 e 127" );
+		return intensita;
+	}
+
+	/**
+	 * Analizza un numero (non negativo) in notazione decimale.
+	 *
+	 * @return il numero.
+	 */
+	private int numero() {
+		int c = guarda();
+		if ( c < '0' || c > '9' ) throw errore( "atteso un numero" );
+		int numero = 0;
+		do {
+			avanza();
+			final int cifra = c - '0';
+			if ( numero > ( Integer.MAX_VALUE - cifra ) / 10 ) throw errore( "numero troppo grande" );
+			numero = 10 * numero + cifra;
+			c = guarda();
+		} while ( c >= '0' && c <= '9' );
+		return numero;
+	}
+
+	/* lettura dei caratteri */
+
+	private static boolean spazio( final int c ) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+	}
+
+	private void saltaSpazi() {
+		while ( spazio( guarda() ) ) avanza();
+	}
+
+	private void atteso( final char atteso ) {
+		if ( guarda() != atteso ) throw errore( "atteso '" + atteso + "'" );
+		avanza();
+	}
+
+	/**
+	 * Restituisce il prossimo carattere, senza consumarlo.
+	 *
+	 * @return il carattere, o -1 se il testo è terminato.
+	 */
+	private int guarda() {
+		if ( testo != null ) return posizione < testo.length() ? testo.charAt( (int)posizione ) : -1;
+		if ( posizioneBuffer == lunghezzaBuffer ) {
+			try {
+				do lunghezzaBuffer = lettore.read( buffer ); while ( lunghezzaBuffer == 0 );
+			} catch ( IOException e ) {
+				throw new UncheckedIOException( e );
+			}
+			posizioneBuffer = 0;
+			if ( lunghezzaBuffer == -1 ) {
+				lunghezzaBuffer = 0;
+				return -1;
+			}
+		}
+		return buffer[ posizioneBuffer ];
+	}
+
+	/** Consuma il carattere corrente (che deve essere stato restituito da {@link #guarda()}). */
+	private void avanza() {
+		posizione++;
+		if ( testo == null ) posizioneBuffer++;
+	}
+
+	private IllegalArgumentException errore( final String messaggio ) {
+		return new IllegalArgumentException( "Impossibile comprendere i simboli alla posizione " + posizione + ": " + messaggio + "." );
+	}
+
+}
@@ -0,0 +1,208 @@
+package it.unimi.di.j4im.notazione;
+
+/*
+ * Copyright 2014 Massimo Santini
+ *
+ * This file is part of j4im.
+ *
+ * j4im is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * j4im is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * j4im. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Un archivio (in formato binario) di sequenze di simboli.
+ *
+ * <p>
+ * Un archivio contiene una o più sequenze di simboli (ad esempio, le parti di
+ * un brano) rappresentate in forma compatta, ossia tramite i codici descritti
+ * in {@link SimboloArray}; il file è composto da:
+ * </p>
+ * <ul>
+ * <li>una intestazione di 16 byte, che contiene il numero magico
+ * <samp>J4IM</samp>, la versione del formato, il numero di sequenze ed un
+ * intero riservato (nullo);</li>
+ * <li>un indice, che contiene per ciascuna sequenza la posizione (in byte,
+ * dall'inizio del file) del primo codice e il numero di codici (entrambi come
+ * <samp>long</samp>);</li>
+ * <li>i codici delle sequenze, uno dopo l'altro (ciascuno come
+ * <samp>long</samp>).</li>
+ * </ul>
+ * <p>
+ * Tutti i valori sono memorizzati in ordine <em>big-endian</em>, per cui il
+ * file è indipendente dalla piattaforma.
+ * </p>
+ *
+ * <p>
+ * L'apertura di un archivio (tramite il metodo {@link #apri(Path)}) legge solo
+ * l'intestazione e l'indice e mappa in memoria (tramite
+ * {@link FileChannel#map(MapMode, long, long)}) le sequenze, senza
+ * interpretarne i simboli: le sequenze possono quindi essere copiate in blocco
+ * in un {@link SimboloArray} (ed accodate ad una parte senza costruire alcun
+ * simbolo), o lette direttamente dalla memoria tramite il metodo
+ * {@link #codice(int, int)}.
+ * </p>
+ */
+public final class ArchivioSimboli {
+
+	/** Il numero magico (ossia i byte <samp>J4IM</samp>). */
+	private static final int MAGICO = 0x4A34494D;
+
+	/** La versione del formato. */
+	private static final int VERSIONE = 1;
+
+	/** La lunghezza (in byte) dell'intestazione. */
+	private static final int LUNGHEZZA_INTESTAZIONE = 16;
+
+	/** La lunghezza (in byte) di ciascun elemento dell'indice. */
+	private static final int LUNGHEZZA_INDICE = 16;
+
+	/** Il massimo numero di codici di una sequenza (affinché possa essere mappata con una sola regione). */
+	private static final long MAX_LUNGHEZZA = Integer.MAX_VALUE / Long.BYTES;
+
+	/** Le sequenze, come viste sulle regioni mappate. */
+	private final LongBuffer[] sequenze;
+
+	private ArchivioSimboli( final LongBuffer[] sequenze ) {
+		this.sequenze = sequenze;
+	}
+
+	/**
+	 * Scrive un archivio contenente le sequenze date.
+	 *
+	 * @param path il percorso del file (che viene sovrascritto, se esiste).
+	 * @param sequenze le sequenze.
+	 * @throws IOException se ci sono errori di I/O.
+	 */
+	public static void scrivi( final Path path, final SimboloArray... sequenze ) throws IOException {
+		try ( FileChannel canale = FileChannel.open( path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE ) ) {
+			final ByteBuffer intestazione = ByteBuffer.allocate( LUNGHEZZA_INTESTAZIONE + LUNGHEZZA_INDICE * sequenze.length );
+			intestazione.putInt( MAGICO ).putInt( VERSIONE ).putInt( sequenze.length ).putInt( 0 );
+			long posizione = intestazione.capacity();
+			for ( SimboloArray sequenza : sequenze ) {
+				intestazione.putLong( posizione ).putLong( sequenza.lunghezza() );
+				posizione += (long)Long.BYTES * sequenza.lunghezza();
+			}
+			intestazione.flip();
+			scriviTutto( canale, intestazione );
+			final ByteBuffer blocco = ByteBuffer.allocateDirect( 1 << 16 );
+			final LongBuffer codici = blocco.asLongBuffer();
+			for ( SimboloArray sequenza : sequenze ) {
+				final long[] vettore = sequenza.vettore();
+				for ( int da = 0; da < sequenza.lunghezza(); ) {
+					final int n = Math.min( codici.capacity(), sequenza.lunghezza() - da );
+					codici.clear();
+					codici.put( vettore, da, n );
+					blocco.clear().limit( n * Long.BYTES );
+					scriviTutto( canale, blocco );
+					da += n;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Apre un archivio.
+	 *
+	 * @param path il percorso del file.
+	 * @return l'archivio.
+	 * @throws IOException se ci sono errori di I/O, o se il file non è un
+	 *             archivio di simboli valido.
+	 */
+	public static ArchivioSimboli apri( final Path path ) throws IOException {
+		try ( FileChannel canale = FileChannel.open( path, StandardOpenOption.READ ) ) {
+			final long dimensione = canale.size();
+			if ( dimensione < LUNGHEZZA_INTESTAZIONE ) throw new IOException( "Il file " + path + " non è un archivio di simboli." );
+			final ByteBuffer intestazione = canale.map( MapMode.READ_ONLY, 0, LUNGHEZZA_INTESTAZIONE );
+			if ( intestazione.getInt() != MAGICO ) throw new IOException( "Il file " + path + " non è un archivio di simboli." );
+			final int versione = intestazione.getInt();
+			if ( versione != VERSIONE ) throw new IOException( "Versione " + versione + " dell'archivio non supportata." );
+			final int numero = intestazione.getInt();
+			if ( numero < 0 || LUNGHEZZA_INTESTAZIONE + (long)LUNGHEZZA_INDICE * numero > dimensione ) throw new IOException( "Indice dell'archivio " + path + " corrotto." );
+			final ByteBuffer indice = canale.map( MapMode.READ_ONLY, LUNGHEZZA_INTESTAZIONE, (long)LUNGHEZZA_INDICE * numero );
+			final LongBuffer[] sequenze = new LongBuffer[ numero ];
+			for ( int i = 0; i < numero; i++ ) {
+				final long posizione = indice.getLong(), lunghezza = indice.getLong();
+				if ( posizione < 0 || posizione % Long.BYTES != 0 || lunghezza < 0 || lunghezza > MAX_LUNGHEZZA || posizione + lunghezza * Long.BYTES > dimensione )
+					throw new IOException( "Indice dell'archivio " + path + " corrotto (sequenza " + i + ")." );
+				sequenze[ i ] = canale.map( MapMode.READ_ONLY, posizione, lunghezza * Long.BYTES ).asLongBuffer();
+			}
+			return new ArchivioSimboli( sequenze );
+		}
+	}
+
+	/**
+	 * Restituisce il numero di sequenze contenute nell'archivio.
+	 *
+	 * @return il numero di sequenze.
+	 */
+	public int numeroSequenze() {
+		return sequenze.length;
+	}
+
+	/**
+	 * Restituisce la lunghezza di una sequenza.
+	 *
+	 * @param sequenza l'indice della sequenza.
+	 * @return il numero di simboli della sequenza.
+	 * @throws IndexOutOfBoundsException se l'indice non è valido.
+	 */
+	public int lunghezza( final int sequenza ) {
+		return sequenze[ sequenza ].capacity();
+	}
+
+	/**
+	 * Restituisce il codice di un simbolo di una sequenza (leggendolo
+	 * direttamente dalla regione mappata in memoria).
+	 *
+	 * @param sequenza l'indice della sequenza.
+	 * @param indice l'indice del simbolo.
+	 * @return il codice.
+	 * @throws IndexOutOfBoundsException se uno degli indici non è valido.
+	 */
+	public long codice( final int sequenza, final int indice ) {
+		return sequenze[ sequenza ].get( indice );
+	}
+
+	/**
+	 * Restituisce una sequenza (copiandone in blocco i codici).
+	 *
+	 * @param sequenza l'indice della sequenza.
+	 * @return la sequenza.
+	 * @throws IndexOutOfBoundsException se l'indice non è valido.
+	 */
+	public SimboloArray sequenza( final int sequenza ) {
+		final LongBuffer codici = sequenze[ sequenza ].duplicate();
+		final long[] vettore = new long[ codici.capacity() ];
+		codici.get( vettore );
+		return new SimboloArray( vettore, vettore.length );
+	}
+
+	/**
+	 * Scrive completamente un buffer su un canale.
+	 *
+	 * @param canale il canale.
+	 * @param buffer il buffer.
+	 * @throws IOException se ci sono errori di I/O.
+	 */
+	private static void scriviTutto( final FileChannel canale, final ByteBuffer buffer ) throws IOException {
+		while ( buffer.hasRemaining() ) canale.write( buffer );
+	}
+
+}
@@ -18,20 +18,64 @@ package it.unimi.di.j4im.notazione;
  * j4im. If not, see <http://www.gnu.org/licenses/>.
  */
 
-/** Durata di una simbolo musicale (espressa come frazione della misura). */
+import java.math.BigInteger;
+
+/** Durata di una simbolo musicale (espressa come frazione della misura).
+ *
+ * <p>
+ * Le durate sono immutabili; le durate più comuni (quelle di numeratore non
+ * superiore a {@link #MAX_NUMERATORE_CANONICO} e denominatore non superiore a
+ * {@link #MAX_DENOMINATORE_CANONICO}, che comprendono tutte le frazioni con
+ * denominatore potenza di due e i gruppi irregolari più usati) sono costruite
+ * una sola volta e restituite dal metodo {@link #di(int, int)}, nonché dai
+ * metodi aritmetici (come {@link #piu(Durata)}) e da {@link #fromString(String)},
+ * che quindi per tali valori non costruiscono nuovi oggetti. Per sommare
+ * lunghe sequenze di durate si veda anche {@link DurataAccumulatore}.
+ * </p>
+ */
 public class Durata implements Comparable <Durata> {
 
-	public static final Durata SEMIBREVE = new Durata( 1 );
-	public static final Durata MINIMA = new Durata( 2 );
-	public static final Durata SEMIMINIMA = new Durata( 4 );
-	public static final Durata CROMA = new Durata( 8 );
-	public static final Durata SEMICROMA = new Durata( 16 );
-	public static final Durata BISCROMA = new Durata( 32 );
-	public static final Durata SEMIBISCROMA = new Durata( 64 );
+	/** Il massimo numeratore delle durate canoniche. */
+	public static final int MAX_NUMERATORE_CANONICO = 16;
+
+	/** Il massimo denominatore delle durate canoniche. */
+	public static final int MAX_DENOMINATORE_CANONICO = 128;
+
+	/** Le durate canoniche, indicizzate per numeratore e denominatore (ridotti). */
+	private static final Durata[] CANONICHE = new Durata[ MAX_NUMERATORE_CANONICO * MAX_DENOMINATORE_CANONICO ];
+
+	static {
+		for ( int numeratore = 1; numeratore <= MAX_NUMERATORE_CANONICO; numeratore++ )
+			for ( int denominatore = 1; denominatore <= MAX_DENOMINATORE_CANONICO; denominatore++ )
+				if ( mcd( numeratore, denominatore ) == 1 )
+					CANONICHE[ ( numeratore - 1 ) * MAX_DENOMINATORE_CANONICO + denominatore - 1 ] = new Durata( numeratore, denominatore );
+	}
+
+	public static final Durata SEMIBREVE = di( 1 );
+	public static final Durata MINIMA = di( 2 );
+	public static final Durata SEMIMINIMA = di( 4 );
+	public static final Durata CROMA = di( 8 );
+	public static final Durata SEMICROMA = di( 16 );
+	public static final Durata BISCROMA = di( 32 );
+	public static final Durata SEMIBISCROMA = di( 64 );
 
 	private final int numeratore;
 	private final int denominatore;
 
+	/**
+	 * L'ultima conversione in ticks calcolata, memorizzata come risoluzione
+	 * (nei bit più significativi) e numero di ticks (negli ultimi
+	 * {@link #BIT_TICKS} bit); vale 0 se non è stata ancora calcolata alcuna
+	 * conversione (o se la conversione non è memorizzabile in questa forma).
+	 */
+	private volatile long ticksMemorizzati;
+
+	/** Il numero di bit usati per i ticks in {@link #ticksMemorizzati}. */
+	private static final int BIT_TICKS = 40;
+
+	/** Il numero di nanosecondi in un minuto moltiplicato per il numero di quarti in una semibreve. */
+	private static final long NANOS_SEMIBREVE = 4 * 60_000_000_000L;
+
 	/**
 	 * Costruisce una durata dati numeratore e denominatore (devono essere
 	 * entrambe positivi) e semplifica la frazione corrispondente.
@@ -44,7 +88,7 @@ public class Durata implements Comparable <Durata> {
 	public Durata( final int numeratore, final int denominatore ) {
 		if ( numeratore <= 0 || denominatore <= 0 )
 			throw new IllegalArgumentException( "Non sono possibili durate non positive, o il denominatore nullo." );
-		final int mcd = Durata.mcd( numeratore, denominatore );
+		final int mcd = (int)Durata.mcd( numeratore, denominatore );
 		this.numeratore = numeratore / mcd;
 		this.denominatore = denominatore / mcd;
 	}
@@ -58,6 +102,63 @@ public class Durata implements Comparable <Durata> {
 		this( 1, denominatore );
 	}
 
+	/**
+	 * Restituisce la durata dati numeratore e denominatore (devono essere
+	 * entrambe positivi).
+	 *
+	 * <p>
+	 * A differenza del costruttore {@link #Durata(int, int)}, questo metodo
+	 * restituisce sempre la medesima istanza per le durate canoniche.
+	 * </p>
+	 *
+	 * @param numeratore il numeratore.
+	 * @param denominatore il denominatore.
+	 * @return la durata.
+	 * @throws IllegalArgumentException se numeratore, o denominatore sono
+	 *             negativi, o nulli.
+	 */
+	public static Durata di( final int numeratore, final int denominatore ) {
+		return di( (long)numeratore, (long)denominatore );
+	}
+
+	/**
+	 * Restituisce la durata espressa come frazione dell'unità.
+	 *
+	 * @param denominatore il denominatore.
+	 * @return la durata.
+	 * @throws IllegalArgumentException se il denominatore è negativo, o
+	 *             nullo.
+	 * @see #di(int, int)
+	 */
+	public static Durata di( final int denominatore ) {
+		return di( 1L, denominatore );
+	}
+
+	/**
+	 * Restituisce la durata dati numeratore e denominatore (anche non ridotti
+	 * ed eccedenti l'intervallo degli interi).
+	 *
+	 * @param numeratore il numeratore.
+	 * @param denominatore il denominatore.
+	 * @return la durata.
+	 * @throws IllegalArgumentException se numeratore, o denominatore sono
+	 *             negativi, o nulli.
+	 * @throws ArithmeticException se la frazione ridotta eccede l'intervallo
+	 *             degli interi.
+	 */
+	static Durata di( long numeratore, long denominatore ) {
+		if ( numeratore <= 0 || denominatore <= 0 )
+			throw new IllegalArgumentException( "Non sono possibili durate non positive, o il denominatore nullo." );
+		final long mcd = mcd( numeratore, denominatore );
+		numeratore /= mcd;
+		denominatore /= mcd;
+		if ( numeratore <= MAX_NUMERATORE_CANONICO && denominatore <= MAX_DENOMINATORE_CANONICO )
+			return CANONICHE[ (int)( numeratore - 1 ) * MAX_DENOMINATORE_CANONICO + (int)denominatore - 1 ];
+		if ( numeratore > Integer.MAX_VALUE || denominatore > Integer.MAX_VALUE )
+			throw new ArithmeticException( "La durata " + numeratore + "/" + denominatore + " eccede l'intervallo rappresentabile." );
+		return new Durata( (int)numeratore, (int)denominatore );
+	}
+
 	/**
 	 * Restituisce la durata contenuta in una stringa data.
 	 *
@@ -75,34 +176,136 @@ public class Durata implements Comparable <Durata> {
 		final int barra = str.indexOf( '/' );
 		if ( barra == -1 )
 			throw new IllegalArgumentException( "Impossibile determinare la durata di " + str );
-		try {
-			final int numeratore = Integer.parseInt( str.substring( 0, barra ) );
-			final int denominatore = Integer.parseInt( str.substring( barra + 1 ) );
-			return new Durata( numeratore, denominatore );
-		} catch ( NumberFormatException e ) {
+		final long numeratore = intero( str, 0, barra ), denominatore = intero( str, barra + 1, str.length() );
+		if ( numeratore < 0 || denominatore < 0 )
 			throw new IllegalArgumentException( "Impossibile determinare la durata di " + str );
+		return di( numeratore, denominatore );
+	}
+
+	/**
+	 * Restituisce l'intero (non negativo) rappresentato in notazione decimale
+	 * da una porzione di stringa.
+	 *
+	 * @param str la stringa.
+	 * @param inizio l'indice del primo carattere (incluso).
+	 * @param fine l'indice dell'ultimo carattere (escluso).
+	 * @return l'intero, o -1 se la porzione è vuota, contiene caratteri che non
+	 *         sono cifre, o eccede l'intervallo degli interi.
+	 */
+	private static long intero( final String str, final int inizio, final int fine ) {
+		if ( inizio == fine ) return -1;
+		long intero = 0;
+		for ( int i = inizio; i < fine; i++ ) {
+			final char c = str.charAt( i );
+			if ( c < '0' || c > '9' ) return -1;
+			intero = 10 * intero + c - '0';
+			if ( intero > Integer.MAX_VALUE ) return -1;
 		}
+		return intero;
 	}
 
 	/**
 	 * Restituisce la durata in millisecondi, dato il numero di quarti al
 	 * minuto.
 	 *
+	 * <p>
+	 * Il valore è calcolato in aritmetica intera e troncato al millisecondo;
+	 * per una maggior precisione si veda {@link #nanos(int)}.
+	 * </p>
+	 *
 	 * @param bpm il numero di quarti al minuto.
 	 * @return La durata in millisecondi.
+	 * @throws IllegalArgumentException se il numero di quarti al minuto non è
+	 *             positivo.
 	 */
 	public int ms( final int bpm ) {
-		return (int)( 1000 * ( 60.0 / bpm ) * ( 4.0 / denominatore ) );
+		return (int)( nanos( bpm ) / 1_000_000 );
+	}
+
+	/**
+	 * Restituisce la durata in nanosecondi, dato il numero di quarti al
+	 * minuto.
+	 *
+	 * <p>
+	 * Il valore è calcolato in aritmetica intera (esatta) e troncato al
+	 * nanosecondo, in modo che sommando le durate di una lunga sequenza di
+	 * simboli l'errore non superi comunque un nanosecondo per simbolo.
+	 * </p>
+	 *
+	 * @param bpm il numero di quarti al minuto.
+	 * @return La durata in nanosecondi.
+	 * @throws IllegalArgumentException se il numero di quarti al minuto non è
+	 *             positivo.
+	 * @throws ArithmeticException se la durata eccede il valore massimo di un
+	 *             <samp>long</samp>.
+	 */
+	public long nanos( final int bpm ) {
+		if ( bpm <= 0 ) throw new IllegalArgumentException( "Il numero di quarti al minuto dev'essere positivo." );
+		final long divisore = (long)bpm * denominatore;
+		try {
+			return Math.multiplyExact( NANOS_SEMIBREVE, numeratore ) / divisore;
+		} catch ( ArithmeticException e ) {
+			return BigInteger.valueOf( NANOS_SEMIBREVE ).multiply( BigInteger.valueOf( numeratore ) ).divide( BigInteger.valueOf( divisore ) ).longValueExact();
+		}
 	}
 
 	/**
 	 * Resituisce la durata in ticks, data la risoluzione.
 	 *
+	 * <p>
+	 * Il valore è calcolato in virgola mobile e ristretto ad un <samp>int</samp>,
+	 * per cui può essere inesatto (o troncato, per durate molto lunghe); per
+	 * una conversione esatta si usi {@link #ticksEsatti(int)}.
+	 * </p>
+	 *
 	 * @param resolution la risoluzione.
 	 * @return La durata in ticks.
 	 */
 	public int ticks( final double resolution ) {
-		return (int)( 4 * resolution / denominatore );
+		return (int)( 4 * resolution * numeratore / denominatore );
+	}
+
+	/**
+	 * Resituisce la durata in ticks, data la risoluzione (ossia il numero di
+	 * ticks in un quarto).
+	 *
+	 * <p>
+	 * Il valore è calcolato in aritmetica intera (esatta) e troncato al tick;
+	 * l'ultima conversione calcolata viene memorizzata nella durata, così che
+	 * le conversioni successive con la medesima risoluzione (come avviene
+	 * tipicamente, dato che i brani usano una risoluzione fissa) non debbano
+	 * essere ricalcolate.
+	 * </p>
+	 *
+	 * @param resolution la risoluzione.
+	 * @return La durata in ticks.
+	 * @throws IllegalArgumentException se la risoluzione non è positiva.
+	 */
+	public long ticksEsatti( final int resolution ) {
+		final long memorizzati = ticksMemorizzati;
+		if ( memorizzati != 0 && memorizzati >>> BIT_TICKS == resolution ) return memorizzati & ( ( 1L << BIT_TICKS ) - 1 );
+		final long ticks = ticksEsatti( numeratore, denominatore, resolution );
+		if ( resolution < 1 << 64 - BIT_TICKS && ticks < 1L << BIT_TICKS ) ticksMemorizzati = (long)resolution << BIT_TICKS | ticks;
+		return ticks;
+	}
+
+	/**
+	 * Resituisce la durata in ticks di una durata data come numeratore e
+	 * denominatore, data la risoluzione (ossia il numero di ticks in un
+	 * quarto).
+	 *
+	 * @param numeratore il numeratore.
+	 * @param denominatore il denominatore.
+	 * @param resolution la risoluzione.
+	 * @return La durata in ticks.
+	 * @throws IllegalArgumentException se la risoluzione non è positiva.
+	 * @throws ArithmeticException se la durata eccede il valore massimo di un
+	 *             <samp>long</samp>.
+	 * @see #ticksEsatti(int)
+	 */
+	public static long ticksEsatti( final int numeratore, final int denominatore, final int resolution ) {
+		if ( resolution <= 0 ) throw new IllegalArgumentException( "La risoluzione dev'essere positiva." );
+		return Math.multiplyExact( 4L * resolution, numeratore ) / denominatore;
 	}
 
 	/**
@@ -112,7 +315,8 @@ public class Durata implements Comparable <Durata> {
 	 * @return la somma.
 	 */
 	public Durata piu( final Durata altra ) {
-		return new Durata( numeratore * altra.denominatore + denominatore * altra.numeratore, denominatore * altra.denominatore );
+		if ( denominatore == altra.denominatore ) return di( (long)numeratore + altra.numeratore, denominatore );
+		return di( (long)numeratore * altra.denominatore + (long)denominatore * altra.numeratore, (long)denominatore * altra.denominatore );
 	}
 
 	/**
@@ -123,7 +327,8 @@ public class Durata implements Comparable <Durata> {
 	 * @throws IllegalArgumentException se la sottrazione risulta in una durata negativa.
 	 */
 	public Durata meno( final Durata altra ) {
-		return new Durata( numeratore * altra.denominatore - denominatore * altra.numeratore, denominatore * altra.denominatore );
+		if ( denominatore == altra.denominatore ) return di( (long)numeratore - altra.numeratore, denominatore );
+		return di( (long)numeratore * altra.denominatore - (long)denominatore * altra.numeratore, (long)denominatore * altra.denominatore );
 	}
 
 	/**
@@ -135,7 +340,7 @@ public class Durata implements Comparable <Durata> {
 	 */
 	public Durata per( final int x ) {
 		if ( x <= 0 ) throw new IllegalArgumentException( "Non si può moltiplicare una durata per una grandezza negativa, o nulla." );
-		return new Durata( numeratore * x, denominatore );
+		return di( (long)numeratore * x, denominatore );
 	}
 
 	/**
@@ -147,7 +352,7 @@ public class Durata implements Comparable <Durata> {
 	 */
 	public Durata diviso( final int x ) {
 		if ( x <= 0 ) throw new IllegalArgumentException( "Non si può dividere una durata per una grandezza negativa, o nulla." );
-		return new Durata( numeratore, denominatore * x );
+		return di( numeratore, (long)denominatore * x );
 	}
 
 	/**
@@ -202,9 +407,9 @@ public class Durata implements Comparable <Durata> {
 	 * @param b secondo numero.
  	 * @return il massimo comun divisore.
 	 */
-	private static int mcd( int a, int b ) {
+	static long mcd( long a, long b ) {
 		while ( b != 0 ) {
-			int r = a % b;
+			long r = a % b;
 			a = b;
 			b = r;
 	        }
@@ -0,0 +1,170 @@
+package it.unimi.di.j4im.notazione;
+
+/*
+ * Copyright 2014 Massimo Santini
+ *
+ * This file is part of j4im.
+ *
+ * j4im is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * j4im is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * j4im. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Accumulatore (modificabile) di durate.
+ *
+ * <p>
+ * A differenza del metodo {@link Durata#piu(Durata)}, che restituisce una
+ * nuova durata ad ogni somma, un accumulatore mantiene la somma delle durate
+ * aggiunte come una frazione (ridotta) di numeratore e denominatore
+ * <samp>long</samp>, senza costruire alcun oggetto; esso può quindi essere
+ * usato per calcolare la durata complessiva di lunghe sequenze di simboli.
+ * Inizialmente (o dopo l'invocazione del metodo {@link #azzera()}) la somma è
+ * nulla.
+ * </p>
+ *
+ * <p>
+ * Tutte le operazioni controllano il verificarsi di <em>overflow</em>,
+ * segnalato da una {@link ArithmeticException}.
+ * </p>
+ */
+public final class DurataAccumulatore {
+
+	private long numeratore;
+	private long denominatore;
+
+	/** Costruisce un accumulatore la cui somma è nulla. */
+	public DurataAccumulatore() {
+		azzera();
+	}
+
+	/**
+	 * Azzera la somma.
+	 *
+	 * @return l'accumulatore.
+	 */
+	public DurataAccumulatore azzera() {
+		numeratore = 0;
+		denominatore = 1;
+		return this;
+	}
+
+	/**
+	 * Aggiunge una durata alla somma.
+	 *
+	 * @param durata la durata.
+	 * @return l'accumulatore.
+	 * @throws ArithmeticException se la somma eccede l'intervallo
+	 *             rappresentabile.
+	 */
+	public DurataAccumulatore aggiungi( final Durata durata ) {
+		return aggiungi( durata.numeratore(), durata.denominatore() );
+	}
+
+	/**
+	 * Aggiunge una durata (data da numeratore e denominatore) alla somma.
+	 *
+	 * @param numeratore il numeratore (dev'essere non negativo).
+	 * @param denominatore il denominatore (dev'essere positivo).
+	 * @return l'accumulatore.
+	 * @throws IllegalArgumentException se il numeratore è negativo, o il
+	 *             denominatore non è positivo.
+	 * @throws ArithmeticException se la somma eccede l'intervallo
+	 *             rappresentabile.
+	 */
+	public DurataAccumulatore aggiungi( final long numeratore, final long denominatore ) {
+		if ( numeratore < 0 || denominatore <= 0 )
+			throw new IllegalArgumentException( "Non sono possibili durate negative, o il denominatore non positivo." );
+		if ( denominatore == this.denominatore )
+			this.numeratore = Math.addExact( this.numeratore, numeratore );
+		else {
+			final long mcd = Durata.mcd( this.denominatore, denominatore );
+			this.numeratore = Math.addExact( Math.multiplyExact( this.numeratore, denominatore / mcd ), Math.multiplyExact( numeratore, this.denominatore / mcd ) );
+			this.denominatore = Math.multiplyExact( this.denominatore / mcd, denominatore );
+		}
+		riduci();
+		return this;
+	}
+
+	/**
+	 * Aggiunge alla somma un multiplo di una durata.
+	 *
+	 * @param durata la durata.
+	 * @param volte il numero di volte (dev'essere non negativo).
+	 * @return l'accumulatore.
+	 * @throws IllegalArgumentException se il numero di volte è negativo.
+	 * @throws ArithmeticException se la somma eccede l'intervallo
+	 *             rappresentabile.
+	 */
+	public DurataAccumulatore aggiungi( final Durata durata, final long volte ) {
+		return aggiungi( Math.multiplyExact( (long)durata.numeratore(), volte ), durata.denominatore() );
+	}
+
+	/**
+	 * Restituisce il numeratore (ridotto) della somma.
+	 *
+	 * @return il numeratore.
+	 */
+	public long numeratore() {
+		return numeratore;
+	}
+
+	/**
+	 * Restituisce il denominatore (ridotto) della somma.
+	 *
+	 * @return il denominatore.
+	 */
+	public long denominatore() {
+		return denominatore;
+	}
+
+	/**
+	 * Indica se la somma è nulla.
+	 *
+	 * @return <samp>true</samp> se e solo se la somma è nulla.
+	 */
+	public boolean nulla() {
+		return numeratore == 0;
+	}
+
+	/**
+	 * Restituisce la durata pari alla somma.
+	 *
+	 * @return la durata.
+	 * @throws IllegalStateException se la somma è nulla.
+	 * @throws ArithmeticException se la somma eccede l'intervallo delle durate.
+	 * @see Durata#di(int, int)
+	 */
+	public Durata durata() {
+		if ( numeratore == 0 ) throw new IllegalStateException( "Non sono possibili durate nulle." );
+		return Durata.di( numeratore, denominatore );
+	}
+
+	@Override
+	public String toString() {
+		return numeratore + "/" + denominatore;
+	}
+
+	/** Riduce la frazione. */
+	private void riduci() {
+		if ( denominatore == 1 ) return;
+		if ( numeratore == 0 ) {
+			denominatore = 1;
+			return;
+		}
+		final long mcd = Durata.mcd( numeratore, denominatore );
+		if ( mcd != 1 ) {
+			numeratore /= mcd;
+			denominatore /= mcd;
+		}
+	}
+
+}
@@ -18,6 +18,8 @@ package it.unimi.di.j4im.notazione;
  * j4im. If not, see <http://www.gnu.org/licenses/>.
  */
 
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -169,52 +171,10 @@ public class Nota extends Simbolo {
 		 *             nell'intervallo da 0 a 127.
 		 */
 		public Fabbricatore pitch( final int pitch ) {
-			alterazione = Alterazione.NULLA;
-			switch ( pitch % 12 ) {
-				case 0:
-					nome = Nome.DO;
-					break;
-				case 1:
-					nome = Nome.DO;
-					alterazione = Alterazione.DIESIS;
-					break;
-				case 2:
-					nome = Nome.RE;
-					break;
-				case 3:
-					nome = Nome.RE;
-					alterazione = Alterazione.DIESIS;
-					break;
-				case 4:
-					nome = Nome.MI;
-					break;
-				case 5:
-					nome = Nome.FA;
-					break;
-				case 6:
-					nome = Nome.FA;
-					alterazione = Alterazione.DIESIS;
-					break;
-				case 7:
-					nome = Nome.SOL;
-					break;
-				case 8:
-					nome = Nome.SOL;
-					alterazione = Alterazione.DIESIS;
-					break;
-				case 9:
-					nome = Nome.LA;
-					break;
-				case 10:
-					nome = Nome.LA;
-					alterazione = Alterazione.DIESIS;
-					break;
-				case 11:
-					nome = Nome.SI;
-					break;
-			}
+			verificaPitch( pitch );
+			nome = NOMI[ pitch % 12 ];
+			alterazione = ALTERAZIONI[ pitch % 12 ];
 			ottava = pitch / 12 - 1;
-			controllaPitch();
 			return this;
 		}
 
@@ -234,7 +194,22 @@ public class Nota extends Simbolo {
 		 *             altezaz non valida.
 		 */
 		public Fabbricatore frequenza( final float frequenza ) {
-			return pitch( (int)Math.round( PITCH_LA + ( Math.log( frequenza ) - Math.log( FREQUENZA_LA ) ) / Math.log( RAPPORTO_DI_FREQUENZA ) ) );
+			return frequenza( frequenza, Accordatura.STANDARD );
+		}
+
+		/**
+		 * Imposta l'altezza della nota, data una frequenza (in Hz) in una
+		 * accordatura data.
+		 * 
+		 * @param frequenza la frequenza.
+		 * @param accordatura l'accordatura.
+		 * @return Il fabbricatore.
+		 * @throws IllegalArgumentException se la frequenza porta ad una nota di
+		 *             altezza non valida.
+		 * @see Accordatura#pitch(double)
+		 */
+		public Fabbricatore frequenza( final float frequenza, final Accordatura accordatura ) {
+			return pitch( accordatura.pitch( frequenza ) );
 		}
 
 		/**
@@ -257,9 +232,7 @@ public class Nota extends Simbolo {
 		 *             nell'intervallo da 0 a 127.
 		 */
 		public Fabbricatore intensita( final int intensita ) {
-			if ( intensita < 0 || intensita > 127 )
-				throw new IllegalArgumentException( "L'intensità dev'essere compresa tra 0 e 127 (estremi inclusi)." );
-			this.intensita = intensita;
+			this.intensita = verificaIntensita( intensita );
 			return this;
 		}
 
@@ -343,6 +316,39 @@ public class Nota extends Simbolo {
 	public final static int INTENSITA_DEFAULT = 64;
 	public final static int OTTAVA_DEFAULT = 4;
 
+	/** Il numero massimo di note conservate nella cache usata da {@link #di(int, Durata, int)}. */
+	public final static int CAPACITA_CACHE = 4096;
+
+	/** Il nome delle note, indicizzato per distanza in semitoni dall'inizio dell'ottava. */
+	private final static Nome[] NOMI = {
+		Nome.DO, Nome.DO, Nome.RE, Nome.RE, Nome.MI, Nome.FA,
+		Nome.FA, Nome.SOL, Nome.SOL, Nome.LA, Nome.LA, Nome.SI
+	};
+
+	/** L'alterazione delle note, indicizzata per distanza in semitoni dall'inizio dell'ottava. */
+	private final static Alterazione[] ALTERAZIONI = {
+		Alterazione.NULLA, Alterazione.DIESIS, Alterazione.NULLA, Alterazione.DIESIS, Alterazione.NULLA, Alterazione.NULLA,
+		Alterazione.DIESIS, Alterazione.NULLA, Alterazione.DIESIS, Alterazione.NULLA, Alterazione.DIESIS, Alterazione.NULLA
+	};
+
+	/** Le note (di durata ed intensità di default) restituite da {@link #di(int)}, indicizzate per pitch. */
+	private final static Nota[] NOTE = new Nota[ 128 ];
+
+	static {
+		for ( int pitch = 0; pitch < NOTE.length; pitch++ )
+			NOTE[ pitch ] = new Nota( Simbolo.DURATA_DEFAULT, pitch, INTENSITA_DEFAULT );
+	}
+
+	/** La cache (limitata e con politica LRU) delle note restituite da {@link #di(int, Durata, int)}. */
+	private final static Map<Long, Nota> CACHE = new LinkedHashMap<Long, Nota>( 2 * CAPACITA_CACHE, .75f, true ) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry( final Map.Entry<Long, Nota> eldest ) {
+			return size() > CAPACITA_CACHE;
+		}
+	};
+
 	private final Nome nome;
 	private final Alterazione alterazione;
 	private final int ottava;
@@ -372,6 +378,127 @@ public class Nota extends Simbolo {
 		intensita = fabbricatore.intensita;
 	}
 
+	/**
+	 * Costruisce una nota a partire da durata, pitch ed intensità senza
+	 * effettuare alcun controllo (che è responsabilità del chiamante).
+	 *
+	 * @param durata la durata della nota.
+	 * @param pitch il pitch della nota.
+	 * @param intensita l'intensità della nota.
+	 */
+	private Nota( final Durata durata, final int pitch, final int intensita ) {
+		super( durata );
+		nome = NOMI[ pitch % 12 ];
+		alterazione = ALTERAZIONI[ pitch % 12 ];
+		ottava = pitch / 12 - 1;
+		this.intensita = intensita;
+	}
+
+	/**
+	 * Restituisce la nota di pitch dato (con durata ed intensità di default).
+	 *
+	 * <p>
+	 * A differenza del costruttore {@link #Nota(int)}, questo metodo non
+	 * costruisce una nuova nota, ma restituisce sempre la medesima istanza
+	 * (le note sono immutabili) per un dato pitch.
+	 * </p>
+	 *
+	 * @param pitch il pitch della nota.
+	 * @return la nota.
+	 * @throws IllegalArgumentException se il pitch non è compreso
+	 *             nell'intervallo da 0 a 127.
+	 */
+	public static Nota di( final int pitch ) {
+		return NOTE[ verificaPitch( pitch ) ];
+	}
+
+	/**
+	 * Restituisce la nota di pitch, durata ed intensità dati.
+	 *
+	 * <p>
+	 * A differenza del costruttore {@link #Nota(int, Durata, int)}, questo
+	 * metodo restituisce (quando possibile) una istanza già costruita in
+	 * precedenza: le note di durata ed intensità di default sono sempre
+	 * disponibili, mentre le altre sono conservate in una cache che contiene al
+	 * più {@link #CAPACITA_CACHE} note (quelle usate meno di recente vengono
+	 * via via dimenticate).
+	 * </p>
+	 *
+	 * @param pitch il pitch della nota.
+	 * @param durata la durata della nota.
+	 * @param intensita l'intensità della nota.
+	 * @return la nota.
+	 * @throws IllegalArgumentException se il pitch, o l'intensità, non sono
+	 *             compresi nell'intervallo da 0 a 127.
+	 */
+	public static Nota di( final int pitch, final Durata durata, final int intensita ) {
+		verificaPitch( pitch );
+		verificaIntensita( intensita );
+		if ( intensita == INTENSITA_DEFAULT && durata.equals( Simbolo.DURATA_DEFAULT ) )
+			return NOTE[ pitch ];
+		final int numeratore = durata.numeratore(), denominatore = durata.denominatore();
+		if ( numeratore >= 1 << 24 || denominatore >= 1 << 24 )
+			return new Nota( durata, pitch, intensita );
+		final Long chiave = Long.valueOf( (long)pitch << 55 | (long)intensita << 48 | (long)numeratore << 24 | denominatore );
+		synchronized ( CACHE ) {
+			Nota nota = CACHE.get( chiave );
+			if ( nota == null ) {
+				nota = new Nota( durata, pitch, intensita );
+				CACHE.put( chiave, nota );
+			}
+			return nota;
+		}
+	}
+
+	/**
+	 * Restituisce la nota di pitch, durata ed intensità dati, senza verificarne
+	 * la validità e senza consultare la cache (per evitarne la sincronizzazione
+	 * quando le note sono costruite in parallelo).
+	 *
+	 * <p>
+	 * Questo metodo è usato dalle trasformazioni che verificano una volta sola
+	 * la validità di un intero vettore di simboli.
+	 * </p>
+	 *
+	 * @param pitch il pitch della nota (dev'essere già stato verificato).
+	 * @param durata la durata della nota.
+	 * @param intensita l'intensità della nota (dev'essere già stata
+	 *            verificata).
+	 * @return la nota.
+	 * @see Trasformazioni
+	 */
+	static Nota diVerificata( final int pitch, final Durata durata, final int intensita ) {
+		if ( intensita == INTENSITA_DEFAULT && durata.equals( Simbolo.DURATA_DEFAULT ) )
+			return NOTE[ pitch ];
+		return new Nota( durata, pitch, intensita );
+	}
+
+	/**
+	 * Verifica che il pitch sia nell'intervallo da 0 a 127.
+	 *
+	 * @param pitch il pitch.
+	 * @return il pitch.
+	 * @throws IllegalArgumentException se il pitch non è valido.
+	 */
+	private static int verificaPitch( final int pitch ) {
+		if ( pitch < 0 || pitch > 127 )
+			throw new IllegalArgumentException( "Il pitch dev'essere compreso tra 0 e 127 (estremi inclusi)." );
+		return pitch;
+	}
+
+	/**
+	 * Verifica che l'intensità sia nell'intervallo da 0 a 127.
+	 *
+	 * @param intensita l'intensità.
+	 * @return l'intensità.
+	 * @throws IllegalArgumentException se l'intensità non è valida.
+	 */
+	private static int verificaIntensita( final int intensita ) {
+		if ( intensita < 0 || intensita > 127 )
+			throw new IllegalArgumentException( "L'intensità dev'essere compresa tra 0 e 127 (estremi inclusi)." );
+		return intensita;
+	}
+
 	/**
 	 * Costruisce una nota a partire dai parametri che la definiscono.
 	 * <p>
@@ -388,7 +515,14 @@ public class Nota extends Simbolo {
 	 *             l'intervallo da <samp>D-1</samp> a <samp>SOL9</samp>.
 	 */
 	public Nota( final Nome nome, final Alterazione alterazione, final int ottava, final Durata durata, final int intensita ) {
-		this( fabbricatore().nome( nome ).alterazione( alterazione ).ottava( ottava ).durata( durata ).intensita( intensita ) );
+		super( durata );
+		final long pitch = 12L * ( ottava + 1 ) + nome.semitoni + alterazione.semitoni;
+		if ( pitch < 0 || pitch > 127 )
+			throw new IllegalArgumentException( "La nota eccede l'intervallo D-1, SOL9." );
+		this.nome = nome;
+		this.alterazione = alterazione;
+		this.ottava = ottava;
+		this.intensita = verificaIntensita( intensita );
 	}
 
 	/**
@@ -449,7 +583,7 @@ public class Nota extends Simbolo {
 	 * @param intensita l'intensità della nota.
 	 */
 	public Nota( final int pitch, final Durata durata, final int intensita ) {
-		this( fabbricatore().pitch( pitch ).durata( durata ).intensita( intensita ) );
+		this( durata, verificaPitch( pitch ), verificaIntensita( intensita ) );
 	}
 
 	/**
@@ -459,7 +593,7 @@ public class Nota extends Simbolo {
 	 * @param pitch il pitch della nota.
 	 */
 	public Nota( final int pitch ) {
-		this( fabbricatore().pitch( pitch ) );
+		this( Simbolo.DURATA_DEFAULT, verificaPitch( pitch ), INTENSITA_DEFAULT );
 	}
 
 	/**
@@ -476,7 +610,7 @@ public class Nota extends Simbolo {
 	 * @param intensita l'intensità della nota.
 	 */
 	public Nota( final float frequenza, final Durata durata, final int intensita ) {
-		this( fabbricatore().frequenza( frequenza ).durata( durata ).intensita( intensita ) );
+		this( durata, Accordatura.STANDARD.pitch( frequenza ), verificaIntensita( intensita ) );
 	}
 
 	/**
@@ -486,7 +620,7 @@ public class Nota extends Simbolo {
 	 * @param frequenza la frequenza della nota.
 	 */
 	public Nota( final float frequenza ) {
-		this( fabbricatore().frequenza( frequenza ) );
+		this( Simbolo.DURATA_DEFAULT, Accordatura.STANDARD.pitch( frequenza ), INTENSITA_DEFAULT );
 	}
 
 	/**
@@ -504,7 +638,17 @@ public class Nota extends Simbolo {
 	 * @return la frequenza.
 	 */
 	public float frequenza() {
-		return (float)( FREQUENZA_LA * Math.pow( RAPPORTO_DI_FREQUENZA, pitch() - PITCH_LA ) );
+		return Accordatura.STANDARD.frequenza( pitch() );
+	}
+
+	/**
+	 * Restituisce la frequenza (in Hz) della nota in una accordatura data.
+	 * 
+	 * @param accordatura l'accordatura.
+	 * @return la frequenza.
+	 */
+	public float frequenza( final Accordatura accordatura ) {
+		return accordatura.frequenza( pitch() );
 	}
 
 	/**
@@ -523,7 +667,12 @@ public class Nota extends Simbolo {
 		if ( !( other instanceof Nota ) )
 			return false;
 		final Nota that = (Nota)other;
-		return this.nome == that.nome && this.alterazione == that.alterazione && this.ottava == that.ottava && this.intensita == that.intensita;
+		return this.nome == that.nome && this.alterazione == that.alterazione && this.ottava == that.ottava && this.intensita == that.intensita && this.durata.equals( that.durata );
+	}
+
+	@Override
+	public int hashCode() {
+		return ( ( ( nome.ordinal() * 3 + alterazione.ordinal() ) * 31 + ottava ) * 31 + intensita ) * 31 + durata.hashCode();
 	}
 
 	@Override
@@ -20,6 +20,20 @@ package it.unimi.di.j4im.notazione;
 
 import it.unimi.di.j4im.riproduzione.Strumento;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
 /**
  * Superclasse (astratta) dei simboli della notazione musicale.
  * 
@@ -66,20 +80,69 @@ public abstract class Simbolo {
 	 * Restituice un array di simboli ottenuto a partire dalla loro
 	 * rappresentazione testuale.
 	 *
+	 * <p>
+	 * Il testo è analizzato da un {@link AnalizzatoreSimboli}, a cui si può
+	 * ricorrere direttamente per leggere i simboli uno alla volta (ad esempio
+	 * da un {@link java.io.Reader}).
+	 * </p>
+	 *
 	 * @param str un elenco di simboli separati da <samp>,</samp>.
 	 * @return Il vettore di simboli.
 	 * @throws IllegalArgumentException se la rappresentazione testuale dei
-	 *             simboli rispetta il formato consentito.
+	 *             simboli non rispetta il formato consentito.
 	 */
 	public static Simbolo[] simboli( final String str ) {
-		final String[] strs = str.split( "\\s*,\\s*" );
-		final Simbolo[] simboli = new Simbolo[ strs.length ];
-		for (int i = 0; i < simboli.length; i++)
-			if ( strs[ i ].charAt( 0 ) == '_' )
-				simboli[ i ] = new Pausa( strs[ i ] );
-			else
-				simboli[ i ] = new Nota( strs[ i ] );
-		return simboli;
+		final AnalizzatoreSimboli analizzatore = new AnalizzatoreSimboli( str );
+		final List<Simbolo> simboli = new ArrayList<Simbolo>();
+		for ( Simbolo s = analizzatore.prossimo(); s != null; s = analizzatore.prossimo() )
+			simboli.add( s );
+		return simboli.toArray( new Simbolo[ simboli.size() ] );
+	}
+
+	/**
+	 * Restituisce un flusso di simboli letti (man mano che il flusso viene
+	 * consumato) dalla loro rappresentazione testuale.
+	 *
+	 * <p>
+	 * Il testo non viene mai letto per intero, per cui questo metodo può essere
+	 * usato per elaborare (ad esempio accodando i simboli ad una parte)
+	 * elenchi di simboli di dimensione arbitraria. Gli errori di formato sono
+	 * segnalati, al momento della lettura del simbolo errato, come nel caso del
+	 * metodo {@link #simboli(String)}.
+	 * </p>
+	 *
+	 * @param lettore il {@link Reader} da cui leggere un elenco di simboli
+	 *            separati da <samp>,</samp>.
+	 * @return il flusso di simboli (la cui chiusura comporta la chiusura del
+	 *         {@link Reader}).
+	 * @see AnalizzatoreSimboli
+	 */
+	public static Stream<Simbolo> stream( final Reader lettore ) {
+		final Spliterator<Simbolo> spliterator = Spliterators.spliteratorUnknownSize( new AnalizzatoreSimboli( lettore ), Spliterator.ORDERED | Spliterator.NONNULL );
+		return StreamSupport.stream( spliterator, false ).onClose( new Runnable() {
+			public void run() {
+				try {
+					lettore.close();
+				} catch ( IOException e ) {
+					throw new UncheckedIOException( e );
+				}
+			}
+		} );
+	}
+
+	/**
+	 * Restituisce un flusso di simboli letti (man mano che il flusso viene
+	 * consumato) da un file contenente la loro rappresentazione testuale
+	 * (codificata in UTF-8).
+	 *
+	 * @param path il percorso del file.
+	 * @return il flusso di simboli (che va chiuso per chiudere il file).
+	 * @throws IOException se ci sono errori nell'apertura del file.
+	 * @see #stream(Reader)
+	 */
+	public static Stream<Simbolo> stream( final Path path ) throws IOException {
+		final BufferedReader lettore = Files.newBufferedReader( path, StandardCharsets.UTF_8 );
+		return stream( lettore );
 	}
 
 }
@@ -0,0 +1,402 @@
+package it.unimi.di.j4im.notazione;
+
+/*
+ * Copyright 2014 Massimo Santini
+ *
+ * This file is part of j4im.
+ *
+ * j4im is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * j4im is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * j4im. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.Arrays;
+
+/**
+ * Un vettore (di lunghezza variabile) di simboli, rappresentati in forma
+ * compatta.
+ *
+ * <p>
+ * Ciascun simbolo è rappresentato da un <em>codice</em>, ossia da un singolo
+ * <samp>long</samp> che ne contiene (a partire dai bit meno significativi): il
+ * denominatore (24 bit) ed il numeratore (24 bit) della durata, l'intensità (7
+ * bit), il pitch (7 bit) e un bit che indica se il simbolo è una pausa (nel
+ * qual caso pitch ed intensità sono nulli). I metodi statici di questa classe
+ * consentono di ottenere il codice di un simbolo, o viceversa il simbolo (o le
+ * sue caratteristiche) dato un codice.
+ * </p>
+ *
+ * <p>
+ * In questo modo un brano composto da milioni di simboli occupa un solo vettore
+ * di <samp>long</samp>, invece che milioni di oggetti; i simboli possono essere
+ * accodati ad una parte direttamente in questa forma (senza essere
+ * ricostruiti), oppure convertiti in un vettore di {@link Simbolo} col metodo
+ * {@link #simboli()}.
+ * </p>
+ *
+ * <p>
+ * Si osservi che il codice di una nota ne conserva il pitch, ma non il nome e
+ * l'alterazione: ad esempio, il <samp>RE♭</samp> diventa, una volta
+ * decodificato, un <samp>DO♯</samp>.
+ * </p>
+ */
+public final class SimboloArray {
+
+	/** Il numero di bit usati per il numeratore e il denominatore della durata. */
+	private static final int BIT_DURATA = 24;
+
+	private static final long MASCHERA_DURATA = ( 1L << BIT_DURATA ) - 1;
+	private static final int SPOSTAMENTO_NUMERATORE = BIT_DURATA;
+	private static final int SPOSTAMENTO_INTENSITA = 2 * BIT_DURATA;
+	private static final int SPOSTAMENTO_PITCH = SPOSTAMENTO_INTENSITA + 7;
+	private static final long PAUSA = 1L << ( SPOSTAMENTO_PITCH + 7 );
+
+	/** La capacità iniziale di default. */
+	private static final int CAPACITA_DEFAULT = 16;
+
+	/** I codici dei simboli. */
+	private long[] codici;
+
+	/** Il numero di simboli contenuti. */
+	private int lunghezza;
+
+	/** Costruisce un vettore di simboli vuoto. */
+	public SimboloArray() {
+		this( CAPACITA_DEFAULT );
+	}
+
+	/**
+	 * Costruisce un vettore di simboli vuoto, in grado di contenerne il numero
+	 * dato senza dover essere ingrandito.
+	 *
+	 * @param capacita la capacità iniziale.
+	 * @throws IllegalArgumentException se la capacità è negativa.
+	 */
+	public SimboloArray( final int capacita ) {
+		if ( capacita < 0 ) throw new IllegalArgumentException( "La capacità non può essere negativa." );
+		codici = new long[ capacita ];
+	}
+
+	/**
+	 * Costruisce un vettore che contiene i simboli dati.
+	 *
+	 * @param simboli i simboli.
+	 * @throws IllegalArgumentException se uno dei simboli ha una durata non
+	 *             rappresentabile.
+	 */
+	public SimboloArray( final Simbolo[] simboli ) {
+		this( simboli.length );
+		accoda( simboli );
+	}
+
+	/**
+	 * Costruisce un vettore che usa (senza copiarli) i codici dati.
+	 *
+	 * @param codici i codici.
+	 * @param lunghezza il numero di codici (a partire dal primo) contenuti nel
+	 *            vettore.
+	 */
+	SimboloArray( final long[] codici, final int lunghezza ) {
+		this.codici = codici;
+		this.lunghezza = lunghezza;
+	}
+
+	/* metodi statici di codifica e decodifica */
+
+	/**
+	 * Restituisce il codice di una nota date le sue caratteristiche.
+	 *
+	 * @param pitch il pitch (non viene controllato).
+	 * @param intensita l'intensità (non viene controllata).
+	 * @param durata la durata.
+	 * @return il codice.
+	 * @throws IllegalArgumentException se numeratore, o denominatore, della
+	 *             durata eccedono i 24 bit.
+	 */
+	public static long codificaNota( final int pitch, final int intensita, final Durata durata ) {
+		return (long)pitch << SPOSTAMENTO_PITCH | (long)intensita << SPOSTAMENTO_INTENSITA | codificaDurata( durata );
+	}
+
+	/**
+	 * Restituisce il codice di una pausa data la sua durata.
+	 *
+	 * @param durata la durata.
+	 * @return il codice.
+	 * @throws IllegalArgumentException se numeratore, o denominatore, della
+	 *             durata eccedono i 24 bit.
+	 */
+	public static long codificaPausa( final Durata durata ) {
+		return PAUSA | codificaDurata( durata );
+	}
+
+	/**
+	 * Restituisce il codice di un simbolo.
+	 *
+	 * @param simbolo il simbolo.
+	 * @return il codice.
+	 * @throws IllegalArgumentException se numeratore, o denominatore, della
+	 *             durata eccedono i 24 bit.
+	 */
+	public static long codifica( final Simbolo simbolo ) {
+		if ( simbolo instanceof Pausa ) return codificaPausa( simbolo.durata );
+		final Nota nota = (Nota)simbolo;
+		return codificaNota( nota.pitch(), nota.intensita(), nota.durata );
+	}
+
+	/**
+	 * Restituisce il simbolo corrispondente ad un codice.
+	 *
+	 * <p>
+	 * Le note sono ottenute tramite il metodo
+	 * {@link Nota#di(int, Durata, int)}.
+	 * </p>
+	 *
+	 * @param codice il codice.
+	 * @return il simbolo.
+	 */
+	public static Simbolo decodifica( final long codice ) {
+		final Durata durata = durata( codice );
+		return pausa( codice ) ? new Pausa( durata ) : Nota.di( pitch( codice ), durata, intensita( codice ) );
+	}
+
+	/**
+	 * Indica se un codice corrisponde ad una pausa.
+	 *
+	 * @param codice il codice.
+	 * @return <samp>true</samp> se e solo se il codice è quello di una pausa.
+	 */
+	public static boolean pausa( final long codice ) {
+		return ( codice & PAUSA ) != 0;
+	}
+
+	/**
+	 * Restituisce il pitch corrispondente ad un codice.
+	 *
+	 * @param codice il codice.
+	 * @return il pitch (pari a 0 per le pause).
+	 */
+	public static int pitch( final long codice ) {
+		return (int)( codice >>> SPOSTAMENTO_PITCH ) & 0x7F;
+	}
+
+	/**
+	 * Restituisce l'intensità corrispondente ad un codice.
+	 *
+	 * @param codice il codice.
+	 * @return l'intensità (pari a 0 per le pause).
+	 */
+	public static int intensita( final long codice ) {
+		return (int)( codice >>> SPOSTAMENTO_INTENSITA ) & 0x7F;
+	}
+
+	/**
+	 * Restituisce il numeratore della durata corrispondente ad un codice.
+	 *
+	 * @param codice il codice.
+	 * @return il numeratore.
+	 */
+	public static int numeratore( final long codice ) {
+		return (int)( ( codice >>> SPOSTAMENTO_NUMERATORE ) & MASCHERA_DURATA );
+	}
+
+	/**
+	 * Restituisce il denominatore della durata corrispondente ad un codice.
+	 *
+	 * @param codice il codice.
+	 * @return il denominatore.
+	 */
+	public static int denominatore( final long codice ) {
+		return (int)( codice & MASCHERA_DURATA );
+	}
+
+	/**
+	 * Restituisce la durata corrispondente ad un codice.
+	 *
+	 * @param codice il codice.
+	 * @return la durata.
+	 */
+	public static Durata durata( final long codice ) {
+		return Durata.di( numeratore( codice ), denominatore( codice ) );
+	}
+
+	/**
+	 * Restituisce il codice ottenuto sostituendo il pitch di un codice (che non
+	 * deve essere quello di una pausa).
+	 *
+	 * @param codice il codice.
+	 * @param pitch il pitch (non viene controllato).
+	 * @return il nuovo codice.
+	 */
+	static long conPitch( final long codice, final int pitch ) {
+		return codice & ~( 0x7FL << SPOSTAMENTO_PITCH ) | (long)pitch << SPOSTAMENTO_PITCH;
+	}
+
+	/**
+	 * Restituisce il codice ottenuto sostituendo l'intensità di un codice (che
+	 * non deve essere quello di una pausa).
+	 *
+	 * @param codice il codice.
+	 * @param intensita l'intensità (non viene controllata).
+	 * @return il nuovo codice.
+	 */
+	static long conIntensita( final long codice, final int intensita ) {
+		return codice & ~( 0x7FL << SPOSTAMENTO_INTENSITA ) | (long)intensita << SPOSTAMENTO_INTENSITA;
+	}
+
+	/**
+	 * Restituisce il codice ottenuto sostituendo la durata di un codice.
+	 *
+	 * @param codice il codice.
+	 * @param numeratore il numeratore (non viene controllato).
+	 * @param denominatore il denominatore (non viene controllato).
+	 * @return il nuovo codice.
+	 */
+	static long conDurata( final long codice, final long numeratore, final long denominatore ) {
+		return codice & ~( ( 1L << SPOSTAMENTO_INTENSITA ) - 1 ) | numeratore << SPOSTAMENTO_NUMERATORE | denominatore;
+	}
+
+	/**
+	 * Indica se numeratore e denominatore di una durata sono rappresentabili in
+	 * un codice.
+	 *
+	 * @param numeratore il numeratore.
+	 * @param denominatore il denominatore.
+	 * @return <samp>true</samp> se e solo se la durata è rappresentabile.
+	 */
+	static boolean rappresentabile( final long numeratore, final long denominatore ) {
+		return numeratore <= MASCHERA_DURATA && denominatore <= MASCHERA_DURATA;
+	}
+
+	/**
+	 * Restituisce la parte del codice relativa ad una durata.
+	 *
+	 * @param durata la durata.
+	 * @return il codice della durata.
+	 * @throws IllegalArgumentException se numeratore, o denominatore, eccedono
+	 *             i 24 bit.
+	 */
+	private static long codificaDurata( final Durata durata ) {
+		final int numeratore = durata.numeratore(), denominatore = durata.denominatore();
+		if ( numeratore > MASCHERA_DURATA || denominatore > MASCHERA_DURATA )
+			throw new IllegalArgumentException( "La durata " + durata + " non è rappresentabile in forma compatta." );
+		return (long)numeratore << SPOSTAMENTO_NUMERATORE | denominatore;
+	}
+
+	/* metodi d'istanza */
+
+	/**
+	 * Accoda un codice al vettore.
+	 *
+	 * @param codice il codice (non viene controllato).
+	 */
+	public void accoda( final long codice ) {
+		if ( lunghezza == codici.length ) codici = Arrays.copyOf( codici, Math.max( CAPACITA_DEFAULT, 2 * lunghezza ) );
+		codici[ lunghezza++ ] = codice;
+	}
+
+	/**
+	 * Accoda un simbolo al vettore.
+	 *
+	 * @param simbolo il simbolo.
+	 * @throws IllegalArgumentException se il simbolo ha una durata non
+	 *             rappresentabile.
+	 */
+	public void accoda( final Simbolo simbolo ) {
+		accoda( codifica( simbolo ) );
+	}
+
+	/**
+	 * Accoda (in sequenza) un vettore di simboli.
+	 *
+	 * @param simboli i simboli.
+	 * @throws IllegalArgumentException se uno dei simboli ha una durata non
+	 *             rappresentabile.
+	 */
+	public void accoda( final Simbolo[] simboli ) {
+		if ( lunghezza + simboli.length > codici.length ) codici = Arrays.copyOf( codici, Math.max( lunghezza + simboli.length, 2 * lunghezza ) );
+		for ( Simbolo s : simboli ) codici[ lunghezza++ ] = codifica( s );
+	}
+
+	/**
+	 * Restituisce il numero di simboli contenuti.
+	 *
+	 * @return il numero di simboli.
+	 */
+	public int lunghezza() {
+		return lunghezza;
+	}
+
+	/**
+	 * Restituisce il codice del simbolo di indice dato.
+	 *
+	 * @param indice l'indice.
+	 * @return il codice.
+	 * @throws IndexOutOfBoundsException se l'indice non è compreso tra 0 e la
+	 *             lunghezza (esclusa).
+	 */
+	public long codice( final int indice ) {
+		if ( indice < 0 || indice >= lunghezza ) throw new IndexOutOfBoundsException( "Indice " + indice + " non valido." );
+		return codici[ indice ];
+	}
+
+	/**
+	 * Restituisce il simbolo di indice dato.
+	 *
+	 * @param indice l'indice.
+	 * @return il simbolo.
+	 * @throws IndexOutOfBoundsException se l'indice non è compreso tra 0 e la
+	 *             lunghezza (esclusa).
+	 */
+	public Simbolo simbolo( final int indice ) {
+		return decodifica( codice( indice ) );
+	}
+
+	/**
+	 * Restituisce un vettore contenente i codici dei simboli.
+	 *
+	 * @return i codici.
+	 */
+	public long[] codici() {
+		return Arrays.copyOf( codici, lunghezza );
+	}
+
+	/**
+	 * Restituisce il vettore (non copiato) che contiene i codici; solo i primi
+	 * {@link #lunghezza()} elementi sono significativi.
+	 *
+	 * @return il vettore dei codici.
+	 */
+	long[] vettore() {
+		return codici;
+	}
+
+	/**
+	 * Restituisce un vettore contenente i simboli.
+	 *
+	 * @return i simboli.
+	 */
+	public Simbolo[] simboli() {
+		final Simbolo[] simboli = new Simbolo[ lunghezza ];
+		for ( int i = 0; i < lunghezza; i++ ) simboli[ i ] = decodifica( codici[ i ] );
+		return simboli;
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder sb = new StringBuilder();
+		for ( int i = 0; i < lunghezza; i++ ) {
+			if ( i > 0 ) sb.append( ',' );
+			sb.append( decodifica( codici[ i ] ) );
+		}
+		return sb.toString();
+	}
+
+}
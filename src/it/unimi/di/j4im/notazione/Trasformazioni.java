@@ -0,0 +1,369 @@
+package it.unimi.di.j4im.notazione;
+
+/*
+ * Copyright 2014 Massimo Santini
+ *
+ * This file is part of j4im.
+ *
+ * j4im is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * j4im is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * j4im. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.Arrays;
+import java.util.function.IntFunction;
+import java.util.function.IntToLongFunction;
+
+/**
+ * Trasformazioni di sequenze di simboli.
+ *
+ * <p>
+ * I metodi di questa classe trasformano un intero vettore di simboli (sia
+ * nella forma di un vettore di {@link Simbolo}, che nella forma compatta di un
+ * {@link SimboloArray}) restituendone uno nuovo (il vettore originale non
+ * viene modificato). La validità del risultato (ad esempio, che i pitch
+ * trasposti restino nell'intervallo da 0 a 127) viene verificata una sola volta
+ * per l'intero vettore, prima di costruire il risultato; le pause non sono
+ * modificate dalle trasformazioni che riguardano solo le note.
+ * </p>
+ *
+ * <p>
+ * I vettori di almeno {@link #SOGLIA_PARALLELISMO} simboli vengono trasformati
+ * in parallelo (tramite {@link Arrays#parallelSetAll(Object[], IntFunction)}).
+ * </p>
+ */
+public final class Trasformazioni {
+
+	/** La lunghezza minima dei vettori che vengono trasformati in parallelo. */
+	public static final int SOGLIA_PARALLELISMO = 1 << 13;
+
+	private Trasformazioni() {}
+
+	/* trasformazioni di vettori di simboli */
+
+	/**
+	 * Traspone le note di un vettore di simboli.
+	 *
+	 * @param simboli i simboli.
+	 * @param semitoni il numero di semitoni (eventualmente negativo) di cui
+	 *            trasporre.
+	 * @return i simboli trasposti.
+	 * @throws IllegalArgumentException se una delle note trasposte ha pitch
+	 *             non compreso nell'intervallo da 0 a 127.
+	 */
+	public static Simbolo[] trasponi( final Simbolo[] simboli, final int semitoni ) {
+		final int[] estremi = estremiPitch( simboli );
+		verificaPitch( (long)estremi[ 0 ] + semitoni, (long)estremi[ 1 ] + semitoni );
+		return applica( simboli, new IntFunction<Simbolo>() {
+			public Simbolo apply( final int i ) {
+				if ( !( simboli[ i ] instanceof Nota ) ) return simboli[ i ];
+				final Nota nota = (Nota)simboli[ i ];
+				return Nota.diVerificata( nota.pitch() + semitoni, nota.durata, nota.intensita() );
+			}
+		} );
+	}
+
+	/**
+	 * Inverte le note di un vettore di simboli rispetto ad un asse (ossia
+	 * sostituisce ogni pitch <samp>p</samp> con <samp>2 * asse - p</samp>).
+	 *
+	 * @param simboli i simboli.
+	 * @param asse il pitch dell'asse di inversione.
+	 * @return i simboli invertiti.
+	 * @throws IllegalArgumentException se una delle note invertite ha pitch
+	 *             non compreso nell'intervallo da 0 a 127.
+	 */
+	public static Simbolo[] inverti( final Simbolo[] simboli, final int asse ) {
+		final int[] estremi = estremiPitch( simboli );
+		verificaPitch( 2L * asse - estremi[ 1 ], 2L * asse - estremi[ 0 ] );
+		return applica( simboli, new IntFunction<Simbolo>() {
+			public Simbolo apply( final int i ) {
+				if ( !( simboli[ i ] instanceof Nota ) ) return simboli[ i ];
+				final Nota nota = (Nota)simboli[ i ];
+				return Nota.diVerificata( 2 * asse - nota.pitch(), nota.durata, nota.intensita() );
+			}
+		} );
+	}
+
+	/**
+	 * Moltiplica le durate dei simboli di un vettore per una frazione data.
+	 *
+	 * <p>
+	 * Ad esempio, la frazione <samp>2/1</samp> corrisponde
+	 * all'aumentazione e la frazione <samp>1/2</samp> alla diminuzione.
+	 * </p>
+	 *
+	 * @param simboli i simboli.
+	 * @param numeratore il numeratore della frazione.
+	 * @param denominatore il denominatore della frazione.
+	 * @return i simboli con le durate moltiplicate.
+	 * @throws IllegalArgumentException se numeratore, o denominatore, non sono
+	 *             positivi.
+	 * @throws ArithmeticException se una delle durate risultanti non è
+	 *             rappresentabile.
+	 */
+	public static Simbolo[] scalaDurate( final Simbolo[] simboli, final int numeratore, final int denominatore ) {
+		verificaFrazione( numeratore, denominatore );
+		return applica( simboli, new IntFunction<Simbolo>() {
+			public Simbolo apply( final int i ) {
+				final Simbolo simbolo = simboli[ i ];
+				final Durata durata = Durata.di( (long)simbolo.durata.numeratore() * numeratore, (long)simbolo.durata.denominatore() * denominatore );
+				if ( simbolo instanceof Pausa ) return new Pausa( durata );
+				final Nota nota = (Nota)simbolo;
+				return Nota.diVerificata( nota.pitch(), durata, nota.intensita() );
+			}
+		} );
+	}
+
+	/**
+	 * Imposta l'intensità delle note di un vettore di simboli.
+	 *
+	 * @param simboli i simboli.
+	 * @param intensita l'intensità.
+	 * @return i simboli con l'intensità data.
+	 * @throws IllegalArgumentException se l'intensità non è compresa
+	 *             nell'intervallo da 0 a 127.
+	 */
+	public static Simbolo[] intensita( final Simbolo[] simboli, final int intensita ) {
+		verificaIntensita( intensita );
+		return applica( simboli, new IntFunction<Simbolo>() {
+			public Simbolo apply( final int i ) {
+				if ( !( simboli[ i ] instanceof Nota ) ) return simboli[ i ];
+				final Nota nota = (Nota)simboli[ i ];
+				return Nota.diVerificata( nota.pitch(), nota.durata, intensita );
+			}
+		} );
+	}
+
+	/**
+	 * Restituisce i simboli di un vettore in ordine inverso (ossia, il
+	 * moto retrogrado della sequenza).
+	 *
+	 * @param simboli i simboli.
+	 * @return i simboli in ordine inverso.
+	 */
+	public static Simbolo[] retrogrado( final Simbolo[] simboli ) {
+		final int n = simboli.length;
+		final Simbolo[] risultato = new Simbolo[ n ];
+		for ( int i = 0; i < n; i++ ) risultato[ i ] = simboli[ n - 1 - i ];
+		return risultato;
+	}
+
+	/* trasformazioni di vettori di simboli in forma compatta */
+
+	/**
+	 * Traspone le note di un vettore di simboli in forma compatta.
+	 *
+	 * @param simboli i simboli.
+	 * @param semitoni il numero di semitoni (eventualmente negativo) di cui
+	 *            trasporre.
+	 * @return i simboli trasposti.
+	 * @throws IllegalArgumentException se una delle note trasposte ha pitch
+	 *             non compreso nell'intervallo da 0 a 127.
+	 * @see #trasponi(Simbolo[], int)
+	 */
+	public static SimboloArray trasponi( final SimboloArray simboli, final int semitoni ) {
+		final long[] codici = simboli.codici();
+		final int[] estremi = estremiPitch( codici );
+		verificaPitch( (long)estremi[ 0 ] + semitoni, (long)estremi[ 1 ] + semitoni );
+		return applica( codici, new IntToLongFunction() {
+			public long applyAsLong( final int i ) {
+				final long codice = codici[ i ];
+				return SimboloArray.pausa( codice ) ? codice : SimboloArray.conPitch( codice, SimboloArray.pitch( codice ) + semitoni );
+			}
+		} );
+	}
+
+	/**
+	 * Inverte le note di un vettore di simboli in forma compatta rispetto ad un
+	 * asse.
+	 *
+	 * @param simboli i simboli.
+	 * @param asse il pitch dell'asse di inversione.
+	 * @return i simboli invertiti.
+	 * @throws IllegalArgumentException se una delle note invertite ha pitch
+	 *             non compreso nell'intervallo da 0 a 127.
+	 * @see #inverti(Simbolo[], int)
+	 */
+	public static SimboloArray inverti( final SimboloArray simboli, final int asse ) {
+		final long[] codici = simboli.codici();
+		final int[] estremi = estremiPitch( codici );
+		verificaPitch( 2L * asse - estremi[ 1 ], 2L * asse - estremi[ 0 ] );
+		return applica( codici, new IntToLongFunction() {
+			public long applyAsLong( final int i ) {
+				final long codice = codici[ i ];
+				return SimboloArray.pausa( codice ) ? codice : SimboloArray.conPitch( codice, 2 * asse - SimboloArray.pitch( codice ) );
+			}
+		} );
+	}
+
+	/**
+	 * Moltiplica le durate dei simboli di un vettore in forma compatta per una
+	 * frazione data.
+	 *
+	 * @param simboli i simboli.
+	 * @param numeratore il numeratore della frazione.
+	 * @param denominatore il denominatore della frazione.
+	 * @return i simboli con le durate moltiplicate.
+	 * @throws IllegalArgumentException se numeratore, o denominatore, non sono
+	 *             positivi, o se una delle durate risultanti non è
+	 *             rappresentabile in forma compatta.
+	 * @see #scalaDurate(Simbolo[], int, int)
+	 */
+	public static SimboloArray scalaDurate( final SimboloArray simboli, final int numeratore, final int denominatore ) {
+		verificaFrazione( numeratore, denominatore );
+		final long[] codici = simboli.codici();
+		return applica( codici, new IntToLongFunction() {
+			public long applyAsLong( final int i ) {
+				final long codice = codici[ i ];
+				long n = (long)SimboloArray.numeratore( codice ) * numeratore, d = (long)SimboloArray.denominatore( codice ) * denominatore;
+				final long mcd = Durata.mcd( n, d );
+				n /= mcd;
+				d /= mcd;
+				if ( !SimboloArray.rappresentabile( n, d ) ) throw new IllegalArgumentException( "La durata " + n + "/" + d + " non è rappresentabile in forma compatta." );
+				return SimboloArray.conDurata( codice, n, d );
+			}
+		} );
+	}
+
+	/**
+	 * Imposta l'intensità delle note di un vettore di simboli in forma
+	 * compatta.
+	 *
+	 * @param simboli i simboli.
+	 * @param intensita l'intensità.
+	 * @return i simboli con l'intensità data.
+	 * @throws IllegalArgumentException se l'intensità non è compresa
+	 *             nell'intervallo da 0 a 127.
+	 * @see #intensita(Simbolo[], int)
+	 */
+	public static SimboloArray intensita( final SimboloArray simboli, final int intensita ) {
+		verificaIntensita( intensita );
+		final long[] codici = simboli.codici();
+		return applica( codici, new IntToLongFunction() {
+			public long applyAsLong( final int i ) {
+				final long codice = codici[ i ];
+				return SimboloArray.pausa( codice ) ? codice : SimboloArray.conIntensita( codice, intensita );
+			}
+		} );
+	}
+
+	/**
+	 * Restituisce i simboli di un vettore in forma compatta in ordine inverso.
+	 *
+	 * @param simboli i simboli.
+	 * @return i simboli in ordine inverso.
+	 * @see #retrogrado(Simbolo[])
+	 */
+	public static SimboloArray retrogrado( final SimboloArray simboli ) {
+		final long[] codici = simboli.codici();
+		for ( int i = 0, j = codici.length - 1; i < j; i++, j-- ) {
+			final long t = codici[ i ];
+			codici[ i ] = codici[ j ];
+			codici[ j ] = t;
+		}
+		return new SimboloArray( codici, codici.length );
+	}
+
+	/* metodi di supporto */
+
+	/**
+	 * Costruisce un vettore di simboli applicando una funzione agli indici
+	 * (in parallelo, se il vettore è abbastanza lungo).
+	 *
+	 * @param simboli il vettore originale.
+	 * @param funzione la funzione.
+	 * @return il nuovo vettore.
+	 */
+	private static Simbolo[] applica( final Simbolo[] simboli, final IntFunction<Simbolo> funzione ) {
+		final Simbolo[] risultato = new Simbolo[ simboli.length ];
+		if ( risultato.length >= SOGLIA_PARALLELISMO ) Arrays.parallelSetAll( risultato, funzione );
+		else Arrays.setAll( risultato, funzione );
+		return risultato;
+	}
+
+	/**
+	 * Sostituisce (sul posto) i codici di un vettore applicando una funzione
+	 * agli indici (in parallelo, se il vettore è abbastanza lungo).
+	 *
+	 * @param codici i codici.
+	 * @param funzione la funzione.
+	 * @return un vettore di simboli in forma compatta che usa i codici.
+	 */
+	private static SimboloArray applica( final long[] codici, final IntToLongFunction funzione ) {
+		if ( codici.length >= SOGLIA_PARALLELISMO ) Arrays.parallelSetAll( codici, funzione );
+		else Arrays.setAll( codici, funzione );
+		return new SimboloArray( codici, codici.length );
+	}
+
+	/**
+	 * Restituisce il minimo e il massimo pitch delle note di un vettore di
+	 * simboli.
+	 *
+	 * @param simboli i simboli.
+	 * @return un vettore contenente minimo e massimo (se non ci sono note, il
+	 *         minimo è maggiore del massimo).
+	 */
+	private static int[] estremiPitch( final Simbolo[] simboli ) {
+		int minimo = Integer.MAX_VALUE, massimo = Integer.MIN_VALUE;
+		for ( Simbolo s : simboli )
+			if ( s instanceof Nota ) {
+				final int pitch = ( (Nota)s ).pitch();
+				if ( pitch < minimo ) minimo = pitch;
+				if ( pitch > massimo ) massimo = pitch;
+			}
+		return new int[] { minimo, massimo };
+	}
+
+	/**
+	 * Restituisce il minimo e il massimo pitch delle note di un vettore di
+	 * codici.
+	 *
+	 * @param codici i codici.
+	 * @return un vettore contenente minimo e massimo (se non ci sono note, il
+	 *         minimo è maggiore del massimo).
+	 */
+	private static int[] estremiPitch( final long[] codici ) {
+		int minimo = Integer.MAX_VALUE, massimo = Integer.MIN_VALUE;
+		for ( long codice : codici )
+			if ( !SimboloArray.pausa( codice ) ) {
+				final int pitch = SimboloArray.pitch( codice );
+				if ( pitch < minimo ) minimo = pitch;
+				if ( pitch > massimo ) massimo = pitch;
+			}
+		return new int[] { minimo, massimo };
+	}
+
+	/**
+	 * Verifica che i pitch compresi tra gli estremi dati siano validi.
+	 *
+	 * @param minimo il pitch minimo.
+	 * @param massimo il pitch massimo.
+	 * @throws IllegalArgumentException se almeno uno degli estremi non è
+	 *             compreso nell'intervallo da 0 a 127 (a meno che il minimo
+	 *             non sia maggiore del massimo).
+	 */
+	private static void verificaPitch( final long minimo, final long massimo ) {
+		if ( minimo <= massimo && ( minimo < 0 || massimo > 127 ) )
+			throw new IllegalArgumentException( "Il pitch dev'essere compreso tra 0 e 127 (estremi inclusi), ma la trasformazione produce pitch tra " + minimo + " e " + massimo + "." );
+	}
+
+	private static void verificaIntensita( final int intensita ) {
+		if ( intensita < 0 || intensita > 127 )
+			throw new IllegalArgumentException( "L'intensità dev'essere compresa tra 0 e 127 (estremi inclusi)." );
+	}
+
+	private static void verificaFrazione( final int numeratore, final int denominatore ) {
+		if ( numeratore <= 0 || denominatore <= 0 )
+			throw new IllegalArgumentException( "Numeratore e denominatore devono essere positivi." );
+	}
+
+}
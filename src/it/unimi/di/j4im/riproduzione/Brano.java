@@ -20,11 +20,18 @@ package it.unimi.di.j4im.riproduzione;
  *
  */
 
-import java.io.File;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import javax.sound.midi.InvalidMidiDataException;
-import javax.sound.midi.MidiSystem;
 import javax.sound.midi.Sequence;
 import javax.sound.midi.Track;
 
@@ -42,10 +49,38 @@ import javax.sound.midi.Track;
  * <h3>Dettagli implementativi</h3>
  *
  * <p>
- * Questa classe si basa su una {@link Sequence}, una volta
- * passata al costruttore di {@link Parte}, la parte utilizzerà
- * il metodo {@link Sequence#createTrack()} per ottenere la
- * {@link Track} di cui essa rappresenta una astrazione.
+ * Questa classe si basa su una {@link Sequence}; le parti del brano
+ * conservano i propri eventi in forma compatta e solo quando il brano
+ * viene riprodotto o scritto (ossia quando serve la sequenza, restituita
+ * da {@link #sequenza()}) ciascuna parte utilizza il metodo 
+ * {@link Sequence#createTrack()} per ottenere la {@link Track} di cui 
+ * essa rappresenta una astrazione.
+ * </p>
+ *
+ * <h3>Concorrenza</h3>
+ *
+ * <p>
+ * Le parti di un brano possono essere costruite in parallelo, purché ciascuna
+ * parte sia modificata da un solo thread alla volta: la creazione delle parti
+ * (e la conseguente assegnazione della loro traccia), l'assegnazione dei canali
+ * agli strumenti ({@link Sintetizzatore#assegnaCanale(String)}) e l'aggiornamento
+ * dell'{@link IndiceTemporale indice} sono sincronizzati, mentre ciascuna parte
+ * accoda i propri eventi nei propri vettori, senza condividere alcuna struttura
+ * con le altre. La {@link Sequence} viene costruita (sotto il lock del brano) solo
+ * alla riproduzione, o scrittura, del brano.
+ * </p>
+ *
+ * <p>
+ * Il metodo {@link #componi(ExecutorService, Runnable...)} esegue in parallelo un
+ * insieme di compiti (tipicamente, uno per parte) e ne attende la terminazione;
+ * esso garantisce che tutte le azioni compiute dai compiti <em>avvengano prima</em>
+ * (nel senso della relazione <em>happens-before</em> del modello di memoria di
+ * Java) del suo ritorno, per cui al termine le parti possono essere riprodotte,
+ * scritte, o visitate dal thread che lo ha invocato senza ulteriori sincronizzazioni.
+ * Se le parti sono costruite in thread diversi senza usare tale metodo, spetta a
+ * chi le costruisce garantire tale relazione (ad esempio tramite {@link Thread#join()},
+ * o {@link Future#get()}) prima di usare il brano. Per ottenere un ordine delle tracce
+ * deterministico, le parti vanno create prima di eseguire i compiti che le riempiono.
  * </p>
  *
  * @see Parte
@@ -55,22 +90,70 @@ import javax.sound.midi.Track;
 public class Brano {
 
 	/** La risoluzione usata nella sequenza. */
-	static final double RESOLUTION = 960.0;
+	static final int RESOLUTION = 960;
 
 	/** La sequenza usata per rappresentare il brano. */
 	final Sequence sequence;
 
+	/** L'indice temporale delle note (costruito alla prima invocazione di {@link #indice()}). */
+	volatile IndiceTemporale indice;
+
+	/** Le parti del brano, nell'ordine in cui sono state create (accessibili sotto il lock del brano). */
+	final List<Parte> parti = new ArrayList<Parte>();
+
 	/** Costruisce un nuovo brano. */
 	public Brano() {
+		this( RESOLUTION );
+	}
+
+	/** Costruisce un nuovo brano con una data risoluzione.
+	 *
+	 * @param risoluzione la risoluzione (in ticks per quarto).
+	 */
+	Brano( final int risoluzione ) {
 		try {
-			sequence = new Sequence( Sequence.PPQ, (int)RESOLUTION );
+			sequence = new Sequence( Sequence.PPQ, risoluzione );
 		} catch ( InvalidMidiDataException e ) {
 			throw new RuntimeException( e ); // questo non dovrebbe mai accadere
 		}
 	}
 
-	private Brano( final Sequence sequence ) {
-		this.sequence = sequence;
+	/** Registra una parte del brano.
+	 *
+	 * @param parte la parte.
+	 * @return l'indice della traccia che rappresenterà la parte nella sequenza.
+	 */
+	synchronized int registra( final Parte parte ) {
+		parti.add( parte );
+		return parti.size() - 1;
+	}
+
+	/** Restituisce il numero di parti del brano.
+	 *
+	 * @return il numero di parti.
+	 */
+	public synchronized int numeroParti() {
+		return parti.size();
+	}
+
+	/** Restituisce una parte del brano.
+	 *
+	 * @param i l'indice della parte (nell'ordine in cui le parti sono state create, o 
+	 *          delle tracce del file da cui il brano è stato letto).
+	 * @return la parte.
+	 * @throws IndexOutOfBoundsException se l'indice non è valido.
+	 */
+	public synchronized Parte parte( final int i ) {
+		return parti.get( i );
+	}
+
+	/** Restituisce la sequenza che rappresenta il brano, costruendo le tracce delle parti che ancora non ne hanno una.
+	 *
+	 * @return la sequenza.
+	 */
+	synchronized Sequence sequenza() {
+		for ( Parte parte : parti ) parte.track();
+		return sequence;
 	}
 
 	/** Riproduce (un dato numero di volte) il brano (usando il {@link Sintetizzatore}.
@@ -80,24 +163,165 @@ public class Brano {
 	 *
 	 */
 	public void riproduci( final int ripetizioni ) {
-		Sintetizzatore.riproduci( sequence, ripetizioni  );
+		Sintetizzatore.riproduci( sequenza(), ripetizioni );
 	}
 
 	/** Riproduce il brano (usando il {@link Sintetizzatore}. */
 	public void riproduci() {
-		Sintetizzatore.riproduci( sequence );
+		Sintetizzatore.riproduci( sequenza() );
+	}
+
+	/** Avvia la riproduzione (un dato numero di volte) del brano, senza attenderne la fine.
+	 *
+	 * <p>Dato che il {@link Sintetizzatore} può riprodurre un solo brano alla volta,
+	 * l'eventuale riproduzione in corso viene fermata.</p>
+	 *
+	 * @param ripetizioni il numero di volte per cui la riproduzione va ripetuta
+	 *                    (se il valore non è positivo, il brano viene ripetuto all'infinito).
+	 * @return la riproduzione, che consente di controllarla e di attenderne la fine.
+	 * @see Riproduzione
+	 */
+	public Riproduzione riproduciAsync( final int ripetizioni ) {
+		return Sintetizzatore.riproduciAsync( sequenza(), ripetizioni );
+	}
+
+	/** Avvia la riproduzione del brano, senza attenderne la fine.
+	 *
+	 * @return la riproduzione.
+	 * @see #riproduciAsync(int)
+	 */
+	public Riproduzione riproduciAsync() {
+		return riproduciAsync( 1 );
 	}
 
-	/** Scrive il brano in un file midi.
+	/** Restituisce l'indice temporale delle note del brano.
+	 *
+	 * <p>L'indice viene costruito alla prima invocazione di questo metodo
+	 * (a partire dalle note già presenti nelle parti del brano) e viene
+	 * quindi aggiornato man mano che sono accodati simboli alle parti.</p>
+	 *
+	 * @return l'indice.
+	 */
+	public synchronized IndiceTemporale indice() {
+		if ( indice == null ) indice = new IndiceTemporale( this );
+		return indice;
+	}
+
+	/** Restituisce un cursore sugli eventi di tutte le parti del brano.
+	 *
+	 * @return il cursore.
+	 * @see Cursore
+	 */
+	public Cursore cursore() {
+		return cursore( Long.MIN_VALUE, Long.MAX_VALUE, Cursore.TUTTI_I_CANALI );
+	}
+
+	/** Restituisce un cursore sugli eventi delle parti del brano compresi in un intervallo di tick e relativi ad un canale.
+	 *
+	 * <p>Il cursore visita gli eventi delle parti (in ordine di tick) nell'ordine in cui
+	 * le parti sono state create; l'indice restituito da {@link Cursore#parte()} corrisponde 
+	 * a tale ordine.</p>
+	 *
+	 * @param da il tick (incluso) da cui iniziare la visita.
+	 * @param a il tick (escluso) a cui terminare la visita.
+	 * @param canale il canale (o {@link Cursore#TUTTI_I_CANALI}).
+	 * @return il cursore.
+	 * @throws IllegalArgumentException se <samp>a</samp> è minore di <samp>da</samp>, o se il canale non è valido.
+	 * @see Cursore
+	 */
+	public Cursore cursore( final long da, final long a, final int canale ) {
+		return new Cursore( parti(), da, a, canale );
+	}
+
+	/** Scrive il brano in un file midi (di tipo 1).
 	 *
 	 * @param path il percorso del file.
 	 * @throws IOException se ci sono errori di I/O.
 	 */
 	public void scrivi( final String path ) throws IOException {
-		MidiSystem.write( sequence, 1, new File( path ) );
+		try ( FileChannel canale = FileChannel.open( Paths.get( path ), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE ) ) {
+			scrivi( canale, 1 );
+		}
+	}
+
+	/** Scrive il brano, nel formato di un file midi, su di un canale.
+	 *
+	 * <p>Gli eventi sono letti direttamente dalle parti (senza costruire la sequenza)
+	 * da uno {@link ScrittoreMidi}; nel tipo 1 ciascuna parte corrisponde ad una traccia,
+	 * nel tipo 0 gli eventi di tutte le parti sono fusi in una sola traccia. Per scrivere
+	 * su di un {@link java.io.OutputStream} è sufficiente adattarlo con
+	 * {@link java.nio.channels.Channels#newChannel(java.io.OutputStream)}.</p>
+	 *
+	 * @param canale il canale (che non viene chiuso).
+	 * @param tipo il tipo di file midi (0 o 1).
+	 * @throws IOException se ci sono errori di I/O.
+	 * @throws IllegalArgumentException se il tipo non è 0 o 1.
+	 */
+	public void scrivi( final WritableByteChannel canale, final int tipo ) throws IOException {
+		ScrittoreMidi.scrivi( parti(), sequence.getResolution(), tipo, canale );
 	}
 
-	/** Restituisce un brano ottenuto leggendo la sequenza da un file midi.
+	/** Renderizza il brano in un file audio (WAV), senza riprodurlo.
+	 *
+	 * <p>Se il sintetizzatore di sistema non è disponibile, il brano viene sintetizzato
+	 * col motore a oscillatori (si veda {@link Renderizzatore#Renderizzatore(int, int)}).</p>
+	 *
+	 * @param path il percorso del file.
+	 * @throws IOException se ci sono errori di I/O.
+	 * @see Renderizzatore
+	 */
+	public void renderizza( final String path ) throws IOException {
+		new Renderizzatore().renderizza( this, path );
+	}
+
+	/** Restituisce le parti del brano.
+	 *
+	 * @return un vettore (nuovo) che contiene le parti, nell'ordine in cui sono state create.
+	 */
+	synchronized Parte[] parti() {
+		return parti.toArray( new Parte[ parti.size() ] );
+	}
+
+	/** Esegue in parallelo dei compiti (tipicamente, la costruzione delle parti del brano) e ne attende la terminazione.
+	 *
+	 * <p>Tutte le azioni compiute dai compiti avvengono prima (nel senso della relazione 
+	 * <em>happens-before</em>) del ritorno di questo metodo. Ciascuna parte deve essere
+	 * modificata da un solo compito; l'esecutore non viene arrestato.</p>
+	 *
+	 * <p>Se uno o più compiti sollevano un'eccezione, il metodo attende comunque la 
+	 * terminazione di tutti e quindi solleva l'eccezione del primo di essi (nell'ordine
+	 * in cui sono dati), avvolta in una {@link RuntimeException} se non è già tale.</p>
+	 *
+	 * @param esecutore l'esecutore (ad esempio, un {@link java.util.concurrent.ForkJoinPool}, o
+	 *        un esecutore che usa un thread per ciascun compito).
+	 * @param compiti i compiti.
+	 * @throws InterruptedException se il thread viene interrotto durante l'attesa (nel qual caso
+	 *         i compiti non ancora terminati vengono cancellati).
+	 */
+	public void componi( final ExecutorService esecutore, final Runnable... compiti ) throws InterruptedException {
+		final List<Future<?>> risultati = new ArrayList<Future<?>>( compiti.length );
+		try {
+			for ( Runnable compito : compiti ) risultati.add( esecutore.submit( compito ) );
+			Throwable errore = null;
+			for ( Future<?> risultato : risultati )
+				try {
+					risultato.get();
+				} catch ( ExecutionException e ) {
+					if ( errore == null ) errore = e.getCause();
+				}
+			if ( errore instanceof RuntimeException ) throw (RuntimeException)errore;
+			if ( errore instanceof Error ) throw (Error)errore;
+			if ( errore != null ) throw new RuntimeException( errore );
+		} catch ( InterruptedException e ) {
+			for ( Future<?> risultato : risultati ) risultato.cancel( true );
+			throw e;
+		}
+	}
+
+	/** Restituisce un brano ottenuto leggendo un file midi.
+	 *
+	 * <p>Il brano contiene una parte per ciascuna traccia del file, i cui eventi sono
+	 * decodificati solo al primo accesso alla parte (si veda {@link LettoreMidi}).</p>
 	 *
 	 * @param path il percorso del file.
 	 * @return il brano letto dal file.
@@ -105,7 +329,7 @@ public class Brano {
 	 * @throws InvalidMidiDataException se il file non è nel formato corretto.
 	 */
 	public static Brano leggi( final String path ) throws IOException, InvalidMidiDataException {
-		return new Brano( MidiSystem.getSequence( new File( path ) ) );
+		return LettoreMidi.apri( Paths.get( path ) ).brano();
 	}
 
 }
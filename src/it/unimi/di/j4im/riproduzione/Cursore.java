@@ -0,0 +1,237 @@
+package it.unimi.di.j4im.riproduzione;
+
+/*
+ * Copyright 2014 Massimo Santini
+ *
+ * This file is part of j4im.
+ *
+ * j4im is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j4im is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j4im.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+import java.util.ConcurrentModificationException;
+import java.util.NoSuchElementException;
+
+import javax.sound.midi.MetaMessage;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.ShortMessage;
+
+/** Un cursore sugli eventi di una o più {@link Parte parti}.
+ *
+ * <p>
+ * Un cursore consente di visitare (in ordine di tick) gli eventi delle parti
+ * senza copiarli e senza costruire alcun oggetto per ciascun evento: dopo
+ * ogni invocazione di {@link #avanza()} che restituisce <samp>true</samp>, i
+ * metodi {@link #tick()}, {@link #comando()}, {@link #canale()},
+ * {@link #dato1()} e {@link #dato2()} restituiscono le caratteristiche
+ * dell'evento corrente. Ad esempio
+ * </p>
+ * <pre>
+ * for ( Cursore c = parte.cursore( 0, 960 ); c.avanza(); )
+ *     if ( c.comando() == ShortMessage.NOTE_ON ) ...
+ * </pre>
+ *
+ * <p>
+ * I cursori si ottengono dai metodi {@link Parte#cursore(long, long)} e
+ * {@link Brano#cursore(long, long, int)}; possono limitarsi agli eventi di un
+ * intervallo di tick (determinato, per ciascuna parte, tramite una ricerca
+ * binaria) e di un dato canale. Nel caso di più parti, a parità di tick gli
+ * eventi sono restituiti nell'ordine delle parti.
+ * </p>
+ *
+ * <p>
+ * Le parti lette da un file possono contenere anche meta eventi e messaggi di
+ * sistema esclusivo: per essi {@link #comando()} restituisce lo status del
+ * messaggio (ad esempio {@link MetaMessage#META}) e {@link #canale()} restituisce
+ * {@link #TUTTI_I_CANALI}; tali eventi sono visitati solo dai cursori che non
+ * sono limitati ad un canale.
+ * </p>
+ *
+ * <p>
+ * Le parti non vanno modificate mentre sono visitate da un cursore: in tal
+ * caso il cursore solleva una {@link ConcurrentModificationException}.
+ * </p>
+ */
+public final class Cursore {
+
+	/** Il valore del filtro sul canale che consente di visitare gli eventi di tutti i canali. */
+	public static final int TUTTI_I_CANALI = -1;
+
+	/** Le parti. */
+	private final Parte[] parti;
+	/** Per ciascuna parte, l'indice del prossimo evento da visitare. */
+	private final int[] prossimi;
+	/** Per ciascuna parte, l'indice del primo evento da non visitare. */
+	private final int[] limiti;
+	/** Per ciascuna parte, il numero di eventi alla costruzione del cursore. */
+	private final int[] eventi;
+	/** Per ciascuna parte, il canale da aggiungere ai messaggi (si veda {@link Parte#canaleEventi()}). */
+	private final int[] canali;
+	/** Il canale degli eventi da visitare (o {@link #TUTTI_I_CANALI}). */
+	private final int filtro;
+
+	/** L'indice della parte dell'evento corrente (o -1, se non c'è un evento corrente). */
+	private int parte = -1;
+	private long tick;
+	private int messaggio;
+
+	/** Costruisce un cursore.
+	 *
+	 * @param parti le parti.
+	 * @param da il tick (incluso) da cui iniziare la visita.
+	 * @param a il tick (escluso) a cui terminare la visita.
+	 * @param canale il canale degli eventi da visitare (o {@link #TUTTI_I_CANALI}).
+	 * @throws IllegalArgumentException se l'intervallo, o il canale, non sono validi.
+	 */
+	Cursore( final Parte[] parti, final long da, final long a, final int canale ) {
+		if ( a < da ) throw new IllegalArgumentException( "L'intervallo [" + da + ", " + a + ") non è valido." );
+		if ( canale < TUTTI_I_CANALI || canale > 15 ) throw new IllegalArgumentException( "Il canale dev'essere compreso tra 0 e 15 (estremi inclusi)." );
+		this.parti = parti;
+		this.filtro = canale;
+		prossimi = new int[ parti.length ];
+		limiti = new int[ parti.length ];
+		eventi = new int[ parti.length ];
+		canali = new int[ parti.length ];
+		for ( int p = 0; p < parti.length; p++ ) {
+			eventi[ p ] = parti[ p ].numeroEventi();
+			canali[ p ] = parti[ p ].canaleEventi();
+			prossimi[ p ] = parti[ p ].primoEvento( da );
+			limiti[ p ] = parti[ p ].primoEvento( a );
+		}
+	}
+
+	/** Avanza al prossimo evento.
+	 *
+	 * @return <samp>true</samp> se c'è un prossimo evento (che diventa quello corrente), <samp>false</samp> se la visita è terminata.
+	 * @throws ConcurrentModificationException se una delle parti è stata modificata dopo la costruzione del cursore.
+	 */
+	public boolean avanza() {
+		for (;;) {
+			int scelta = -1;
+			long minimo = Long.MAX_VALUE;
+			for ( int p = 0; p < parti.length; p++ ) {
+				if ( parti[ p ].numeroEventi() != eventi[ p ] ) throw new ConcurrentModificationException();
+				if ( prossimi[ p ] < limiti[ p ] ) {
+					final long t = parti[ p ].tick( prossimi[ p ] );
+					if ( scelta == -1 || t < minimo ) {
+						scelta = p;
+						minimo = t;
+					}
+				}
+			}
+			if ( scelta == -1 ) {
+				parte = -1;
+				return false;
+			}
+			int m = parti[ scelta ].messaggio( prossimi[ scelta ]++ );
+			if ( m >= 0 ) m |= canali[ scelta ];
+			if ( filtro == TUTTI_I_CANALI || m >= 0 && ( m & 0x0F ) == filtro ) {
+				parte = scelta;
+				tick = minimo;
+				messaggio = m;
+				return true;
+			}
+		}
+	}
+
+	private void verificaCorrente() {
+		if ( parte == -1 ) throw new NoSuchElementException( "Non c'è un evento corrente." );
+	}
+
+	/** Restituisce l'indice (tra le parti visitate dal cursore) della parte cui appartiene l'evento corrente.
+	 *
+	 * @return l'indice della parte.
+	 * @throws NoSuchElementException se non c'è un evento corrente.
+	 */
+	public int parte() {
+		verificaCorrente();
+		return parte;
+	}
+
+	/** Restituisce il tick dell'evento corrente.
+	 *
+	 * @return il tick.
+	 * @throws NoSuchElementException se non c'è un evento corrente.
+	 */
+	public long tick() {
+		verificaCorrente();
+		return tick;
+	}
+
+	/** Restituisce il comando dell'evento corrente (ad esempio {@link ShortMessage#NOTE_ON}).
+	 *
+	 * @return il comando.
+	 * @throws NoSuchElementException se non c'è un evento corrente.
+	 */
+	public int comando() {
+		verificaCorrente();
+		return messaggio < 0 ? esteso().getStatus() : messaggio & 0xF0;
+	}
+
+	/** Restituisce il canale dell'evento corrente.
+	 *
+	 * @return il canale.
+	 * @throws NoSuchElementException se non c'è un evento corrente.
+	 */
+	public int canale() {
+		verificaCorrente();
+		return messaggio < 0 ? TUTTI_I_CANALI : messaggio & 0x0F;
+	}
+
+	/** Restituisce il primo byte di dati dell'evento corrente (ad esempio, il pitch di un {@link ShortMessage#NOTE_ON}).
+	 *
+	 * <p>Per i meta eventi restituisce il tipo, per i messaggi di sistema esclusivo 0.</p>
+	 *
+	 * @return il primo byte di dati.
+	 * @throws NoSuchElementException se non c'è un evento corrente.
+	 */
+	public int dato1() {
+		verificaCorrente();
+		if ( messaggio < 0 ) return esteso() instanceof MetaMessage ? ( (MetaMessage)esteso() ).getType() : 0;
+		return messaggio >>> 8 & 0xFF;
+	}
+
+	/** Restituisce il secondo byte di dati dell'evento corrente (ad esempio, l'intensità di un {@link ShortMessage#NOTE_ON}).
+	 *
+	 * <p>Per i meta eventi e i messaggi di sistema esclusivo restituisce 0.</p>
+	 *
+	 * @return il secondo byte di dati.
+	 * @throws NoSuchElementException se non c'è un evento corrente.
+	 */
+	public int dato2() {
+		verificaCorrente();
+		return messaggio < 0 ? 0 : messaggio >>> 16 & 0xFF;
+	}
+
+	/** Restituisce il messaggio codificato dell'evento corrente (come descritto in {@link Parte#messaggio(int)}).
+	 *
+	 * @return il messaggio codificato.
+	 * @throws NoSuchElementException se non c'è un evento corrente.
+	 */
+	int codice() {
+		verificaCorrente();
+		return messaggio;
+	}
+
+	/** Restituisce il messaggio esteso dell'evento corrente.
+	 *
+	 * @return il messaggio esteso.
+	 * @throws NoSuchElementException se non c'è un evento corrente.
+	 */
+	MidiMessage esteso() {
+		verificaCorrente();
+		return parti[ parte ].esteso( messaggio );
+	}
+
+}
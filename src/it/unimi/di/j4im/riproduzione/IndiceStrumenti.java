@@ -0,0 +1,169 @@
+package it.unimi.di.j4im.riproduzione;
+
+/*
+ * Copyright 2014 Massimo Santini
+ *
+ * This file is part of j4im.
+ *
+ * j4im is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j4im is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j4im.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.sound.midi.Instrument;
+import javax.sound.midi.Patch;
+
+/** Un indice degli strumenti di un sintetizzatore, per nome.
+ *
+ * <p>
+ * Uno strumento viene cercato dapprima tra quelli il cui nome coincide con quello
+ * dato e quindi (come in passato) tra quelli la cui rappresentazione testuale lo
+ * contiene, nell'ordine in cui sono elencati dal sintetizzatore (per cui, ad esempio,
+ * un prefisso del nome individua il primo strumento il cui nome inizia con esso).
+ * La prima ricerca avviene in una tabella costruita una volta per tutte, mentre
+ * l'esito della seconda viene ricordato, per cui ogni ricerca successiva alla prima
+ * dello stesso nome richiede tempo costante.
+ * </p>
+ *
+ * <p>
+ * L'indice {@link #GM} contiene i nomi dei programmi dello standard General MIDI, e
+ * consente di individuare uno strumento senza accendere il sintetizzatore; i nomi
+ * sono troncati a {@value #LUNGHEZZA_NOME} caratteri, come nel banco di suoni del
+ * sintetizzatore di sistema (ad esempio, "Acoustic Guitar (nyl"), per cui le ricerche
+ * danno gli stessi esiti col sintetizzatore acceso o spento.
+ * </p>
+ *
+ * <p>Un indice può essere usato da più thread.</p>
+ */
+final class IndiceStrumenti {
+
+	/** I nomi dei 128 programmi dello standard General MIDI (nell'ordine dei numeri di programma). */
+	private static final String[] GENERAL_MIDI = {
+		"Acoustic Grand Piano", "Bright Acoustic Piano", "Electric Grand Piano", "Honky-tonk Piano", "Electric Piano 1", "Electric Piano 2", "Harpsichord", "Clavi",
+		"Celesta", "Glockenspiel", "Music Box", "Vibraphone", "Marimba", "Xylophone", "Tubular Bells", "Dulcimer",
+		"Drawbar Organ", "Percussive Organ", "Rock Organ", "Church Organ", "Reed Organ", "Accordion", "Harmonica", "Tango Accordion",
+		"Acoustic Guitar (nylon)", "Acoustic Guitar (steel)", "Electric Guitar (jazz)", "Electric Guitar (clean)", "Electric Guitar (muted)", "Overdriven Guitar", "Distortion Guitar", "Guitar harmonics",
+		"Acoustic Bass", "Electric Bass (finger)", "Electric Bass (pick)", "Fretless Bass", "Slap Bass 1", "Slap Bass 2", "Synth Bass 1", "Synth Bass 2",
+		"Violin", "Viola", "Cello", "Contrabass", "Tremolo Strings", "Pizzicato Strings", "Orchestral Harp", "Timpani",
+		"String Ensemble 1", "String Ensemble 2", "SynthStrings 1", "SynthStrings 2", "Choir Aahs", "Voice Oohs", "Synth Voice", "Orchestra Hit",
+		"Trumpet", "Trombone", "Tuba", "Muted Trumpet", "French Horn", "Brass Section", "SynthBrass 1", "SynthBrass 2",
+		"Soprano Sax", "Alto Sax", "Tenor Sax", "Baritone Sax", "Oboe", "English Horn", "Bassoon", "Clarinet",
+		"Piccolo", "Flute", "Recorder", "Pan Flute", "Blown Bottle", "Shakuhachi", "Whistle", "Ocarina",
+		"Lead 1 (square)", "Lead 2 (sawtooth)", "Lead 3 (calliope)", "Lead 4 (chiff)", "Lead 5 (charang)", "Lead 6 (voice)", "Lead 7 (fifths)", "Lead 8 (bass + lead)",
+		"Pad 1 (new age)", "Pad 2 (warm)", "Pad 3 (polysynth)", "Pad 4 (choir)", "Pad 5 (bowed)", "Pad 6 (metallic)", "Pad 7 (halo)", "Pad 8 (sweep)",
+		"FX 1 (rain)", "FX 2 (soundtrack)", "FX 3 (crystal)", "FX 4 (atmosphere)", "FX 5 (brightness)", "FX 6 (goblins)", "FX 7 (echoes)", "FX 8 (sci-fi)",
+		"Sitar", "Banjo", "Shamisen", "Koto", "Kalimba", "Bag pipe", "Fiddle", "Shanai",
+		"Tinkle Bell", "Agogo", "Steel Drums", "Woodblock", "Taiko Drum", "Melodic Tom", "Synth Drum", "Reverse Cymbal",
+		"Guitar Fret Noise", "Breath Noise", "Seashore", "Bird Tweet", "Telephone Ring", "Helicopter", "Applause", "Gunshot"
+	};
+
+	/** La lunghezza massima dei nomi dei programmi nel banco di suoni del sintetizzatore di sistema. */
+	static final int LUNGHEZZA_NOME = 20;
+
+	/** L'indice dei programmi dello standard General MIDI. */
+	static final IndiceStrumenti GM = new IndiceStrumenti( GENERAL_MIDI );
+
+	/** Le rappresentazioni testuali degli strumenti. */
+	private final String[] descrizioni;
+
+	/** I patch degli strumenti. */
+	private final Patch[] patch;
+
+	/** Gli strumenti, indicizzati per nome (il primo, a parità di nome). */
+	private final Map<String,Integer> perNome = new HashMap<String,Integer>();
+
+	/** Gli esiti delle ricerche per parte del nome. */
+	private final ConcurrentHashMap<String,Integer> ricerche = new ConcurrentHashMap<String,Integer>();
+
+	/** Costruisce l'indice degli strumenti dati.
+	 *
+	 * @param strumenti gli strumenti.
+	 */
+	IndiceStrumenti( final Instrument[] strumenti ) {
+		descrizioni = new String[ strumenti.length ];
+		patch = new Patch[ strumenti.length ];
+		for ( int i = 0; i < strumenti.length; i++ ) {
+			descrizioni[ i ] = strumenti[ i ].toString();
+			patch[ i ] = strumenti[ i ].getPatch();
+			final String nome = strumenti[ i ].getName().trim();
+			if ( !perNome.containsKey( nome ) ) perNome.put( nome, Integer.valueOf( i ) );
+		}
+	}
+
+	/** Costruisce l'indice dei programmi (del banco 0) con i nomi dati.
+	 *
+	 * <p>I nomi sono troncati a {@value #LUNGHEZZA_NOME} caratteri e le rappresentazioni 
+	 * testuali degli strumenti hanno la stessa forma di quelle del sintetizzatore di sistema,
+	 * in modo che le ricerche diano gli stessi esiti.</p>
+	 *
+	 * @param nomi i nomi dei programmi (nell'ordine dei numeri di programma).
+	 */
+	private IndiceStrumenti( final String[] nomi ) {
+		descrizioni = new String[ nomi.length ];
+		patch = new Patch[ nomi.length ];
+		for ( int i = 0; i < nomi.length; i++ ) {
+			final String nome = nomi[ i ].length() > LUNGHEZZA_NOME ? nomi[ i ].substring( 0, LUNGHEZZA_NOME ) : nomi[ i ];
+			descrizioni[ i ] = "Instrument: " + nome + " bank #0 preset #" + i;
+			patch[ i ] = new Patch( 0, i );
+			if ( !perNome.containsKey( nome ) ) perNome.put( nome, Integer.valueOf( i ) );
+		}
+	}
+
+	/** Cerca uno strumento.
+	 *
+	 * @param nome il nome (o parte della rappresentazione testuale) dello strumento.
+	 * @return l'indice dello strumento.
+	 * @throws IllegalArgumentException se nessuno strumento corrisponde al nome.
+	 */
+	int cerca( final String nome ) {
+		Integer i = perNome.get( nome );
+		if ( i == null ) i = ricerche.get( nome );
+		if ( i != null ) return i.intValue();
+		for ( int j = 0; j < descrizioni.length; j++ )
+			if ( descrizioni[ j ].contains( nome ) ) {
+				ricerche.put( nome, Integer.valueOf( j ) );
+				return j;
+			}
+		throw new IllegalArgumentException( "Il sintetizzatore non è in grado di riprodurre lo strumento " + nome );
+	}
+
+	/** Restituisce il patch di uno strumento.
+	 *
+	 * @param i l'indice dello strumento.
+	 * @return il patch.
+	 */
+	Patch patch( final int i ) {
+		return patch[ i ];
+	}
+
+	/** Restituisce il numero di strumenti.
+	 *
+	 * @return il numero di strumenti.
+	 */
+	int numeroStrumenti() {
+		return descrizioni.length;
+	}
+
+	/** Restituisce le rappresentazioni testuali degli strumenti.
+	 *
+	 * @return una copia dell'elenco delle rappresentazioni testuali.
+	 */
+	String[] descrizioni() {
+		return descrizioni.clone();
+	}
+
+}
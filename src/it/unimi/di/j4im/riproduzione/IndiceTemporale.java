@@ -0,0 +1,246 @@
+package it.unimi.di.j4im.riproduzione;
+
+/*
+ * Copyright 2014 Massimo Santini
+ *
+ * This file is part of j4im.
+ *
+ * j4im is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j4im is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j4im.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.sound.midi.ShortMessage;
+
+/** Un indice delle note di un {@link Brano brano} rispetto al tempo.
+ *
+ * <p>
+ * L'indice consente di determinare le note che suonano in un certo tick
+ * ({@link #suonanoA(long)}), o in un certo intervallo di ticks
+ * ({@link #suonanoTra(long, long)}), in tempo proporzionale al logaritmo
+ * del numero di note del brano, più il numero di note restituite;
+ * l'indice di un brano si ottiene col metodo {@link Brano#indice()} e
+ * viene mantenuto aggiornato man mano che vengono accodati simboli alle
+ * sue parti.
+ * </p>
+ *
+ * <p>
+ * I metodi di questa classe sono sincronizzati, per cui l'indice può essere
+ * interrogato, ed aggiornato, da parti che vengono costruite in thread diversi.
+ * </p>
+ *
+ * <h3>Dettagli implementativi</h3>
+ *
+ * <p>
+ * Per ciascuna traccia l'indice conserva le note ordinate per tick d'inizio
+ * (ordine in cui vengono naturalmente accodate ad una parte) ed un albero
+ * (di segmenti) che contiene, per ogni intervallo di note, il massimo
+ * tick di fine. Le note che iniziano prima di un tick dato formano un
+ * prefisso (determinato tramite ricerca binaria) e tra di esse quelle
+ * che terminano dopo un tick dato si trovano visitando solo i sottoalberi
+ * il cui massimo supera tale tick.
+ * </p>
+ *
+ * @see Intervallo
+ */
+public final class IndiceTemporale {
+
+	/** Le note di una traccia. */
+	private static final class Traccia {
+
+		/** Il numero di note. */
+		int n;
+		/** I tick d'inizio (non decrescenti). */
+		long[] inizi = new long[ 16 ];
+		/** I tick di fine. */
+		long[] fini = new long[ 16 ];
+		/** Canale, pitch e intensità (rispettivamente nei bit 16-19, 8-14 e 0-6). */
+		int[] dati = new int[ 16 ];
+		/** L'albero dei massimi tick di fine: le foglie sono in posizione <samp>inizi.length + i</samp>. */
+		long[] massimi = vuoto( 32 );
+
+		private static long[] vuoto( final int n ) {
+			final long[] a = new long[ n ];
+			Arrays.fill( a, Long.MIN_VALUE );
+			return a;
+		}
+
+		void aggiungi( final int canale, final int pitch, final int intensita, final long inizio, final long fine ) {
+			if ( n > 0 && inizio < inizi[ n - 1 ] ) throw new IllegalArgumentException( "Le note devono essere aggiunte in ordine di inizio." );
+			if ( n == inizi.length ) {
+				final int capacita = 2 * n;
+				inizi = Arrays.copyOf( inizi, capacita );
+				fini = Arrays.copyOf( fini, capacita );
+				dati = Arrays.copyOf( dati, capacita );
+				massimi = vuoto( 2 * capacita );
+				System.arraycopy( fini, 0, massimi, capacita, n );
+				for ( int i = capacita - 1; i > 0; i-- ) massimi[ i ] = Math.max( massimi[ 2 * i ], massimi[ 2 * i + 1 ] );
+			}
+			inizi[ n ] = inizio;
+			fini[ n ] = fine;
+			dati[ n ] = canale << 16 | pitch << 8 | intensita;
+			for ( int i = inizi.length + n; i > 0 && massimi[ i ] < fine; i >>>= 1 ) massimi[ i ] = fine;
+			n++;
+		}
+
+		/** Aggiunge al risultato le note che iniziano prima di un tick e terminano dopo un altro.
+		 *
+		 * @param traccia l'indice della traccia.
+		 * @param prima le note devono iniziare prima di questo tick (escluso).
+		 * @param dopo le note devono terminare dopo questo tick (escluso).
+		 * @param risultato la lista cui aggiungere le note.
+		 */
+		void raccogli( final int traccia, final long prima, final long dopo, final List<Intervallo> risultato ) {
+			// il numero di note che iniziano prima di prima
+			int basso = 0, alto = n;
+			while ( basso < alto ) {
+				final int medio = ( basso + alto ) >>> 1;
+				if ( inizi[ medio ] < prima ) basso = medio + 1;
+				else alto = medio;
+			}
+			if ( basso > 0 ) raccogli( traccia, 1, 0, inizi.length, basso, dopo, risultato );
+		}
+
+		private void raccogli( final int traccia, final int nodo, final int da, final int a, final int limite, final long dopo, final List<Intervallo> risultato ) {
+			if ( da >= limite || massimi[ nodo ] <= dopo ) return;
+			if ( a - da == 1 ) {
+				final int d = dati[ da ];
+				risultato.add( new Intervallo( traccia, d >>> 16, d >>> 8 & 0x7F, d & 0x7F, inizi[ da ], fini[ da ] ) );
+				return;
+			}
+			final int medio = ( da + a ) >>> 1;
+			raccogli( traccia, 2 * nodo, da, medio, limite, dopo, risultato );
+			raccogli( traccia, 2 * nodo + 1, medio, a, limite, dopo, risultato );
+		}
+
+	}
+
+	/** Le tracce, nell'ordine della sequenza del brano. */
+	private final List<Traccia> tracce = new ArrayList<Traccia>();
+
+	/** Costruisce l'indice delle note contenute in un brano.
+	 *
+	 * @param brano il brano.
+	 */
+	IndiceTemporale( final Brano brano ) {
+		final Parte[] parti = brano.parti();
+		for ( int t = 0; t < parti.length; t++ ) {
+			final Parte parte = parti[ t ];
+			final int n = parte.numeroEventi(), c = parte.canaleEventi();
+			final long[] ticks = new long[ n ];
+			final int[] messaggi = new int[ n ];
+			for ( int i = 0; i < n; i++ ) {
+				ticks[ i ] = parte.tick( i );
+				final int m = parte.messaggio( i );
+				messaggi[ i ] = m < 0 ? m : m | c;
+			}
+			indicizza( t, ticks, messaggi, n );
+		}
+	}
+
+	/** Aggiunge all'indice le note di una traccia, accoppiando gli eventi di inizio e fine.
+	 *
+	 * @param t l'indice della traccia.
+	 * @param ticks i tick degli eventi (in ordine non decrescente).
+	 * @param messaggi i messaggi degli eventi (codificati come in {@link Parte}).
+	 * @param n il numero di eventi.
+	 */
+	private void indicizza( final int t, final long[] ticks, final int[] messaggi, final int n ) {
+		final Map<Integer,ArrayDeque<long[]>> aperte = new HashMap<Integer,ArrayDeque<long[]>>();
+		final List<long[]> note = new ArrayList<long[]>();
+		for ( int i = 0; i < n; i++ ) {
+			final int m = messaggi[ i ], comando = m & 0xF0, intensita = m >>> 16 & 0x7F;
+			if ( m < 0 || comando != ShortMessage.NOTE_ON && comando != ShortMessage.NOTE_OFF ) continue;
+			// canale e pitch
+			final Integer chiave = Integer.valueOf( ( m & 0x0F ) << 8 | m >>> 8 & 0x7F );
+			if ( comando == ShortMessage.NOTE_ON && intensita > 0 ) {
+				ArrayDeque<long[]> coda = aperte.get( chiave );
+				if ( coda == null ) aperte.put( chiave, coda = new ArrayDeque<long[]>() );
+				coda.add( new long[] { ticks[ i ], 0, chiave.intValue() << 8 | intensita } );
+			} else {
+				final ArrayDeque<long[]> coda = aperte.get( chiave );
+				if ( coda == null || coda.isEmpty() ) continue;
+				final long[] nota = coda.remove();
+				nota[ 1 ] = ticks[ i ];
+				note.add( nota );
+			}
+		}
+		note.sort( new Comparator<long[]>() {
+			public int compare( final long[] p, final long[] q ) {
+				return Long.compare( p[ 0 ], q[ 0 ] );
+			}
+		} );
+		for ( long[] nota : note ) {
+			final int d = (int)nota[ 2 ];
+			aggiungi( t, d >>> 16, d >>> 8 & 0x7F, d & 0x7F, nota[ 0 ], nota[ 1 ] );
+		}
+	}
+
+	/** Aggiunge una nota all'indice.
+	 *
+	 * <p>Le note di ciascuna traccia devono essere aggiunte in ordine (non decrescente) di inizio.</p>
+	 *
+	 * @param traccia l'indice della traccia.
+	 * @param canale il canale.
+	 * @param pitch il pitch.
+	 * @param intensita l'intensità.
+	 * @param inizio il tick d'inizio.
+	 * @param fine il tick di fine.
+	 */
+	synchronized void aggiungi( final int traccia, final int canale, final int pitch, final int intensita, final long inizio, final long fine ) {
+		while ( tracce.size() <= traccia ) tracce.add( new Traccia() );
+		tracce.get( traccia ).aggiungi( canale, pitch, intensita, inizio, fine );
+	}
+
+	/** Restituisce le note che suonano in un dato tick.
+	 *
+	 * @param tick il tick.
+	 * @return le note che iniziano entro il tick dato e terminano dopo di esso (ordinate per traccia e inizio).
+	 */
+	public List<Intervallo> suonanoA( final long tick ) {
+		return suonanoTra( tick, tick + 1 );
+	}
+
+	/** Restituisce le note che suonano (almeno in parte) in un dato intervallo di ticks.
+	 *
+	 * @param da il tick d'inizio dell'intervallo (incluso).
+	 * @param a il tick di fine dell'intervallo (escluso).
+	 * @return le note che iniziano prima della fine dell'intervallo e terminano dopo il suo inizio (ordinate per traccia e inizio).
+	 * @throws IllegalArgumentException se l'intervallo è vuoto.
+	 */
+	public synchronized List<Intervallo> suonanoTra( final long da, final long a ) {
+		if ( a <= da ) throw new IllegalArgumentException( "L'intervallo [" + da + ", " + a + ") è vuoto." );
+		final List<Intervallo> risultato = new ArrayList<Intervallo>();
+		for ( int t = 0; t < tracce.size(); t++ ) tracce.get( t ).raccogli( t, a, da, risultato );
+		return risultato;
+	}
+
+	/** Restituisce il numero di note contenute nell'indice.
+	 *
+	 * @return il numero di note.
+	 */
+	public synchronized int numeroNote() {
+		int n = 0;
+		for ( Traccia t : tracce ) n += t.n;
+		return n;
+	}
+
+}
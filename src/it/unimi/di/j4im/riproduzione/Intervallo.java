@@ -0,0 +1,114 @@
+package it.unimi.di.j4im.riproduzione;
+
+/*
+ * Copyright 2014 Massimo Santini
+ *
+ * This file is part of j4im.
+ *
+ * j4im is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j4im is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j4im.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+/** L'intervallo di tempo (in ticks) durante il quale suona una nota di un {@link Brano brano}.
+ *
+ * <p>Gli intervalli sono restituiti dalle interrogazioni di un {@link IndiceTemporale}; 
+ * ciascun intervallo comprende il tick d'inizio, ma non quello di fine.</p>
+ *
+ * @see IndiceTemporale
+ */
+public final class Intervallo {
+
+	private final int traccia;
+	private final int canale;
+	private final int pitch;
+	private final int intensita;
+	private final long inizio;
+	private final long fine;
+
+	Intervallo( final int traccia, final int canale, final int pitch, final int intensita, final long inizio, final long fine ) {
+		this.traccia = traccia;
+		this.canale = canale;
+		this.pitch = pitch;
+		this.intensita = intensita;
+		this.inizio = inizio;
+		this.fine = fine;
+	}
+
+	/** Restituisce l'indice della traccia (ossia della parte, nell'ordine in cui sono state create) cui appartiene la nota.
+	 *
+	 * @return l'indice della traccia.
+	 */
+	public int traccia() {
+		return traccia;
+	}
+
+	/** Restituisce il canale su cui suona la nota.
+	 *
+	 * @return il canale.
+	 */
+	public int canale() {
+		return canale;
+	}
+
+	/** Restituisce il pitch della nota.
+	 *
+	 * @return il pitch.
+	 */
+	public int pitch() {
+		return pitch;
+	}
+
+	/** Restituisce l'intensità della nota.
+	 *
+	 * @return l'intensità.
+	 */
+	public int intensita() {
+		return intensita;
+	}
+
+	/** Restituisce il tick in cui la nota inizia a suonare.
+	 *
+	 * @return il tick d'inizio.
+	 */
+	public long inizio() {
+		return inizio;
+	}
+
+	/** Restituisce il tick in cui la nota cessa di suonare.
+	 *
+	 * @return il tick di fine.
+	 */
+	public long fine() {
+		return fine;
+	}
+
+	@Override
+	public boolean equals( final Object other ) {
+		if ( this == other ) return true;
+		if ( !( other instanceof Intervallo ) ) return false;
+		final Intervallo that = (Intervallo)other;
+		return traccia == that.traccia && canale == that.canale && pitch == that.pitch && intensita == that.intensita && inizio == that.inizio && fine == that.fine;
+	}
+
+	@Override
+	public int hashCode() {
+		return ( ( ( traccia * 31 + canale ) * 31 + pitch ) * 31 + intensita ) * 31 + Long.hashCode( inizio ) * 31 + Long.hashCode( fine );
+	}
+
+	@Override
+	public String toString() {
+		return "[" + inizio + ", " + fine + ") traccia " + traccia + ", canale " + canale + ", pitch " + pitch + ", intensità " + intensita;
+	}
+
+}
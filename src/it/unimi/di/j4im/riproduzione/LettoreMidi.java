@@ -0,0 +1,298 @@
+package it.unimi.di.j4im.riproduzione;
+
+/*
+ * Copyright 2014 Massimo Santini
+ *
+ * This file is part of j4im.
+ *
+ * j4im is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j4im is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j4im.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MetaMessage;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.SysexMessage;
+
+/** Un lettore di file MIDI standard (SMF) di tipo 0 o 1.
+ *
+ * <p>
+ * L'apertura di un file (tramite il metodo {@link #apri(Path)}) lo mappa in
+ * memoria (tramite {@link FileChannel#map(MapMode, long, long)}) e ne legge
+ * solo l'intestazione e le posizioni dei blocchi delle tracce, senza
+ * interpretarne gli eventi: il tipo, il numero di tracce e la risoluzione
+ * sono quindi disponibili senza alcuna decodifica.
+ * </p>
+ *
+ * <p>
+ * I metodi {@link #brano()} e {@link #brano(long, long)} restituiscono un
+ * {@link Brano} che contiene una {@link Parte} per ciascuna traccia; gli eventi
+ * di una traccia vengono decodificati (direttamente nei vettori della parte, senza
+ * costruire alcun {@link javax.sound.midi.MidiEvent}) solo al primo accesso alla
+ * parte corrispondente, per cui (ad esempio) visitare con un {@link Cursore} una
+ * sola parte non richiede di decodificare le altre. Limitando il brano ad un
+ * intervallo di tick, la decodifica di ciascuna traccia si arresta al primo
+ * evento successivo all'intervallo.
+ * </p>
+ *
+ * <p>
+ * Le parti di un brano letto non sono associate ad uno {@link Strumento}: gli
+ * eventi conservano il canale con cui sono memorizzati nel file, mentre i simboli
+ * eventualmente accodati sono assegnati al canale del primo evento di canale della
+ * traccia. I meta eventi (tranne quello di fine traccia) e i messaggi di sistema
+ * esclusivo sono conservati e riscritti da {@link Brano#scrivi(String)}.
+ * </p>
+ */
+public final class LettoreMidi {
+
+	/** Il tipo del meta evento di fine traccia. */
+	private static final int FINE_TRACCIA = 0x2F;
+
+	/** Il file mappato in memoria. */
+	private final ByteBuffer file;
+
+	/** Il tipo del file. */
+	private final int tipo;
+
+	/** La risoluzione (in ticks per quarto). */
+	private final int risoluzione;
+
+	/** Per ciascuna traccia, la posizione (nel file) del primo byte degli eventi. */
+	private final int[] inizi;
+
+	/** Per ciascuna traccia, la posizione (nel file) del byte successivo all'ultimo degli eventi. */
+	private final int[] fini;
+
+	/** La descrizione del file (usata nei messaggi d'errore). */
+	private final String nome;
+
+	private LettoreMidi( final ByteBuffer file, final int tipo, final int risoluzione, final int[] inizi, final int[] fini, final String nome ) {
+		this.file = file;
+		this.tipo = tipo;
+		this.risoluzione = risoluzione;
+		this.inizi = inizi;
+		this.fini = fini;
+		this.nome = nome;
+	}
+
+	/** Apre un file MIDI.
+	 *
+	 * @param path il percorso del file.
+	 * @return il lettore.
+	 * @throws IOException se ci sono errori di I/O.
+	 * @throws InvalidMidiDataException se il file non è un file MIDI standard valido, o se la
+	 *             sua divisione temporale non è espressa in ticks per quarto.
+	 */
+	public static LettoreMidi apri( final Path path ) throws IOException, InvalidMidiDataException {
+		final ByteBuffer file;
+		try ( FileChannel canale = FileChannel.open( path, StandardOpenOption.READ ) ) {
+			if ( canale.size() > Integer.MAX_VALUE ) throw new IOException( "Il file " + path + " è troppo grande." );
+			file = canale.map( MapMode.READ_ONLY, 0, canale.size() );
+		}
+		final int dimensione = file.capacity();
+		if ( dimensione < 14 || file.getInt( 0 ) != 0x4D546864 ) throw new InvalidMidiDataException( "Il file " + path + " non è un file MIDI." );
+		final long lunghezza = file.getInt( 4 ) & 0xFFFFFFFFL;
+		if ( lunghezza < 6 || 8 + lunghezza > dimensione ) throw new InvalidMidiDataException( "Intestazione del file " + path + " corrotta." );
+		final int tipo = file.getShort( 8 ) & 0xFFFF, divisione = file.getShort( 12 ) & 0xFFFF;
+		if ( tipo > 1 ) throw new InvalidMidiDataException( "File MIDI di tipo " + tipo + " non supportato." );
+		if ( ( divisione & 0x8000 ) != 0 || divisione == 0 ) throw new InvalidMidiDataException( "Divisione temporale del file " + path + " non supportata." );
+		// indice dei blocchi MTrk (gli altri blocchi sono ignorati)
+		int[] inizi = new int[ file.getShort( 10 ) & 0xFFFF ], fini = new int[ inizi.length ];
+		int n = 0;
+		for ( long posizione = 8 + lunghezza; posizione + 8 <= dimensione; ) {
+			final int blocco = file.getInt( (int)posizione );
+			final long l = file.getInt( (int)posizione + 4 ) & 0xFFFFFFFFL;
+			if ( posizione + 8 + l > dimensione ) throw new InvalidMidiDataException( "Blocco in posizione " + posizione + " del file " + path + " troncato." );
+			if ( blocco == 0x4D54726B ) {
+				if ( n == inizi.length ) {
+					inizi = Arrays.copyOf( inizi, 2 * n + 1 );
+					fini = Arrays.copyOf( fini, 2 * n + 1 );
+				}
+				inizi[ n ] = (int)posizione + 8;
+				fini[ n++ ] = (int)( posizione + 8 + l );
+			}
+			posizione += 8 + l;
+		}
+		return new LettoreMidi( file, tipo, divisione, Arrays.copyOf( inizi, n ), Arrays.copyOf( fini, n ), path.toString() );
+	}
+
+	/** Restituisce il tipo del file.
+	 *
+	 * @return il tipo (0 o 1).
+	 */
+	public int tipo() {
+		return tipo;
+	}
+
+	/** Restituisce il numero di tracce contenute nel file.
+	 *
+	 * @return il numero di tracce.
+	 */
+	public int numeroTracce() {
+		return inizi.length;
+	}
+
+	/** Restituisce la risoluzione del file.
+	 *
+	 * @return la risoluzione (in ticks per quarto).
+	 */
+	public int risoluzione() {
+		return risoluzione;
+	}
+
+	/** Restituisce un brano che contiene (in una parte per ciascuna traccia) gli eventi del file.
+	 *
+	 * <p>Le tracce vengono decodificate solo al primo accesso alle parti corrispondenti.</p>
+	 *
+	 * @return il brano.
+	 */
+	public Brano brano() {
+		return brano( Long.MIN_VALUE, Long.MAX_VALUE );
+	}
+
+	/** Restituisce un brano che contiene (in una parte per ciascuna traccia) gli eventi del file compresi in un intervallo di tick.
+	 *
+	 * <p>Le tracce vengono decodificate solo al primo accesso alle parti corrispondenti; gli eventi
+	 * conservano il tick che hanno nel file (quelli che cadono al di fuori dell'intervallo, come ad esempio
+	 * gli {@link ShortMessage#NOTE_OFF} delle note che terminano dopo la sua fine, sono ignorati).</p>
+	 *
+	 * @param da il tick (incluso) del primo evento da considerare.
+	 * @param a il tick (escluso) a cui terminare la lettura.
+	 * @return il brano.
+	 * @throws IllegalArgumentException se <samp>a</samp> è minore di <samp>da</samp>.
+	 */
+	public Brano brano( final long da, final long a ) {
+		if ( a < da ) throw new IllegalArgumentException( "L'intervallo [" + da + ", " + a + ") non è valido." );
+		final Brano brano = new Brano( risoluzione );
+		for ( int t = 0; t < inizi.length; t++ ) new Parte( brano, this, t, da, a );
+		return brano;
+	}
+
+	/** Decodifica gli eventi di una traccia compresi in un intervallo di tick, accodandoli ad una parte.
+	 *
+	 * <p>Questo metodo legge il file tramite accessi assoluti, per cui può essere invocato
+	 * contemporaneamente per tracce diverse.</p>
+	 *
+	 * @param traccia l'indice della traccia.
+	 * @param da il tick (incluso) del primo evento da considerare.
+	 * @param a il tick (escluso) a cui terminare la decodifica.
+	 * @param parte la parte.
+	 * @throws IllegalStateException se la traccia non è valida.
+	 */
+	void decodifica( final int traccia, final long da, final long a, final Parte parte ) {
+		final int fine = fini[ traccia ];
+		int p = inizi[ traccia ], status = 0;
+		long tick = 0, ultimo = 0;
+		try {
+			while ( p < fine ) {
+				// il tempo (relativo all'evento precedente), come quantità di lunghezza variabile
+				long delta = 0;
+				int b;
+				do {
+					if ( p == fine ) throw new InvalidMidiDataException( "Evento troncato" );
+					b = file.get( p++ );
+					delta = delta << 7 | b & 0x7F;
+				} while ( b < 0 );
+				tick += delta;
+				if ( tick >= a ) break;
+				if ( p == fine ) throw new InvalidMidiDataException( "Evento troncato" );
+				if ( ( file.get( p ) & 0x80 ) != 0 ) status = file.get( p++ ) & 0xFF;
+				else if ( status == 0 ) throw new InvalidMidiDataException( "Running status senza uno status precedente" );
+				if ( status == MetaMessage.META ) {
+					if ( p == fine ) throw new InvalidMidiDataException( "Evento troncato" );
+					final int tipoMeta = file.get( p++ ) & 0xFF;
+					final int lunghezza = lunghezzaVariabile( p, fine );
+					p += quantitaVariabile( p, fine );
+					final byte[] dati = dati( p, lunghezza, fine );
+					p += lunghezza;
+					status = 0;
+					if ( tipoMeta == FINE_TRACCIA ) break;
+					if ( tick >= da ) parte.aggiungiEsteso( tick, new MetaMessage( tipoMeta, dati, lunghezza ) );
+				} else if ( status == SysexMessage.SYSTEM_EXCLUSIVE || status == SysexMessage.SPECIAL_SYSTEM_EXCLUSIVE ) {
+					final int lunghezza = lunghezzaVariabile( p, fine );
+					p += quantitaVariabile( p, fine );
+					final byte[] dati = dati( p, lunghezza, fine );
+					p += lunghezza;
+					if ( tick >= da ) parte.aggiungiEsteso( tick, new SysexMessage( status, dati, lunghezza ) );
+					status = 0;
+				} else if ( status >= 0xF0 ) throw new InvalidMidiDataException( "Status " + status + " non valido in un file" );
+				else {
+					final int comando = status & 0xF0, numero = comando == ShortMessage.PROGRAM_CHANGE || comando == ShortMessage.CHANNEL_PRESSURE ? 1 : 2;
+					if ( p + numero > fine ) throw new InvalidMidiDataException( "Evento troncato" );
+					final int dato1 = file.get( p ) & 0x7F, dato2 = numero == 2 ? file.get( p + 1 ) & 0x7F : 0;
+					p += numero;
+					if ( tick >= da ) parte.aggiungiLetto( tick, status | dato1 << 8 | dato2 << 16 );
+				}
+				ultimo = tick;
+			}
+			// la parte termina con la fine della traccia, o con l'ultimo evento dell'intervallo
+			parte.terminaLettura( tick < a ? tick : ultimo );
+		} catch ( InvalidMidiDataException e ) {
+			throw new IllegalStateException( "La traccia " + traccia + " del file " + nome + " non è valida (posizione " + p + ").", e );
+		}
+	}
+
+	/** Restituisce il numero di byte occupati da una quantità di lunghezza variabile.
+	 *
+	 * @param p la posizione della quantità.
+	 * @param fine la posizione della fine della traccia.
+	 * @return il numero di byte.
+	 * @throws InvalidMidiDataException se la quantità eccede la traccia, o i quattro byte.
+	 */
+	private int quantitaVariabile( final int p, final int fine ) throws InvalidMidiDataException {
+		int n = 0;
+		do {
+			if ( p + n == fine || n == 4 ) throw new InvalidMidiDataException( "Quantità di lunghezza variabile non valida" );
+		} while ( file.get( p + n++ ) < 0 );
+		return n;
+	}
+
+	/** Restituisce il valore di una quantità di lunghezza variabile che rappresenta una lunghezza.
+	 *
+	 * @param p la posizione della quantità.
+	 * @param fine la posizione della fine della traccia.
+	 * @return il valore.
+	 * @throws InvalidMidiDataException se la quantità non è valida.
+	 */
+	private int lunghezzaVariabile( final int p, final int fine ) throws InvalidMidiDataException {
+		final int n = quantitaVariabile( p, fine );
+		int valore = 0;
+		for ( int i = 0; i < n; i++ ) valore = valore << 7 | file.get( p + i ) & 0x7F;
+		return valore;
+	}
+
+	/** Copia i dati di un meta evento, o di un messaggio di sistema esclusivo.
+	 *
+	 * @param p la posizione dei dati.
+	 * @param lunghezza la lunghezza dei dati.
+	 * @param fine la posizione della fine della traccia.
+	 * @return i dati.
+	 * @throws InvalidMidiDataException se i dati eccedono la traccia.
+	 */
+	private byte[] dati( final int p, final int lunghezza, final int fine ) throws InvalidMidiDataException {
+		if ( lunghezza > fine - p ) throw new InvalidMidiDataException( "Evento troncato" );
+		final byte[] dati = new byte[ lunghezza ];
+		for ( int i = 0; i < lunghezza; i++ ) dati[ i ] = file.get( p + i );
+		return dati;
+	}
+
+}
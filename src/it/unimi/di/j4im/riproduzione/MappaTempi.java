@@ -0,0 +1,111 @@
+package it.unimi.di.j4im.riproduzione;
+
+/*
+ * Copyright 2014 Massimo Santini
+ *
+ * This file is part of j4im.
+ *
+ * j4im is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j4im is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j4im.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+import java.util.Arrays;
+
+import javax.sound.midi.MetaMessage;
+
+/** La corrispondenza tra i tick di un brano e il tempo (in microsecondi) a cui cadono.
+ *
+ * <p>
+ * Il tempo iniziale è dato dal numero di quarti al minuto; i meta eventi di cambio di
+ * tempo (<samp>SET_TEMPO</samp>, di tipo {@value #SET_TEMPO}) contenuti nelle parti, ad
+ * esempio in quelle lette da un file MIDI, lo modificano a partire dal loro tick,
+ * come avviene durante la riproduzione col sequencer.
+ * </p>
+ */
+final class MappaTempi {
+
+	/** Il tipo del meta evento di cambio di tempo. */
+	static final int SET_TEMPO = 0x51;
+
+	/** I tick a cui cambia il tempo (il primo è 0). */
+	private final long[] tick;
+
+	/** I microsecondi a cui cadono i tick di {@link #tick}. */
+	private final double[] inizio;
+
+	/** I microsecondi per tick a partire dai tick di {@link #tick}. */
+	private final double[] durata;
+
+	/** Il numero di cambi di tempo. */
+	private final int n;
+
+	/** Costruisce la mappa dei tempi delle parti date.
+	 *
+	 * @param parti le parti.
+	 * @param risoluzione la risoluzione (in tick per quarto).
+	 * @param bpm il numero iniziale di quarti al minuto.
+	 */
+	MappaTempi( final Parte[] parti, final int risoluzione, final int bpm ) {
+		int cambi = 1;
+		for ( Cursore c = new Cursore( parti, Long.MIN_VALUE, Long.MAX_VALUE, Cursore.TUTTI_I_CANALI ); c.avanza(); ) if ( tempo( c ) ) cambi++;
+		tick = new long[ cambi ];
+		inizio = new double[ cambi ];
+		durata = new double[ cambi ];
+		durata[ 0 ] = 60E6 / bpm / risoluzione;
+		int i = 1;
+		for ( Cursore c = new Cursore( parti, Long.MIN_VALUE, Long.MAX_VALUE, Cursore.TUTTI_I_CANALI ); c.avanza(); ) {
+			if ( !tempo( c ) ) continue;
+			final byte[] dati = ( (MetaMessage)c.esteso() ).getData();
+			final long t = Math.max( 0, c.tick() );
+			if ( t == tick[ i - 1 ] ) i--; // più cambi allo stesso tick: vale l'ultimo
+			else {
+				tick[ i ] = t;
+				inizio[ i ] = inizio[ i - 1 ] + ( t - tick[ i - 1 ] ) * durata[ i - 1 ];
+			}
+			durata[ i++ ] = (double)( ( dati[ 0 ] & 0xFF ) << 16 | ( dati[ 1 ] & 0xFF ) << 8 | dati[ 2 ] & 0xFF ) / risoluzione;
+		}
+		n = i;
+	}
+
+	/** Restituisce <samp>true</samp> se l'evento corrente di un cursore è un cambio di tempo valido.
+	 *
+	 * @param c il cursore.
+	 * @return se l'evento è un cambio di tempo.
+	 */
+	private static boolean tempo( final Cursore c ) {
+		return c.codice() < 0 && c.esteso() instanceof MetaMessage && ( (MetaMessage)c.esteso() ).getType() == SET_TEMPO && ( (MetaMessage)c.esteso() ).getData().length == 3;
+	}
+
+	/** Restituisce il tempo a cui cade un tick.
+	 *
+	 * @param t il tick.
+	 * @return i microsecondi.
+	 */
+	double microsecondi( final long t ) {
+		int i = Arrays.binarySearch( tick, 0, n, t );
+		if ( i < 0 ) i = Math.max( 0, -i - 2 );
+		return inizio[ i ] + ( t - tick[ i ] ) * durata[ i ];
+	}
+
+	/** Restituisce il frame a cui cade un tick, data la frequenza di campionamento.
+	 *
+	 * @param t il tick.
+	 * @param frequenza la frequenza di campionamento.
+	 * @return il frame.
+	 */
+	long frame( final long t, final float frequenza ) {
+		return Math.round( microsecondi( t ) * frequenza / 1E6 );
+	}
+
+}
@@ -0,0 +1,66 @@
+package it.unimi.di.j4im.riproduzione;
+
+/*
+ * Copyright 2014 Massimo Santini
+ *
+ * This file is part of j4im.
+ *
+ * j4im is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j4im is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j4im.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+import java.util.Locale;
+
+/** I motori di sintesi audio disponibili.
+ *
+ * <p>
+ * Il motore usato dal {@link Renderizzatore} (se non viene specificato) e dal
+ * {@link Sintetizzatore} per suonare dal vivo è quello indicato dalla proprietà di 
+ * sistema {@value #PROPRIETA} (ad esempio, <samp>-Dit.unimi.di.j4im.motore=oscillatori</samp>),
+ * o {@link #SISTEMA} in sua mancanza; il sintetizzatore e il renderizzatore usano comunque
+ * gli oscillatori se quello di sistema non è disponibile.
+ * </p>
+ */
+public enum Motore {
+
+	/** Il sintetizzatore software del JDK, basato sul banco di suoni di sistema. */
+	SISTEMA,
+
+	/** Un motore leggero, interamente in Java, basato su oscillatori con inviluppi ADSR (meno realistico, ma più parco e deterministico). */
+	OSCILLATORI;
+
+	/** Il nome della proprietà di sistema che indica il motore predefinito. */
+	public static final String PROPRIETA = "it.unimi.di.j4im.motore";
+
+	/** Restituisce il motore predefinito.
+	 *
+	 * @return il motore indicato dalla proprietà {@value #PROPRIETA}, o {@link #SISTEMA}.
+	 * @throws IllegalArgumentException se la proprietà non indica un motore.
+	 */
+	public static Motore predefinito() {
+		final String motore = System.getProperty( PROPRIETA );
+		return motore == null ? SISTEMA : valueOf( motore.trim().toUpperCase( Locale.ROOT ) );
+	}
+
+	/** Crea un nuovo motore di sintesi di questo tipo.
+	 *
+	 * @param frequenza la frequenza di campionamento.
+	 * @return il motore.
+	 * @throws UnsupportedOperationException se il motore non è disponibile.
+	 */
+	MotoreAudio crea( final float frequenza ) {
+		return this == SISTEMA ? new MotoreGervill( frequenza ) : new MotoreOscillatori( frequenza );
+	}
+
+}
@@ -0,0 +1,57 @@
+package it.unimi.di.j4im.riproduzione;
+
+/*
+ * Copyright 2014 Massimo Santini
+ *
+ * This file is part of j4im.
+ *
+ * j4im is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j4im is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j4im.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+/** Un motore di sintesi audio in differita, che trasforma messaggi MIDI di canale in campioni.
+ *
+ * <p>
+ * Il motore viene pilotato da un {@link Renderizzatore}, che gli invia i messaggi
+ * (ciascuno col frame, ossia l'istante espresso in campioni, a cui deve avere effetto)
+ * e gli chiede i campioni successivi, alternativamente: i messaggi sono inviati in
+ * ordine di frame, e prima che siano chiesti i campioni che ne dipendono. I campioni
+ * sono stereo e sono scritti in un vettore di <samp>float</samp> (compresi tra -1 e 1)
+ * alternando il canale sinistro e il destro.
+ * </p>
+ *
+ * <p>Un motore non è sincronizzato.</p>
+ */
+interface MotoreAudio extends AutoCloseable {
+
+	/** Invia un messaggio al motore.
+	 *
+	 * @param codice il messaggio di canale, codificato come nelle {@link Parte parti} (lo status nel byte meno significativo, seguito dai due byte di dati).
+	 * @param frame il frame a cui il messaggio deve avere effetto (non precedente ai campioni già calcolati).
+	 */
+	void invia( int codice, long frame );
+
+	/** Calcola i campioni dei frame successivi.
+	 *
+	 * @param campioni il vettore in cui scrivere i campioni.
+	 * @param da il frame del vettore da cui iniziare a scrivere (ossia, la posizione <samp>2 * da</samp>).
+	 * @param frame il numero di frame da calcolare.
+	 */
+	void calcola( float[] campioni, int da, int frame );
+
+	/** Rilascia le risorse del motore. */
+	@Override
+	void close();
+
+}
@@ -0,0 +1,144 @@
+package it.unimi.di.j4im.riproduzione;
+
+/*
+ * Copyright 2014 Massimo Santini
+ *
+ * This file is part of j4im.
+ *
+ * j4im is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j4im is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j4im.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Map;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.MidiUnavailableException;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Synthesizer;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+
+/** Un {@link MotoreAudio} basato sul sintetizzatore software del JDK (Gervill).
+ *
+ * <p>
+ * Il sintetizzatore di sistema consente di ottenere i campioni prodotti (invece che 
+ * di inviarli ad una linea audio) attraverso il metodo <samp>openStream</samp>
+ * dell'interfaccia <samp>com.sun.media.sound.AudioSynthesizer</samp>, che non fa
+ * parte delle API pubbliche e viene quindi invocato per riflessione; a partire da
+ * Java 9, ciò richiede che la JVM sia avviata con l'opzione
+ * <samp>--add-exports java.desktop/com.sun.media.sound=ALL-UNNAMED</samp>.
+ * I messaggi vengono inviati al sintetizzatore con una marca temporale (in 
+ * microsecondi dall'apertura del flusso), per cui hanno effetto al campione giusto.
+ * </p>
+ */
+final class MotoreGervill implements MotoreAudio {
+
+	/** Il nome dell'interfaccia dei sintetizzatori che producono un flusso di campioni. */
+	private static final String SINTETIZZATORE_AUDIO = "com.sun.media.sound.AudioSynthesizer";
+
+	/** Il sintetizzatore. */
+	private final Synthesizer synth;
+
+	/** Il ricevitore dei messaggi del sintetizzatore. */
+	private final Receiver ricevitore;
+
+	/** Il flusso dei campioni (stereo, a 16 bit, little-endian). */
+	private final AudioInputStream flusso;
+
+	/** La frequenza di campionamento. */
+	private final float frequenza;
+
+	/** Il buffer in cui leggere i campioni dal flusso. */
+	private byte[] buffer = new byte[ 0 ];
+
+	/** Costruisce un motore, aprendo un nuovo sintetizzatore.
+	 *
+	 * @param frequenza la frequenza di campionamento.
+	 * @throws UnsupportedOperationException se il sintetizzatore di sistema non consente la sintesi in differita.
+	 */
+	MotoreGervill( final float frequenza ) {
+		this.frequenza = frequenza;
+		Synthesizer s = null;
+		Object f = null; // il flusso, se aperto
+		boolean aperto = false;
+		try {
+			s = MidiSystem.getSynthesizer();
+			final Class<?> sintetizzatoreAudio = Class.forName( SINTETIZZATORE_AUDIO );
+			if ( !sintetizzatoreAudio.isInstance( s ) ) throw new UnsupportedOperationException( "Il sintetizzatore di sistema non consente la sintesi in differita." );
+			final AudioFormat formato = new AudioFormat( frequenza, 16, 2, true, false );
+			f = sintetizzatoreAudio.getMethod( "openStream", AudioFormat.class, Map.class ).invoke( s, formato, null );
+			flusso = (AudioInputStream)f;
+			ricevitore = s.getReceiver();
+			synth = s;
+			aperto = true;
+		} catch ( ClassNotFoundException | NoSuchMethodException e ) {
+			throw new UnsupportedOperationException( "Il sintetizzatore di sistema non consente la sintesi in differita.", e );
+		} catch ( IllegalAccessException e ) {
+			throw new UnsupportedOperationException( "Il sintetizzatore di sistema non è accessibile: è necessario avviare la JVM con l'opzione --add-exports java.desktop/com.sun.media.sound=ALL-UNNAMED", e );
+		} catch ( InvocationTargetException e ) {
+			throw new UnsupportedOperationException( "Non è possibile aprire il sintetizzatore di sistema.", e.getCause() );
+		} catch ( MidiUnavailableException e ) {
+			throw new UnsupportedOperationException( "Non è possibile aprire il sintetizzatore di sistema.", e );
+		} finally {
+			if ( !aperto ) chiudi( f, s ); // openStream potrebbe aver aperto il sintetizzatore
+		}
+	}
+
+	/** Chiude un flusso e un sintetizzatore, ignorando gli errori di chiusura del flusso.
+	 *
+	 * @param flusso il flusso (o <samp>null</samp>, se non è stato aperto).
+	 * @param synth il sintetizzatore (o <samp>null</samp>, se non è stato ottenuto).
+	 */
+	private static void chiudi( final Object flusso, final Synthesizer synth ) {
+		try {
+			if ( flusso instanceof Closeable ) ( (Closeable)flusso ).close();
+		} catch ( IOException ignora ) {
+		} finally {
+			if ( synth != null ) synth.close();
+		}
+	}
+
+	@Override
+	public void invia( final int codice, final long frame ) {
+		try {
+			ricevitore.send( new ShortMessage( codice & 0xFF, codice >>> 8 & 0xFF, codice >>> 16 & 0xFF ), (long)( frame * 1E6 / frequenza ) );
+		} catch ( InvalidMidiDataException e ) {
+			throw new IllegalArgumentException( e );
+		}
+	}
+
+	@Override
+	public void calcola( final float[] campioni, final int da, final int frame ) {
+		final int n = 4 * frame;
+		if ( buffer.length < n ) buffer = new byte[ n ];
+		try {
+			for ( int letti = 0, l; letti < n; letti += l )
+				if ( ( l = flusso.read( buffer, letti, n - letti ) ) < 0 ) throw new IllegalStateException( "Il flusso del sintetizzatore è terminato." );
+		} catch ( IOException e ) {
+			throw new RuntimeException( e );
+		}
+		for ( int i = 2 * da, j = 0; j < n; i++, j += 2 ) campioni[ i ] = (short)( buffer[ j ] & 0xFF | buffer[ j + 1 ] << 8 ) / 32768f;
+	}
+
+	@Override
+	public void close() {
+		chiudi( flusso, synth );
+	}
+
+}
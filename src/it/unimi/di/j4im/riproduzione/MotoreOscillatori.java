@@ -0,0 +1,389 @@
+package it.unimi.di.j4im.riproduzione;
+
+/*
+ * Copyright 2014 Massimo Santini
+ *
+ * This file is part of j4im.
+ *
+ * j4im is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j4im is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j4im.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+import java.util.Arrays;
+
+import javax.sound.midi.ShortMessage;
+
+/** Un {@link MotoreAudio} leggero, interamente in Java, basato su oscillatori.
+ *
+ * <p>
+ * Ciascuna nota è suonata da una <em>voce</em>: un oscillatore (che legge, con 
+ * interpolazione lineare, una tabella d'onda sinusoidale, a dente di sega, quadra o 
+ * triangolare, o genera rumore) il cui volume è modulato da un inviluppo ADSR (attacco,
+ * decadimento, sostegno e rilascio, lineari). La forma d'onda e l'inviluppo dipendono
+ * dalla famiglia General MIDI del programma del canale (ossia dal programma diviso per
+ * 8); sul canale della {@link Batteria batteria} le note sono suonate da inviluppi
+ * percussivi, con un oscillatore sinusoidale (per le casse e i tom) o col rumore.
+ * </p>
+ *
+ * <p>
+ * Lo stato delle {@value #VOCI} voci è conservato in vettori allocati alla costruzione,
+ * per cui il calcolo dei campioni non alloca memoria e il suo costo è proporzionale al
+ * numero di voci attive (per campione, una lettura di tabella e qualche operazione 
+ * aritmetica per voce); quando tutte le voci sono attive, una nuova nota sottrae la
+ * voce di livello minimo (preferendo quelle in rilascio). Il motore è deterministico: 
+ * gli stessi messaggi producono sempre gli stessi campioni.
+ * </p>
+ *
+ * <p>
+ * Oltre alle note, il motore interpreta i cambi di programma e i controlli del volume
+ * (7), del bilanciamento (10) e di spegnimento delle note (120 e 123); gli altri messaggi
+ * sono ignorati.
+ * </p>
+ */
+final class MotoreOscillatori implements MotoreAudio {
+
+	/** Il numero di voci. */
+	static final int VOCI = 64;
+
+	/** Il logaritmo in base 2 della lunghezza delle tabelle d'onda. */
+	private static final int BIT_TABELLA = 11;
+
+	/** La lunghezza delle tabelle d'onda. */
+	private static final int TABELLA = 1 << BIT_TABELLA;
+
+	/** Il numero di armoniche delle tabelle d'onda a dente di sega e quadra (per limitarne l'aliasing). */
+	private static final int ARMONICHE = 24;
+
+	/** Le forme d'onda. */
+	private static final int SENO = 0, SEGA = 1, QUADRA = 2, TRIANGOLO = 3, RUMORE = 4;
+
+	/** Le tabelle d'onda (con un campione in più, per l'interpolazione), indicizzate per forma d'onda. */
+	private static final float[][] TABELLE = new float[ 4 ][ TABELLA + 1 ];
+
+	/** Gli stadi dell'inviluppo (una voce nello stadio {@link #LIBERA} non suona). */
+	private static final int LIBERA = 0, ATTACCO = 1, DECADIMENTO = 2, SOSTEGNO = 3, RILASCIO = 4;
+
+	/** Il guadagno complessivo (che lascia spazio alla somma di più voci). */
+	private static final float GUADAGNO = .25f;
+
+	/** I timbri delle famiglie General MIDI: forma d'onda, attacco, decadimento, sostegno e rilascio (in secondi, tranne il sostegno). */
+	private static final float[][] TIMBRI = {
+		{ TRIANGOLO, .005f, 1f, .2f, .3f }, // pianoforti
+		{ SENO, .002f, .6f, 0, .4f }, // percussioni cromatiche
+		{ QUADRA, .01f, .05f, .9f, .05f }, // organi
+		{ SEGA, .003f, .8f, .1f, .2f }, // chitarre
+		{ TRIANGOLO, .005f, .4f, .5f, .1f }, // bassi
+		{ SEGA, .08f, .2f, .8f, .3f }, // archi
+		{ SEGA, .1f, .2f, .8f, .4f }, // insiemi
+		{ SEGA, .03f, .1f, .8f, .15f }, // ottoni
+		{ QUADRA, .02f, .1f, .8f, .1f }, // ance
+		{ SENO, .03f, .1f, .9f, .1f }, // flauti
+		{ QUADRA, .005f, .1f, .8f, .1f }, // sintetizzatori (solisti)
+		{ TRIANGOLO, .3f, .5f, .7f, .8f }, // sintetizzatori (tappeti)
+		{ SENO, .2f, .5f, .6f, .8f }, // sintetizzatori (effetti)
+		{ SEGA, .005f, .5f, .2f, .3f }, // strumenti etnici
+		{ SENO, .001f, .3f, 0, .2f }, // percussioni
+		{ RUMORE, .01f, .3f, .5f, .3f }, // effetti sonori
+	};
+
+	/** I timbri delle percussioni: casse e tom (la cui frequenza dipende dal pitch), piatti, charleston aperto e le altre. */
+	private static final float[] TONALE = { SENO, .001f, .12f, 0, .05f }, PIATTO = { RUMORE, .001f, .8f, 0, .05f },
+			APERTO = { RUMORE, .001f, .3f, 0, .05f }, ALTRA = { RUMORE, .001f, .12f, 0, .05f };
+
+	static {
+		for ( int i = 0; i <= TABELLA; i++ ) {
+			final double x = 2 * Math.PI * i / TABELLA;
+			double sega = 0, quadra = 0;
+			for ( int k = 1; k <= ARMONICHE; k++ ) {
+				sega += Math.sin( k * x ) / k;
+				if ( k % 2 == 1 ) quadra += Math.sin( k * x ) / k;
+			}
+			TABELLE[ SENO ][ i ] = (float)Math.sin( x );
+			TABELLE[ SEGA ][ i ] = (float)( sega * 2 / Math.PI );
+			TABELLE[ QUADRA ][ i ] = (float)( quadra * 4 / Math.PI );
+			final double t = (double)( i % TABELLA ) / TABELLA;
+			TABELLE[ TRIANGOLO ][ i ] = (float)( t < .25 ? 4 * t : t < .75 ? 2 - 4 * t : 4 * t - 4 );
+		}
+	}
+
+	/** La frequenza di campionamento. */
+	private final float frequenza;
+
+	/* Lo stato delle voci. */
+
+	/** Lo stadio dell'inviluppo. */
+	private final int[] stadio = new int[ VOCI ];
+	/** Il canale e il pitch della nota. */
+	private final int[] canale = new int[ VOCI ], pitch = new int[ VOCI ];
+	/** La forma d'onda. */
+	private final int[] forma = new int[ VOCI ];
+	/** La fase (in virgola fissa: un giro corrisponde a 2<sup>32</sup>) e il suo incremento per campione. */
+	private final int[] fase = new int[ VOCI ], passo = new int[ VOCI ];
+	/** Lo stato del generatore di rumore. */
+	private final int[] rumore = new int[ VOCI ];
+	/** Il livello dell'inviluppo. */
+	private final float[] livello = new float[ VOCI ];
+	/** Gli incrementi (per campione) dell'inviluppo negli stadi di attacco, decadimento e rilascio. */
+	private final float[] attacco = new float[ VOCI ], decadimento = new float[ VOCI ], rilascio = new float[ VOCI ];
+	/** Il livello di sostegno. */
+	private final float[] sostegno = new float[ VOCI ];
+	/** La durata (in secondi) del rilascio. */
+	private final float[] durataRilascio = new float[ VOCI ];
+	/** I guadagni dei canali destro e sinistro (che tengono conto dell'intensità, del volume e del bilanciamento). */
+	private final float[] sinistro = new float[ VOCI ], destro = new float[ VOCI ];
+
+	/* Lo stato dei canali. */
+
+	/** Il programma di ciascun canale. */
+	private final int[] programma = new int[ 16 ];
+	/** Il volume (controllo 7) e il bilanciamento (controllo 10) di ciascun canale. */
+	private final int[] volume = new int[ 16 ], bilanciamento = new int[ 16 ];
+
+	/* I messaggi in attesa. */
+
+	/** I frame dei messaggi in attesa. */
+	private long[] frameMessaggi = new long[ 256 ];
+	/** I messaggi in attesa. */
+	private int[] messaggi = new int[ 256 ];
+	/** L'indice del primo messaggio in attesa, e il numero di messaggi. */
+	private int primo, numeroMessaggi;
+
+	/** Il numero di frame calcolati. */
+	private long posizione;
+
+	/** Costruisce un motore.
+	 *
+	 * @param frequenza la frequenza di campionamento.
+	 */
+	MotoreOscillatori( final float frequenza ) {
+		this.frequenza = frequenza;
+		for ( int c = 0; c < 16; c++ ) {
+			volume[ c ] = 100;
+			bilanciamento[ c ] = 64;
+		}
+	}
+
+	/** Restituisce il numero di frame calcolati (ossia il frame a cui avrebbe effetto un messaggio da eseguire subito).
+	 *
+	 * @return il numero di frame calcolati.
+	 */
+	long posizione() {
+		return posizione;
+	}
+
+	/** Restituisce il numero di voci attive.
+	 *
+	 * @return il numero di voci attive.
+	 */
+	int vociAttive() {
+		int n = 0;
+		for ( int v = 0; v < VOCI; v++ ) if ( stadio[ v ] != LIBERA ) n++;
+		return n;
+	}
+
+	@Override
+	public void invia( final int codice, final long frame ) {
+		if ( primo + numeroMessaggi == messaggi.length ) {
+			if ( primo > 0 ) {
+				System.arraycopy( messaggi, primo, messaggi, 0, numeroMessaggi );
+				System.arraycopy( frameMessaggi, primo, frameMessaggi, 0, numeroMessaggi );
+				primo = 0;
+			} else {
+				messaggi = Arrays.copyOf( messaggi, 2 * messaggi.length );
+				frameMessaggi = Arrays.copyOf( frameMessaggi, 2 * frameMessaggi.length );
+			}
+		}
+		messaggi[ primo + numeroMessaggi ] = codice;
+		frameMessaggi[ primo + numeroMessaggi++ ] = frame;
+	}
+
+	@Override
+	public void calcola( final float[] campioni, final int da, final int frame ) {
+		Arrays.fill( campioni, 2 * da, 2 * ( da + frame ), 0 );
+		for ( int fatti = 0; fatti < frame; ) {
+			while ( numeroMessaggi > 0 && frameMessaggi[ primo ] <= posizione ) {
+				esegui( messaggi[ primo++ ] );
+				numeroMessaggi--;
+			}
+			if ( numeroMessaggi == 0 ) primo = 0;
+			final int n = (int)( numeroMessaggi > 0 ? Math.min( frame - fatti, frameMessaggi[ primo ] - posizione ) : frame - fatti );
+			for ( int v = 0; v < VOCI; v++ ) if ( stadio[ v ] != LIBERA ) suona( v, campioni, da + fatti, n );
+			fatti += n;
+			posizione += n;
+		}
+	}
+
+	@Override
+	public void close() {}
+
+	/** Esegue un messaggio.
+	 *
+	 * @param codice il messaggio, codificato come nelle {@link Parte parti}.
+	 */
+	private void esegui( final int codice ) {
+		final int c = codice & 0x0F, dato1 = codice >>> 8 & 0x7F, dato2 = codice >>> 16 & 0x7F;
+		switch ( codice & 0xF0 ) {
+		case ShortMessage.NOTE_ON:
+			if ( dato2 > 0 ) accendi( c, dato1, dato2 );
+			else spegni( c, dato1 ); // un NOTE_ON di intensità nulla equivale ad un NOTE_OFF
+			break;
+		case ShortMessage.NOTE_OFF:
+			spegni( c, dato1 );
+			break;
+		case ShortMessage.PROGRAM_CHANGE:
+			programma[ c ] = dato1;
+			break;
+		case ShortMessage.CONTROL_CHANGE:
+			switch ( dato1 ) {
+			case 7:
+				volume[ c ] = dato2;
+				break;
+			case 10:
+				bilanciamento[ c ] = dato2;
+				break;
+			case 120: // ALL_SOUND_OFF
+				for ( int v = 0; v < VOCI; v++ ) if ( canale[ v ] == c ) stadio[ v ] = LIBERA;
+				break;
+			case 123: // ALL_NOTES_OFF
+				for ( int v = 0; v < VOCI; v++ ) if ( stadio[ v ] != LIBERA && stadio[ v ] != RILASCIO && canale[ v ] == c ) rilascia( v );
+				break;
+			default:
+			}
+			break;
+		default:
+		}
+	}
+
+	/** Inizia una nota.
+	 *
+	 * @param c il canale.
+	 * @param p il pitch.
+	 * @param intensita l'intensità.
+	 */
+	private void accendi( final int c, final int p, final int intensita ) {
+		final int v = voceLibera();
+		final float[] timbro;
+		double hertz = 440 * Math.pow( 2, ( p - 69 ) / 12.0 );
+		if ( c == Batteria.CANALE ) {
+			final boolean tonale = p <= Batteria.KICK_2 || p == 41 || p == Batteria.LO_TOM || p == 45 || p == Batteria.MID_TOM || p == 48 || p == Batteria.HI_TOM;
+			final boolean piatto = p == Batteria.CRASH || p == 51 || p == Batteria.CHINESE_CYM || p == Batteria.SPLASH_CYM || p == Batteria.CRASH_2 || p == 59;
+			timbro = tonale ? TONALE : piatto ? PIATTO : p == Batteria.OPEN_HIHAT ? APERTO : ALTRA;
+			if ( tonale ) hertz = 45 + ( p - Batteria.KICK ) * 8;
+		} else timbro = TIMBRI[ programma[ c ] >>> 3 ];
+		canale[ v ] = c;
+		pitch[ v ] = p;
+		forma[ v ] = (int)timbro[ 0 ];
+		fase[ v ] = 0;
+		passo[ v ] = (int)(long)( hertz / frequenza * 4294967296.0 );
+		rumore[ v ] = 0x9E3779B9 ^ p;
+		livello[ v ] = 0;
+		attacco[ v ] = 1 / Math.max( 1, timbro[ 1 ] * frequenza );
+		sostegno[ v ] = timbro[ 3 ];
+		decadimento[ v ] = ( 1 - timbro[ 3 ] ) / Math.max( 1, timbro[ 2 ] * frequenza );
+		durataRilascio[ v ] = timbro[ 4 ];
+		final float ampiezza = GUADAGNO * intensita / 127f * volume[ c ] / 127f;
+		final double angolo = bilanciamento[ c ] / 127.0 * Math.PI / 2;
+		sinistro[ v ] = (float)( ampiezza * Math.cos( angolo ) * Math.sqrt( 2 ) );
+		destro[ v ] = (float)( ampiezza * Math.sin( angolo ) * Math.sqrt( 2 ) );
+		stadio[ v ] = ATTACCO;
+	}
+
+	/** Termina una nota, iniziando il rilascio delle voci che la suonano (le note della batteria terminano da sé).
+	 *
+	 * @param c il canale.
+	 * @param p il pitch.
+	 */
+	private void spegni( final int c, final int p ) {
+		if ( c != Batteria.CANALE ) for ( int v = 0; v < VOCI; v++ ) if ( stadio[ v ] != LIBERA && stadio[ v ] != RILASCIO && canale[ v ] == c && pitch[ v ] == p ) rilascia( v );
+	}
+
+	/** Restituisce una voce da usare per una nuova nota: una libera o, se non ve ne sono, quella di livello minimo (preferendo quelle in rilascio).
+	 *
+	 * @return la voce.
+	 */
+	private int voceLibera() {
+		int scelta = 0;
+		for ( int v = 0; v < VOCI; v++ ) {
+			if ( stadio[ v ] == LIBERA ) return v;
+			final boolean rilasciata = stadio[ v ] == RILASCIO, sceltaRilasciata = stadio[ scelta ] == RILASCIO;
+			if ( rilasciata && !sceltaRilasciata || rilasciata == sceltaRilasciata && livello[ v ] < livello[ scelta ] ) scelta = v;
+		}
+		return scelta;
+	}
+
+	/** Inizia il rilascio di una voce.
+	 *
+	 * @param v la voce.
+	 */
+	private void rilascia( final int v ) {
+		stadio[ v ] = RILASCIO;
+		rilascio[ v ] = livello[ v ] / Math.max( 1, durataRilascio[ v ] * frequenza );
+	}
+
+	/** Somma ai campioni quelli di una voce.
+	 *
+	 * @param v la voce.
+	 * @param campioni i campioni.
+	 * @param da il primo frame.
+	 * @param n il numero di frame.
+	 */
+	private void suona( final int v, final float[] campioni, final int da, final int n ) {
+		final int forma = this.forma[ v ], passo = this.passo[ v ];
+		final float[] tabella = forma == RUMORE ? null : TABELLE[ forma ];
+		final float sinistro = this.sinistro[ v ], destro = this.destro[ v ];
+		int stadio = this.stadio[ v ], fase = this.fase[ v ], rumore = this.rumore[ v ];
+		float livello = this.livello[ v ];
+		for ( int i = 2 * da, fine = 2 * ( da + n ); i < fine; i += 2 ) {
+			switch ( stadio ) {
+			case ATTACCO:
+				if ( ( livello += attacco[ v ] ) >= 1 ) {
+					livello = 1;
+					stadio = DECADIMENTO;
+				}
+				break;
+			case DECADIMENTO:
+				if ( ( livello -= decadimento[ v ] ) <= sostegno[ v ] ) {
+					livello = sostegno[ v ];
+					stadio = sostegno[ v ] > 0 ? SOSTEGNO : LIBERA;
+				}
+				break;
+			case RILASCIO:
+				if ( ( livello -= rilascio[ v ] ) <= 0 ) {
+					livello = 0;
+					stadio = LIBERA;
+				}
+				break;
+			default:
+			}
+			if ( stadio == LIBERA ) break;
+			final float x;
+			if ( tabella == null ) {
+				rumore = rumore * 1664525 + 1013904223;
+				x = ( rumore >> 8 ) / 8388608f;
+			} else {
+				final int j = fase >>> 32 - BIT_TABELLA;
+				final float t = ( fase & ( 1 << 32 - BIT_TABELLA ) - 1 ) / (float)( 1 << 32 - BIT_TABELLA );
+				x = tabella[ j ] + t * ( tabella[ j + 1 ] - tabella[ j ] );
+			}
+			fase += passo;
+			campioni[ i ] += x * livello * sinistro;
+			campioni[ i + 1 ] += x * livello * destro;
+		}
+		this.stadio[ v ] = stadio;
+		this.fase[ v ] = fase;
+		this.rumore[ v ] = rumore;
+		this.livello[ v ] = livello;
+	}
+
+}
@@ -0,0 +1,115 @@
+package it.unimi.di.j4im.riproduzione;
+
+/*
+ * Copyright 2014 Massimo Santini
+ *
+ * This file is part of j4im.
+ *
+ * j4im is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j4im is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j4im.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+
+/** Il {@link MotoreOscillatori motore a oscillatori} collegato ad una linea audio, per suonare dal vivo.
+ *
+ * <p>
+ * Un thread (demone) calcola i campioni a blocchi di {@value #BLOCCO} frame e li scrive
+ * sulla linea (che ne regola il ritmo); i messaggi ricevuti (come {@link Uscita}) hanno
+ * effetto dal blocco successivo. Il motore è protetto dal proprio lock.
+ * </p>
+ */
+final class OscillatoriDalVivo extends UscitaPianificata {
+
+	/** La frequenza di campionamento. */
+	static final int FREQUENZA = 44100;
+
+	/** Il numero di frame calcolati alla volta. */
+	static final int BLOCCO = 256;
+
+	/** Il motore. */
+	private final MotoreOscillatori motore = new MotoreOscillatori( FREQUENZA );
+
+	/** La linea audio. */
+	private final SourceDataLine linea;
+
+	/** Il thread che calcola i campioni. */
+	private final Thread esecutore;
+
+	/** Se il motore è stato chiuso. */
+	private volatile boolean chiuso;
+
+	/** Apre la linea audio e avvia il thread che calcola i campioni.
+	 *
+	 * @throws LineUnavailableException se la linea audio non è disponibile.
+	 */
+	OscillatoriDalVivo() throws LineUnavailableException {
+		final AudioFormat formato = new AudioFormat( FREQUENZA, 16, 2, true, false );
+		try {
+			linea = AudioSystem.getSourceDataLine( formato );
+		} catch ( IllegalArgumentException e ) {
+			throw (LineUnavailableException)new LineUnavailableException( "Non c'è una linea audio nel formato " + formato ).initCause( e );
+		}
+		linea.open( formato, 16 * BLOCCO );
+		linea.start();
+		esecutore = new Thread( new Runnable() {
+			public void run() {
+				suona();
+			}
+		}, "j4im-oscillatori" );
+		esecutore.setDaemon( true );
+		esecutore.start();
+	}
+
+	/** Il ciclo del thread che calcola i campioni. */
+	private void suona() {
+		final float[] campioni = new float[ 2 * BLOCCO ];
+		final ByteBuffer buffer = ByteBuffer.allocate( 4 * BLOCCO ).order( ByteOrder.LITTLE_ENDIAN );
+		while ( !chiuso ) {
+			synchronized ( motore ) {
+				motore.calcola( campioni, 0, BLOCCO );
+			}
+			buffer.clear();
+			Renderizzatore.campioni( campioni, BLOCCO, buffer );
+			linea.write( buffer.array(), 0, buffer.position() );
+		}
+	}
+
+	/* Il messaggio avrà effetto dal prossimo blocco. */
+	@Override
+	public void invia( final int codice ) {
+		synchronized ( motore ) {
+			motore.invia( codice, motore.posizione() );
+		}
+	}
+
+	/** Ferma il thread che calcola i campioni e chiude la linea. */
+	@Override
+	public void close() {
+		chiuso = true;
+		try {
+			esecutore.join();
+		} catch ( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+		}
+		linea.close();
+	}
+
+}
@@ -1,7 +1,9 @@
 package it.unimi.di.j4im.riproduzione;
 
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
 
 import javax.sound.midi.InvalidMidiDataException;
 import javax.sound.midi.MidiEvent;
@@ -29,9 +31,13 @@ import javax.sound.midi.Track;
  *
  */
 
+import it.unimi.di.j4im.notazione.AnalizzatoreSimboli;
+import it.unimi.di.j4im.notazione.ArchivioSimboli;
+import it.unimi.di.j4im.notazione.Durata;
 import it.unimi.di.j4im.notazione.Nota;
 import it.unimi.di.j4im.notazione.Pausa;
 import it.unimi.di.j4im.notazione.Simbolo;
+import it.unimi.di.j4im.notazione.SimboloArray;
 
 /** Una parte di un {@link Brano brano} musicale.
  * 
@@ -48,48 +54,126 @@ import it.unimi.di.j4im.notazione.Simbolo;
  * {@link #accoda(Pausa)}, che hanno per effetto di aggiungere tali simboli "in fondo"
  * alla parte, in modo che (quando il brano sarà riprodotto) siano suonati di seguito 
  * a tutti i simboli accodati in precedenza (esite un metodo di comodo 
- * {@link #accoda(Simbolo[])} che consente di accodare in sequenza un vettore di simboli). 
+ * {@link #accoda(Simbolo[])} che consente di accodare in sequenza un vettore di simboli, 
+ * e l'analogo {@link #accoda(SimboloArray)} per i simboli in forma compatta). 
  * </p>
  * 
  * <p>Per far si che un gruppo di note (quando il brano sarà riprodotto) suoni a partire 
  * dallo stesso istante (come in un accordo), esse vanno accodate usando metodo 
  * {@link #accodaAccordo(Simbolo[])}; il simbolo accodato alla parte dopo l'inivocazione 
  * di questo medoto (e quindi i successivi) suonerà (una volta che il brano sarà riprodotto)
- * dopo la nota di maggior durata presente nell'accordo.
+ * dopo la nota di maggior durata presente nell'accordo (il metodo {@link #accodaAccordi(Simbolo[][])}
+ * consente di accodare in sequenza un vettore di accordi).
  * </p>
  *
  * 
  * <h3>Dettagli implementativi</h3>
  * 
  * <p>
- * Questa classe si basa su una {@link Track} a cui viene inizialmente
- * accodato uno {@link ShortMessage#PROGRAM_CHANGE} che ne imposta il 
- * canale al valore dato da {@link Sintetizzatore#assegnaCanale(String)}
- * invocato alla creazione dello {@link Strumento} usato alla sua 
- * costruzione.
- * </p>
- * 
- * <p>
- * In seguito, le {@link Nota} accodate vengono tradotte in una coppia
- * di {@link MidiEvent} costituiti rispettivamente da uno {@link ShortMessage#NOTE_ON} 
- * e uno {@link ShortMessage#NOTE_ON} il cui pitch e distanza in tick vengono
+ * Le {@link Nota} accodate vengono tradotte in una coppia di eventi
+ * costituiti rispettivamente da uno {@link ShortMessage#NOTE_ON} 
+ * e uno {@link ShortMessage#NOTE_OFF} il cui pitch e distanza in tick vengono
  * calcolati in base ai valori della nota accodata; l'accodamento di una {@link Pausa}
  * ha il solo effetto di modificare l'ultimo tick della traccia, mentre l'accodamento
- * di un accordo ha l'effetto di accodare una sequenza di {@link MidiEvent} relativi a
- * {@link ShortMessage#NOTE_ON} e {@link ShortMessage#NOTE_ON} i cui tick sono
+ * di un accordo ha l'effetto di accodare una sequenza di eventi relativi a
+ * {@link ShortMessage#NOTE_ON} e {@link ShortMessage#NOTE_OFF} i cui tick sono
  * calcolati in modo da costruire l'effetto polifonico dell'accordo.
  * </p>
  * 
+ * <p>
+ * Gli eventi sono conservati (in ordine di tick) in due vettori di tipi primitivi: 
+ * uno che contiene i tick e l'altro i messaggi (ciascuno codificato in un 
+ * <samp>int</samp> che contiene lo status e i due byte di dati); solo quando il brano 
+ * viene riprodotto, o scritto, la parte viene tradotta nella {@link Track} che ne 
+ * costituisce la rappresentazione MIDI (da quel momento in poi, gli eventi accodati
+ * vengono aggiunti anche alla traccia).
+ * </p>
+ * 
+ * <p>
+ * I messaggi codificati non contengono il canale dello {@link Strumento} della parte,
+ * che può essere riassegnato ad un altro strumento (si veda {@link Strumento#close()}):
+ * il canale viene determinato (ed eventualmente assegnato nuovamente allo strumento)
+ * solo quando la parte viene tradotta nella sua traccia (anche se già costruita, nel 
+ * qual caso ne vengono aggiornati i messaggi), o visitata con un {@link Cursore}.
+ * </p>
+ * 
+ * <p>
+ * Le parti di un brano letto da file (tramite {@link LettoreMidi}) decodificano i 
+ * propri eventi solo al primo accesso; i messaggi che non sono di canale (meta eventi
+ * e messaggi di sistema esclusivo) sono conservati in una lista a parte e i relativi
+ * messaggi codificati contengono (al posto dello status e dei dati) il bit 
+ * {@link #ESTESO} e la loro posizione in tale lista.
+ * </p>
+ * 
+ * <p>
+ * Una parte non è sincronizzata: può essere costruita in un thread diverso da quello
+ * che ha costruito il brano (si veda {@link Brano#componi(java.util.concurrent.ExecutorService, Runnable...)}),
+ * ma non deve essere modificata da più thread contemporaneamente. La sola decodifica
+ * degli eventi letti da file è sincronizzata, per cui parti lette possono essere
+ * visitate contemporaneamente da più thread.
+ * </p>
+ * 
  */
 public class Parte {
 
-	/** Il canale a cui è assegnato lo strumento della parte. */
-	private final int canale;
+	/** Lo strumento della parte (o <samp>null</samp>, per le parti lette da file). */
+	private final Strumento strumento;
+
+	/** Il canale a cui è assegnato lo strumento della parte, all'ultima determinazione (per le parti lette da file, quello del primo evento di canale). */
+	private int canale;
+
+	/** Il canale dei messaggi della traccia, se è stata costruita. */
+	private int canaleTraccia;
+
+	/** Il bit che, in un messaggio codificato, indica un messaggio esteso (ossia un meta evento, o un messaggio di sistema esclusivo). */
+	static final int ESTESO = 1 << 31;
+
+	/** I messaggi estesi (costruita alla lettura del primo di essi). */
+	private List<MidiMessage> estesi;
+
+	/** Il lettore da cui decodificare gli eventi della parte (o <samp>null</samp>, se non ve ne sono da decodificare); 
+	 * la scrittura di <samp>null</samp> al termine della decodifica ne pubblica il risultato agli altri thread. */
+	private volatile LettoreMidi lettore;
+
+	/** La traccia del file e l'intervallo di tick da decodificare. */
+	private int tracciaLetta;
+	private long daLetto, aLetto;
+
+	/** La risoluzione del brano (in ticks per quarto). */
+	private final int risoluzione;
 	
-	/** La {@link Track} usata per rappresentare le note della parte */
-	private final Track track;
+	/** La {@link Track} usata per rappresentare le note della parte (costruita dal metodo {@link #track()}). */
+	private Track track;
+
+	/** I tick degli eventi (in ordine non decrescente). */
+	private long[] tickEventi = new long[ 16 ];
+
+	/** I messaggi degli eventi (codificati come descritto in {@link #messaggio(int)}). */
+	private int[] messaggi = new int[ 16 ];
+
+	/** Il numero di eventi. */
+	private int numeroEventi;
+
+	/** Il numero di bit usati per l'indice di una nota nelle chiavi di ordinamento di un accordo. */
+	private static final int BIT_INDICE = 20;
+
+	/** La maschera dell'indice di una nota nelle chiavi di ordinamento di un accordo. */
+	private static final long MASCHERA_INDICE = ( 1L << BIT_INDICE ) - 1;
+
+	/** Le chiavi di ordinamento delle note di un accordo (durata in ticks e indice); riusate tra un accordo e l'altro. */
+	private long[] chiavi = new long[ 8 ];
+
+	/** I tick e i messaggi degli eventi di un accordo; riusati tra un accordo e l'altro. */
+	private long[] tickAccordo = new long[ 16 ];
+	private int[] messaggiAccordo = new int[ 16 ];
+
+	/** Il brano di cui fa parte. */
+	private final Brano brano;
+
+	/** L'indice della traccia della parte nella sequenza del brano. */
+	private final int traccia;
 	
-	/** Il numero di ticks del prossimo {@link MidiMessage}. */
+	/** Il tick del prossimo evento. */
 	private long ticks;
 	
 	/** Costruisce una nuova parte all'interno del {@link Brano} specificato che verrò riprodotta con lo {@link Strumento} dato.
@@ -99,25 +183,93 @@ public class Parte {
 	 * 
 	 */
 	public Parte( final Brano brano, final Strumento strumento ) {
-		canale = strumento.canale;
-		track = brano.sequence.createTrack();
+		this.strumento = strumento;
+		canale = strumento.canale();
+		this.brano = brano;
+		risoluzione = brano.sequence.getResolution();
+		traccia = brano.registra( this );
 		ticks = 0;
 	}
 
+	/** Costruisce una parte i cui eventi verranno decodificati (al primo accesso) da una traccia di un file.
+	 * 
+	 * @param brano il brano.
+	 * @param lettore il lettore del file.
+	 * @param tracciaLetta la traccia del file.
+	 * @param da il tick (incluso) del primo evento da decodificare.
+	 * @param a il tick (escluso) a cui terminare la decodifica.
+	 */
+	Parte( final Brano brano, final LettoreMidi lettore, final int tracciaLetta, final long da, final long a ) {
+		strumento = null;
+		canale = -1;
+		this.brano = brano;
+		risoluzione = brano.sequence.getResolution();
+		traccia = brano.registra( this );
+		this.lettore = lettore;
+		this.tracciaLetta = tracciaLetta;
+		daLetto = da;
+		aLetto = a;
+	}
+
+	/** Decodifica gli eventi della parte, se è stata letta da un file e non sono ancora stati decodificati.
+	 * 
+	 * @throws IllegalStateException se la traccia del file non è valida.
+	 */
+	private void carica() {
+		if ( lettore != null ) decodifica();
+	}
+
+	private synchronized void decodifica() {
+		if ( lettore == null ) return;
+		try {
+			lettore.decodifica( tracciaLetta, daLetto, aLetto, this );
+		} catch ( RuntimeException e ) {
+			numeroEventi = 0;
+			estesi = null;
+			throw e;
+		}
+		lettore = null;
+	}
+
+	/** Aggiunge in fondo alla parte un evento decodificato da un file.
+	 * 
+	 * @param tick il tick (non minore di quello dell'ultimo evento).
+	 * @param messaggio il messaggio codificato.
+	 */
+	void aggiungiLetto( final long tick, final int messaggio ) {
+		riserva( 1 );
+		tickEventi[ numeroEventi ] = tick;
+		messaggi[ numeroEventi++ ] = messaggio;
+		if ( canale < 0 && messaggio >= 0 ) canale = messaggio & 0x0F;
+	}
+
+	/** Aggiunge in fondo alla parte un messaggio esteso decodificato da un file.
+	 * 
+	 * @param tick il tick (non minore di quello dell'ultimo evento).
+	 * @param messaggio il messaggio.
+	 */
+	void aggiungiEsteso( final long tick, final MidiMessage messaggio ) {
+		if ( estesi == null ) estesi = new ArrayList<MidiMessage>();
+		estesi.add( messaggio );
+		aggiungiLetto( tick, ESTESO | estesi.size() - 1 );
+	}
+
+	/** Termina la decodifica degli eventi da un file.
+	 * 
+	 * @param fine il tick di fine della traccia (da cui verranno accodati i simboli successivi).
+	 */
+	void terminaLettura( final long fine ) {
+		ticks = fine;
+		if ( canale < 0 ) canale = 0;
+	}
+
 	/** Accoda la nota specificata alla parte.
 	 * 
 	 * @param nota la nota.
 	 * 
 	 */
 	public void accoda( final Nota nota ) {
-		final int pitch = nota.pitch();
-		try {
-			track.add( new MidiEvent( new ShortMessage( ShortMessage.NOTE_ON, canale, pitch, nota.intensita() ), ticks ) );
-			ticks += nota.durata().ticks( Brano.RESOLUTION );
-			track.add( new MidiEvent( new ShortMessage( ShortMessage.NOTE_OFF, canale, pitch, 0 ), ticks ) );
-		} catch ( InvalidMidiDataException e ) {
-			throw new IllegalArgumentException( "Nota non valida", e ); // non dovrebbe mai capitare
-		}
+		accodaNota( nota.pitch(), nota.intensita(), nota.durata().ticksEsatti( risoluzione ) );
 	}
 		
 	/** Accoda la pausa specificata alla parte.
@@ -126,7 +278,8 @@ public class Parte {
 	 * 
 	 */
 	public void accoda( final Pausa pausa ) {
-		ticks += pausa.durata().ticks( Brano.RESOLUTION );
+		carica();
+		ticks += pausa.durata().ticksEsatti( risoluzione );
 	}
 
 	/** Accoda il simbolo specificato alla parte.
@@ -150,6 +303,63 @@ public class Parte {
 		for ( Simbolo s : simboli ) accoda( s );
 	}
 
+	/** Accoda (in sequenza) i simboli contenuti in un {@link SimboloArray} alla parte.
+	 *
+	 * <p>I simboli vengono accodati a partire direttamente dai loro codici, senza
+	 * ricostruire le relative note e pause.</p>
+	 *
+	 * @param simboli il vettore di simboli.
+	 *
+	 */
+	public void accoda( final SimboloArray simboli ) {
+		final int n = simboli.lunghezza();
+		for ( int i = 0; i < n; i++ ) accodaCodice( simboli.codice( i ) );
+	}
+
+	/** Accoda (in sequenza) i simboli di una sequenza contenuta in un {@link ArchivioSimboli} alla parte.
+	 *
+	 * <p>I simboli vengono accodati leggendone i codici direttamente dalla memoria
+	 * in cui l'archivio è mappato, senza copiarli né ricostruire le relative note e pause.</p>
+	 *
+	 * @param archivio l'archivio.
+	 * @param sequenza l'indice della sequenza nell'archivio.
+	 *
+	 */
+	public void accoda( final ArchivioSimboli archivio, final int sequenza ) {
+		final int n = archivio.lunghezza( sequenza );
+		for ( int i = 0; i < n; i++ ) accodaCodice( archivio.codice( sequenza, i ) );
+	}
+
+	/** Accoda (in sequenza) i simboli restituiti da un iteratore alla parte.
+	 *
+	 * <p>I simboli vengono accodati man mano che l'iteratore li restituisce, per 
+	 * cui (ad esempio usando un {@link it.unimi.di.j4im.notazione.AnalizzatoreSimboli 
+	 * analizzatore}, o l'iteratore di un {@link java.util.stream.Stream flusso} restituito da 
+	 * {@link Simbolo#stream(java.io.Reader)}) non è necessario conservare tutti
+	 * i simboli in memoria.</p>
+	 *
+	 * @param simboli l'iteratore.
+	 *
+	 */
+	public void accoda( final Iterator<? extends Simbolo> simboli ) {
+		while ( simboli.hasNext() ) accoda( simboli.next() );
+	}
+
+	/** Accoda (in sequenza) i simboli letti da un analizzatore alla parte.
+	 *
+	 * <p>I simboli vengono accodati man mano che l'analizzatore li legge, a partire 
+	 * direttamente dai loro codici (senza costruire le relative note e pause).</p>
+	 *
+	 * @param analizzatore l'analizzatore.
+	 * @throws IllegalArgumentException se il testo letto dall'analizzatore non
+	 *             rispetta il formato consentito.
+	 *
+	 */
+	public void accoda( final AnalizzatoreSimboli analizzatore ) {
+		for ( long codice = analizzatore.prossimoCodice(); codice != AnalizzatoreSimboli.FINE; codice = analizzatore.prossimoCodice() )
+			accodaCodice( codice );
+	}
+
 	/** Accoda un accordo (vettore di {@link Simbolo}) alla parte.
 	 * 
 	 * <p> 
@@ -163,35 +373,331 @@ public class Parte {
 	 * 
 	 */
 	public void accodaAccordo( final Simbolo[] accordo ) {
-		final Simbolo[] simboli = Arrays.copyOf( accordo, accordo.length );
-		Arrays.sort( simboli, new Comparator<Simbolo>() {
-			public int compare( Simbolo p, Simbolo q ) {
-				return p.durata().compareTo( q.durata() );
+		if ( accordo.length == 0 ) return;
+		carica();
+		if ( accordo.length > MASCHERA_INDICE ) throw new IllegalArgumentException( "L'accordo contiene troppi simboli." );
+		riserva( 2 * accordo.length );
+		// ordina le note per durata (a parità di durata, per posizione nell'accordo)
+		if ( chiavi.length < accordo.length ) chiavi = new long[ accordo.length ];
+		long massima = 0;
+		int note = 0;
+		for ( int i = 0; i < accordo.length; i++ ) {
+			final long durata = accordo[ i ].durata().ticksEsatti( risoluzione );
+			if ( durata > massima ) massima = durata;
+			if ( accordo[ i ] instanceof Nota ) chiavi[ note++ ] = durata << BIT_INDICE | i;
+		}
+		Arrays.sort( chiavi, 0, note );
+		if ( tickAccordo.length < 2 * note ) {
+			tickAccordo = new long[ 2 * note ];
+			messaggiAccordo = new int[ 2 * note ];
+		}
+		for ( int j = 0; j < note; j++ ) {
+			final Nota nota = (Nota)accordo[ (int)( chiavi[ j ] & MASCHERA_INDICE ) ];
+			final long fine = ticks + ( chiavi[ j ] >>> BIT_INDICE );
+			tickAccordo[ j ] = ticks;
+			messaggiAccordo[ j ] = messaggio( ShortMessage.NOTE_ON, nota.pitch(), nota.intensita() );
+			tickAccordo[ note + j ] = fine;
+			messaggiAccordo[ note + j ] = messaggio( ShortMessage.NOTE_OFF, nota.pitch(), 0 );
+			indicizza( nota.pitch(), nota.intensita(), ticks, fine );
+		}
+		inserisci( tickAccordo, messaggiAccordo, 2 * note );
+		ticks += massima;
+	}
+
+	/** Accoda (in sequenza) un vettore di accordi alla parte.
+	 * 
+	 * <p>Ciascun accordo viene accodato come da {@link #accodaAccordo(Simbolo[])}; 
+	 * questo metodo è utile, ad esempio, per accodare in un colpo solo un intero 
+	 * schema ritmico di una parte di batteria.</p>
+	 * 
+	 * @param accordi il vettore di accordi.
+	 * 
+	 */
+	public void accodaAccordi( final Simbolo[][] accordi ) {
+		long eventi = 0;
+		for ( Simbolo[] accordo : accordi ) eventi += 2 * accordo.length;
+		if ( eventi < Integer.MAX_VALUE ) riserva( (int)eventi );
+		for ( Simbolo[] accordo : accordi ) accodaAccordo( accordo );
+	}
+
+	/** Accoda un simbolo (dato dal suo codice) alla parte.
+	 *
+	 * @param codice il codice del simbolo.
+	 */
+	private void accodaCodice( final long codice ) {
+		carica();
+		final long ticks = Durata.ticksEsatti( SimboloArray.numeratore( codice ), SimboloArray.denominatore( codice ), risoluzione );
+		if ( SimboloArray.pausa( codice ) )
+			this.ticks += ticks;
+		else
+			accodaNota( SimboloArray.pitch( codice ), SimboloArray.intensita( codice ), ticks );
+	}
+
+	/** Accoda una nota (data dalle sue caratteristiche) alla parte.
+	 *
+	 * @param pitch il pitch.
+	 * @param intensita l'intensità.
+	 * @param durata la durata (in ticks).
+	 */
+	private void accodaNota( final int pitch, final int intensita, final long durata ) {
+		carica();
+		aggiungiEvento( ticks, messaggio( ShortMessage.NOTE_ON, pitch, intensita ) );
+		indicizza( pitch, intensita, ticks, ticks + durata );
+		ticks += durata;
+		aggiungiEvento( ticks, messaggio( ShortMessage.NOTE_OFF, pitch, 0 ) );
+	}
+
+	/** Codifica un messaggio relativo al canale della parte.
+	 *
+	 * <p>Per le parti costruite con uno strumento, il canale del messaggio è 0 (si veda {@link #canaleEventi()}).</p>
+	 *
+	 * @param comando il comando (ad esempio {@link ShortMessage#NOTE_ON}).
+	 * @param dato1 il primo byte di dati.
+	 * @param dato2 il secondo byte di dati.
+	 * @return il messaggio codificato (come descritto in {@link #messaggio(int)}).
+	 */
+	private int messaggio( final int comando, final int dato1, final int dato2 ) {
+		return comando | ( strumento == null ? canale : 0 ) | dato1 << 8 | dato2 << 16;
+	}
+
+	/** Restituisce il canale da aggiungere (in OR) ai messaggi codificati dei suoi eventi.
+	 *
+	 * <p>Per le parti costruite con uno strumento, è il canale assegnato allo strumento
+	 * (che gli viene assegnato nuovamente, se nel frattempo è stato riassegnato); per le
+	 * parti lette da file è 0, dato che i messaggi contengono già il proprio canale.</p>
+	 *
+	 * @return il canale da aggiungere ai messaggi.
+	 */
+	int canaleEventi() {
+		if ( strumento == null ) return 0;
+		return canale = strumento.canale();
+	}
+
+	/** Garantisce che i vettori degli eventi possano contenere un dato numero di eventi ulteriori.
+	 *
+	 * @param ulteriori il numero di eventi ulteriori.
+	 */
+	private void riserva( final int ulteriori ) {
+		if ( numeroEventi + ulteriori > tickEventi.length ) {
+			final int capacita = (int)Math.min( Integer.MAX_VALUE - 8, Math.max( (long)numeroEventi + ulteriori, 2L * tickEventi.length ) );
+			tickEventi = Arrays.copyOf( tickEventi, capacita );
+			messaggi = Arrays.copyOf( messaggi, capacita );
+		}
+	}
+
+	/** Inserisce un gruppo di eventi (ordinati per tick) nella parte, con una sola fusione lineare.
+	 *
+	 * <p>La fusione procede dal fondo dei vettori, per cui (dato che gli eventi accodati
+	 * hanno tipicamente tick non minore di quelli presenti) richiede di norma tempo 
+	 * proporzionale al solo numero di eventi inseriti; come per {@link #aggiungiEvento(long, int)},
+	 * ciascun evento viene posto dopo tutti quelli di tick non maggiore.</p>
+	 *
+	 * @param tick i tick degli eventi (in ordine non decrescente).
+	 * @param messaggio i messaggi codificati.
+	 * @param n il numero di eventi.
+	 */
+	private void inserisci( final long[] tick, final int[] messaggio, final int n ) {
+		riserva( n );
+		int i = numeroEventi - 1, j = n - 1;
+		for ( int k = numeroEventi + n - 1; j >= 0; k-- )
+			if ( i >= 0 && tickEventi[ i ] > tick[ j ] ) {
+				tickEventi[ k ] = tickEventi[ i ];
+				messaggi[ k ] = messaggi[ i-- ];
+			} else {
+				tickEventi[ k ] = tick[ j ];
+				messaggi[ k ] = messaggio[ j-- ];
 			}
-		} );
+		numeroEventi += n;
+		if ( track != null )
+			for ( int k = 0; k < n; k++ ) track.add( evento( tick[ k ], messaggio[ k ], canaleTraccia ) );
+	}
+
+	/** Aggiunge un evento alla parte, mantenendo gli eventi in ordine di tick.
+	 *
+	 * <p>Come per {@link Track#add(MidiEvent)}, l'evento viene posto dopo tutti quelli
+	 * di tick non maggiore; se la traccia è già stata costruita, l'evento vi viene
+	 * aggiunto.</p>
+	 *
+	 * @param tick il tick.
+	 * @param messaggio il messaggio codificato.
+	 */
+	private void aggiungiEvento( final long tick, final int messaggio ) {
+		riserva( 1 );
+		int i = numeroEventi;
+		while ( i > 0 && tickEventi[ i - 1 ] > tick ) i--;
+		if ( i < numeroEventi ) {
+			System.arraycopy( tickEventi, i, tickEventi, i + 1, numeroEventi - i );
+			System.arraycopy( messaggi, i, messaggi, i + 1, numeroEventi - i );
+		}
+		tickEventi[ i ] = tick;
+		messaggi[ i ] = messaggio;
+		numeroEventi++;
+		if ( track != null ) track.add( evento( tick, messaggio, canaleTraccia ) );
+	}
+
+	/** Aggiunge una nota all'{@link IndiceTemporale} del brano (se è stato costruito).
+	 *
+	 * @param pitch il pitch.
+	 * @param intensita l'intensità.
+	 * @param inizio il tick d'inizio.
+	 * @param fine il tick di fine.
+	 */
+	private void indicizza( final int pitch, final int intensita, final long inizio, final long fine ) {
+		final IndiceTemporale indice = brano.indice;
+		if ( indice != null ) indice.aggiungi( traccia, canale, pitch, intensita, inizio, fine );
+	}
+
+	/** Restituisce il numero di eventi della parte.
+	 *
+	 * @return il numero di eventi.
+	 */
+	int numeroEventi() {
+		carica();
+		return numeroEventi;
+	}
+
+	/** Restituisce il tick di fine della parte (da cui verrà accodato il prossimo simbolo).
+	 *
+	 * @return il tick di fine.
+	 */
+	long fine() {
+		carica();
+		return ticks;
+	}
+
+	/** Restituisce l'indice del primo evento di tick non minore di quello dato (tramite una ricerca binaria).
+	 *
+	 * @param tick il tick.
+	 * @return l'indice del primo evento di tick non minore di <samp>tick</samp> (o il numero di eventi, se non ve ne sono).
+	 */
+	int primoEvento( final long tick ) {
+		carica();
+		int basso = 0, alto = numeroEventi;
+		while ( basso < alto ) {
+			final int medio = ( basso + alto ) >>> 1;
+			if ( tickEventi[ medio ] < tick ) basso = medio + 1;
+			else alto = medio;
+		}
+		return basso;
+	}
+
+	/** Restituisce un cursore sugli eventi della parte.
+	 *
+	 * @return il cursore.
+	 * @see Cursore
+	 */
+	public Cursore cursore() {
+		return cursore( Long.MIN_VALUE, Long.MAX_VALUE );
+	}
+
+	/** Restituisce un cursore sugli eventi della parte compresi in un intervallo di tick.
+	 *
+	 * @param da il tick (incluso) da cui iniziare la visita.
+	 * @param a il tick (escluso) a cui terminare la visita.
+	 * @return il cursore.
+	 * @throws IllegalArgumentException se <samp>a</samp> è minore di <samp>da</samp>.
+	 * @see Cursore
+	 */
+	public Cursore cursore( final long da, final long a ) {
+		return new Cursore( new Parte[] { this }, da, a, Cursore.TUTTI_I_CANALI );
+	}
+
+	/** Restituisce il tick di un evento.
+	 *
+	 * <p>Questo metodo (come {@link #messaggio(int)}) presuppone che gli eventi siano
+	 * già stati decodificati, ad esempio da una precedente invocazione di {@link #numeroEventi()}.</p>
+	 *
+	 * @param i l'indice dell'evento.
+	 * @return il tick.
+	 */
+	long tick( final int i ) {
+		return tickEventi[ i ];
+	}
+
+	/** Restituisce il messaggio di un evento, codificato in un intero che contiene
+	 * lo status (comando e canale) nel byte meno significativo, seguito dai due byte di dati
+	 * (o, per i messaggi estesi, il bit {@link #ESTESO} e l'indice da passare a {@link #esteso(int)}).
+	 *
+	 * <p>Il canale dei messaggi che non sono estesi va combinato (in OR) con quello 
+	 * restituito da {@link #canaleEventi()}.</p>
+	 *
+	 * @param i l'indice dell'evento.
+	 * @return il messaggio codificato.
+	 */
+	int messaggio( final int i ) {
+		return messaggi[ i ];
+	}
+
+	/** Restituisce il messaggio esteso corrispondente ad un messaggio codificato.
+	 *
+	 * @param m il messaggio codificato (che deve avere il bit {@link #ESTESO}).
+	 * @return il messaggio esteso.
+	 */
+	MidiMessage esteso( final int m ) {
+		return estesi.get( m & ~ESTESO );
+	}
+
+	/** Costruisce il {@link MidiEvent} corrispondente ad un tick e messaggio codificato.
+	 *
+	 * @param tick il tick.
+	 * @param m il messaggio codificato.
+	 * @param c il canale da aggiungere al messaggio (si veda {@link #canaleEventi()}).
+	 * @return l'evento.
+	 */
+	private MidiEvent evento( final long tick, final int m, final int c ) {
+		if ( m < 0 ) return new MidiEvent( esteso( m ), tick );
 		try {
-			for ( Simbolo s : simboli )
-				if ( s instanceof Nota )
-					track.add( new MidiEvent( new ShortMessage( ShortMessage.NOTE_ON, canale, ((Nota)s).pitch(), ((Nota)s).intensita() ), ticks ) );
-			for ( Simbolo s : simboli )
-				if ( s instanceof Nota )
-					track.add( new MidiEvent( new ShortMessage( ShortMessage.NOTE_OFF, canale, ((Nota)s).pitch(), 0 ), ticks + ((Nota)s).durata().ticks( Brano.RESOLUTION ) ) );
-			ticks += simboli[ simboli.length - 1 ].durata().ticks( Brano.RESOLUTION );
+			return new MidiEvent( new ShortMessage( ( m | c ) & 0xFF, m >>> 8 & 0xFF, m >>> 16 & 0xFF ), tick );
 		} catch ( InvalidMidiDataException e ) {
 			throw new IllegalArgumentException( "Nota non valida", e ); // non dovrebbe mai capitare
 		}
 	}
 
-	/** Restituisce gli eventi contenuti nella sequenza
+	/** Restituisce la {@link Track} che rappresenta la parte, costruendola (nella sequenza del brano) se necessario.
+	 *
+	 * <p>Questo metodo va invocato (tramite {@link Brano#sequenza()}) per tutte le parti, 
+	 * nell'ordine in cui sono state create, in modo che la traccia della parte occupi 
+	 * la posizione data da {@link #traccia}. Se la traccia è già stata costruita, ma il
+	 * canale dello strumento è cambiato, i suoi messaggi vengono spostati sul nuovo canale.</p>
+	 *
+	 * @return la traccia.
+	 */
+	Track track() {
+		carica();
+		final int c = canaleEventi();
+		if ( track == null ) {
+			track = brano.sequence.createTrack();
+			for ( int i = 0; i < numeroEventi; i++ ) track.add( evento( tickEventi[ i ], messaggi[ i ], c ) );
+		} else if ( c != canaleTraccia )
+			for ( int i = 0; i < track.size(); i++ ) {
+				final MidiMessage m = track.get( i ).getMessage();
+				if ( m instanceof ShortMessage ) {
+					final ShortMessage s = (ShortMessage)m;
+					try {
+						s.setMessage( s.getCommand(), c, s.getData1(), s.getData2() );
+					} catch ( InvalidMidiDataException e ) {
+						throw new IllegalArgumentException( "Nota non valida", e ); // non dovrebbe mai capitare
+					}
+				}
+			}
+		canaleTraccia = c;
+		return track;
+	}
+
+	/** Restituisce gli eventi contenuti nella parte
+	 * 
+	 * <p>Questo metodo costruisce un nuovo vettore di eventi ad ogni invocazione; 
+	 * per visitare gli eventi senza copiarli si usi {@link #cursore()}.</p>
 	 * 
-	 * @return L'elenco di eventi contenuti nella sequenza.
+	 * @return L'elenco di eventi contenuti nella parte.
 	 * 
 	 */
 	MidiEvent[] eventi() {
-		int n = track.size();
-		MidiEvent[] eventi = new MidiEvent[ n ];
-		for ( int i = 0; i < n; i++ )
-			eventi[ i ] = track.get( i );
+		carica();
+		final int c = canaleEventi();
+		final MidiEvent[] eventi = new MidiEvent[ numeroEventi ];
+		for ( int i = 0; i < numeroEventi; i++ )
+			eventi[ i ] = evento( tickEventi[ i ], messaggi[ i ], c );
 		return eventi;
 	}
 	
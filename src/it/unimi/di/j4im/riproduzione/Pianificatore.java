@@ -0,0 +1,290 @@
+package it.unimi.di.j4im.riproduzione;
+
+/*
+ * Copyright 2014 Massimo Santini
+ *
+ * This file is part of j4im.
+ *
+ * j4im is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j4im is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j4im.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/** Un pianificatore di azioni (tipicamente, l'inizio o la fine di una nota) da eseguire ad istanti precisi.
+ *
+ * <p>
+ * Gli istanti sono espressi come scadenze assolute, nella scala di {@link System#nanoTime()}:
+ * le azioni pianificate con {@link #pianifica(long, Runnable)} sono eseguite (in ordine di
+ * scadenza e, a parità di scadenza, di pianificazione) da un solo thread (demone), creato
+ * alla prima pianificazione; il metodo {@link #attendi(long)} consente invece al thread
+ * corrente di attendere una scadenza. In entrambi i casi l'attesa avviene sospendendo
+ * il thread (con {@link LockSupport#parkNanos(long)}) fino a poco prima della scadenza
+ * e attendendo attivamente gli ultimi {@link #ATTESA_ATTIVA} nanosecondi, in modo da
+ * non dipendere dalla granularità del timer del sistema operativo.
+ * </p>
+ *
+ * <p>
+ * Per suonare una sequenza di note senza accumulare ritardi, ciascun thread dispone
+ * di una propria <em>linea temporale</em>: il metodo {@link #avanza(long)} restituisce
+ * la scadenza a cui deve iniziare il prossimo evento del thread e sposta la linea in
+ * avanti della sua durata, per cui le scadenze successive dipendono solo dalla somma
+ * delle durate (e non dal tempo impiegato ad eseguire le azioni, o dalle imprecisioni
+ * delle attese); se il thread resta indietro di più di {@link #RITARDO_MASSIMO}
+ * nanosecondi (ad esempio perché ha smesso di suonare per un po'), la sua linea viene
+ * riallineata all'istante corrente.
+ * </p>
+ *
+ * <p>
+ * Il pianificatore misura lo scarto (ritardo) tra la scadenza e l'istante effettivo di
+ * esecuzione di ciascuna azione; tali misure sono riassunte dai metodi {@link #numeroAzioni()},
+ * {@link #ritardoMedio()} e {@link #ritardoMassimo()}.
+ * </p>
+ */
+public final class Pianificatore {
+
+	/** Il numero di nanosecondi, prima della scadenza, in cui l'attesa diventa attiva. */
+	public static final long ATTESA_ATTIVA = 200_000;
+
+	/** Il ritardo (in nanosecondi) oltre al quale la linea temporale di un thread viene riallineata all'istante corrente. */
+	public static final long RITARDO_MASSIMO = 50_000_000;
+
+	/** Un'azione pianificata. */
+	private static final class Azione implements Comparable<Azione> {
+		final long scadenza;
+		final long numero;
+		final Runnable azione;
+
+		Azione( final long scadenza, final long numero, final Runnable azione ) {
+			this.scadenza = scadenza;
+			this.numero = numero;
+			this.azione = azione;
+		}
+
+		@Override
+		public int compareTo( final Azione altra ) {
+			final int c = Long.compare( scadenza - altra.scadenza, 0 ); // robusto rispetto al traboccamento di nanoTime
+			return c != 0 ? c : Long.compare( numero, altra.numero );
+		}
+	}
+
+	/** Il lock che protegge la coda e lo stato del pianificatore. */
+	private final ReentrantLock lock = new ReentrantLock();
+	/** Segnalata quando cambia la prima azione della coda, o il pianificatore viene chiuso. */
+	private final Condition cambiata = lock.newCondition();
+	/** Segnalata quando la coda si svuota. */
+	private final Condition vuota = lock.newCondition();
+	/** Le azioni pianificate. */
+	private final PriorityQueue<Azione> coda = new PriorityQueue<Azione>();
+	/** Il numero di azioni pianificate (usato per ordinare le azioni di pari scadenza). */
+	private long pianificate;
+	/** Se è in esecuzione un'azione. */
+	private boolean inEsecuzione;
+	/** Se il pianificatore è stato chiuso. */
+	private boolean chiuso;
+	/** Il thread che esegue le azioni (o <samp>null</samp>, se non è ancora stato creato). */
+	private Thread esecutore;
+
+	/** Le linee temporali dei thread. */
+	private final ThreadLocal<long[]> linea = new ThreadLocal<long[]>() {
+		@Override
+		protected long[] initialValue() {
+			return new long[] { System.nanoTime() };
+		}
+	};
+
+	/** Il numero di azioni eseguite, la somma e il massimo dei loro ritardi (protetti da {@link #lock}). */
+	private long azioni, sommaRitardi, massimoRitardo;
+
+	/** Pianifica un'azione.
+	 *
+	 * @param scadenza la scadenza (nella scala di {@link System#nanoTime()}).
+	 * @param azione l'azione.
+	 * @throws IllegalStateException se il pianificatore è stato chiuso.
+	 */
+	public void pianifica( final long scadenza, final Runnable azione ) {
+		lock.lock();
+		try {
+			if ( chiuso ) throw new IllegalStateException( "Il pianificatore è stato chiuso." );
+			final Azione a = new Azione( scadenza, pianificate++, azione );
+			coda.add( a );
+			if ( esecutore == null ) {
+				esecutore = new Thread( new Runnable() {
+					public void run() {
+						esegui();
+					}
+				}, "j4im-pianificatore" );
+				esecutore.setDaemon( true );
+				esecutore.start();
+			} else if ( coda.peek() == a ) cambiata.signal();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/** Il ciclo del thread che esegue le azioni. */
+	private void esegui() {
+		for (;;) {
+			final Azione a;
+			lock.lock();
+			try {
+				for (;;) {
+					if ( coda.isEmpty() ) {
+						vuota.signalAll();
+						if ( chiuso ) return;
+						cambiata.awaitUninterruptibly();
+						continue;
+					}
+					final long resto = coda.peek().scadenza - System.nanoTime();
+					if ( resto <= ATTESA_ATTIVA ) break;
+					try {
+						cambiata.awaitNanos( resto - ATTESA_ATTIVA );
+					} catch ( InterruptedException ignora ) {} // il thread non viene mai interrotto
+				}
+				a = coda.poll();
+				inEsecuzione = true;
+			} finally {
+				lock.unlock();
+			}
+			attendi( a.scadenza );
+			final long ritardo = System.nanoTime() - a.scadenza;
+			try {
+				a.azione.run();
+			} catch ( Throwable t ) {
+				Thread.currentThread().getUncaughtExceptionHandler().uncaughtException( Thread.currentThread(), t );
+			}
+			lock.lock();
+			try {
+				inEsecuzione = false;
+				azioni++;
+				sommaRitardi += ritardo;
+				if ( ritardo > massimoRitardo ) massimoRitardo = ritardo;
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	/** Attende (nel thread corrente) che tutte le azioni pianificate siano state eseguite. */
+	public void svuota() {
+		lock.lock();
+		try {
+			while ( !coda.isEmpty() || inEsecuzione ) vuota.awaitUninterruptibly();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/** Chiude il pianificatore, dopo aver atteso che tutte le azioni pianificate siano state eseguite.
+	 *
+	 * <p>Dopo la chiusura non è più possibile pianificare azioni.</p>
+	 */
+	public void chiudi() {
+		svuota();
+		lock.lock();
+		try {
+			chiuso = true;
+			cambiata.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/** Restituisce la scadenza del prossimo evento del thread corrente e sposta in avanti la sua linea temporale.
+	 *
+	 * @param durata la durata (in nanosecondi) dell'evento.
+	 * @return la scadenza a cui l'evento deve iniziare (nella scala di {@link System#nanoTime()}).
+	 */
+	public long avanza( final long durata ) {
+		final long[] l = linea.get();
+		final long adesso = System.nanoTime();
+		if ( adesso - l[ 0 ] > RITARDO_MASSIMO ) l[ 0 ] = adesso;
+		final long inizio = l[ 0 ];
+		l[ 0 ] += durata;
+		return inizio;
+	}
+
+	/** Riallinea la linea temporale del thread corrente all'istante corrente. */
+	public void riallinea() {
+		linea.get()[ 0 ] = System.nanoTime();
+	}
+
+	/** Attende (nel thread corrente) una scadenza.
+	 *
+	 * <p>Il thread viene sospeso fino a {@link #ATTESA_ATTIVA} nanosecondi prima della scadenza,
+	 * quindi attende attivamente; se il thread viene interrotto, l'attesa termina (lasciando
+	 * impostato lo stato di interruzione).</p>
+	 *
+	 * @param scadenza la scadenza (nella scala di {@link System#nanoTime()}).
+	 */
+	public static void attendi( final long scadenza ) {
+		for ( long resto; ( resto = scadenza - System.nanoTime() ) > 0; ) {
+			if ( Thread.currentThread().isInterrupted() ) return;
+			if ( resto > ATTESA_ATTIVA ) LockSupport.parkNanos( resto - ATTESA_ATTIVA );
+		}
+	}
+
+	/** Restituisce il numero di azioni eseguite.
+	 *
+	 * @return il numero di azioni.
+	 */
+	public long numeroAzioni() {
+		lock.lock();
+		try {
+			return azioni;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/** Restituisce il ritardo medio (in nanosecondi) con cui sono state eseguite le azioni.
+	 *
+	 * @return il ritardo medio (0, se non sono state eseguite azioni).
+	 */
+	public double ritardoMedio() {
+		lock.lock();
+		try {
+			return azioni == 0 ? 0 : (double)sommaRitardi / azioni;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/** Restituisce il massimo ritardo (in nanosecondi) con cui è stata eseguita un'azione.
+	 *
+	 * @return il massimo ritardo.
+	 */
+	public long ritardoMassimo() {
+		lock.lock();
+		try {
+			return massimoRitardo;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/** Azzera le misure dei ritardi. */
+	public void azzeraMisure() {
+		lock.lock();
+		try {
+			azioni = sommaRitardi = massimoRitardo = 0;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+}
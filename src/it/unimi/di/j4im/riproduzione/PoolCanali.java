@@ -0,0 +1,155 @@
+package it.unimi.di.j4im.riproduzione;
+
+/*
+ * Copyright 2014 Massimo Santini
+ *
+ * This file is part of j4im.
+ *
+ * j4im is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j4im is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j4im.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** Un insieme di canali (del sintetizzatore) da assegnare agli strumenti.
+ *
+ * <p>
+ * Ciascun canale è assegnato al più ad un <em>proprietario</em> (tipicamente, uno
+ * {@link Strumento}); un proprietario può rilasciare il
+ * proprio canale ({@link #rilascia(Object)}), che diventa così disponibile per un
+ * nuovo proprietario. Quando tutti i canali sono assegnati, {@link #acquisisci(Object)}
+ * sottrae il canale al proprietario che l'ha usato meno recentemente (un uso è
+ * un'acquisizione, o un'invocazione di {@link #canale(Object)}); il proprietario
+ * derubato può in seguito acquisire un nuovo canale. Un canale può anche essere
+ * riservato ({@link #riserva()}): in tal caso non ha proprietario e non viene 
+ * mai più assegnato. Tutte le operazioni richiedono tempo costante.
+ * </p>
+ *
+ * <p>
+ * I canali liberi sono assegnati in ordine crescente di indice, per cui, finché non
+ * vengono rilasciati canali, l'assegnazione coincide con quella sequenziale.
+ * </p>
+ *
+ * <p>Un insieme di canali non è sincronizzato.</p>
+ */
+final class PoolCanali {
+
+	/** Il numero di canali. */
+	private final int numeroCanali;
+
+	/** I canali liberi. */
+	private final BitSet liberi = new BitSet();
+
+	/** I canali assegnati, indicizzati per proprietario (in ordine di uso, dal meno recente). */
+	private final LinkedHashMap<Object,Integer> assegnati = new LinkedHashMap<Object,Integer>( 32, .75f, true );
+
+	/** Costruisce un insieme di canali.
+	 *
+	 * @param numeroCanali il numero di canali (numerati da 0).
+	 * @param riservati i canali che non devono mai essere assegnati.
+	 * @throws IllegalArgumentException se non resta alcun canale da assegnare.
+	 */
+	PoolCanali( final int numeroCanali, final int... riservati ) {
+		this.numeroCanali = numeroCanali;
+		liberi.set( 0, numeroCanali );
+		for ( int c : riservati ) if ( c < numeroCanali ) liberi.clear( c );
+		if ( liberi.isEmpty() ) throw new IllegalArgumentException( "Non ci sono canali da assegnare." );
+	}
+
+	/** Restituisce il canale assegnato ad un proprietario, registrandone l'uso.
+	 *
+	 * @param proprietario il proprietario.
+	 * @return il canale, o -1 se al proprietario non è assegnato alcun canale.
+	 */
+	int canale( final Object proprietario ) {
+		final Integer c = assegnati.get( proprietario );
+		return c == null ? -1 : c.intValue();
+	}
+
+	/** Assegna un canale ad un proprietario.
+	 *
+	 * <p>Se al proprietario è già assegnato un canale, ne registra l'uso e lo restituisce; altrimenti gli assegna
+	 * il canale libero di indice minimo o, se non ve ne sono, quello usato meno recentemente.</p>
+	 *
+	 * @param proprietario il proprietario.
+	 * @return il canale, o -1 se tutti i canali sono riservati.
+	 */
+	int acquisisci( final Object proprietario ) {
+		final Integer assegnato = assegnati.get( proprietario );
+		if ( assegnato != null ) return assegnato.intValue();
+		final int c = prendi();
+		if ( c >= 0 ) assegnati.put( proprietario, Integer.valueOf( c ) );
+		return c;
+	}
+
+	/** Riserva un canale, che non verrà più assegnato ad alcun proprietario.
+	 *
+	 * <p>Il canale riservato è quello libero di indice minimo o, se non ve ne sono, quello usato meno recentemente.</p>
+	 *
+	 * @return il canale, o -1 se tutti i canali sono riservati.
+	 */
+	int riserva() {
+		return prendi();
+	}
+
+	/** Toglie dai canali disponibili quello libero di indice minimo o, se non ve ne sono, quello usato meno recentemente.
+	 *
+	 * @return il canale, o -1 se tutti i canali sono riservati.
+	 */
+	private int prendi() {
+		final int c = liberi.nextSetBit( 0 );
+		if ( c >= 0 ) {
+			liberi.clear( c );
+			return c;
+		}
+		if ( assegnati.isEmpty() ) return -1;
+		final Iterator<Map.Entry<Object,Integer>> meno = assegnati.entrySet().iterator();
+		final int sottratto = meno.next().getValue().intValue();
+		meno.remove();
+		return sottratto;
+	}
+
+	/** Rilascia il canale assegnato ad un proprietario.
+	 *
+	 * @param proprietario il proprietario.
+	 * @return <samp>true</samp> se al proprietario era assegnato un canale.
+	 */
+	boolean rilascia( final Object proprietario ) {
+		final Integer c = assegnati.remove( proprietario );
+		if ( c == null ) return false;
+		liberi.set( c.intValue() );
+		return true;
+	}
+
+	/** Restituisce <samp>true</samp> se un canale non è libero (ossia è assegnato ad un proprietario, o riservato).
+	 *
+	 * @param canale il canale.
+	 * @return se il canale non è libero (<samp>false</samp> se non esiste).
+	 */
+	boolean assegnato( final int canale ) {
+		return canale >= 0 && canale < numeroCanali && ! liberi.get( canale );
+	}
+
+	/** Restituisce il numero di canali liberi.
+	 *
+	 * @return il numero di canali liberi.
+	 */
+	int numeroLiberi() {
+		return liberi.cardinality();
+	}
+
+}
@@ -0,0 +1,393 @@
+package it.unimi.di.j4im.riproduzione;
+
+/*
+ * Copyright 2014 Massimo Santini
+ *
+ * This file is part of j4im.
+ *
+ * j4im is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j4im is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j4im.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+
+import javax.sound.midi.ShortMessage;
+
+/** Un renderizzatore, che trasforma un {@link Brano brano} in un file audio (WAV) senza riprodurlo.
+ *
+ * <p>
+ * A differenza della riproduzione (che procede in tempo reale), la sintesi avviene
+ * in differita, tanto velocemente quanto lo consente il processore: gli eventi sono
+ * letti direttamente dalle parti del brano (tramite un {@link Cursore}), trasformati
+ * in frame (ossia in istanti espressi in campioni) tenendo conto del numero di quarti
+ * al minuto del {@link Sintetizzatore} e degli eventuali cambi di tempo contenuti
+ * nelle parti, ed inviati ad un {@link MotoreAudio motore di sintesi} a blocchi di
+ * {@value #BLOCCO} frame; i campioni prodotti sono scritti (stereo, a 16 bit) su di
+ * un {@link WritableByteChannel} nel formato WAV. Gli strumenti sono quelli assegnati
+ * ai canali dal {@link Sintetizzatore} (che non viene però acceso).
+ * </p>
+ *
+ * <p>
+ * Un solo motore di sintesi impegna un solo processore; per sfruttarne di più, il
+ * metodo {@link #renderizza(Brano, ExecutorService, float[], WritableByteChannel)} sintetizza
+ * in parallelo le singole parti (con motori distinti) e quindi le mescola.
+ * </p>
+ *
+ * <p>
+ * Al termine dell'ultima parte del brano vengono aggiunti alcuni millisecondi (la
+ * <em>coda</em>) per consentire alle ultime note di estinguersi.
+ * </p>
+ *
+ * <p>
+ * Il motore di sintesi (si veda {@link Motore}) può essere il sintetizzatore software
+ * del JDK, che a partire da Java 9 richiede che la JVM sia avviata con l'opzione 
+ * <samp>--add-exports java.desktop/com.sun.media.sound=ALL-UNNAMED</samp>, o il motore leggero
+ * basato su oscillatori, che non ha requisiti. Se il motore è quello di default e il
+ * sintetizzatore di sistema non è disponibile, il renderizzatore usa gli oscillatori
+ * (come il {@link Sintetizzatore} quando suona dal vivo); se invece il sintetizzatore
+ * di sistema è stato richiesto esplicitamente, la sintesi solleva
+ * un'{@link UnsupportedOperationException}.
+ * </p>
+ */
+public final class Renderizzatore {
+
+	/** La frequenza di campionamento di default. */
+	public static final int FREQUENZA_DEFAULT = 44100;
+
+	/** La durata (in millisecondi) di default della coda. */
+	public static final int CODA_DEFAULT = 1000;
+
+	/** Il numero di frame calcolati alla volta da un motore di sintesi. */
+	static final int BLOCCO = 4096;
+
+	/** Il numero di frame scritti alla volta (e, nella sintesi in parallelo, calcolati da ciascun motore prima di essere mescolati). */
+	static final int SEGMENTO = 16 * BLOCCO;
+
+	/** La lunghezza dell'intestazione di un file WAV. */
+	private static final int INTESTAZIONE = 44;
+
+	/** La frequenza di campionamento. */
+	private final int frequenza;
+
+	/** La durata (in millisecondi) della coda. */
+	private final int coda;
+
+	/** Il motore di sintesi (che diventa {@link Motore#OSCILLATORI} se quello di default non è disponibile). */
+	private volatile Motore motore;
+
+	/** Se il motore è quello di default, per cui si può ripiegare sugli oscillatori. */
+	private final boolean ripiego;
+
+	/** Costruisce un renderizzatore con la frequenza di campionamento, la coda e il motore di default. */
+	public Renderizzatore() {
+		this( FREQUENZA_DEFAULT, CODA_DEFAULT );
+	}
+
+	/** Costruisce un renderizzatore col motore di default (si veda {@link Motore#predefinito()}).
+	 *
+	 * <p>Se il motore di default è il sintetizzatore di sistema, ma questo non è disponibile
+	 * (ad esempio perché la JVM non è stata avviata con l'opzione <samp>--add-exports</samp>),
+	 * la sintesi usa il motore a oscillatori.</p>
+	 *
+	 * @param frequenza la frequenza di campionamento.
+	 * @param coda la durata (in millisecondi) della coda.
+	 * @throws IllegalArgumentException se la frequenza non è positiva, o la coda è negativa.
+	 */
+	public Renderizzatore( final int frequenza, final int coda ) {
+		this( frequenza, coda, Motore.predefinito(), true );
+	}
+
+	/** Costruisce un renderizzatore.
+	 *
+	 * @param frequenza la frequenza di campionamento.
+	 * @param coda la durata (in millisecondi) della coda.
+	 * @param motore il motore di sintesi.
+	 * @throws IllegalArgumentException se la frequenza non è positiva, o la coda è negativa.
+	 */
+	public Renderizzatore( final int frequenza, final int coda, final Motore motore ) {
+		this( frequenza, coda, motore, false );
+	}
+
+	/** Costruisce un renderizzatore.
+	 *
+	 * @param frequenza la frequenza di campionamento.
+	 * @param coda la durata (in millisecondi) della coda.
+	 * @param motore il motore di sintesi.
+	 * @param ripiego se, quando il motore non è disponibile, si deve usare quello a oscillatori.
+	 * @throws IllegalArgumentException se la frequenza non è positiva, o la coda è negativa.
+	 */
+	private Renderizzatore( final int frequenza, final int coda, final Motore motore, final boolean ripiego ) {
+		if ( frequenza <= 0 ) throw new IllegalArgumentException( "La frequenza di campionamento dev'essere positiva." );
+		if ( coda < 0 ) throw new IllegalArgumentException( "La coda non può essere negativa." );
+		this.frequenza = frequenza;
+		this.coda = coda;
+		this.motore = motore;
+		this.ripiego = ripiego;
+	}
+
+	/** Restituisce la frequenza di campionamento.
+	 *
+	 * @return la frequenza di campionamento.
+	 */
+	public int frequenza() {
+		return frequenza;
+	}
+
+	/** Renderizza un brano in un file WAV.
+	 *
+	 * @param brano il brano.
+	 * @param path il percorso del file.
+	 * @throws IOException se ci sono errori di I/O.
+	 * @throws UnsupportedOperationException se il motore di sintesi non è disponibile.
+	 */
+	public void renderizza( final Brano brano, final String path ) throws IOException {
+		try ( FileChannel canale = FileChannel.open( Paths.get( path ), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE ) ) {
+			renderizza( brano, canale );
+		}
+	}
+
+	/** Renderizza un brano, nel formato WAV, su di un canale.
+	 *
+	 * @param brano il brano.
+	 * @param canale il canale (che non viene chiuso).
+	 * @throws IOException se ci sono errori di I/O, o se il brano è troppo lungo per un file WAV.
+	 * @throws UnsupportedOperationException se il motore di sintesi non è disponibile.
+	 */
+	public void renderizza( final Brano brano, final WritableByteChannel canale ) throws IOException {
+		final Parte[] parti = brano.parti();
+		final MappaTempi tempi = new MappaTempi( parti, brano.sequence.getResolution(), Sintetizzatore.bpm() );
+		final long frame = frame( parti, tempi );
+		final ByteBuffer buffer = ByteBuffer.allocate( INTESTAZIONE + 4 * SEGMENTO ).order( ByteOrder.LITTLE_ENDIAN );
+		intestazione( buffer, frame );
+		try ( Flusso flusso = new Flusso( parti, tempi ) ) {
+			for ( long inizio = 0; inizio < frame; inizio += SEGMENTO ) {
+				final int n = (int)Math.min( SEGMENTO, frame - inizio );
+				flusso.calcola( inizio, n );
+				campioni( flusso.campioni, n, buffer );
+				scrivi( buffer, canale );
+			}
+		}
+		scrivi( buffer, canale );
+	}
+
+	/** Renderizza in parallelo le parti di un brano e le mescola, nel formato WAV, su di un canale.
+	 *
+	 * @param brano il brano.
+	 * @param esecutore l'esecutore.
+	 * @param canale il canale (che non viene chiuso).
+	 * @throws IOException se ci sono errori di I/O, o se il brano è troppo lungo per un file WAV.
+	 * @throws InterruptedException se il thread viene interrotto durante la sintesi.
+	 * @throws UnsupportedOperationException se il motore di sintesi non è disponibile.
+	 * @see #renderizza(Brano, ExecutorService, float[], WritableByteChannel)
+	 */
+	public void renderizza( final Brano brano, final ExecutorService esecutore, final WritableByteChannel canale ) throws IOException, InterruptedException {
+		renderizza( brano, esecutore, null, canale );
+	}
+
+	/** Renderizza in parallelo le parti di un brano e le mescola (con un guadagno per ciascuna parte), nel formato WAV, su di un canale.
+	 *
+	 * <p>Ciascuna parte viene sintetizzata da un proprio motore (per cui l'esito può differire
+	 * leggermente da quello di {@link #renderizza(Brano, WritableByteChannel)}, ad esempio
+	 * nella polifonia massima, o negli effetti come il riverbero); i motori calcolano a turno 
+	 * un segmento di {@value #SEGMENTO} frame in parallelo (usando l'esecutore dato, come
+	 * {@link Brano#componi(ExecutorService, Runnable...)}), quindi i segmenti vengono moltiplicati
+	 * per i rispettivi guadagni, sommati e scritti sul canale. Il tempo di sintesi diminuisce 
+	 * quindi (fin quasi proporzionalmente) al crescere del numero di thread dell'esecutore, 
+	 * fino al numero di parti.</p>
+	 *
+	 * @param brano il brano.
+	 * @param esecutore l'esecutore.
+	 * @param guadagni i guadagni delle parti (nell'ordine in cui sono state create), o <samp>null</samp> per non modificarne il volume.
+	 * @param canale il canale (che non viene chiuso).
+	 * @throws IOException se ci sono errori di I/O, o se il brano è troppo lungo per un file WAV.
+	 * @throws InterruptedException se il thread viene interrotto durante la sintesi.
+	 * @throws IllegalArgumentException se il numero di guadagni è diverso dal numero di parti.
+	 * @throws UnsupportedOperationException se il motore di sintesi non è disponibile.
+	 */
+	public void renderizza( final Brano brano, final ExecutorService esecutore, final float[] guadagni, final WritableByteChannel canale ) throws IOException, InterruptedException {
+		final Parte[] parti = brano.parti();
+		if ( guadagni != null && guadagni.length != parti.length ) throw new IllegalArgumentException( "Il numero di guadagni (" + guadagni.length + ") è diverso dal numero di parti (" + parti.length + ")." );
+		final MappaTempi tempi = new MappaTempi( parti, brano.sequence.getResolution(), Sintetizzatore.bpm() );
+		final long frame = frame( parti, tempi );
+		final ByteBuffer buffer = ByteBuffer.allocate( INTESTAZIONE + 4 * SEGMENTO ).order( ByteOrder.LITTLE_ENDIAN );
+		intestazione( buffer, frame );
+		final Flusso[] flussi = new Flusso[ parti.length ];
+		final Runnable[] compiti = new Runnable[ parti.length ];
+		final float[] mix = new float[ 2 * SEGMENTO ];
+		final long[] inizio = new long[ 1 ];
+		final int[] n = new int[ 1 ];
+		for ( int i = 0; i < parti.length; i++ ) {
+			final int p = i;
+			compiti[ p ] = new Runnable() {
+				public void run() {
+					if ( flussi[ p ] == null ) flussi[ p ] = new Flusso( new Parte[] { parti[ p ] }, tempi );
+					flussi[ p ].calcola( inizio[ 0 ], n[ 0 ] );
+				}
+			};
+		}
+		try {
+			for ( ; inizio[ 0 ] < frame; inizio[ 0 ] += SEGMENTO ) {
+				n[ 0 ] = (int)Math.min( SEGMENTO, frame - inizio[ 0 ] );
+				brano.componi( esecutore, compiti );
+				Arrays.fill( mix, 0 );
+				for ( int p = 0; p < flussi.length; p++ ) {
+					final float g = guadagni == null ? 1 : guadagni[ p ];
+					final float[] campioni = flussi[ p ].campioni;
+					for ( int i = 0; i < 2 * n[ 0 ]; i++ ) mix[ i ] += g * campioni[ i ];
+				}
+				campioni( mix, n[ 0 ], buffer );
+				scrivi( buffer, canale );
+			}
+		} finally {
+			for ( Flusso flusso : flussi ) if ( flusso != null ) flusso.close();
+		}
+		scrivi( buffer, canale );
+	}
+
+	/** La sintesi (a segmenti consecutivi) degli eventi di un gruppo di parti. */
+	private final class Flusso implements AutoCloseable {
+
+		/** Il motore. */
+		private final MotoreAudio motore;
+
+		/** La mappa dei tempi. */
+		private final MappaTempi tempi;
+
+		/** Il cursore sugli eventi delle parti. */
+		private final Cursore cursore;
+
+		/** Se il cursore ha un evento corrente (non ancora inviato al motore). */
+		private boolean altro;
+
+		/** I campioni dell'ultimo segmento calcolato. */
+		final float[] campioni = new float[ 2 * SEGMENTO ];
+
+		Flusso( final Parte[] parti, final MappaTempi tempi ) {
+			this.tempi = tempi;
+			cursore = new Cursore( parti, Long.MIN_VALUE, Long.MAX_VALUE, Cursore.TUTTI_I_CANALI );
+			altro = cursore.avanza();
+			motore = motore();
+			programmi( motore );
+		}
+
+		/** Calcola i campioni di un segmento (scrivendoli in {@link #campioni}).
+		 *
+		 * @param inizio il primo frame del segmento (che deve seguire il precedente).
+		 * @param n il numero di frame del segmento.
+		 */
+		void calcola( final long inizio, final int n ) {
+			for ( int da = 0; da < n; da += BLOCCO ) {
+				final int m = Math.min( BLOCCO, n - da );
+				for ( long f; altro && ( f = tempi.frame( cursore.tick(), frequenza ) ) < inizio + da + m; altro = cursore.avanza() )
+					if ( cursore.codice() >= 0 ) motore.invia( cursore.codice(), Math.max( f, inizio + da ) );
+				motore.calcola( campioni, da, m );
+			}
+		}
+
+		@Override
+		public void close() {
+			motore.close();
+		}
+	}
+
+	/** Restituisce un nuovo motore di sintesi.
+	 *
+	 * <p>Se il motore è quello di default e non è disponibile, da questo momento in poi
+	 * vengono usati gli oscillatori (per cui le parti sintetizzate in parallelo usano
+	 * comunque lo stesso tipo di motore).</p>
+	 *
+	 * @return il motore.
+	 * @throws UnsupportedOperationException se il motore non è disponibile (e non è quello di default).
+	 */
+	MotoreAudio motore() {
+		final Motore m = motore;
+		try {
+			return m.crea( frequenza );
+		} catch ( UnsupportedOperationException e ) {
+			if ( !ripiego || m == Motore.OSCILLATORI ) throw e;
+			motore = Motore.OSCILLATORI;
+			return Motore.OSCILLATORI.crea( frequenza );
+		}
+	}
+
+	/** Restituisce il numero di frame da renderizzare per delle parti (coda inclusa).
+	 *
+	 * @param parti le parti.
+	 * @param tempi la mappa dei tempi delle parti.
+	 * @return il numero di frame.
+	 * @throws IOException se il numero di frame eccede quelli rappresentabili in un file WAV.
+	 */
+	long frame( final Parte[] parti, final MappaTempi tempi ) throws IOException {
+		long fine = 0;
+		for ( Parte parte : parti ) fine = Math.max( fine, parte.fine() );
+		final long frame = tempi.frame( fine, frequenza ) + (long)coda * frequenza / 1000;
+		if ( 4 * frame > 0xFFFFFFFFL - ( INTESTAZIONE - 8 ) ) throw new IOException( "Il brano eccede la lunghezza massima di un file WAV." );
+		return frame;
+	}
+
+	/** Imposta i programmi dei canali di un motore, in base alle assegnazioni del {@link Sintetizzatore}.
+	 *
+	 * @param motore il motore.
+	 */
+	static void programmi( final MotoreAudio motore ) {
+		for ( int c = 0; c < 16; c++ ) if ( c != Batteria.CANALE ) motore.invia( ShortMessage.PROGRAM_CHANGE | c | Sintetizzatore.programma( c ) << 8, 0 );
+	}
+
+	/** Scrive nel buffer l'intestazione di un file WAV (stereo, a 16 bit).
+	 *
+	 * @param buffer il buffer (little-endian).
+	 * @param frame il numero di frame.
+	 */
+	void intestazione( final ByteBuffer buffer, final long frame ) {
+		buffer.put( (byte)'R' ).put( (byte)'I' ).put( (byte)'F' ).put( (byte)'F' ).putInt( (int)( 4 * frame + INTESTAZIONE - 8 ) );
+		buffer.put( (byte)'W' ).put( (byte)'A' ).put( (byte)'V' ).put( (byte)'E' );
+		buffer.put( (byte)'f' ).put( (byte)'m' ).put( (byte)'t' ).put( (byte)' ' ).putInt( 16 );
+		buffer.putShort( (short)1 ).putShort( (short)2 ).putInt( frequenza ).putInt( 4 * frequenza ).putShort( (short)4 ).putShort( (short)16 );
+		buffer.put( (byte)'d' ).put( (byte)'a' ).put( (byte)'t' ).put( (byte)'a' ).putInt( (int)( 4 * frame ) );
+	}
+
+	/** Scrive nel buffer dei campioni, come interi a 16 bit (saturando quelli che eccedono l'intervallo da -1 a 1).
+	 *
+	 * @param campioni i campioni.
+	 * @param frame il numero di frame.
+	 * @param buffer il buffer (little-endian).
+	 */
+	static void campioni( final float[] campioni, final int frame, final ByteBuffer buffer ) {
+		for ( int i = 0; i < 2 * frame; i++ ) {
+			final float x = campioni[ i ];
+			buffer.putShort( (short)( x >= 1 ? Short.MAX_VALUE : x <= -1 ? -Short.MAX_VALUE : Math.round( x * Short.MAX_VALUE ) ) );
+		}
+	}
+
+	/** Scrive sul canale il contenuto del buffer.
+	 *
+	 * @param buffer il buffer.
+	 * @param canale il canale.
+	 * @throws IOException se ci sono errori di I/O.
+	 */
+	private static void scrivi( final ByteBuffer buffer, final WritableByteChannel canale ) throws IOException {
+		buffer.flip();
+		while ( buffer.hasRemaining() ) canale.write( buffer );
+		buffer.clear();
+	}
+
+}
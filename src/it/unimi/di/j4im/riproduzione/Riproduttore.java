@@ -0,0 +1,166 @@
+package it.unimi.di.j4im.riproduzione;
+
+/*
+ * Copyright 2014 Massimo Santini
+ *
+ * This file is part of j4im.
+ *
+ * j4im is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j4im is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j4im.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MetaEventListener;
+import javax.sound.midi.MetaMessage;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.Sequencer;
+
+/** Il gestore delle {@link Riproduzione riproduzioni} effettuate da un {@link Sequencer}.
+ *
+ * <p>
+ * Dato che il sequencer può riprodurre una sola sequenza alla volta, l'avvio di
+ * una riproduzione ferma quella eventualmente attiva. Per ciascuna riproduzione
+ * viene registrato presso il sequencer un {@link MetaEventListener}, rimosso quando
+ * la riproduzione viene fermata, che la termina quando riceve l'evento di fine traccia:
+ * il sequencer consegna gli eventi in modo asincrono, agli ascoltatori registrati 
+ * quando l'evento è stato generato, per cui un evento di fine traccia della sequenza
+ * precedente, consegnato dopo l'avvio di una nuova riproduzione, non la termina.
+ * </p>
+ *
+ * <p>
+ * Tutti i metodi che agiscono sul sequencer sono sincronizzati sul gestore e
+ * agiscono solo se la riproduzione che li invoca è quella attiva.
+ * </p>
+ */
+final class Riproduttore {
+
+	/** Il tipo del meta evento di fine traccia. */
+	private static final int END_OF_TRACK_MESSAGE = 0x2F;
+
+	/** Il sequencer. */
+	private final Sequencer sequencer;
+
+	/** La riproduzione attiva (o <samp>null</samp>). */
+	private Riproduzione attiva;
+
+	/** L'ascoltatore della riproduzione attiva (o <samp>null</samp>). */
+	private MetaEventListener ascoltatore;
+
+	/** Costruisce un gestore per il sequencer dato (che dev'essere aperto).
+	 *
+	 * @param sequencer il sequencer.
+	 */
+	Riproduttore( final Sequencer sequencer ) {
+		this.sequencer = sequencer;
+	}
+
+	/** Avvia la riproduzione di una sequenza, fermando quella eventualmente attiva.
+	 *
+	 * @param sequenza la sequenza.
+	 * @param volte il numero di volte (se non è positivo, la sequenza verrà ripetuta all'infinito).
+	 * @param bpm il numero di quarti al minuto.
+	 * @return la riproduzione.
+	 */
+	Riproduzione avvia( final Sequence sequenza, final int volte, final int bpm ) {
+		final Riproduzione precedente, riproduzione = new Riproduzione( this );
+		synchronized ( this ) {
+			precedente = attiva;
+			if ( precedente != null ) ferma( precedente );
+			sequencer.setLoopCount( volte <= 0 ? Sequencer.LOOP_CONTINUOUSLY : volte - 1 );
+			try {
+				sequencer.setSequence( sequenza );
+			} catch ( InvalidMidiDataException e ) {
+				throw new RuntimeException( e ); // questo non dovrebbe mai accadere
+			}
+			sequencer.setTickPosition( 0 );
+			sequencer.setTempoInBPM( bpm );
+			attiva = riproduzione;
+			ascoltatore = new MetaEventListener() {
+				@Override
+				public void meta( final MetaMessage meta ) {
+					if ( meta.getType() == END_OF_TRACK_MESSAGE ) termina( riproduzione );
+				}
+			};
+			sequencer.addMetaEventListener( ascoltatore );
+			sequencer.start();
+		}
+		if ( precedente != null ) precedente.cancel( false );
+		return riproduzione;
+	}
+
+	/** Imposta il numero di quarti al minuto del sequencer.
+	 *
+	 * @param bpm il numero di quarti al minuto.
+	 */
+	synchronized void bpm( final int bpm ) {
+		sequencer.setTempoInBPM( bpm );
+	}
+
+	/** Sospende una riproduzione (se è quella attiva).
+	 *
+	 * @param riproduzione la riproduzione.
+	 * @return <samp>true</samp> se la riproduzione è quella attiva.
+	 */
+	synchronized boolean sospendi( final Riproduzione riproduzione ) {
+		if ( attiva != riproduzione ) return false;
+		sequencer.stop();
+		return true;
+	}
+
+	/** Riprende una riproduzione sospesa (se è quella attiva).
+	 *
+	 * @param riproduzione la riproduzione.
+	 * @return <samp>true</samp> se la riproduzione è quella attiva.
+	 */
+	synchronized boolean riprendi( final Riproduzione riproduzione ) {
+		if ( attiva != riproduzione ) return false;
+		sequencer.start();
+		return true;
+	}
+
+	/** Restituisce il tick corrente di una riproduzione.
+	 *
+	 * @param riproduzione la riproduzione.
+	 * @return il tick corrente, o -1 se la riproduzione non è quella attiva.
+	 */
+	synchronized long tick( final Riproduzione riproduzione ) {
+		return attiva == riproduzione ? sequencer.getTickPosition() : -1;
+	}
+
+	/** Ferma una riproduzione (se è quella attiva), registrandone il tick finale.
+	 *
+	 * @param riproduzione la riproduzione.
+	 */
+	synchronized void ferma( final Riproduzione riproduzione ) {
+		if ( attiva != riproduzione ) return;
+		sequencer.stop();
+		sequencer.removeMetaEventListener( ascoltatore );
+		riproduzione.tickFinale( sequencer.getTickPosition() );
+		attiva = null;
+		ascoltatore = null;
+	}
+
+	/** Termina una riproduzione giunta alla fine della sequenza (se è ancora quella attiva).
+	 *
+	 * @param riproduzione la riproduzione.
+	 */
+	private void termina( final Riproduzione riproduzione ) {
+		synchronized ( this ) {
+			if ( attiva != riproduzione ) return;
+			ferma( riproduzione );
+		}
+		riproduzione.termina();
+	}
+
+}
@@ -0,0 +1,183 @@
+package it.unimi.di.j4im.riproduzione;
+
+/*
+ * Copyright 2014 Massimo Santini
+ *
+ * This file is part of j4im.
+ *
+ * j4im is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j4im is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j4im.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.BiConsumer;
+
+/** Una riproduzione (in corso, o terminata) di un {@link Brano brano}.
+ *
+ * <p>
+ * Una riproduzione viene restituita dal metodo {@link Brano#riproduciAsync(int)}, che
+ * avvia la riproduzione senza attenderne la fine; essa consente di sospendere
+ * ({@link #pausa()}), riprendere ({@link #riprendi()}) e fermare ({@link #ferma()})
+ * la riproduzione, di conoscerne il tick corrente ({@link #tick()}) e di eseguire
+ * delle azioni al suo termine ({@link #quandoTerminata(Runnable)}), o di attenderlo
+ * ({@link #attendi()}).
+ * </p>
+ *
+ * <p>
+ * Una riproduzione è un {@link CompletableFuture}, che viene completato (con valore
+ * <samp>null</samp>) al termine della riproduzione, o cancellato quando essa viene
+ * fermata (da {@link #ferma()}, o dall'avvio di un'altra riproduzione, dato che il
+ * sequencer può riprodurre un solo brano alla volta); completarlo, o cancellarlo,
+ * ha l'effetto di fermare la riproduzione. Le azioni associate al completamento
+ * sono eseguite dal thread del sequencer (o da quello che ferma la riproduzione),
+ * per cui non dovrebbero essere bloccanti.
+ * </p>
+ */
+public final class Riproduzione extends CompletableFuture<Void> {
+
+	/** Il gestore delle riproduzioni del sequencer. */
+	private final Riproduttore riproduttore;
+
+	/** Se la riproduzione è sospesa. */
+	private volatile boolean inPausa;
+
+	/** Il tick a cui la riproduzione è terminata (o -1, se non è terminata). */
+	private volatile long tickFinale = -1;
+
+	Riproduzione( final Riproduttore riproduttore ) {
+		this.riproduttore = riproduttore;
+	}
+
+	/** Sospende la riproduzione (se è in corso).
+	 *
+	 * @return <samp>true</samp> se la riproduzione è stata sospesa.
+	 */
+	public boolean pausa() {
+		if ( isDone() || !riproduttore.sospendi( this ) ) return false;
+		inPausa = true;
+		return true;
+	}
+
+	/** Riprende la riproduzione dal punto in cui è stata sospesa.
+	 *
+	 * @return <samp>true</samp> se la riproduzione è stata ripresa.
+	 */
+	public boolean riprendi() {
+		if ( isDone() || !riproduttore.riprendi( this ) ) return false;
+		inPausa = false;
+		return true;
+	}
+
+	/** Restituisce <samp>true</samp> se la riproduzione è sospesa.
+	 *
+	 * @return se la riproduzione è sospesa.
+	 */
+	public boolean inPausa() {
+		return inPausa && !isDone();
+	}
+
+	/** Ferma la riproduzione, cancellandola.
+	 *
+	 * @return <samp>true</samp> se la riproduzione è stata fermata da questa invocazione (e non era già terminata).
+	 */
+	public boolean ferma() {
+		return cancel( false );
+	}
+
+	/** Restituisce il tick corrente della riproduzione.
+	 *
+	 * @return il tick corrente (o quello a cui la riproduzione è terminata).
+	 */
+	public long tick() {
+		final long tick = riproduttore.tick( this );
+		return tick >= 0 ? tick : Math.max( 0, tickFinale );
+	}
+
+	/** Esegue un'azione al termine della riproduzione (anche se è stata fermata).
+	 *
+	 * <p>Se la riproduzione è già terminata, l'azione viene eseguita immediatamente dal thread corrente.</p>
+	 *
+	 * @param azione l'azione.
+	 * @return questa riproduzione.
+	 */
+	public Riproduzione quandoTerminata( final Runnable azione ) {
+		whenComplete( new BiConsumer<Void,Throwable>() {
+			public void accept( final Void nulla, final Throwable eccezione ) {
+				azione.run();
+			}
+		} );
+		return this;
+	}
+
+	/** Attende il termine della riproduzione.
+	 *
+	 * <p>Se il thread viene interrotto durante l'attesa, la riproduzione viene fermata e lo
+	 * stato di interruzione del thread viene ripristinato.</p>
+	 *
+	 * @return <samp>true</samp> se la riproduzione è giunta al termine, <samp>false</samp> se è stata fermata.
+	 */
+	public boolean attendi() {
+		try {
+			get();
+			return true;
+		} catch ( CancellationException e ) {
+			return false;
+		} catch ( ExecutionException e ) {
+			throw new RuntimeException( e.getCause() ); // non dovrebbe mai accadere
+		} catch ( InterruptedException e ) {
+			ferma();
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	@Override
+	public boolean cancel( final boolean interrompi ) {
+		riproduttore.ferma( this );
+		return super.cancel( interrompi );
+	}
+
+	@Override
+	public boolean complete( final Void valore ) {
+		riproduttore.ferma( this );
+		return super.complete( valore );
+	}
+
+	@Override
+	public boolean completeExceptionally( final Throwable eccezione ) {
+		riproduttore.ferma( this );
+		return super.completeExceptionally( eccezione );
+	}
+
+	/** Registra il tick a cui la riproduzione è terminata.
+	 *
+	 * @param tick il tick.
+	 */
+	void tickFinale( final long tick ) {
+		tickFinale = tick;
+	}
+
+	/** Completa la riproduzione, giunta al termine. */
+	void termina() {
+		super.complete( null );
+	}
+
+	@Override
+	public String toString() {
+		return "Riproduzione<" + ( isCancelled() ? "fermata" : isDone() ? "terminata" : inPausa ? "in pausa" : "in corso" ) + ", tick " + tick() + ">";
+	}
+
+}
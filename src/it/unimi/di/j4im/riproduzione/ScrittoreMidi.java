@@ -0,0 +1,229 @@
+package it.unimi.di.j4im.riproduzione;
+
+/*
+ * Copyright 2014 Massimo Santini
+ *
+ * This file is part of j4im.
+ *
+ * j4im is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j4im is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j4im.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+import javax.sound.midi.MetaMessage;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.SysexMessage;
+
+/** Uno scrittore di file MIDI standard (SMF) di tipo 0 o 1.
+ *
+ * <p>
+ * Lo scrittore legge gli eventi direttamente dalle parti di un brano (tramite dei
+ * {@link Cursore cursori}, senza costruire alcun {@link javax.sound.midi.MidiEvent}) e li
+ * scrive su di un {@link WritableByteChannel} attraverso un buffer; la lunghezza di
+ * ciascuna traccia viene calcolata con una prima visita degli eventi, in modo che il
+ * file possa essere scritto in modo sequenziale. I tempi sono codificati come quantità
+ * di lunghezza variabile (relative all'evento precedente) e i messaggi consecutivi con
+ * il medesimo status sono scritti omettendolo (<em>running status</em>). Il meta
+ * evento di fine traccia viene posto al tick di fine della parte (in modo da conservare
+ * le eventuali pause finali).
+ * </p>
+ *
+ * <p>
+ * Nel tipo 1 ciascuna parte corrisponde ad una traccia, mentre nel tipo 0 gli
+ * eventi di tutte le parti sono fusi (in ordine di tick) in una sola traccia.
+ * </p>
+ */
+final class ScrittoreMidi {
+
+	/** Il massimo valore di una quantità di lunghezza variabile. */
+	private static final long MAX_VARIABILE = 0x0FFFFFFF;
+
+	/** Il canale su cui scrivere. */
+	private final WritableByteChannel canale;
+
+	/** Il buffer. */
+	private final ByteBuffer buffer = ByteBuffer.allocate( 1 << 16 );
+
+	private ScrittoreMidi( final WritableByteChannel canale ) {
+		this.canale = canale;
+	}
+
+	/** Scrive le parti di un brano su di un canale.
+	 *
+	 * @param parti le parti.
+	 * @param risoluzione la risoluzione (in ticks per quarto).
+	 * @param tipo il tipo di file (0 o 1).
+	 * @param canale il canale (che non viene chiuso).
+	 * @throws IOException se ci sono errori di I/O, o se il brano non è rappresentabile in un file MIDI standard.
+	 * @throws IllegalArgumentException se il tipo non è 0 o 1.
+	 */
+	static void scrivi( final Parte[] parti, final int risoluzione, final int tipo, final WritableByteChannel canale ) throws IOException {
+		if ( tipo != 0 && tipo != 1 ) throw new IllegalArgumentException( "Il tipo di file MIDI dev'essere 0 o 1." );
+		final ScrittoreMidi scrittore = new ScrittoreMidi( canale );
+		scrittore.intestazione( tipo, tipo == 0 ? 1 : parti.length, risoluzione );
+		if ( tipo == 0 ) scrittore.traccia( parti );
+		else for ( Parte parte : parti ) scrittore.traccia( new Parte[] { parte } );
+		scrittore.svuota();
+	}
+
+	/** Scrive l'intestazione (il blocco <samp>MThd</samp>) del file.
+	 *
+	 * @param tipo il tipo.
+	 * @param tracce il numero di tracce.
+	 * @param risoluzione la risoluzione.
+	 * @throws IOException se ci sono errori di I/O, o se il numero di tracce eccede il massimo consentito.
+	 */
+	private void intestazione( final int tipo, final int tracce, final int risoluzione ) throws IOException {
+		if ( tracce > 0xFFFF ) throw new IOException( "Un file MIDI non può contenere più di " + 0xFFFF + " tracce." );
+		spazio( 14 );
+		buffer.put( (byte)'M' ).put( (byte)'T' ).put( (byte)'h' ).put( (byte)'d' ).putInt( 6 );
+		buffer.putShort( (short)tipo ).putShort( (short)tracce ).putShort( (short)risoluzione );
+	}
+
+	/** Scrive una traccia (un blocco <samp>MTrk</samp>) contenente gli eventi delle parti date, in ordine di tick.
+	 *
+	 * @param parti le parti.
+	 * @throws IOException se ci sono errori di I/O, o se la traccia non è rappresentabile.
+	 */
+	private void traccia( final Parte[] parti ) throws IOException {
+		long fine = 0;
+		for ( Parte parte : parti ) fine = Math.max( fine, parte.fine() );
+		// prima visita: calcolo della lunghezza
+		long lunghezza = 0, ultimo = 0;
+		int status = -1;
+		for ( Cursore c = new Cursore( parti, Long.MIN_VALUE, Long.MAX_VALUE, Cursore.TUTTI_I_CANALI ); c.avanza(); ) {
+			final long delta = c.tick() - ultimo;
+			if ( delta < 0 || delta > MAX_VARIABILE ) throw new IOException( "La distanza tra due eventi (" + delta + " ticks) non è rappresentabile." );
+			final int m = c.codice();
+			if ( m < 0 ) {
+				final int dati = dati( c.esteso() ).length;
+				lunghezza += lunghezzaVariabile( delta ) + ( c.esteso() instanceof MetaMessage ? 2 : 1 ) + lunghezzaVariabile( dati ) + dati;
+				status = -1;
+			} else {
+				final int s = m & 0xFF;
+				lunghezza += lunghezzaVariabile( delta ) + ( s == status ? 0 : 1 ) + numeroDati( s );
+				status = s;
+			}
+			ultimo = c.tick();
+		}
+		final long delta = Math.max( 0, fine - ultimo );
+		if ( delta > MAX_VARIABILE ) throw new IOException( "La distanza tra due eventi (" + delta + " ticks) non è rappresentabile." );
+		lunghezza += lunghezzaVariabile( delta ) + 3; // END_OF_TRACK
+		if ( lunghezza > 0xFFFFFFFFL ) throw new IOException( "La traccia eccede la lunghezza massima." );
+		spazio( 8 );
+		buffer.put( (byte)'M' ).put( (byte)'T' ).put( (byte)'r' ).put( (byte)'k' ).putInt( (int)lunghezza );
+		// seconda visita: scrittura degli eventi
+		ultimo = 0;
+		status = -1;
+		for ( Cursore c = new Cursore( parti, Long.MIN_VALUE, Long.MAX_VALUE, Cursore.TUTTI_I_CANALI ); c.avanza(); ) {
+			spazio( 7 );
+			variabile( c.tick() - ultimo );
+			final int m = c.codice();
+			if ( m < 0 ) {
+				esteso( c.esteso() );
+				status = -1;
+			} else {
+				final int s = m & 0xFF;
+				if ( s != status ) buffer.put( (byte)s );
+				buffer.put( (byte)( m >>> 8 ) );
+				if ( numeroDati( s ) == 2 ) buffer.put( (byte)( m >>> 16 ) );
+				status = s;
+			}
+			ultimo = c.tick();
+		}
+		spazio( 7 );
+		variabile( delta );
+		buffer.put( (byte)0xFF ).put( (byte)0x2F ).put( (byte)0 );
+	}
+
+	/** Scrive un meta evento, o un messaggio di sistema esclusivo (dopo il tempo).
+	 *
+	 * @param messaggio il messaggio.
+	 * @throws IOException se ci sono errori di I/O.
+	 */
+	private void esteso( final MidiMessage messaggio ) throws IOException {
+		final byte[] dati = dati( messaggio );
+		spazio( 6 );
+		buffer.put( (byte)messaggio.getStatus() );
+		if ( messaggio instanceof MetaMessage ) buffer.put( (byte)( (MetaMessage)messaggio ).getType() );
+		variabile( dati.length );
+		for ( int i = 0; i < dati.length; ) {
+			spazio( 1 );
+			final int n = Math.min( buffer.remaining(), dati.length - i );
+			buffer.put( dati, i, n );
+			i += n;
+		}
+	}
+
+	/** Restituisce i dati di un meta evento, o di un messaggio di sistema esclusivo.
+	 *
+	 * @param messaggio il messaggio.
+	 * @return i dati (che seguono lo status e, per i meta eventi, il tipo).
+	 */
+	private static byte[] dati( final MidiMessage messaggio ) {
+		return messaggio instanceof MetaMessage ? ( (MetaMessage)messaggio ).getData() : ( (SysexMessage)messaggio ).getData();
+	}
+
+	/** Restituisce il numero di byte di dati di un messaggio, dato lo status.
+	 *
+	 * @param status lo status.
+	 * @return il numero di byte di dati.
+	 */
+	private static int numeroDati( final int status ) {
+		final int comando = status & 0xF0;
+		return comando == ShortMessage.PROGRAM_CHANGE || comando == ShortMessage.CHANNEL_PRESSURE ? 1 : 2;
+	}
+
+	/** Restituisce il numero di byte occupati da una quantità di lunghezza variabile.
+	 *
+	 * @param valore il valore.
+	 * @return il numero di byte.
+	 */
+	private static int lunghezzaVariabile( final long valore ) {
+		return valore < 1 << 7 ? 1 : valore < 1 << 14 ? 2 : valore < 1 << 21 ? 3 : 4;
+	}
+
+	/** Scrive nel buffer una quantità di lunghezza variabile (che deve esservi spazio).
+	 *
+	 * @param valore il valore.
+	 */
+	private void variabile( final long valore ) {
+		for ( int i = lunghezzaVariabile( valore ) - 1; i > 0; i-- ) buffer.put( (byte)( valore >>> 7 * i & 0x7F | 0x80 ) );
+		buffer.put( (byte)( valore & 0x7F ) );
+	}
+
+	/** Garantisce che nel buffer vi sia lo spazio per un dato numero di byte, svuotandolo se necessario.
+	 *
+	 * @param n il numero di byte.
+	 * @throws IOException se ci sono errori di I/O.
+	 */
+	private void spazio( final int n ) throws IOException {
+		if ( buffer.remaining() < n ) svuota();
+	}
+
+	/** Scrive sul canale il contenuto del buffer.
+	 *
+	 * @throws IOException se ci sono errori di I/O.
+	 */
+	private void svuota() throws IOException {
+		buffer.flip();
+		while ( buffer.hasRemaining() ) canale.write( buffer );
+		buffer.clear();
+	}
+
+}
@@ -22,20 +22,17 @@ package it.unimi.di.j4im.riproduzione;
 
 import it.unimi.di.j4im.notazione.Durata;
 
-import java.util.concurrent.CountDownLatch;
-
 import javax.sound.midi.Instrument;
-import javax.sound.midi.InvalidMidiDataException;
-import javax.sound.midi.MetaEventListener;
-import javax.sound.midi.MetaMessage;
 import javax.sound.midi.MidiChannel;
+import javax.sound.midi.MidiMessage;
 import javax.sound.midi.MidiSystem;
 import javax.sound.midi.MidiUnavailableException;
+import javax.sound.midi.Receiver;
 import javax.sound.midi.Sequence;
 import javax.sound.midi.Sequencer;
 import javax.sound.midi.ShortMessage;
 import javax.sound.midi.Synthesizer;
-import javax.sound.midi.Transmitter;
+import javax.sound.sampled.LineUnavailableException;
 
 /**
  * Risorsa musicale del sistema, in
@@ -66,9 +63,24 @@ import javax.sound.midi.Transmitter;
  * <h3>Dettagli implementativi</h3>
  * 
  * <p>
- * Questa classe rappresenta il {@link Synthesizer} restituito da
- * {@link MidiSystem#getSynthesizer()} e il {@link Sequencer} restituito da
- * {@link MidiSystem#getSequencer()}.
+ * Questa classe rappresenta un'{@link Uscita} (per impostazione predefinita, il 
+ * {@link Synthesizer} restituito da {@link MidiSystem#getSynthesizer()}) e il 
+ * {@link Sequencer} restituito da {@link MidiSystem#getSequencer(boolean)}; essi
+ * vengono acquisiti (in modo indipendente) solo quando servono: l'uscita per suonare
+ * note dal vivo, il sequencer (collegato all'uscita) per riprodurre un brano. La costruzione
+ * degli strumenti non richiede l'uscita (i canali vengono configurati alla 
+ * sua accensione), per cui un programma che si limiti a comporre, leggere o scrivere
+ * brani non la accende mai. Se il sintetizzatore di sistema non può essere acceso
+ * (ad esempio, perché manca il banco di suoni), o se la proprietà di sistema 
+ * {@value Motore#PROPRIETA} lo richiede, le note sono suonate dal {@link Motore#OSCILLATORI motore a oscillatori}.
+ * </p>
+ * 
+ * <p>
+ * Con il metodo {@link #uscita(Uscita)} si può inviare tutto ciò che viene suonato 
+ * (dagli {@link Strumento strumenti} o riproducendo un {@link Brano}) ad un'altra uscita,
+ * ad esempio un dispositivo MIDI esterno ({@link UscitaRicevitore}), o una registrazione
+ * in memoria ({@link UscitaRegistrata}), utile per verificare il comportamento di un 
+ * programma in assenza di dispositivi audio.
  * </p>
  * 
  * <p>
@@ -86,7 +98,7 @@ import javax.sound.midi.Transmitter;
  * metodo {@link #assegnaCanale(String)}, o dell'invocazione del costruttore
  * {@link Strumento#Strumento(String)}), l'invocazione del metodo
  * {@link #accendiNota(int, int, int)} avrà l'effetto di eseguire un
- * {@link MidiChannel#noteOn(int, int)} sul canale relativo. Similmente, 
+ * {@link MidiChannel#noteOn(int, int)} (o, in generale, un {@link Uscita#accendiNota(int, int, int)}) sul canale relativo. Similmente, 
  * la trasformazione in {@link ShortMessage#NOTE_ON} e {@link ShortMessage#NOTE_ON}
  * a cui vengono sottoposte le note all'accodamento in una {@link Parte} sarà
  * fatta tenendo conto del canale associato allo strumento. 
@@ -95,74 +107,145 @@ import javax.sound.midi.Transmitter;
  */
 public class Sintetizzatore {
 
-	private static final int END_OF_TRACK_MESSAGE = 0x2F;
-
 	public static final int INTENSITA_DEFAULT = 64;
 	public static final int BPM_DEFAULT = 120;
 		
-	private static final Synthesizer synth;
-	private static final Sequencer sequencer;
-	private static final MidiChannel[] canali;
-	private static int canaliAssegnati;
-	private static int bpm = BPM_DEFAULT;
+	/** Il numero di canali del sintetizzatore. */
+	private static final int NUMERO_CANALI = 16;
+
+	/** L'uscita (o <samp>null</samp>, se il sintetizzatore non è acceso). */
+	private static volatile Uscita uscita;
+	/** L'indice degli strumenti (caricati) del sintetizzatore (o <samp>null</samp>, se non è acceso, o l'uscita non è un {@link UscitaSintetizzatore}). */
+	private static volatile IndiceStrumenti indice;
+	/** Le rappresentazioni testuali degli strumenti disponibili (o <samp>null</samp>, se il sintetizzatore non è acceso). */
+	private static volatile String[] strumenti;
+	/** Il sequencer (o <samp>null</samp>, se non è acceso). */
+	private static Sequencer sequencer;
+	/** Il gestore delle riproduzioni del sequencer (o <samp>null</samp>, se non è acceso). */
+	private static volatile Riproduttore riproduttore;
+	/** Il pianificatore delle note suonate dal vivo (sostituito da uno nuovo allo spegnimento). */
+	private static volatile Pianificatore pianificatore = new Pianificatore();
+	/** I canali da assegnare agli strumenti (usato solo sotto il lock della classe). */
+	private static final PoolCanali pool = new PoolCanali( NUMERO_CANALI, 0, Batteria.CANALE ); // il piano è sempre assegnato al canale 0
+	/** Il programma assegnato a ciascun canale (usato solo sotto il lock della classe). */
+	private static final int[] programmi = new int[ NUMERO_CANALI ];
+	private static volatile int bpm = BPM_DEFAULT;
 		
-	static {
+	/* metodi di pacchetto, o privati */
+	
+	private Sintetizzatore() {} // per impedire la costruzione di una istanza
+
+	private static synchronized Uscita accendiUscita() {
+		if ( uscita == null ) imposta( predefinita() );
+		return uscita;
+	}
+
+	/** Crea l'uscita predefinita: il sintetizzatore di sistema o, se questo non è disponibile (o la proprietà {@value Motore#PROPRIETA} lo richiede), il motore a oscillatori.
+	 * 
+	 * @return l'uscita.
+	 */
+	private static Uscita predefinita() {
+		MidiUnavailableException causa = null;
+		if ( Motore.predefinito() == Motore.SISTEMA )
+			try {
+				return new UscitaSintetizzatore();
+			} catch ( MidiUnavailableException e ) {
+				causa = e;
+			}
 		try {
-			synth = MidiSystem.getSynthesizer();
-			if ( ! synth.isOpen() ) synth.open();
+			return new OscillatoriDalVivo();
+		} catch ( LineUnavailableException e ) {
+			if ( causa != null ) e.addSuppressed( causa );
+			throw new RuntimeException( e );
+		}
+	}
+
+	/** Imposta l'uscita, configurando su ciascun canale il programma dello strumento a cui è stato assegnato (anche prima dell'accensione).
+	 * 
+	 * @param u l'uscita.
+	 */
+	private static synchronized void imposta( final Uscita u ) {
+		if ( u instanceof UscitaSintetizzatore ) {
+			indice = ( (UscitaSintetizzatore)u ).indice();
+			strumenti = ( (UscitaSintetizzatore)u ).strumenti();
+		} else {
+			indice = IndiceStrumenti.GM;
+			strumenti = IndiceStrumenti.GM.descrizioni();
+		}
+		for ( int i = 0; i < NUMERO_CANALI; i++ ) if ( i != Batteria.CANALE ) u.cambiaProgramma( i, programmi[ i ] );
+		uscita = u;
+	}
 
-			sequencer =  MidiSystem.getSequencer();
-			if ( ! sequencer.isOpen() ) sequencer.open();
+	/** Restituisce <samp>true</samp> se il sintetizzatore è acceso.
+	 * 
+	 * @return se il sintetizzatore è acceso.
+	 */
+	static boolean acceso() {
+		return uscita != null;
+	}
 
-			canali = synth.getChannels();
-			canaliAssegnati = 1; // il piano è sempre assegnato
-			
-			// vanno chiusi tutti i transmitter per evitare "echi"
-			for ( Transmitter t : sequencer.getTransmitters() ) t.close();
-			
-			// va associato il sequencer al synth in modo che i program change sui channels siano rispettati
-			sequencer.getTransmitter().setReceiver( synth.getReceiver() );
+	/** Il ricevitore, collegato al sequencer, che inoltra i messaggi all'uscita corrente. */
+	private static final class Inoltro implements Receiver {
+
+		@Override
+		public void send( final MidiMessage messaggio, final long tempo ) {
+			if ( messaggio instanceof ShortMessage ) {
+				final ShortMessage m = (ShortMessage)messaggio;
+				uscita().invia( m.getStatus() | m.getData1() << 8 | m.getData2() << 16 );
+			}
+		}
+
+		@Override
+		public void close() {}
 
-		} catch ( MidiUnavailableException e ) {
-			throw new RuntimeException( e ); // non dovrebbe mai accadere
-		}		
 	}
 
-	/* metodi di pacchetto, o privati */
-	
-	private Sintetizzatore() {} // per impedire la costruzione di una istanza
+	/** Accende (se necessario) il sequencer, collegandolo al sintetizzatore (che viene a sua volta acceso, se necessario).
+	 * 
+	 * @return il gestore delle riproduzioni del sequencer.
+	 */
+	private static Riproduttore riproduttore() {
+		final Riproduttore r = riproduttore;
+		return r != null ? r : accendiSequencer();
+	}
+
+	private static synchronized Riproduttore accendiSequencer() {
+		if ( riproduttore != null ) return riproduttore;
+		uscita();
+		try {
+			final Sequencer s = MidiSystem.getSequencer( false );
+			if ( ! s.isOpen() ) s.open();
+			// va associato il sequencer all'uscita in modo che i program change sui canali siano rispettati
+			s.getTransmitter().setReceiver( new Inoltro() );
+			sequencer = s;
+			return riproduttore = new Riproduttore( s );
+		} catch ( MidiUnavailableException e ) {
+			throw new RuntimeException( e );
+		}
+	}
 	
-	/** Riroduce la sequenza il numero assegnato di volte.
+	/** Avvia la riproduzione della sequenza (il numero assegnato di volte), senza attenderne la fine.
+	 * 
+	 * <p>L'eventuale riproduzione in corso viene fermata.</p>
+	 * 
+	 * @param sequenza la sequenza.
+	 * @param volte il numero di volte (se <= 0 sarà ripetuta all'infinito).
+	 * @return la riproduzione.
+	 */
+	static Riproduzione riproduciAsync( final Sequence sequenza, final int volte ) {
+		return riproduttore().avvia( sequenza, volte, bpm );
+	}
+
+	/** Riroduce la sequenza il numero assegnato di volte, attendendone la fine.
+	 * 
+	 * <p>Se il thread viene interrotto, la riproduzione viene fermata (e lo stato di 
+	 * interruzione del thread viene ripristinato).</p>
 	 * 
 	 * @param sequenza la sequenza.
 	 * @param volte il numero di volte (se <= 0 sarà ripetuta all'infinito).
 	 */
 	static void riproduci( final Sequence sequenza, final int volte ) {
-		final CountDownLatch cdl = new CountDownLatch( 1 );
-		MetaEventListener mel = new MetaEventListener() {
-			public void meta( MetaMessage meta ) {
-				if ( meta.getType() == END_OF_TRACK_MESSAGE )
-					sequencer.stop();
-					cdl.countDown();
-			}
-		};
-		if ( volte <= 0 )
-			sequencer.setLoopCount( Sequencer.LOOP_CONTINUOUSLY );
-		else 
-			sequencer.setLoopCount( volte - 1 );
-		sequencer.addMetaEventListener( mel );
-		try {
-			sequencer.setSequence( sequenza );
-		} catch ( InvalidMidiDataException e ) {
-			throw new RuntimeException( e ); // questo non dovrebbe mai accadere
-		}
-		sequencer.setTickPosition( 0 );
-		sequencer.setTempoInBPM( Sintetizzatore.bpm );
-		sequencer.start();
-		try {
-			cdl.await();
-		} catch ( InterruptedException ignora ) {} // in caso di interruzione, si procede a liberare le risorse
-		sequencer.removeMetaEventListener( mel );
+		riproduciAsync( sequenza, volte ).attendi();
 	}
 
 	/** Riproduce la sequenza (una sola volta).
@@ -175,8 +258,17 @@ public class Sintetizzatore {
 	
 	/* metodi pubblici */
 	
-	/** Accende il sintetizzatore predisponendo le risorse musicali del sistema. */
-	public static void accendi() {}
+	/** Accende il sintetizzatore predisponendo le risorse musicali del sistema.
+	 * 
+	 * <p>L'invocazione di questo metodo è facoltativa: il sintetizzatore viene acceso al
+	 * primo uso che lo richiede (ad esempio, la prima nota suonata con {@link Strumento#suona(it.unimi.di.j4im.notazione.Nota)}) 
+	 * e il sequencer alla prima riproduzione di un {@link Brano}, mentre la composizione,
+	 * la lettura e la scrittura dei brani non li richiedono affatto. Invocarlo in anticipo 
+	 * evita però che il primo uso sia rallentato dall'accensione.</p>
+	 */
+	public static void accendi() {
+		riproduttore();
+	}
 
 	/** Restituisce il valore corrente di numero di quarti per minuto.
 	 * 
@@ -193,9 +285,10 @@ public class Sintetizzatore {
 	 *  
 	 */
 	public static void bpm( final int bpm ) {
-		if ( bpm < 0 || bpm > 960 ) throw new IllegalArgumentException( "I BPM devono essere compresi tra 1 e 960." );
+		if ( bpm < 1 || bpm > 960 ) throw new IllegalArgumentException( "I BPM devono essere compresi tra 1 e 960." );
 		Sintetizzatore.bpm = bpm;
-		sequencer.setTempoInBPM( bpm );
+		final Riproduttore r = riproduttore;
+		if ( r != null ) r.bpm( bpm );
 	}
 
 	/** Restituisce l'elenco degli strumenti disponibili
@@ -203,27 +296,99 @@ public class Sintetizzatore {
 	 * @return L'elenco di strumenti.
 	 */
 	public static String[] strumenti() {
-		final Instrument[] insts = synth.getAvailableInstruments();
-		final String[] strumenti = new String[ insts.length ];
-		for ( int i = 0; i < insts.length; i++ )
-			strumenti[ i ] = insts[ i ].toString();
-		return strumenti;
+		uscita();
+		return strumenti.clone();
 	}
 	
 	/** Assegna lo strumento dato ad uno dei "canali" del sintetizzatore, restituendone l'indice.
+	 * 
+	 * <p>L'assegnazione è atomica: invocazioni contemporanee da thread diversi ricevono
+	 * sempre canali distinti. Il canale restituito è assegnato permanentemente (non 
+	 * viene mai riassegnato, né può essere rilasciato); se non ci sono canali liberi, 
+	 * viene sottratto allo {@link Strumento} che l'ha usato meno recentemente (si veda
+	 * {@link Strumento#close()}).</p>
 	 * 
 	 * @param nomeStrumento il nome dello strumento.
 	 * @return l'indice del canale cui è stato assegnato tale strumento.
+	 * @throws IllegalArgumentException se il sintetizzatore non dispone dello strumento.
+	 * @throws IllegalStateException se tutti i canali sono già stati assegnati permanentemente.
 	 */
-	public static int assegnaCanale( final String nomeStrumento ) {
-		if ( canaliAssegnati >= canali.length ) throw new IllegalStateException( "Il sintetizzatore non supporta più di " + canali.length + " srumenti." );
-		for ( Instrument inst : synth.getLoadedInstruments() )
-			if ( inst.toString().contains( nomeStrumento ) ) {
-				if ( canaliAssegnati == 9 ) canaliAssegnati++; // salta il canale preassegnato alla batteria
-				canali[ canaliAssegnati ].programChange( inst.getPatch().getProgram() );
-				return canaliAssegnati++;
-			}
-		throw new IllegalArgumentException( "Il sintetizzatore non è in grado di riprodurre lo strumento " + nomeStrumento );
+	public static synchronized int assegnaCanale( final String nomeStrumento ) {
+		final int programma = programma( nomeStrumento ), canale = pool.riserva();
+		if ( canale < 0 ) throw new IllegalStateException( "Il sintetizzatore non supporta più di " + NUMERO_CANALI + " strumenti." );
+		configura( canale, programma );
+		return canale;
+	}
+
+	/** Restituisce il programma di uno strumento.
+	 * 
+	 * <p>Se il sintetizzatore non è acceso, lo strumento viene cercato tra i programmi 
+	 * dello standard General MIDI (che coincidono con gli strumenti del sintetizzatore di sistema).</p>
+	 * 
+	 * @param nomeStrumento il nome (o parte della rappresentazione testuale) dello strumento.
+	 * @return il numero di programma.
+	 * @throws IllegalArgumentException se il sintetizzatore non dispone dello strumento.
+	 */
+	static int programma( final String nomeStrumento ) {
+		final IndiceStrumenti i = indice != null ? indice : IndiceStrumenti.GM;
+		return i.patch( i.cerca( nomeStrumento ) ).getProgram();
+	}
+
+	/** Restituisce il programma assegnato ad un canale.
+	 * 
+	 * @param canale il canale.
+	 * @return il numero di programma.
+	 */
+	static synchronized int programma( final int canale ) {
+		return programmi[ canale ];
+	}
+
+	/** Restituisce il canale assegnato ad un proprietario (tipicamente, uno {@link Strumento}), assegnandogliene uno se necessario.
+	 * 
+	 * <p>Se al proprietario non è assegnato alcun canale (perché non è mai stato assegnato, 
+	 * o è stato rilasciato, o riassegnato ad un altro proprietario), gli viene assegnato un
+	 * canale su cui viene effettuato il {@link MidiChannel#programChange(int)} al programma dato.</p>
+	 * 
+	 * @param proprietario il proprietario.
+	 * @param programma il programma.
+	 * @return il canale.
+	 * @throws IllegalStateException se tutti i canali sono stati assegnati permanentemente (con {@link #assegnaCanale(String)}).
+	 */
+	static synchronized int assegnaCanale( final Object proprietario, final int programma ) {
+		int canale = pool.canale( proprietario );
+		if ( canale < 0 ) {
+			canale = pool.acquisisci( proprietario );
+			if ( canale < 0 ) throw new IllegalStateException( "Il sintetizzatore non supporta più di " + NUMERO_CANALI + " strumenti." );
+			configura( canale, programma );
+		}
+		return canale;
+	}
+
+	/** Configura il programma di un canale appena assegnato.
+	 * 
+	 * @param canale il canale.
+	 * @param programma il programma.
+	 */
+	private static synchronized void configura( final int canale, final int programma ) {
+		programmi[ canale ] = programma;
+		if ( uscita != null ) uscita.cambiaProgramma( canale, programma );
+	}
+
+	/** Restituisce <samp>true</samp> se un canale è assegnato (ad uno strumento, o permanentemente).
+	 * 
+	 * @param canale il canale.
+	 * @return se il canale è assegnato.
+	 */
+	private static synchronized boolean assegnato( final int canale ) {
+		return pool.assegnato( canale );
+	}
+
+	/** Rilascia il canale assegnato ad un proprietario, rendendolo disponibile per altri strumenti.
+	 * 
+	 * @param proprietario il proprietario.
+	 */
+	static synchronized void rilasciaCanale( final Object proprietario ) {
+		pool.rilascia( proprietario );
 	}
 	
 	/** Inizia a suonare una nota.
@@ -231,13 +396,14 @@ public class Sintetizzatore {
 	 * @param canale il canale (deve corrispondere ad uno dei valori restituiti da {@link #assegnaCanale(String)}).
 	 * @param pitch il pitch (dev'essere compreso tra 0 e 127 estremi inclusi).
 	 * @param intensita l'intensità (dev'essere compresa tra 0 e 127 estremi inclusi).
-	 * @throws IllegalArgumentException se uno degli argomenti ha un valore non consentito.
+	 * @throws IllegalArgumentException se uno degli argomenti ha un valore non consentito, o il canale non è assegnato.
 	 */
 	public static void accendiNota( final int canale, final int pitch, final int intensita ) {
-		if ( canale != 9 && ( canale < 0 || canale >= canaliAssegnati ) ) throw new IllegalArgumentException( "Il numero di canali dev'essere compreso tra 0 e " + ( canaliAssegnati - 1 ) + " estremi inclusi." );
+		if ( canale < 0 || canale >= NUMERO_CANALI ) throw new IllegalArgumentException( "Il numero di canali dev'essere compreso tra 0 e " + ( NUMERO_CANALI - 1 ) + " estremi inclusi." );
+		if ( ! assegnato( canale ) ) throw new IllegalArgumentException( "Il canale " + canale + " non è assegnato ad alcuno strumento." );
 		if ( pitch < 0 || pitch > 127 ) throw new IllegalArgumentException( "Il pitch dev'essere compresa tra 0 e 127, estremi inclusi." );
 		if ( intensita < 0 || intensita > 127 ) throw new IllegalArgumentException( "L'intensità dev'essere compresa tra 0 e 127, estremi inclusi." );
-		canali[ canale ].noteOn( pitch, intensita );
+		uscita().accendiNota( canale, pitch, intensita );
 	}
 
 	/** Cessa di suonare una nota.
@@ -248,26 +414,102 @@ public class Sintetizzatore {
 	 */
 	public static void spegniNota( final int canale, final int pitch ) {
 		if ( pitch < 0 || pitch > 127 ) throw new IllegalArgumentException( "Il pitch dev'essere compresa tra 0 e 127, estremi inclusi." );
-		canali[ canale ].noteOff( pitch );		
+		uscita().spegniNota( canale, pitch );
 	}
 	
+	/** Restituisce l'uscita a cui vengono inviati i messaggi (accendendo il sintetizzatore, se necessario).
+	 * 
+	 * @return l'uscita.
+	 */
+	public static Uscita uscita() {
+		final Uscita u = uscita;
+		return u != null ? u : accendiUscita();
+	}
+
+	/** Imposta l'uscita a cui vengono inviati i messaggi.
+	 * 
+	 * <p>L'uscita precedente (se diversa) viene chiusa; sui canali della nuova uscita 
+	 * vengono configurati i programmi degli strumenti a cui sono assegnati. Le note 
+	 * e i brani suonati in seguito (anche da strumenti e parti costruiti in precedenza)
+	 * saranno inviati alla nuova uscita, che verrà chiusa da {@link #spegni()}.</p>
+	 * 
+	 * @param nuova l'uscita, o <samp>null</samp> per tornare all'uscita predefinita (che verrà creata al primo uso).
+	 */
+	public static synchronized void uscita( final Uscita nuova ) {
+		final Uscita vecchia = uscita;
+		if ( vecchia == nuova ) return;
+		if ( nuova != null ) imposta( nuova );
+		else {
+			uscita = null;
+			indice = null;
+			strumenti = null;
+		}
+		if ( vecchia != null ) vecchia.close();
+	}
+
+	/** Invia all'uscita un gruppo di messaggi, ciascuno alla propria scadenza.
+	 * 
+	 * @param codici i messaggi.
+	 * @param scadenze le scadenze (nella scala di {@link System#nanoTime()}).
+	 * @param n il numero di messaggi.
+	 * @see Uscita#invia(int[], long[], int)
+	 */
+	static void invia( final int[] codici, final long[] scadenze, final int n ) {
+		uscita().invia( codici, scadenze, n );
+	}
+
 	/** Sospende l'esecuzione per la durata assegnata.
+	 * 
+	 * <p>L'attesa termina alla scadenza data dalla linea temporale del thread corrente
+	 * (si veda {@link Pianificatore#avanza(long)}), per cui una successione di note e
+	 * attese non accumula ritardi; se il thread viene interrotto, l'attesa termina
+	 * (lasciando impostato lo stato di interruzione).</p>
 	 * 
 	 * @param durata la durata.
 	 */
 	public static void attendi( final Durata durata ) {
-		try {
-			Thread.sleep( durata.ms( Sintetizzatore.bpm() ) );
-		} catch ( InterruptedException swallow ) {}
+		final long nanos = durata.nanos( Sintetizzatore.bpm() );
+		Pianificatore.attendi( pianificatore().avanza( nanos ) + nanos );
+	}
+
+	/** Restituisce il pianificatore usato per suonare le note dal vivo (ad esempio, per conoscerne i ritardi).
+	 * 
+	 * <p>Il pianificatore viene sostituito da uno nuovo ad ogni {@link #spegni() spegnimento}.</p>
+	 * 
+	 * @return il pianificatore.
+	 */
+	public static Pianificatore pianificatore() {
+		return pianificatore;
 	}
 		
 	/** Spegne il sintetizzatore.
+	 * 
+	 * <p>Prima di spegnere il sintetizzatore, questo metodo attende che siano terminate 
+	 * le note ancora in corso (ossia che il {@link #pianificatore()} abbia eseguito tutte
+	 * le azioni pianificate).</p>
+	 * 
+	 * <p>Lo spegnimento non è definitivo: il pianificatore chiuso viene sostituito da uno
+	 * nuovo e l'uscita (anche se impostata con {@link #uscita(Uscita)}) e il sequencer, 
+	 * chiusi, vengono riacquisiti al primo uso successivo, come all'avvio del programma.</p>
 	 * 
 	 * <p>Si osserva che è <em>necessario</em> invocare questo metodo per consentire la termianzione del programma.</p>
 	 */
 	public static void spegni() {
-		sequencer.close();
-		synth.close();
+		final Pianificatore chiuso;
+		synchronized ( Sintetizzatore.class ) {
+			chiuso = pianificatore;
+			pianificatore = new Pianificatore();
+		}
+		chiuso.chiudi();
+		synchronized ( Sintetizzatore.class ) {
+			if ( sequencer != null ) sequencer.close();
+			if ( uscita != null ) uscita.close();
+			sequencer = null;
+			riproduttore = null;
+			uscita = null;
+			indice = null;
+			strumenti = null;
+		}
 	}
 
 	/** Se eseguita, questa classe, emette sul flusso d'uscita l'elenco di strumenti disponibili.
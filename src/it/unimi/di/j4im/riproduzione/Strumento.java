@@ -20,6 +20,7 @@ package it.unimi.di.j4im.riproduzione;
  *
  */
 
+import it.unimi.di.j4im.notazione.Durata;
 import it.unimi.di.j4im.notazione.Nota;
 import it.unimi.di.j4im.notazione.Pausa;
 
@@ -31,6 +32,12 @@ import javax.sound.midi.ShortMessage;
  * <p>Gli strumenti musicali dipendono dal {@link Sintetizzatore}, per una discussione
  * dei dettagli implementativi si veda il metodo {@link Sintetizzatore#assegnaCanale(String)}.</p>
  * 
+ * <p>I metodi {@link #suona(Nota)} e {@link #suona(Pausa)} (e quindi 
+ * {@link it.unimi.di.j4im.notazione.Simbolo#suonaCon(Strumento)}) attendono la fine del 
+ * simbolo suonato prima di restituire il controllo; i metodi {@link #suona(Nota[])} e 
+ * {@link #suonaDopo(Nota, Durata)} invece restituiscono il controllo senza attendere, 
+ * affidando la fine delle note al {@link Sintetizzatore#pianificatore() pianificatore}.</p>
+ * 
  * 
  * <h3>Dettagli implementativi</h3>
  * 
@@ -39,54 +46,182 @@ import javax.sound.midi.ShortMessage;
  * </p>
  * 
  * <p>
- * Più in dettaglio, il costruttore {@link #Strumento(String)} invoca il metodo 
- * {@link Sintetizzatore#assegnaCanale(String)} (che effettua un {@link MidiChannel#programChange(int)}
- * sul canale assegnato prima di restituirlo); in seguito le note suonate su tale canale attraverso 
+ * Più in dettaglio, il costruttore {@link #Strumento(String)} si fa assegnare un canale dal 
+ * {@link Sintetizzatore} (come il metodo {@link Sintetizzatore#assegnaCanale(String)}, che effettua un 
+ * {@link MidiChannel#programChange(int)} sul canale assegnato prima di restituirlo); in seguito le note suonate su tale canale attraverso 
  * {@link Sintetizzatore#accendiNota(int, int, int)} o accodate al brano e quindi trasformate in messaggi
  * {@link ShortMessage#NOTE_ON} e {@link ShortMessage#NOTE_ON} per quel canale, saranno riprodotte 
  * con lo strumento assegnato.
  * </p>
  * 
+ * <p>
+ * I canali sono in numero limitato: uno strumento che non serve più può essere chiuso
+ * (con {@link #close()}), rendendo il suo canale disponibile per altri strumenti; se 
+ * tutti i canali sono assegnati, la costruzione di un nuovo strumento riassegna il 
+ * canale dello strumento usato meno recentemente (ossia che da più tempo non suona, 
+ * né è stato usato per costruire una {@link Parte}). Uno strumento chiuso, o il cui
+ * canale è stato riassegnato, può essere usato ancora: al primo uso gli viene 
+ * assegnato un nuovo canale. Lo stesso accade per le parti costruite in precedenza 
+ * con esso, che determinano il canale dello strumento solo quando vengono riprodotte,
+ * scritte o renderizzate (si veda {@link Parte}).
+ * </p>
  *
  * @see Sintetizzatore
  * 
  */ 
-public class Strumento {
+public class Strumento implements AutoCloseable {
 
-	/** Il numero di {@link MidiChannel} corrispondente a questo strumento. */
-	final int canale;
+	/** Il numero di programma dello strumento, o -1 se lo strumento ha un canale fisso. */
+	private final int programma;
+
+	/** Il numero di {@link MidiChannel} corrispondente a questo strumento (se ha un canale fisso). */
+	private final int canale;
 	
 	/** Il nome dello strumento. */
 	private final String nome;
 	
 	/** Costruisce uno strumento a partire da (parte del suo) nome.
 	 * 
-	 * <p>Si può ottenere un 
+	 * <p>Si può ottenere un elenco dei nomi degli strumenti con {@link Sintetizzatore#strumenti()}.</p>
+	 * 
 	 * @param nome il nome.
+	 * @throws IllegalArgumentException se il sintetizzatore non dispone dello strumento.
 	 */
 	public Strumento( final String nome ) {
-		canale = Sintetizzatore.assegnaCanale( nome );
+		programma = Sintetizzatore.programma( nome );
 		this.nome = nome;
+		canale = -1;
+		Sintetizzatore.assegnaCanale( this, programma );
 	}
 	
 	Strumento( final int canale, final String nome ) {
+		programma = -1;
 		this.canale = canale;
 		this.nome = nome;
 	}
+
+	/** Restituisce il canale dello strumento, registrandone l'uso (e assegnandogliene uno, se necessario).
+	 * 
+	 * @return il canale.
+	 */
+	int canale() {
+		return programma < 0 ? canale : Sintetizzatore.assegnaCanale( this, programma );
+	}
+
+	/** Chiude lo strumento, rendendo il suo canale disponibile per altri strumenti.
+	 * 
+	 * <p>Le note dello strumento ancora in corso proseguono fino al loro termine, a meno 
+	 * che il canale non venga nel frattempo assegnato ad un altro strumento. La chiusura
+	 * di uno strumento con un canale fisso (come la {@link Batteria}) non ha effetto.</p>
+	 */
+	@Override
+	public void close() {
+		if ( programma >= 0 ) Sintetizzatore.rilasciaCanale( this );
+	}
 	
-	/** Inizia a suonare la nota assegnata.
+	/** Suona la nota assegnata.
+	 * 
+	 * <p>La nota inizia alla scadenza data dalla linea temporale del thread corrente
+	 * (si veda {@link Pianificatore#avanza(long)}), ossia al termine del simbolo suonato 
+	 * in precedenza dal thread; il metodo attende tale scadenza, inizia la nota, ne
+	 * attende la fine, la termina e quindi restituisce il controllo. Le attese riguardano
+	 * scadenze assolute, per cui una sequenza di invocazioni suona le note una dopo l'altra
+	 * senza accumulare ritardi. Se il thread viene interrotto, la nota termina subito 
+	 * (lasciando impostato lo stato di interruzione).</p>
+	 * 
+	 * <p>Per suonare una nota senza attenderne la fine si può usare {@link #suona(Nota[])}
+	 * (con un accordo di una sola nota), o {@link #suonaDopo(Nota, Durata)}.</p>
 	 * 
 	 * @param nota la nota.
 	 * 
 	 */
 	public void suona( final Nota nota ) {
 		final int pitch = nota.pitch();
+		final long durata = nota.durata().nanos( Sintetizzatore.bpm() );
+		final long inizio = Sintetizzatore.pianificatore().avanza( durata );
+		Pianificatore.attendi( inizio );
+		final int canale = canale();
 		Sintetizzatore.accendiNota( canale, pitch, nota.intensita() );
-		Sintetizzatore.attendi( nota.durata() );
+		Pianificatore.attendi( inizio + durata );
 		Sintetizzatore.spegniNota( canale, pitch );
 	}
 
-	/** Attende un tempo pari alla durata della pausa assegnata.
+	/** Suona un accordo, senza attendere.
+	 * 
+	 * <p>Le note dell'accordo iniziano alla scadenza data dalla linea temporale del thread 
+	 * corrente (come per {@link #suona(Nota)}), che viene spostata in avanti della durata
+	 * della nota più lunga; l'inizio e la fine delle note sono inviati all'{@link Uscita}
+	 * del sintetizzatore come un solo gruppo di messaggi con le rispettive scadenze (si 
+	 * veda {@link Uscita#invia(int[], long[], int)}), per cui il metodo restituisce
+	 * immediatamente il controllo. Il canale su cui suonare le note è quello dello 
+	 * strumento all'invocazione del metodo.</p>
+	 * 
+	 * @param accordo le note dell'accordo.
+	 * 
+	 */
+	public void suona( final Nota[] accordo ) {
+		final int bpm = Sintetizzatore.bpm();
+		long massima = 0;
+		for ( Nota nota : accordo ) massima = Math.max( massima, nota.durata().nanos( bpm ) );
+		final long inizio = Sintetizzatore.pianificatore().avanza( massima );
+		final int canale = canale(), n = accordo.length;
+		final int[] codici = new int[ 2 * n ];
+		final long[] scadenze = new long[ 2 * n ];
+		for ( int i = 0; i < n; i++ ) {
+			final Nota nota = accordo[ i ];
+			codici[ i ] = ShortMessage.NOTE_ON | canale | nota.pitch() << 8 | nota.intensita() << 16;
+			scadenze[ i ] = inizio;
+			codici[ n + i ] = ShortMessage.NOTE_OFF | canale | nota.pitch() << 8;
+			scadenze[ n + i ] = inizio + nota.durata().nanos( bpm );
+		}
+		Sintetizzatore.invia( codici, scadenze, 2 * n );
+	}
+
+	/** Suona una nota dopo un dato ritardo, senza attendere.
+	 * 
+	 * <p>Il ritardo è misurato a partire dalla posizione corrente della linea temporale 
+	 * del thread (ossia dall'istante in cui inizierebbe la prossima nota suonata con 
+	 * {@link #suona(Nota)}), che però non viene spostata: la nota costituisce una voce
+	 * indipendente, affidata interamente al {@link Sintetizzatore#pianificatore() pianificatore}.
+	 * Si possono così sovrapporre (con un numero costante di thread) quante voci si desidera.</p>
+	 * 
+	 * @param nota la nota.
+	 * @param ritardo il ritardo.
+	 * 
+	 */
+	public void suonaDopo( final Nota nota, final Durata ritardo ) {
+		final int bpm = Sintetizzatore.bpm();
+		pianifica( Sintetizzatore.pianificatore().avanza( 0 ) + ritardo.nanos( bpm ), nota, bpm );
+	}
+
+	/** Pianifica l'inizio e la fine di una nota.
+	 * 
+	 * @param inizio la scadenza dell'inizio.
+	 * @param nota la nota.
+	 * @param bpm il numero di quarti al minuto.
+	 */
+	private void pianifica( final long inizio, final Nota nota, final int bpm ) {
+		final Pianificatore pianificatore = Sintetizzatore.pianificatore();
+		final int pitch = nota.pitch(), intensita = nota.intensita();
+		final int[] canale = { -1 }; // il canale su cui la nota è stata accesa
+		pianificatore.pianifica( inizio, new Runnable() {
+			public void run() {
+				canale[ 0 ] = canale();
+				Sintetizzatore.accendiNota( canale[ 0 ], pitch, intensita );
+			}
+		} );
+		pianificatore.pianifica( inizio + nota.durata().nanos( bpm ), new Runnable() {
+			public void run() {
+				Sintetizzatore.spegniNota( canale[ 0 ], pitch );
+			}
+		} );
+	}
+
+	/** Fa trascorrere un tempo pari alla durata della pausa assegnata.
+	 * 
+	 * <p>La pausa sposta in avanti la linea temporale del thread corrente e il metodo
+	 * ne attende il termine (si veda {@link Sintetizzatore#attendi(Durata)}), per cui 
+	 * la nota suonata in seguito inizierà subito dopo.</p>
 	 * 
 	 * @param pausa la pausa.
 	 * 
@@ -0,0 +1,91 @@
+package it.unimi.di.j4im.riproduzione;
+
+/*
+ * Copyright 2014 Massimo Santini
+ *
+ * This file is part of j4im.
+ *
+ * j4im is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j4im is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j4im.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+/** L'uscita del {@link Sintetizzatore}, ossia il destinatario dei messaggi <a href="http://www.midi.org/">MIDI</a> prodotti suonando le note dal vivo o riproducendo un {@link Brano}.
+ *
+ * <p>
+ * Il sintetizzatore invia tutti i messaggi all'uscita configurata con
+ * {@link Sintetizzatore#uscita(Uscita)} (per impostazione predefinita, una
+ * {@link UscitaSintetizzatore} basata sul sintetizzatore di sistema): gli 
+ * {@link Strumento strumenti} attraverso i metodi {@link #accendiNota(int, int, int)},
+ * {@link #spegniNota(int, int)} e {@link #cambiaProgramma(int, int)}, il sequencer
+ * (che riproduce i brani) attraverso il metodo {@link #invia(int)}. Oltre al
+ * sintetizzatore, sono disponibili un'uscita verso un qualunque {@link javax.sound.midi.Receiver}
+ * ({@link UscitaRicevitore}), una che registra i messaggi in memoria ({@link UscitaRegistrata})
+ * e una che li ignora ({@link UscitaNulla}); le ultime due consentono di usare (o di
+ * misurare le prestazioni di) tutta la libreria anche in assenza di dispositivi audio.
+ * </p>
+ *
+ * <p>
+ * I messaggi sono codificati in un intero come <samp>stato | dato1 &lt;&lt; 8 | dato2 &lt;&lt; 16</samp>,
+ * dove lo stato comprende il canale (ad esempio, <samp>ShortMessage.NOTE_ON | 3 | 60 &lt;&lt; 8 | 100 &lt;&lt; 16</samp>
+ * accende il DO centrale sul canale 3); le scadenze sono espresse nella scala di {@link System#nanoTime()}.
+ * I metodi di un'uscita possono essere invocati da thread diversi.
+ * </p>
+ */
+public interface Uscita extends AutoCloseable {
+
+	/** Inizia a suonare una nota.
+	 *
+	 * @param canale il canale.
+	 * @param pitch il pitch.
+	 * @param intensita l'intensità.
+	 */
+	void accendiNota( int canale, int pitch, int intensita );
+
+	/** Cessa di suonare una nota.
+	 *
+	 * @param canale il canale.
+	 * @param pitch il pitch.
+	 */
+	void spegniNota( int canale, int pitch );
+
+	/** Interrompe le note in corso su un canale e ne cambia il programma.
+	 *
+	 * @param canale il canale.
+	 * @param programma il programma.
+	 */
+	void cambiaProgramma( int canale, int programma );
+
+	/** Invia subito un messaggio.
+	 *
+	 * @param codice il messaggio (codificato come descritto nell'introduzione).
+	 */
+	void invia( int codice );
+
+	/** Invia un gruppo di messaggi, ciascuno alla propria scadenza.
+	 *
+	 * <p>I messaggi la cui scadenza è già trascorsa sono inviati subito; il metodo 
+	 * può restituire il controllo prima che gli altri siano stati inviati.</p>
+	 *
+	 * @param codici i messaggi.
+	 * @param scadenze le scadenze (nella scala di {@link System#nanoTime()}).
+	 * @param n il numero di messaggi (i primi <samp>n</samp> elementi dei vettori).
+	 * @throws IllegalArgumentException se <samp>n</samp> è negativo o maggiore della lunghezza di uno dei vettori.
+	 */
+	void invia( int[] codici, long[] scadenze, int n );
+
+	/** Chiude l'uscita, rilasciando le risorse che usa. */
+	@Override
+	void close();
+
+}
@@ -0,0 +1,46 @@
+package it.unimi.di.j4im.riproduzione;
+
+/*
+ * Copyright 2014 Massimo Santini
+ *
+ * This file is part of j4im.
+ *
+ * j4im is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j4im is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j4im.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+/** Un'uscita che ignora tutti i messaggi (utile, ad esempio, per misurare le prestazioni della libreria, o per usarla in assenza di dispositivi audio). */
+public final class UscitaNulla implements Uscita {
+
+	@Override
+	public void accendiNota( final int canale, final int pitch, final int intensita ) {}
+
+	@Override
+	public void spegniNota( final int canale, final int pitch ) {}
+
+	@Override
+	public void cambiaProgramma( final int canale, final int programma ) {}
+
+	@Override
+	public void invia( final int codice ) {}
+
+	@Override
+	public void invia( final int[] codici, final long[] scadenze, final int n ) {
+		UscitaPianificata.controlla( codici, scadenze, n );
+	}
+
+	@Override
+	public void close() {}
+
+}
@@ -0,0 +1,98 @@
+package it.unimi.di.j4im.riproduzione;
+
+/*
+ * Copyright 2014 Massimo Santini
+ *
+ * This file is part of j4im.
+ *
+ * j4im is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j4im is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j4im.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+import java.util.Arrays;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.ShortMessage;
+
+/** Un'uscita che invia i messaggi subito, affidando quelli con una scadenza futura al {@link Sintetizzatore#pianificatore() pianificatore}.
+ *
+ * <p>
+ * Le sottoclassi devono implementare solo {@link #invia(int)} e {@link #close()}; 
+ * i messaggi di un gruppo che hanno la stessa scadenza vengono inviati da una sola
+ * azione del pianificatore.
+ * </p>
+ */
+abstract class UscitaPianificata implements Uscita {
+
+	@Override
+	public void accendiNota( final int canale, final int pitch, final int intensita ) {
+		invia( ShortMessage.NOTE_ON | canale | pitch << 8 | intensita << 16 );
+	}
+
+	@Override
+	public void spegniNota( final int canale, final int pitch ) {
+		invia( ShortMessage.NOTE_OFF | canale | pitch << 8 );
+	}
+
+	@Override
+	public void cambiaProgramma( final int canale, final int programma ) {
+		invia( ShortMessage.CONTROL_CHANGE | canale | 123 << 8 ); // all notes off
+		invia( ShortMessage.PROGRAM_CHANGE | canale | programma << 8 );
+	}
+
+	@Override
+	public void invia( final int[] codici, final long[] scadenze, final int n ) {
+		controlla( codici, scadenze, n );
+		final long adesso = System.nanoTime();
+		for ( int i = 0, j; i < n; i = j ) {
+			for ( j = i + 1; j < n && scadenze[ j ] == scadenze[ i ]; j++ );
+			if ( scadenze[ i ] - adesso <= 0 ) {
+				for ( int k = i; k < j; k++ ) invia( codici[ k ] );
+				continue;
+			}
+			final int[] gruppo = Arrays.copyOfRange( codici, i, j );
+			Sintetizzatore.pianificatore().pianifica( scadenze[ i ], new Runnable() {
+				public void run() {
+					for ( int codice : gruppo ) invia( codice );
+				}
+			} );
+		}
+	}
+
+	/** Controlla gli argomenti di {@link Uscita#invia(int[], long[], int)}.
+	 *
+	 * @param codici i messaggi.
+	 * @param scadenze le scadenze.
+	 * @param n il numero di messaggi.
+	 * @throws IllegalArgumentException se <samp>n</samp> è negativo o maggiore della lunghezza di uno dei vettori.
+	 */
+	static void controlla( final int[] codici, final long[] scadenze, final int n ) {
+		if ( n < 0 || n > codici.length || n > scadenze.length ) throw new IllegalArgumentException( "Il numero di messaggi dev'essere compreso tra 0 e la lunghezza dei vettori." );
+	}
+
+	/** Restituisce il messaggio corrispondente ad un codice.
+	 *
+	 * @param codice il codice.
+	 * @return il messaggio.
+	 * @throws IllegalArgumentException se il codice non corrisponde ad un messaggio valido.
+	 */
+	static ShortMessage messaggio( final int codice ) {
+		try {
+			return new ShortMessage( codice & 0xFF, codice >>> 8 & 0xFF, codice >>> 16 & 0xFF );
+		} catch ( InvalidMidiDataException e ) {
+			throw new IllegalArgumentException( e );
+		}
+	}
+
+}
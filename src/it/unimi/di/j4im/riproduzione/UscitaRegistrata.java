@@ -0,0 +1,135 @@
+package it.unimi.di.j4im.riproduzione;
+
+/*
+ * Copyright 2014 Massimo Santini
+ *
+ * This file is part of j4im.
+ *
+ * j4im is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j4im is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j4im.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+import java.util.Arrays;
+
+import javax.sound.midi.ShortMessage;
+
+/** Un'uscita che registra in memoria i messaggi ricevuti (utile, ad esempio, per verificare cosa viene suonato in assenza di dispositivi audio).
+ *
+ * <p>
+ * Ciascun messaggio viene registrato, nell'ordine in cui è ricevuto, insieme alla
+ * sua scadenza: quella indicata, per i messaggi inviati con {@link #invia(int[], long[], int)}
+ * (che non vengono quindi attesi), o l'istante di ricezione, per gli altri. Il cambio di
+ * programma viene registrato come il messaggio <em>all notes off</em> seguito da 
+ * {@link ShortMessage#PROGRAM_CHANGE}. La registrazione resta disponibile anche dopo la
+ * chiusura dell'uscita.
+ * </p>
+ */
+public final class UscitaRegistrata implements Uscita {
+
+	/** I messaggi registrati. */
+	private int[] codici = new int[ 256 ];
+	/** Le scadenze dei messaggi registrati. */
+	private long[] scadenze = new long[ 256 ];
+	/** Il numero di messaggi registrati. */
+	private int numeroMessaggi;
+
+	/** Registra un messaggio.
+	 *
+	 * @param codice il messaggio.
+	 * @param scadenza la scadenza.
+	 */
+	private synchronized void registra( final int codice, final long scadenza ) {
+		if ( numeroMessaggi == codici.length ) {
+			codici = Arrays.copyOf( codici, 2 * numeroMessaggi );
+			scadenze = Arrays.copyOf( scadenze, 2 * numeroMessaggi );
+		}
+		codici[ numeroMessaggi ] = codice;
+		scadenze[ numeroMessaggi++ ] = scadenza;
+	}
+
+	@Override
+	public void accendiNota( final int canale, final int pitch, final int intensita ) {
+		invia( ShortMessage.NOTE_ON | canale | pitch << 8 | intensita << 16 );
+	}
+
+	@Override
+	public void spegniNota( final int canale, final int pitch ) {
+		invia( ShortMessage.NOTE_OFF | canale | pitch << 8 );
+	}
+
+	@Override
+	public synchronized void cambiaProgramma( final int canale, final int programma ) {
+		final long adesso = System.nanoTime();
+		registra( ShortMessage.CONTROL_CHANGE | canale | 123 << 8, adesso );
+		registra( ShortMessage.PROGRAM_CHANGE | canale | programma << 8, adesso );
+	}
+
+	@Override
+	public void invia( final int codice ) {
+		registra( codice, System.nanoTime() );
+	}
+
+	@Override
+	public synchronized void invia( final int[] codici, final long[] scadenze, final int n ) {
+		UscitaPianificata.controlla( codici, scadenze, n );
+		for ( int i = 0; i < n; i++ ) registra( codici[ i ], scadenze[ i ] );
+	}
+
+	/** Restituisce il numero di messaggi registrati.
+	 *
+	 * @return il numero di messaggi.
+	 */
+	public synchronized int numeroMessaggi() {
+		return numeroMessaggi;
+	}
+
+	/** Restituisce un messaggio registrato.
+	 *
+	 * @param i l'indice del messaggio (in ordine di ricezione).
+	 * @return il messaggio (codificato come descritto in {@link Uscita}).
+	 * @throws IndexOutOfBoundsException se non è stato registrato un messaggio di indice <samp>i</samp>.
+	 */
+	public synchronized int codice( final int i ) {
+		if ( i < 0 || i >= numeroMessaggi ) throw new IndexOutOfBoundsException( Integer.toString( i ) );
+		return codici[ i ];
+	}
+
+	/** Restituisce la scadenza di un messaggio registrato.
+	 *
+	 * @param i l'indice del messaggio (in ordine di ricezione).
+	 * @return la scadenza (nella scala di {@link System#nanoTime()}).
+	 * @throws IndexOutOfBoundsException se non è stato registrato un messaggio di indice <samp>i</samp>.
+	 */
+	public synchronized long scadenza( final int i ) {
+		if ( i < 0 || i >= numeroMessaggi ) throw new IndexOutOfBoundsException( Integer.toString( i ) );
+		return scadenze[ i ];
+	}
+
+	/** Restituisce i messaggi registrati.
+	 *
+	 * @return i messaggi (in ordine di ricezione).
+	 */
+	public synchronized int[] codici() {
+		return Arrays.copyOf( codici, numeroMessaggi );
+	}
+
+	/** Cancella i messaggi registrati. */
+	public synchronized void azzera() {
+		numeroMessaggi = 0;
+	}
+
+	@Override
+	public void close() {}
+
+}
@@ -0,0 +1,55 @@
+package it.unimi.di.j4im.riproduzione;
+
+/*
+ * Copyright 2014 Massimo Santini
+ *
+ * This file is part of j4im.
+ *
+ * j4im is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j4im is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j4im.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+import javax.sound.midi.Receiver;
+
+/** Un'uscita che invia i messaggi ad un {@link Receiver} (ad esempio, quello di un dispositivo MIDI esterno).
+ *
+ * <p>I messaggi sono inviati senza marca temporale (quelli con una scadenza futura
+ * vengono affidati al {@link Sintetizzatore#pianificatore() pianificatore}).</p>
+ */
+public final class UscitaRicevitore extends UscitaPianificata {
+
+	/** Il ricevitore. */
+	private final Receiver ricevitore;
+
+	/** Costruisce un'uscita verso un ricevitore.
+	 *
+	 * @param ricevitore il ricevitore (che verrà chiuso alla chiusura dell'uscita).
+	 * @throws IllegalArgumentException se il ricevitore è <samp>null</samp>.
+	 */
+	public UscitaRicevitore( final Receiver ricevitore ) {
+		if ( ricevitore == null ) throw new IllegalArgumentException( "Il ricevitore non può essere null." );
+		this.ricevitore = ricevitore;
+	}
+
+	@Override
+	public void invia( final int codice ) {
+		ricevitore.send( messaggio( codice ), -1 );
+	}
+
+	@Override
+	public void close() {
+		ricevitore.close();
+	}
+
+}
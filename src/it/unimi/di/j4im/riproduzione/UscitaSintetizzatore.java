@@ -0,0 +1,126 @@
+package it.unimi.di.j4im.riproduzione;
+
+/*
+ * Copyright 2014 Massimo Santini
+ *
+ * This file is part of j4im.
+ *
+ * j4im is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j4im is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j4im.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+import javax.sound.midi.MidiChannel;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.MidiUnavailableException;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Synthesizer;
+
+/** Un'uscita che suona i messaggi con un {@link Synthesizer} (per impostazione predefinita, quello restituito da {@link MidiSystem#getSynthesizer()}).
+ *
+ * <p>
+ * Le note e i messaggi più comuni sono inviati direttamente ai {@link MidiChannel canali}
+ * del sintetizzatore, gli altri al suo {@link Receiver}; i messaggi con una scadenza
+ * futura vengono affidati al {@link Sintetizzatore#pianificatore() pianificatore}.
+ * </p>
+ */
+public final class UscitaSintetizzatore extends UscitaPianificata {
+
+	/** Il sintetizzatore. */
+	private final Synthesizer synth;
+	/** I canali del sintetizzatore. */
+	private final MidiChannel[] canali;
+	/** Il ricevitore del sintetizzatore. */
+	private final Receiver ricevitore;
+
+	/** Costruisce un'uscita basata sul sintetizzatore di sistema, aprendolo.
+	 *
+	 * @throws MidiUnavailableException se il sintetizzatore non è disponibile.
+	 */
+	public UscitaSintetizzatore() throws MidiUnavailableException {
+		this( MidiSystem.getSynthesizer() );
+	}
+
+	/** Costruisce un'uscita basata su un sintetizzatore, aprendolo (se necessario).
+	 *
+	 * @param synth il sintetizzatore (che verrà chiuso alla chiusura dell'uscita).
+	 * @throws MidiUnavailableException se il sintetizzatore non può essere aperto.
+	 */
+	public UscitaSintetizzatore( final Synthesizer synth ) throws MidiUnavailableException {
+		if ( ! synth.isOpen() ) synth.open();
+		this.synth = synth;
+		canali = synth.getChannels();
+		ricevitore = synth.getReceiver();
+	}
+
+	/** Restituisce l'indice degli strumenti caricati nel sintetizzatore.
+	 *
+	 * @return l'indice.
+	 */
+	IndiceStrumenti indice() {
+		return new IndiceStrumenti( synth.getLoadedInstruments() );
+	}
+
+	/** Restituisce le rappresentazioni testuali degli strumenti disponibili nel sintetizzatore.
+	 *
+	 * @return le rappresentazioni testuali.
+	 */
+	String[] strumenti() {
+		return new IndiceStrumenti( synth.getAvailableInstruments() ).descrizioni();
+	}
+
+	@Override
+	public void accendiNota( final int canale, final int pitch, final int intensita ) {
+		canali[ canale ].noteOn( pitch, intensita );
+	}
+
+	@Override
+	public void spegniNota( final int canale, final int pitch ) {
+		canali[ canale ].noteOff( pitch );
+	}
+
+	@Override
+	public void cambiaProgramma( final int canale, final int programma ) {
+		canali[ canale ].allNotesOff();
+		canali[ canale ].programChange( programma );
+	}
+
+	@Override
+	public void invia( final int codice ) {
+		final MidiChannel c = canali[ codice & 0x0F ];
+		final int dato1 = codice >>> 8 & 0xFF, dato2 = codice >>> 16 & 0xFF;
+		switch ( codice & 0xF0 ) {
+			case ShortMessage.NOTE_ON:
+				c.noteOn( dato1, dato2 );
+				break;
+			case ShortMessage.NOTE_OFF:
+				c.noteOff( dato1, dato2 );
+				break;
+			case ShortMessage.PROGRAM_CHANGE:
+				c.programChange( dato1 );
+				break;
+			case ShortMessage.CONTROL_CHANGE:
+				c.controlChange( dato1, dato2 );
+				break;
+			default:
+				ricevitore.send( messaggio( codice ), -1 );
+		}
+	}
+
+	@Override
+	public void close() {
+		synth.close();
+	}
+
+}
@@ -0,0 +1,118 @@
+package it.unimi.di.j4im.notazione;
+
+/*
+ * Copyright 2014 Massimo Santini
+ * 
+ * This file is part of j4im.
+ *
+ * j4im is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j4im is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j4im.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+public class TestAnalizzatoreSimboli {
+
+	private static final String[] SIMBOLI = {
+		"DO", "RE#", "MI♭5", "FA♯-1", "SOLb3", "LA:1/8", "SI:90", "SOL#3:1/8:100", "DO9:3/8", "DO-1:1/32:0",
+		"_", "_:1/2", "_:3/16"
+	};
+
+	@Test
+	public void testComeICostruttori() {
+		for ( String s : SIMBOLI ) {
+			final Simbolo atteso = s.charAt( 0 ) == '_' ? new Pausa( s ) : new Nota( s );
+			final Simbolo[] simboli = Simbolo.simboli( s );
+			assertEquals( 1, simboli.length );
+			assertEquals( atteso.toString(), simboli[ 0 ].toString() );
+			assertEquals( atteso.durata(), simboli[ 0 ].durata() );
+		}
+	}
+
+	@Test
+	public void testReader() {
+		final StringBuilder sb = new StringBuilder();
+		for ( int i = 0; i < 2000; i++ ) sb.append( SIMBOLI[ i % SIMBOLI.length ] ).append( i % 3 == 0 ? " ,\n" : "," );
+		final AnalizzatoreSimboli dalTesto = new AnalizzatoreSimboli( sb );
+		final AnalizzatoreSimboli dalReader = new AnalizzatoreSimboli( new StringReader( sb.toString() ) );
+		for ( int i = 0; i < 2000; i++ )
+			assertEquals( dalTesto.prossimo().toString(), dalReader.prossimo().toString() );
+		assertNull( dalTesto.prossimo() );
+		assertNull( dalReader.prossimo() );
+		assertEquals( sb.length(), dalReader.posizione() );
+	}
+
+	@Test
+	public void testStream() throws IOException {
+		final Path path = Files.createTempFile( "simboli", ".txt" );
+		try {
+			try ( Writer w = Files.newBufferedWriter( path, StandardCharsets.UTF_8 ) ) {
+				for ( int i = 0; i < 10000; i++ ) w.write( SIMBOLI[ i % SIMBOLI.length ] + ",\n" );
+			}
+			try ( Stream<Simbolo> simboli = Simbolo.stream( path ) ) {
+				final Iterator<Simbolo> it = simboli.iterator();
+				for ( int i = 0; i < 10000; i++ )
+					assertEquals( Simbolo.simboli( SIMBOLI[ i % SIMBOLI.length ] )[ 0 ].toString(), it.next().toString() );
+				assertTrue( !it.hasNext() );
+			}
+		} finally {
+			Files.delete( path );
+		}
+	}
+
+	@Test
+	public void testCodici() {
+		final String testo = "DO, _:1/8, SOL#3:1/8:100, RE:1/2";
+		final AnalizzatoreSimboli analizzatore = new AnalizzatoreSimboli( testo );
+		for ( Simbolo s : Simbolo.simboli( testo ) )
+			assertEquals( SimboloArray.codifica( s ), analizzatore.prossimoCodice() );
+		assertEquals( AnalizzatoreSimboli.FINE, analizzatore.prossimoCodice() );
+	}
+
+	@Test
+	public void testErrori() {
+		assertPosizione( "DO,RE,XX", 6 );
+		assertPosizione( "DO,RE MI", 6 );
+		assertPosizione( "DO:1/", 5 );
+		assertPosizione( "DO:1/0", 6 );
+		assertPosizione( "SOL#9", 5 );
+		assertPosizione( "DO:128", 6 );
+		assertPosizione( "_:90", 4 );
+		assertPosizione( "DO:99999999999/4", 13 );
+	}
+
+	private static void assertPosizione( final String testo, final int posizione ) {
+		try {
+			Simbolo.simboli( testo );
+			fail( "Nessun errore per " + testo );
+		} catch ( IllegalArgumentException e ) {
+			assertTrue( e.getMessage(), e.getMessage().contains( "posizione " + posizione + ":" ) );
+		}
+	}
+
+}
@@ -0,0 +1,66 @@
+package it.unimi.di.j4im.notazione;
+
+/*
+ * Copyright 2014 Massimo Santini
+ * 
+ * This file is part of j4im.
+ *
+ * j4im is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j4im is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j4im.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Test;
+
+public class TestArchivioSimboli {
+
+	@Test
+	public void testScriviApri() throws IOException {
+		final SimboloArray melodia = new SimboloArray( Simbolo.simboli( "DO,RE:1/8,_,MI:1/2:90,_:1/16,SOL#3:3/8:100" ) );
+		final SimboloArray lunga = new SimboloArray();
+		for ( int i = 0; i < 100000; i++ ) lunga.accoda( SimboloArray.codificaNota( i % 128, i % 100, Durata.di( 1 + i % 3, 16 ) ) );
+		final Path path = Files.createTempFile( "j4im", ".simboli" );
+		try {
+			ArchivioSimboli.scrivi( path, melodia, new SimboloArray(), lunga );
+			assertEquals( 16 + 3 * 16 + 8 * ( melodia.lunghezza() + lunga.lunghezza() ), Files.size( path ) );
+			final ArchivioSimboli archivio = ArchivioSimboli.apri( path );
+			assertEquals( 3, archivio.numeroSequenze() );
+			assertEquals( melodia.toString(), archivio.sequenza( 0 ).toString() );
+			assertEquals( 0, archivio.lunghezza( 1 ) );
+			assertEquals( lunga.lunghezza(), archivio.lunghezza( 2 ) );
+			assertArrayEquals( lunga.codici(), archivio.sequenza( 2 ).codici() );
+			assertEquals( lunga.codice( 12345 ), archivio.codice( 2, 12345 ) );
+		} finally {
+			Files.delete( path );
+		}
+	}
+
+	@Test( expected = IOException.class )
+	public void testFormatoErrato() throws IOException {
+		final Path path = Files.createTempFile( "j4im", ".simboli" );
+		try {
+			Files.write( path, "DO,RE,MI,FA,SOL,LA,SI".getBytes( "UTF-8" ) );
+			ArchivioSimboli.apri( path );
+		} finally {
+			Files.delete( path );
+		}
+	}
+
+}
@@ -21,6 +21,8 @@ package it.unimi.di.j4im.notazione;
  */
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 import org.junit.Test;
 
@@ -55,6 +57,66 @@ public class TestDurata {
 	public void testDivisoZero() {
 		new Durata( 1 ).diviso( 0 );
 	}
-	
-	
+
+	@Test
+	public void testDi() {
+		assertSame( Durata.SEMIMINIMA, Durata.di( 2, 8 ) );
+		assertSame( Durata.di( 3, 8 ), Durata.fromString( "6/16" ) );
+		assertSame( Durata.di( 1, 12 ), Durata.di( 1, 4 ).diviso( 3 ) );
+		assertSame( Durata.CROMA, Durata.SEMICROMA.piu( Durata.SEMICROMA ) );
+		assertEquals( new Durata( 1, 1000 ), Durata.di( 1, 1000 ) );
+	}
+
+	@Test
+	public void testTicks() {
+		assertEquals( 960, Durata.SEMIMINIMA.ticksEsatti( 960 ) );
+		assertEquals( 1440, Durata.di( 3, 8 ).ticksEsatti( 960 ) );
+		assertEquals( 720, Durata.di( 3, 8 ).ticksEsatti( 480 ) );
+		assertEquals( 320, Durata.di( 1, 12 ).ticksEsatti( 960 ) );
+		assertEquals( 333, Durata.di( 1, 12 ).ticksEsatti( 1000 ) ); // troncato al tick
+		assertEquals( 4L * ( 1 << 20 ) * Integer.MAX_VALUE / 3, new Durata( Integer.MAX_VALUE, 3 ).ticksEsatti( 1 << 20 ) );
+		final int t = Durata.di( 3, 8 ).ticks( 960 ); // la conversione in virgola mobile restituisce un int, come in passato
+		assertEquals( 1440, t );
+		assertEquals( 1440, Durata.di( 3, 8 ).ticks( 960.0 ) );
+	}
+
+	@Test
+	public void testMsNanos() {
+		assertEquals( 500, Durata.SEMIMINIMA.ms( 120 ) );
+		assertEquals( 750, Durata.di( 3, 8 ).ms( 120 ) );
+		assertEquals( 166_666_666L, Durata.di( 1, 12 ).nanos( 120 ) );
+		assertEquals( 4_000_000_000L * Integer.MAX_VALUE, new Durata( Integer.MAX_VALUE, 1 ).nanos( 60 ) );
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public void testTicksRisoluzioneErrata() {
+		Durata.SEMIMINIMA.ticksEsatti( 0 );
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public void testFromStringErrato() {
+		Durata.fromString( "1/x" );
+	}
+
+	@Test
+	public void testAccumulatore() {
+		final DurataAccumulatore a = new DurataAccumulatore();
+		assertTrue( a.nulla() );
+		Durata attesa = Durata.di( 1, 3 );
+		a.aggiungi( Durata.di( 1, 3 ) );
+		for ( int i = 0; i < 1000; i++ ) {
+			final Durata d = Durata.di( 1 + i % 3, 1 << ( i % 7 ) );
+			a.aggiungi( d );
+			attesa = attesa.piu( d );
+		}
+		assertEquals( attesa, a.durata() );
+		a.azzera().aggiungi( Durata.CROMA, 6 );
+		assertSame( Durata.di( 3, 4 ), a.durata() );
+	}
+
+	@Test( expected = ArithmeticException.class )
+	public void testAccumulatoreOverflow() {
+		new DurataAccumulatore().aggiungi( Long.MAX_VALUE, 1 ).aggiungi( 1, 1 );
+	}
+
 }
@@ -22,6 +22,8 @@ package it.unimi.di.j4im.notazione;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
 
 import org.junit.Test;
 
@@ -81,6 +83,27 @@ public class TestSimbolo {
 		}
 	}
 	
+	@Test
+	public void testAccordatura() {
+		for ( int pitch = 0; pitch < 128; pitch++ ) {
+			final Nota nota = new Nota( pitch );
+			assertEquals( (float)( Nota.FREQUENZA_LA * Math.pow( Nota.RAPPORTO_DI_FREQUENZA, pitch - Nota.PITCH_LA ) ), nota.frequenza(), 0 );
+			assertEquals( pitch, new Nota( nota.frequenza() ).pitch() );
+			assertEquals( pitch, new Nota( nota.frequenza() * 1.02f ).pitch() );
+			assertEquals( pitch, new Nota( nota.frequenza() / 1.02f ).pitch() );
+		}
+		final Accordatura barocca = new Accordatura( 415 );
+		assertEquals( 415, new Nota( "LA" ).frequenza( barocca ), 0 );
+		assertEquals( Nota.PITCH_LA, barocca.pitch( 415 ) );
+		assertEquals( Nota.PITCH_LA - 1, Accordatura.STANDARD.pitch( 415 ) );
+		assertEquals( Nota.PITCH_LA + 1, Nota.fabbricatore().frequenza( 440, barocca ).fabbrica().pitch() );
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public void testAccordaturaRanges() {
+		new Nota( 13000f );
+	}
+
 	@Test
 	public void testSimboli() {
 		Simbolo[] actual = Simbolo.simboli(  "DO, RE,MI , FA" );
@@ -93,6 +116,25 @@ public class TestSimbolo {
 		assertArrayEquals( expected, actual);
 	}
 
+	@Test
+	public void testDi() {
+		for ( int pitch = 0; pitch < 128; pitch++ ) {
+			assertSame( Nota.di( pitch ), Nota.di( pitch ) );
+			assertEquals( new Nota( pitch ), Nota.di( pitch ) );
+			assertEquals( new Nota( pitch ).hashCode(), Nota.di( pitch ).hashCode() );
+		}
+		final Nota nota = Nota.di( 61, Durata.CROMA, 90 );
+		assertSame( nota, Nota.di( 61, new Durata( 2, 16 ), 90 ) );
+		assertEquals( new Nota( "DO#:1/8:90" ), nota );
+		assertEquals( new Nota( "DO#:1/8:90" ).hashCode(), nota.hashCode() );
+		assertNotEquals( new Nota( "DO#:1/4:90" ), nota );
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public void testDiRanges() {
+		Nota.di( 128 );
+	}
+
 	@Test( expected = IllegalArgumentException.class )
 	public void testRanges() {
 		new Nota( "SOL#9" );
@@ -0,0 +1,67 @@
+package it.unimi.di.j4im.notazione;
+
+/*
+ * Copyright 2014 Massimo Santini
+ * 
+ * This file is part of j4im.
+ *
+ * j4im is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j4im is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j4im.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TestSimboloArray {
+
+	@Test
+	public void testCodifica() {
+		final long nota = SimboloArray.codifica( new Nota( "SOL#3:3/8:100" ) );
+		assertFalse( SimboloArray.pausa( nota ) );
+		assertEquals( 56, SimboloArray.pitch( nota ) );
+		assertEquals( 100, SimboloArray.intensita( nota ) );
+		assertEquals( new Durata( 3, 8 ), SimboloArray.durata( nota ) );
+		final long pausa = SimboloArray.codifica( new Pausa( "_:1/2" ) );
+		assertTrue( SimboloArray.pausa( pausa ) );
+		assertEquals( 1, SimboloArray.numeratore( pausa ) );
+		assertEquals( 2, SimboloArray.denominatore( pausa ) );
+	}
+
+	@Test
+	public void testSimboli() {
+		final Simbolo[] simboli = Simbolo.simboli( "DO,RE:1/8,_,MI:1/2:90,_:1/16,SOL#3:3/8:100" );
+		final SimboloArray array = new SimboloArray( simboli );
+		assertEquals( simboli.length, array.lunghezza() );
+		assertEquals( "DO,RE:1/8,_,MI:1/2:90,_:1/16,SOL♯3:3/8:100", array.toString() );
+		final SimboloArray cresciuto = new SimboloArray( 0 );
+		for ( Simbolo s : simboli ) cresciuto.accoda( s );
+		assertArrayEquals( array.codici(), cresciuto.codici() );
+		assertEquals( array.toString(), new SimboloArray( cresciuto.simboli() ).toString() );
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public void testDurataNonRappresentabile() {
+		new SimboloArray().accoda( new Nota( 60, new Durata( 1, 1 << 24 ), 64 ) );
+	}
+
+	@Test( expected = IndexOutOfBoundsException.class )
+	public void testIndice() {
+		new SimboloArray( Simbolo.simboli( "DO" ) ).codice( 1 );
+	}
+
+}
@@ -0,0 +1,78 @@
+package it.unimi.di.j4im.notazione;
+
+/*
+ * Copyright 2014 Massimo Santini
+ * 
+ * This file is part of j4im.
+ *
+ * j4im is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j4im is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j4im.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class TestTrasformazioni {
+
+	private static final Simbolo[] SIMBOLI = Simbolo.simboli( "DO,RE:1/8,_,MI:1/2:90,_:1/16,SOL#3:3/8:100" );
+
+	@Test
+	public void testTrasponi() {
+		assertEquals( "DO5,RE5:1/8,_,MI5:1/2:90,_:1/16,SOL♯:3/8:100", Arrays.toString( Trasformazioni.trasponi( SIMBOLI, 12 ) ).replaceAll( "[\\[\\] ]", "" ) );
+		assertEquals( "DO5,RE5:1/8,_,MI5:1/2:90,_:1/16,SOL♯:3/8:100", Trasformazioni.trasponi( new SimboloArray( SIMBOLI ), 12 ).toString() );
+	}
+
+	@Test
+	public void testInverti() {
+		assertEquals( "DO,LA♯3:1/8,_,SOL♯3:1/2:90,_:1/16,MI:3/8:100", Trasformazioni.inverti( new SimboloArray( SIMBOLI ), 60 ).toString() );
+		assertEquals( Trasformazioni.inverti( new SimboloArray( SIMBOLI ), 60 ).toString(), new SimboloArray( Trasformazioni.inverti( SIMBOLI, 60 ) ).toString() );
+	}
+
+	@Test
+	public void testScalaDurate() {
+		assertEquals( "DO:1/2,RE,_:1/2,MI:1/1:90,_:1/8,SOL♯3:3/4:100", Trasformazioni.scalaDurate( new SimboloArray( SIMBOLI ), 2, 1 ).toString() );
+		assertEquals( "DO:1/6,RE:1/12,_:1/6,MI:1/3:90,_:1/24,SOL♯3:100", new SimboloArray( Trasformazioni.scalaDurate( SIMBOLI, 2, 3 ) ).toString() );
+	}
+
+	@Test
+	public void testIntensitaRetrogrado() {
+		assertEquals( "SOL♯3:3/8:10,_:1/16,MI:1/2:10,_,RE:1/8:10,DO:10", Trasformazioni.retrogrado( Trasformazioni.intensita( new SimboloArray( SIMBOLI ), 10 ) ).toString() );
+		assertEquals( "SOL♯3:3/8:10,_:1/16,MI:1/2:10,_,RE:1/8:10,DO:10", new SimboloArray( Trasformazioni.retrogrado( Trasformazioni.intensita( SIMBOLI, 10 ) ) ).toString() );
+	}
+
+	@Test
+	public void testParallelo() {
+		final SimboloArray array = new SimboloArray();
+		for ( int i = 0; i < 3 * Trasformazioni.SOGLIA_PARALLELISMO; i++ ) array.accoda( SIMBOLI[ i % SIMBOLI.length ] );
+		final Simbolo[] simboli = array.simboli();
+		final SimboloArray trasposto = Trasformazioni.trasponi( array, -7 );
+		assertArrayEquals( new SimboloArray( Trasformazioni.trasponi( simboli, -7 ) ).codici(), trasposto.codici() );
+		assertArrayEquals( array.codici(), Trasformazioni.trasponi( trasposto, 7 ).codici() );
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public void testTrasponiRange() {
+		Trasformazioni.trasponi( SIMBOLI, 70 );
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public void testTrasponiRangeCompatto() {
+		Trasformazioni.trasponi( new SimboloArray( SIMBOLI ), -57 );
+	}
+
+}
@@ -0,0 +1,117 @@
+package it.unimi.di.j4im.riproduzione;
+
+/*
+ * Copyright 2014 Massimo Santini
+ * 
+ * This file is part of j4im.
+ *
+ * j4im is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j4im is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j4im.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.sound.midi.MidiEvent;
+
+import org.junit.After;
+import org.junit.Test;
+
+import it.unimi.di.j4im.notazione.Durata;
+import it.unimi.di.j4im.notazione.Nota;
+import it.unimi.di.j4im.notazione.Simbolo;
+
+/* Gli strumenti sono costruiti senza il Sintetizzatore. */
+public class TestBrano {
+
+	private final ExecutorService esecutore = Executors.newFixedThreadPool( 4 );
+
+	@After
+	public void arresta() {
+		esecutore.shutdownNow();
+	}
+
+	private static Runnable riempi( final Parte parte, final int pitch ) {
+		return new Runnable() {
+			public void run() {
+				for ( int i = 0; i < 1000; i++ ) {
+					parte.accoda( Nota.di( pitch + i % 12, Durata.SEMIMINIMA, 64 ) );
+					if ( i % 10 == 0 ) parte.accodaAccordo( Simbolo.simboli( "DO,MI:1/8,SOL" ) );
+				}
+			}
+		};
+	}
+
+	@Test
+	public void testComponi() throws InterruptedException {
+		final Brano parallelo = new Brano(), sequenziale = new Brano();
+		final Parte[] parti = new Parte[ 8 ];
+		final Runnable[] compiti = new Runnable[ parti.length ];
+		final IndiceTemporale indice = parallelo.indice();
+		for ( int p = 0; p < parti.length; p++ ) {
+			parti[ p ] = new Parte( parallelo, new Strumento( p, "Prova" ) );
+			compiti[ p ] = riempi( parti[ p ], 40 + p );
+			riempi( new Parte( sequenziale, new Strumento( p, "Prova" ) ), 40 + p ).run();
+		}
+		parallelo.componi( esecutore, compiti );
+		assertEquals( parti.length, parallelo.numeroParti() );
+		for ( int p = 0; p < parti.length; p++ ) {
+			final MidiEvent[] attesi = sequenziale.parte( p ).eventi(), ottenuti = parallelo.parte( p ).eventi();
+			assertEquals( attesi.length, ottenuti.length );
+			for ( int i = 0; i < attesi.length; i++ ) {
+				assertEquals( attesi[ i ].getTick(), ottenuti[ i ].getTick() );
+				assertArrayEquals( attesi[ i ].getMessage().getMessage(), ottenuti[ i ].getMessage().getMessage() );
+			}
+		}
+		assertEquals( sequenziale.indice().numeroNote(), indice.numeroNote() );
+		assertEquals( parti.length, parallelo.sequenza().getTracks().length );
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public void testComponiEccezione() throws InterruptedException {
+		final Brano b = new Brano();
+		final Parte p = new Parte( b, new Batteria() );
+		b.componi( esecutore, riempi( p, 40 ), new Runnable() {
+			public void run() {
+				Simbolo.simboli( "NON_UNA_NOTA" );
+			}
+		} );
+	}
+
+	@Test
+	public void testSenzaSintetizzatore() throws IOException {
+		// comporre e scrivere un brano non richiede di accendere il sintetizzatore
+		final Brano b = new Brano();
+		try ( Strumento flauto = new Strumento( "Flute" ); Strumento chitarra = new Strumento( "Guitar" ) ) {
+			assertEquals( 73, Sintetizzatore.programma( "Flute" ) );
+			assertEquals( 24, Sintetizzatore.programma( "Guitar" ) );
+			new Parte( b, flauto ).accoda( Simbolo.simboli( "DO,RE,MI" ) );
+			new Parte( b, chitarra ).accoda( Simbolo.simboli( "MI,RE,DO" ) );
+			assertEquals( 1, flauto.canale() );
+			assertEquals( 2, chitarra.canale() );
+		}
+		final ByteArrayOutputStream file = new ByteArrayOutputStream();
+		b.scrivi( Channels.newChannel( file ), 1 );
+		assertEquals( 2, b.numeroParti() );
+		assertFalse( Sintetizzatore.acceso() );
+	}
+
+}
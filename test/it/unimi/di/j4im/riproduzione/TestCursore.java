@@ -0,0 +1,94 @@
+package it.unimi.di.j4im.riproduzione;
+
+/*
+ * Copyright 2014 Massimo Santini
+ * 
+ * This file is part of j4im.
+ *
+ * j4im is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j4im is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j4im.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.ConcurrentModificationException;
+
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.ShortMessage;
+
+import org.junit.Test;
+
+import it.unimi.di.j4im.notazione.Simbolo;
+
+/* Gli strumenti sono costruiti senza il Sintetizzatore. */
+public class TestCursore {
+
+	@Test
+	public void testParte() {
+		final Parte p = new Parte( new Brano(), new Strumento( 3, "Prova" ) );
+		p.accoda( Simbolo.simboli( "DO,_:1/8,RE:1/2:90,MI:1/8" ) );
+		final MidiEvent[] eventi = p.eventi();
+		int i = 0;
+		for ( Cursore c = p.cursore(); c.avanza(); i++ ) {
+			assertEquals( eventi[ i ].getTick(), c.tick() );
+			final ShortMessage m = (ShortMessage)eventi[ i ].getMessage();
+			assertArrayEquals( new int[] { m.getCommand(), m.getChannel(), m.getData1(), m.getData2() }, new int[] { c.comando(), c.canale(), c.dato1(), c.dato2() } );
+		}
+		assertEquals( eventi.length, i );
+		// gli eventi nell'intervallo [960, 1441) sono il NOTE_OFF del DO e il NOTE_ON del RE
+		final Cursore c = p.cursore( 960, 1441 );
+		c.avanza();
+		assertEquals( ShortMessage.NOTE_OFF, c.comando() );
+		assertEquals( 960, c.tick() );
+		c.avanza();
+		assertEquals( ShortMessage.NOTE_ON, c.comando() );
+		assertEquals( 62, c.dato1() );
+		assertEquals( 90, c.dato2() );
+		assertEquals( 1440, c.tick() );
+		assertFalse( c.avanza() );
+		assertFalse( p.cursore( 960, 960 ).avanza() );
+	}
+
+	@Test
+	public void testBrano() {
+		final Brano b = new Brano();
+		final Parte p = new Parte( b, new Strumento( 1, "Prova" ) ), q = new Parte( b, new Batteria() );
+		p.accoda( Simbolo.simboli( "DO,RE,MI" ) );
+		q.accodaAccordi( new Simbolo[][] { Simbolo.simboli( "DO:1/8,MI:1/8" ), Simbolo.simboli( "DO:1/8" ), Simbolo.simboli( "DO:1/8,MI:1/8" ) } );
+		long ultimo = Long.MIN_VALUE;
+		int n = 0;
+		for ( Cursore c = b.cursore(); c.avanza(); n++ ) {
+			assertEquals( c.parte() == 0 ? 1 : Batteria.CANALE, c.canale() );
+			assertEquals( true, c.tick() >= ultimo );
+			ultimo = c.tick();
+		}
+		assertEquals( p.numeroEventi() + q.numeroEventi(), n );
+		n = 0;
+		for ( Cursore c = b.cursore( 480, 1000, Batteria.CANALE ); c.avanza(); n++ ) assertEquals( 1, c.parte() );
+		assertEquals( 6, n );
+	}
+
+	@Test( expected = ConcurrentModificationException.class )
+	public void testModifica() {
+		final Parte p = new Parte( new Brano(), new Batteria() );
+		p.accoda( Simbolo.simboli( "DO,RE,MI" ) );
+		final Cursore c = p.cursore();
+		c.avanza();
+		p.accoda( Simbolo.simboli( "FA" ) );
+		c.avanza();
+	}
+
+}
@@ -0,0 +1,84 @@
+package it.unimi.di.j4im.riproduzione;
+
+/*
+ * Copyright 2014 Massimo Santini
+ * 
+ * This file is part of j4im.
+ *
+ * j4im is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j4im is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j4im.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import javax.sound.midi.Instrument;
+import javax.sound.midi.Patch;
+
+import org.junit.Test;
+
+public class TestIndiceStrumenti {
+
+	/** Uno strumento fittizio, rappresentato come quelli del sintetizzatore di sistema. */
+	private static final class Fittizio extends Instrument {
+		Fittizio( final String nome, final int programma ) {
+			super( null, new Patch( 0, programma ), nome, null );
+		}
+
+		@Override
+		public Object getData() {
+			return null;
+		}
+
+		@Override
+		public String toString() {
+			return "Instrument: " + getName() + " bank #0 preset #" + getPatch().getProgram();
+		}
+	}
+
+	private static final IndiceStrumenti INDICE = new IndiceStrumenti( new Instrument[] {
+		new Fittizio( "Piano 1", 0 ), new Fittizio( "Piano 2", 1 ), new Fittizio( "Piano", 2 ), new Fittizio( "Organ 1", 16 ), new Fittizio( "Organ 1", 17 )
+	} );
+
+	@Test
+	public void testEsatto() {
+		assertEquals( 2, INDICE.cerca( "Piano" ) ); // il nome esatto prevale
+		assertEquals( 3, INDICE.cerca( "Organ 1" ) ); // a parità di nome, il primo
+	}
+
+	@Test
+	public void testParziale() {
+		assertEquals( 0, INDICE.cerca( "Pia" ) );
+		assertEquals( 1, INDICE.cerca( "no 2" ) );
+		assertEquals( 1, INDICE.cerca( "no 2" ) );
+		assertEquals( 4, INDICE.cerca( "preset #17" ) );
+		assertEquals( 17, INDICE.patch( INDICE.cerca( "preset #17" ) ).getProgram() );
+	}
+
+	@Test
+	public void testGeneralMidi() {
+		// i nomi sono troncati come nel banco di suoni del sintetizzatore di sistema
+		assertEquals( 24, IndiceStrumenti.GM.cerca( "Acoustic Guitar (nyl" ) );
+		assertEquals( "Instrument: Acoustic Guitar (nyl bank #0 preset #24", IndiceStrumenti.GM.descrizioni()[ 24 ] );
+		assertEquals( 34, IndiceStrumenti.GM.cerca( "Electric Bass (pick)" ) );
+		assertEquals( 73, IndiceStrumenti.GM.patch( IndiceStrumenti.GM.cerca( "Flute" ) ).getProgram() );
+		for ( String descrizione : IndiceStrumenti.GM.descrizioni() ) assertTrue( descrizione.length() <= "Instrument:  bank #0 preset #127".length() + IndiceStrumenti.LUNGHEZZA_NOME );
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public void testAssente() {
+		INDICE.cerca( "Theremin" );
+	}
+
+}
@@ -0,0 +1,107 @@
+package it.unimi.di.j4im.riproduzione;
+
+/*
+ * Copyright 2014 Massimo Santini
+ * 
+ * This file is part of j4im.
+ *
+ * j4im is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j4im is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j4im.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import it.unimi.di.j4im.notazione.Durata;
+import it.unimi.di.j4im.notazione.Nota;
+import it.unimi.di.j4im.notazione.Pausa;
+import it.unimi.di.j4im.notazione.Simbolo;
+
+/* Le parti usano la Batteria, che non richiede il Sintetizzatore. */
+public class TestIndiceTemporale {
+
+	private static List<Intervallo> filtra( final List<Intervallo> note, final long da, final long a ) {
+		final List<Intervallo> risultato = new ArrayList<Intervallo>();
+		for ( Intervallo i : note ) if ( i.inizio() < a && i.fine() > da ) risultato.add( i );
+		return risultato;
+	}
+
+	@Test
+	public void testSuonano() {
+		final Brano b = new Brano();
+		final Parte p = new Parte( b, new Batteria() );
+		p.accoda( Simbolo.simboli( "DO,RE:1/2,_,MI" ) );
+		final IndiceTemporale indice = b.indice();
+		assertEquals( 3, indice.numeroNote() );
+		assertEquals( 1, indice.suonanoA( 0 ).size() );
+		assertEquals( 60, indice.suonanoA( 959 ).get( 0 ).pitch() );
+		assertEquals( 62, indice.suonanoA( 960 ).get( 0 ).pitch() );
+		assertEquals( 0, indice.suonanoA( 3000 ).size() );
+		assertEquals( 2, indice.suonanoTra( 500, 2000 ).size() );
+		// aggiornamento incrementale
+		final Parte q = new Parte( b, new Batteria() );
+		q.accodaAccordo( Simbolo.simboli( "DO,MI:1/2,SOL" ) );
+		assertEquals( 6, indice.numeroNote() );
+		assertEquals( 4, indice.suonanoA( 100 ).size() );
+		assertEquals( 1, indice.suonanoA( 100 ).get( 1 ).traccia() );
+		assertEquals( 2, indice.suonanoA( 1000 ).size() );
+	}
+
+	@Test
+	public void testCasuale() {
+		final Random r = new Random( 0 );
+		final Brano b = new Brano();
+		final Parte p = new Parte( b, new Batteria() );
+		final IndiceTemporale indice = b.indice();
+		for ( int i = 0; i < 2000; i++ ) {
+			if ( r.nextInt( 5 ) == 0 ) p.accoda( new Pausa( Durata.di( 1 + r.nextInt( 3 ), 8 ) ) );
+			else if ( r.nextInt( 3 ) == 0 ) p.accodaAccordo( new Simbolo[] { Nota.di( 60, Durata.di( 1 + r.nextInt( 16 ), 4 ), 64 ), Nota.di( 64, Durata.CROMA, 64 ) } );
+			else p.accoda( Nota.di( 40 + r.nextInt( 40 ), Durata.di( 1, 1 << r.nextInt( 5 ) ), 64 ) );
+		}
+		final List<Intervallo> tutte = indice.suonanoTra( Long.MIN_VALUE, Long.MAX_VALUE );
+		assertEquals( indice.numeroNote(), tutte.size() );
+		for ( int i = 0; i < 500; i++ ) {
+			final long da = r.nextInt( 1_000_000 ), a = da + 1 + r.nextInt( 5000 );
+			assertEquals( filtra( tutte, da, a ), indice.suonanoTra( da, a ) );
+		}
+	}
+
+	@Test
+	public void testLetto() throws Exception {
+		final Brano b = new Brano();
+		new Parte( b, new Batteria() ).accoda( Simbolo.simboli( "DO,DO,RE:1/2:90" ) );
+		final File file = File.createTempFile( "j4im", ".mid" );
+		try {
+			b.scrivi( file.getPath() );
+			final IndiceTemporale indice = Brano.leggi( file.getPath() ).indice();
+			assertEquals( b.indice().suonanoTra( 0, 10000 ), indice.suonanoTra( 0, 10000 ) );
+			assertTrue( indice.suonanoA( 2000 ).get( 0 ).intensita() == 90 );
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public void testIntervalloVuoto() {
+		new Brano().indice().suonanoTra( 10, 10 );
+	}
+
+}
@@ -0,0 +1,180 @@
+package it.unimi.di.j4im.riproduzione;
+
+/*
+ * Copyright 2014 Massimo Santini
+ * 
+ * This file is part of j4im.
+ *
+ * j4im is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j4im is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j4im.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MetaMessage;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.SysexMessage;
+import javax.sound.midi.Track;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import it.unimi.di.j4im.notazione.Simbolo;
+
+/* Gli strumenti sono costruiti senza il Sintetizzatore. */
+public class TestLettoreMidi {
+
+	private File file;
+
+	@Before
+	public void crea() throws IOException {
+		file = File.createTempFile( "j4im", ".mid" );
+	}
+
+	@After
+	public void cancella() {
+		file.delete();
+	}
+
+	/* Gli eventi (tick e byte del messaggio) di una traccia, escluso quello di fine traccia. */
+	private static List<String> eventi( final Track track ) {
+		final List<String> l = new ArrayList<String>();
+		for ( int i = 0; i < track.size(); i++ ) {
+			final MidiMessage m = track.get( i ).getMessage();
+			if ( m instanceof MetaMessage && ( (MetaMessage)m ).getType() == 0x2F ) continue;
+			final StringBuilder s = new StringBuilder().append( track.get( i ).getTick() );
+			for ( byte b : m.getMessage() ) s.append( ' ' ).append( b );
+			l.add( s.toString() );
+		}
+		return l;
+	}
+
+	private static List<String> eventi( final Parte parte ) {
+		final Track track = new Brano().sequence.createTrack();
+		for ( MidiEvent e : parte.eventi() ) track.add( e );
+		return eventi( track );
+	}
+
+	@Test
+	public void testBrano() throws IOException, InvalidMidiDataException {
+		final Brano b = new Brano();
+		new Parte( b, new Strumento( 1, "Prova" ) ).accoda( Simbolo.simboli( "DO,_:1/8,RE:1/2:90,MI:1/8" ) );
+		new Parte( b, new Batteria() ).accodaAccordo( Simbolo.simboli( "DO:1/8,MI:1/8" ) );
+		b.scrivi( file.getPath() );
+		final LettoreMidi lettore = LettoreMidi.apri( file.toPath() );
+		assertEquals( 1, lettore.tipo() );
+		assertEquals( 2, lettore.numeroTracce() );
+		assertEquals( Brano.RESOLUTION, lettore.risoluzione() );
+		final Brano letto = Brano.leggi( file.getPath() );
+		assertEquals( 2, letto.numeroParti() );
+		for ( int t = 0; t < 2; t++ ) assertEquals( eventi( b.parte( t ) ), eventi( letto.parte( t ) ) );
+		// i simboli accodati seguono la fine della traccia, sul suo canale
+		letto.parte( 0 ).accoda( Simbolo.simboli( "FA" ) );
+		final MidiEvent[] e = letto.parte( 0 ).eventi();
+		assertEquals( 4 * 960, e[ e.length - 2 ].getTick() );
+		assertEquals( 1, ( (ShortMessage)e[ e.length - 1 ].getMessage() ).getChannel() );
+	}
+
+	@Test
+	public void testEstesi() throws Exception {
+		// un file scritto da MidiSystem, con meta eventi, sistema esclusivo e running status
+		final Sequence s = new Sequence( Sequence.PPQ, 480 );
+		final Track t = s.createTrack();
+		t.add( new MidiEvent( new MetaMessage( 0x51, new byte[] { 0x07, (byte)0xA1, 0x20 }, 3 ), 0 ) );
+		t.add( new MidiEvent( new SysexMessage( 0xF0, new byte[] { 0x7E, 0x7F, 0x09, 0x01, (byte)0xF7 }, 5 ), 0 ) );
+		t.add( new MidiEvent( new ShortMessage( ShortMessage.PROGRAM_CHANGE, 2, 5, 0 ), 0 ) );
+		t.add( new MidiEvent( new ShortMessage( ShortMessage.NOTE_ON, 2, 60, 100 ), 10 ) );
+		t.add( new MidiEvent( new ShortMessage( ShortMessage.NOTE_ON, 2, 60, 0 ), 490 ) );
+		t.add( new MidiEvent( new ShortMessage( ShortMessage.NOTE_ON, 2, 64, 100 ), 490 ) );
+		t.add( new MidiEvent( new ShortMessage( ShortMessage.NOTE_ON, 2, 64, 0 ), 1000 ) );
+		s.createTrack().add( new MidiEvent( new ShortMessage( ShortMessage.CONTROL_CHANGE, 3, 7, 80 ), 20 ) );
+		MidiSystem.write( s, 1, file );
+		final Brano b = Brano.leggi( file.getPath() );
+		assertEquals( 2, b.numeroParti() );
+		for ( int i = 0; i < 2; i++ ) assertEquals( eventi( s.getTracks()[ i ] ), eventi( b.parte( i ) ) );
+		final Cursore c = b.parte( 0 ).cursore();
+		c.avanza();
+		assertEquals( MetaMessage.META, c.comando() );
+		assertEquals( 0x51, c.dato1() );
+		assertEquals( Cursore.TUTTI_I_CANALI, c.canale() );
+		assertEquals( 2, b.indice().numeroNote() );
+		// riscrittura e rilettura
+		b.scrivi( file.getPath() );
+		final Sequence r = MidiSystem.getSequence( file );
+		assertEquals( 480, r.getResolution() );
+		for ( int i = 0; i < 2; i++ ) assertEquals( eventi( s.getTracks()[ i ] ), eventi( r.getTracks()[ i ] ) );
+		assertEquals( 1000, r.getTracks()[ 0 ].ticks() );
+	}
+
+	@Test
+	public void testIntervallo() throws Exception {
+		final Brano b = new Brano();
+		new Parte( b, new Batteria() ).accoda( Simbolo.simboli( "DO,RE,MI,FA" ) );
+		b.scrivi( file.getPath() );
+		final Brano letto = LettoreMidi.apri( file.toPath() ).brano( 960, 2880 );
+		final List<Long> ticks = new ArrayList<Long>();
+		for ( Cursore c = letto.cursore(); c.avanza(); ) ticks.add( Long.valueOf( c.tick() ) );
+		assertEquals( "[960, 960, 1920, 1920]", ticks.toString() );
+		assertEquals( 1920, letto.parte( 0 ).fine() );
+	}
+
+	@Test
+	public void testPigro() throws Exception {
+		final Brano b = new Brano();
+		new Parte( b, new Batteria() ).accoda( Simbolo.simboli( "DO,RE" ) );
+		new Parte( b, new Batteria() ).accoda( Simbolo.simboli( "MI" ) );
+		b.scrivi( file.getPath() );
+		// corrompe gli eventi della seconda traccia con un running status non valido
+		try ( RandomAccessFile f = new RandomAccessFile( file, "rw" ) ) {
+			f.seek( f.length() - 13 );
+			f.write( new byte[] { 0, 0x3C } );
+		}
+		final Brano letto = Brano.leggi( file.getPath() );
+		assertEquals( 4, letto.parte( 0 ).numeroEventi() );
+		try {
+			letto.parte( 1 ).cursore();
+			fail();
+		} catch ( IllegalStateException e ) {
+			// la seconda traccia viene decodificata solo ora
+		}
+	}
+
+	@Test( expected = InvalidMidiDataException.class )
+	public void testNonMidi() throws Exception {
+		try ( RandomAccessFile f = new RandomAccessFile( file, "rw" ) ) {
+			f.write( "non sono un file midi".getBytes( "ASCII" ) );
+		}
+		LettoreMidi.apri( file.toPath() );
+	}
+
+	@Test( expected = InvalidMidiDataException.class )
+	public void testSmpte() throws Exception {
+		MidiSystem.write( new Sequence( Sequence.SMPTE_25, 40, 1 ), 1, file );
+		LettoreMidi.apri( file.toPath() );
+	}
+
+}
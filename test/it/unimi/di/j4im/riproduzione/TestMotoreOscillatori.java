@@ -0,0 +1,111 @@
+package it.unimi.di.j4im.riproduzione;
+
+/*
+ * Copyright 2014 Massimo Santini
+ * 
+ * This file is part of j4im.
+ *
+ * j4im is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j4im is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j4im.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+
+import javax.sound.midi.ShortMessage;
+
+import org.junit.Test;
+
+import it.unimi.di.j4im.notazione.Simbolo;
+
+public class TestMotoreOscillatori {
+
+	private static final int FREQUENZA = 22050;
+
+	private static int codice( final int comando, final int canale, final int dato1, final int dato2 ) {
+		return comando | canale | dato1 << 8 | dato2 << 16;
+	}
+
+	/* Calcola un secondo di una nota (LA4, con un flauto) lunga mezzo secondo. */
+	private static float[] nota( final MotoreOscillatori m ) {
+		final float[] campioni = new float[ 2 * FREQUENZA ];
+		m.invia( codice( ShortMessage.PROGRAM_CHANGE, 0, 73, 0 ), 0 );
+		m.invia( codice( ShortMessage.NOTE_ON, 0, 69, 100 ), 0 );
+		m.invia( codice( ShortMessage.NOTE_OFF, 0, 69, 0 ), FREQUENZA / 2 );
+		m.calcola( campioni, 0, FREQUENZA );
+		return campioni;
+	}
+
+	@Test
+	public void testSilenzio() {
+		final MotoreOscillatori m = new MotoreOscillatori( FREQUENZA );
+		final float[] campioni = new float[ 2 * 1000 ];
+		m.calcola( campioni, 0, 1000 );
+		for ( float c : campioni ) assertEquals( 0, c, 0 );
+		assertEquals( 1000, m.posizione() );
+	}
+
+	@Test
+	public void testAltezza() {
+		final MotoreOscillatori m = new MotoreOscillatori( FREQUENZA );
+		final float[] campioni = nota( m );
+		int attraversamenti = 0;
+		for ( int i = 2; i < FREQUENZA; i += 2 ) if ( ( campioni[ i - 2 ] < 0 ) != ( campioni[ i ] < 0 ) ) attraversamenti++;
+		// mezzo secondo di LA4 (440 Hz) attraversa lo zero circa 440 volte
+		assertEquals( 440, attraversamenti, 10 );
+	}
+
+	@Test
+	public void testRilascio() {
+		final MotoreOscillatori m = new MotoreOscillatori( FREQUENZA );
+		final float[] campioni = nota( m );
+		assertEquals( 0, m.vociAttive() );
+		for ( int i = 2 * ( FREQUENZA - 100 ); i < 2 * FREQUENZA; i++ ) assertEquals( 0, campioni[ i ], 0 );
+	}
+
+	@Test
+	public void testDeterminismo() {
+		assertArrayEquals( nota( new MotoreOscillatori( FREQUENZA ) ), nota( new MotoreOscillatori( FREQUENZA ) ), 0 );
+	}
+
+	@Test
+	public void testPolifonia() {
+		final MotoreOscillatori m = new MotoreOscillatori( FREQUENZA );
+		for ( int p = 0; p < 2 * MotoreOscillatori.VOCI; p++ ) m.invia( codice( ShortMessage.NOTE_ON, p % 8, p, 100 ), p );
+		final float[] campioni = new float[ 2 * 1000 ];
+		m.calcola( campioni, 0, 1000 );
+		assertEquals( MotoreOscillatori.VOCI, m.vociAttive() );
+		// i campioni non sono limitati (lo sono solo quando vengono scritti), ma devono essere finiti
+		for ( float c : campioni ) assertTrue( ! Float.isNaN( c ) && ! Float.isInfinite( c ) );
+	}
+
+	@Test
+	public void testRenderizza() throws Exception {
+		final Brano b = new Brano();
+		new Parte( b, new Strumento( 1, "Flute" ) ).accoda( Simbolo.simboli( "DO,RE,MI" ) );
+		new Parte( b, new Batteria() ).accoda( Simbolo.simboli( "DO,DO,DO" ) );
+		final ByteArrayOutputStream wav = new ByteArrayOutputStream();
+		new Renderizzatore( FREQUENZA, 200, Motore.OSCILLATORI ).renderizza( b, Channels.newChannel( wav ) );
+		final byte[] dati = wav.toByteArray(); // i primi 44 byte sono l'intestazione
+		assertTrue( dati.length > 44 );
+		boolean suono = false;
+		for ( int i = 44; i < dati.length && ! suono; i++ ) suono = dati[ i ] != 0;
+		assertTrue( suono );
+	}
+
+}
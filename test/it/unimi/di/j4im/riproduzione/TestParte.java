@@ -1,34 +1,45 @@
 package it.unimi.di.j4im.riproduzione;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+import java.util.Arrays;
 
 import javax.sound.midi.MidiEvent;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Track;
 
 import org.junit.AfterClass;
-import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import it.unimi.di.j4im.notazione.AnalizzatoreSimboli;
 import it.unimi.di.j4im.notazione.Nota;
 import it.unimi.di.j4im.notazione.Simbolo;
+import it.unimi.di.j4im.notazione.SimboloArray;
 
 public class TestParte {
 
 	@BeforeClass
 	public static void runOnceBefore() {
-		if ( System.getenv( "NOMIDI" ) == null )
-			Sintetizzatore.accendi();
+		Sintetizzatore.uscita( new UscitaNulla() );
 	}
 
 	@AfterClass
 	public static void runOnceAfter() {
-		if ( System.getenv( "NOMIDI" ) == null )
-			Sintetizzatore.spegni();
+		Sintetizzatore.spegni();
 	}
 
-	@Before
-	public void beforeMethod() {
-		org.junit.Assume.assumeTrue( "NO MIDI", System.getenv( "NOMIDI" ) == null );
+	/* Verifica che due tracce contengano gli stessi eventi (tick e byte del messaggio), nello stesso ordine. */
+	private static void assertStessiEventi( final Track attesa, final Track track ) {
+		assertEquals( attesa.size(), track.size() );
+		for ( int i = 0; i < track.size(); i++ ) {
+			assertEquals( attesa.get( i ).getTick(), track.get( i ).getTick() );
+			assertArrayEquals( attesa.get( i ).getMessage().getMessage(), track.get( i ).getMessage().getMessage() );
+		}
 	}
 
 	@Test
@@ -53,4 +64,91 @@ public class TestParte {
 		assertEquals( doLungo.durata().ticks( Brano.RESOLUTION ), eventi[ eventi.length - 1 ].getTick() );
 	}
 
+	@Test
+	public void testAccodaSimboloArray() {
+		final Simbolo[] simboli = Simbolo.simboli( "DO,_:1/8,RE:1/2:90,MI:1/8" );
+		Brano b = new Brano();
+		final Strumento piano = new Strumento( "Piano" ); // le parti confrontate devono usare lo stesso canale
+		Parte p = new Parte( b, piano );
+		p.accoda( simboli );
+		Parte q = new Parte( b, piano );
+		q.accoda( new SimboloArray( simboli ) );
+		final Track[] tracce = b.sequenza().getTracks();
+		assertStessiEventi( tracce[ 0 ], tracce[ 1 ] );
+	}
+
+	@Test
+	public void testAccodaIncrementale() {
+		final String testo = "DO,_:1/8,RE:1/2:90,MI:1/8,FA#3:3/8";
+		Brano b = new Brano();
+		final Strumento piano = new Strumento( "Piano" ); // le parti confrontate devono usare lo stesso canale
+		Parte p = new Parte( b, piano );
+		p.accoda( Simbolo.simboli( testo ) );
+		Parte q = new Parte( b, piano );
+		q.accoda( Arrays.asList( Simbolo.simboli( testo ) ).iterator() );
+		Parte r = new Parte( b, piano );
+		r.accoda( new AnalizzatoreSimboli( new StringReader( testo ) ) );
+		final Track[] tracce = b.sequenza().getTracks();
+		assertStessiEventi( tracce[ 0 ], tracce[ 1 ] );
+		assertStessiEventi( tracce[ 0 ], tracce[ 2 ] );
+	}
+
+	@Test
+	public void testTrackPigra() {
+		final Strumento piano = new Strumento( "Piano" ); // le parti confrontate devono usare lo stesso canale
+		Brano b = new Brano();
+		Parte p = new Parte( b, piano );
+		p.accoda( Simbolo.simboli( "DO,_:1/8,RE:1/2:90" ) );
+		p.accodaAccordo( Simbolo.simboli( "MI,DO:1/2,SOL" ) );
+		assertEquals( 0, b.sequence.getTracks().length );
+		final Track track = b.sequenza().getTracks()[ 0 ];
+		p.accoda( Simbolo.simboli( "FA,SOL:1/8" ) );
+		assertEquals( p.eventi().length + 1, track.size() ); // la traccia contiene anche l'END_OF_TRACK
+		// la traccia aggiornata coincide con quella costruita dopo aver accodato tutti i simboli
+		Brano c = new Brano();
+		Parte q = new Parte( c, piano );
+		q.accoda( Simbolo.simboli( "DO,_:1/8,RE:1/2:90" ) );
+		q.accodaAccordo( Simbolo.simboli( "MI,DO:1/2,SOL" ) );
+		q.accoda( Simbolo.simboli( "FA,SOL:1/8" ) );
+		assertStessiEventi( c.sequenza().getTracks()[ 0 ], track );
+	}
+
+	@Test
+	public void testCanaleRiassegnato() {
+		final Strumento flauto = new Strumento( "Flute" );
+		final Brano b = new Brano();
+		final Parte p = new Parte( b, flauto );
+		p.accoda( Simbolo.simboli( "DO,RE" ) );
+		final Track track = b.sequenza().getTracks()[ 0 ];
+		flauto.close();
+		// il canale del flauto viene riassegnato ad uno degli altri strumenti
+		final Strumento[] altri = new Strumento[ 14 ];
+		for ( int i = 0; i < altri.length; i++ ) altri[ i ] = new Strumento( "Piano" );
+		assertSame( track, b.sequenza().getTracks()[ 0 ] );
+		final int canale = ( (ShortMessage)track.get( 0 ).getMessage() ).getChannel();
+		assertEquals( 73, Sintetizzatore.programma( canale ) ); // la parte suona ancora col flauto
+		for ( int i = 0; i < 4; i++ ) assertEquals( canale, ( (ShortMessage)track.get( i ).getMessage() ).getChannel() );
+		final Cursore c = p.cursore();
+		assertTrue( c.avanza() );
+		assertEquals( canale, c.canale() );
+		for ( Strumento s : altri ) s.close();
+	}
+
+	@Test
+	public void testAccodaAccordi() {
+		final Simbolo[][] accordi = new Simbolo[][] { Simbolo.simboli( "MI,DO:1/2,SOL" ), Simbolo.simboli( "_:3/8,RE:1/8" ), Simbolo.simboli( "FA:1/8,LA:1/16,DO5:1/8" ), new Simbolo[ 0 ] };
+		Brano b = new Brano();
+		final Strumento piano = new Strumento( "Piano" ); // le parti confrontate devono usare lo stesso canale
+		Parte p = new Parte( b, piano );
+		for ( Simbolo[] accordo : accordi ) p.accodaAccordo( accordo );
+		Parte q = new Parte( b, piano );
+		q.accodaAccordi( accordi );
+		final MidiEvent[] eventi = p.eventi();
+		assertEquals( 14, eventi.length );
+		final long[] tick = { 0, 0, 0, 960, 960, 1920, 1920, 2400, 3360, 3360, 3360, 3600, 3840, 3840 };
+		for ( int i = 0; i < eventi.length; i++ ) assertEquals( tick[ i ], eventi[ i ].getTick() );
+		final Track[] tracce = b.sequenza().getTracks();
+		assertStessiEventi( tracce[ 1 ], tracce[ 0 ] );
+	}
+
 }
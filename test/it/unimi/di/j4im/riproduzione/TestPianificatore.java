@@ -0,0 +1,133 @@
+package it.unimi.di.j4im.riproduzione;
+
+/*
+ * Copyright 2014 Massimo Santini
+ * 
+ * This file is part of j4im.
+ *
+ * j4im is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j4im is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j4im.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class TestPianificatore {
+
+	@Test
+	public void testOrdine() {
+		final Pianificatore p = new Pianificatore();
+		final List<Integer> eseguite = Collections.synchronizedList( new ArrayList<Integer>() );
+		final long adesso = System.nanoTime();
+		final int[] ordine = { 3, 1, 4, 0, 2 };
+		for ( final int i : ordine )
+			p.pianifica( adesso + 5_000_000 + i * 2_000_000L, new Runnable() {
+				public void run() {
+					eseguite.add( Integer.valueOf( i ) );
+				}
+			} );
+		// a parità di scadenza, l'ordine è quello di pianificazione
+		for ( int i = 5; i < 8; i++ ) {
+			final int j = i;
+			p.pianifica( adesso + 20_000_000, new Runnable() {
+				public void run() {
+					eseguite.add( Integer.valueOf( j ) );
+				}
+			} );
+		}
+		p.svuota();
+		assertEquals( "[0, 1, 2, 3, 4, 5, 6, 7]", eseguite.toString() );
+		assertTrue( System.nanoTime() - adesso >= 20_000_000 );
+		assertEquals( 8, p.numeroAzioni() );
+		assertTrue( p.ritardoMassimo() >= 0 );
+		assertTrue( p.ritardoMedio() <= p.ritardoMassimo() );
+		p.azzeraMisure();
+		assertEquals( 0, p.numeroAzioni() );
+		p.chiudi();
+	}
+
+	@Test
+	public void testLineaTemporale() {
+		final Pianificatore p = new Pianificatore();
+		p.riallinea();
+		final long inizio = p.avanza( 0 );
+		// l'esecuzione di ciascun "evento" non sposta le scadenze successive
+		for ( int i = 0; i < 20; i++ ) {
+			final long scadenza = p.avanza( 2_000_000 );
+			assertEquals( inizio + i * 2_000_000L, scadenza );
+			Pianificatore.attendi( scadenza );
+			assertTrue( System.nanoTime() >= scadenza );
+		}
+		// un thread rimasto indietro viene riallineato
+		Pianificatore.attendi( System.nanoTime() + Pianificatore.RITARDO_MASSIMO + 10_000_000 );
+		assertTrue( p.avanza( 0 ) > inizio + 20 * 2_000_000L );
+	}
+
+	@Test
+	public void testVoci() throws InterruptedException {
+		// molte voci sovrapposte, pianificate da più thread, sono eseguite da un solo thread
+		final Pianificatore p = new Pianificatore();
+		final long adesso = System.nanoTime();
+		final long[] ultima = { adesso };
+		final int[] fuoriOrdine = { 0 };
+		final Thread[] thread = new Thread[ 4 ];
+		for ( int t = 0; t < thread.length; t++ ) {
+			final int seme = t;
+			thread[ t ] = new Thread() {
+				public void run() {
+					for ( int i = 0; i < 2500; i++ ) {
+						final long scadenza = adesso + 200_000_000 + ( i * 7919L + seme * 104729L ) % 30_000_000;
+						p.pianifica( scadenza, new Runnable() {
+							public void run() {
+								if ( scadenza - ultima[ 0 ] < 0 ) fuoriOrdine[ 0 ]++;
+								ultima[ 0 ] = scadenza;
+							}
+						} );
+					}
+				}
+			};
+			thread[ t ].start();
+		}
+		for ( Thread t : thread ) t.join();
+		p.svuota();
+		assertEquals( 10000, p.numeroAzioni() );
+		assertEquals( 0, fuoriOrdine[ 0 ] );
+		p.chiudi();
+	}
+
+	@Test( expected = IllegalStateException.class )
+	public void testChiuso() {
+		final Pianificatore p = new Pianificatore();
+		p.chiudi();
+		p.pianifica( System.nanoTime(), new Runnable() {
+			public void run() {}
+		} );
+	}
+
+	@Test
+	public void testInterruzione() {
+		Thread.currentThread().interrupt();
+		final long adesso = System.nanoTime();
+		Pianificatore.attendi( adesso + 1_000_000_000L );
+		assertTrue( Thread.interrupted() );
+		assertTrue( System.nanoTime() - adesso < 500_000_000L );
+	}
+
+}
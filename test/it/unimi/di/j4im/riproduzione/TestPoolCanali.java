@@ -0,0 +1,112 @@
+package it.unimi.di.j4im.riproduzione;
+
+/*
+ * Copyright 2014 Massimo Santini
+ * 
+ * This file is part of j4im.
+ *
+ * j4im is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j4im is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j4im.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TestPoolCanali {
+
+	@Test
+	public void testAssegnazioneSequenziale() {
+		final PoolCanali pool = new PoolCanali( 16, 0, 9 );
+		assertEquals( 14, pool.numeroLiberi() );
+		final int[] attesi = { 1, 2, 3, 4, 5, 6, 7, 8, 10, 11, 12, 13, 14, 15 };
+		for ( int c : attesi ) assertEquals( c, pool.acquisisci( new Object() ) );
+		assertEquals( 0, pool.numeroLiberi() );
+	}
+
+	@Test
+	public void testRilascio() {
+		final PoolCanali pool = new PoolCanali( 4, 0 );
+		final Object a = new Object(), b = new Object(), c = new Object();
+		assertEquals( 1, pool.acquisisci( a ) );
+		assertEquals( 2, pool.acquisisci( b ) );
+		assertEquals( 1, pool.acquisisci( a ) ); // già assegnato
+		assertTrue( pool.rilascia( a ) );
+		assertFalse( pool.rilascia( a ) );
+		assertEquals( -1, pool.canale( a ) );
+		assertEquals( 1, pool.acquisisci( c ) ); // il canale libero di indice minimo
+		// si possono creare e rilasciare strumenti indefinitamente
+		for ( int i = 0; i < 1000; i++ ) {
+			final Object o = new Object();
+			assertEquals( 3, pool.acquisisci( o ) );
+			pool.rilascia( o );
+		}
+	}
+
+	@Test
+	public void testMenoRecente() {
+		final PoolCanali pool = new PoolCanali( 3 );
+		final Object a = new Object(), b = new Object(), c = new Object(), d = new Object();
+		pool.acquisisci( a );
+		pool.acquisisci( b );
+		pool.acquisisci( c );
+		assertEquals( 0, pool.canale( a ) ); // ora il meno recente è b
+		assertEquals( 1, pool.acquisisci( d ) );
+		assertEquals( -1, pool.canale( b ) );
+		assertEquals( 2, pool.acquisisci( b ) ); // sottratto a c
+		assertEquals( -1, pool.canale( c ) );
+		assertEquals( 0, pool.canale( a ) );
+		assertEquals( 1, pool.canale( d ) );
+	}
+
+	@Test
+	public void testRiserva() {
+		final PoolCanali pool = new PoolCanali( 4, 0 );
+		final Object a = new Object(), b = new Object();
+		assertEquals( 1, pool.riserva() );
+		assertEquals( 2, pool.acquisisci( a ) );
+		assertEquals( 3, pool.acquisisci( b ) );
+		assertEquals( 2, pool.riserva() ); // sottratto ad a, il meno recente
+		assertEquals( -1, pool.canale( a ) );
+		assertEquals( 3, pool.acquisisci( a ) ); // i canali riservati non sono mai sottratti
+		assertEquals( -1, pool.canale( b ) );
+		assertEquals( 3, pool.riserva() );
+		assertEquals( -1, pool.riserva() );
+		assertEquals( -1, pool.acquisisci( b ) );
+	}
+
+	@Test
+	public void testAssegnato() {
+		final PoolCanali pool = new PoolCanali( 4, 0 );
+		final Object a = new Object();
+		assertTrue( pool.assegnato( 0 ) );
+		assertFalse( pool.assegnato( 1 ) );
+		assertEquals( 1, pool.acquisisci( a ) );
+		assertTrue( pool.assegnato( 1 ) );
+		pool.rilascia( a );
+		assertFalse( pool.assegnato( 1 ) );
+		assertEquals( 1, pool.riserva() );
+		assertTrue( pool.assegnato( 1 ) );
+		assertFalse( pool.assegnato( -1 ) );
+		assertFalse( pool.assegnato( 4 ) );
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public void testNessunCanale() {
+		new PoolCanali( 1, 0 );
+	}
+
+}
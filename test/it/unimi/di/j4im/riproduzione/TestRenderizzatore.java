@@ -0,0 +1,175 @@
+package it.unimi.di.j4im.riproduzione;
+
+/*
+ * Copyright 2014 Massimo Santini
+ * 
+ * This file is part of j4im.
+ *
+ * j4im is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j4im is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j4im.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ProcessBuilder.Redirect;
+import java.nio.channels.Channels;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MetaMessage;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Track;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+import org.junit.Test;
+
+import it.unimi.di.j4im.notazione.Simbolo;
+
+/* Gli strumenti sono costruiti senza il Sintetizzatore. */
+public class TestRenderizzatore {
+
+	@Test
+	public void testMappaTempi() throws IOException, InvalidMidiDataException {
+		final Sequence sequenza = new Sequence( Sequence.PPQ, 960 );
+		final Track track = sequenza.createTrack();
+		track.add( new MidiEvent( new MetaMessage( MappaTempi.SET_TEMPO, new byte[] { 0x03, (byte)0xD0, (byte)0x90 }, 3 ), 1920 ) ); // 250000 µs per quarto
+		track.add( new MidiEvent( new ShortMessage( ShortMessage.NOTE_ON, 0, 60, 64 ), 2880 ) );
+		final File file = File.createTempFile( "j4im", ".mid" );
+		try {
+			MidiSystem.write( sequenza, 1, file );
+			final Brano b = LettoreMidi.apri( file.toPath() ).brano();
+			final MappaTempi tempi = new MappaTempi( b.parti(), 960, 60 );
+			assertEquals( 0, tempi.microsecondi( 0 ), 1E-6 );
+			assertEquals( 1E6, tempi.microsecondi( 960 ), 1E-6 );
+			assertEquals( 2E6, tempi.microsecondi( 1920 ), 1E-6 );
+			assertEquals( 2.25E6, tempi.microsecondi( 2880 ), 1E-6 );
+			assertEquals( 99225, tempi.frame( 2880, 44100 ) );
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testRenderizza() throws IOException, UnsupportedAudioFileException {
+		final Brano b = new Brano();
+		new Parte( b, new Strumento( 1, "Prova" ) ).accoda( Simbolo.simboli( "DO,RE" ) ); // un secondo, a 120 bpm
+		final ByteArrayOutputStream wav = new ByteArrayOutputStream();
+		new Renderizzatore( 22050, 500 ).renderizza( b, Channels.newChannel( wav ) );
+		final byte[] dati = wav.toByteArray();
+		assertEquals( 44 + 4 * ( 22050 + 11025 ), dati.length );
+		final AudioInputStream flusso = AudioSystem.getAudioInputStream( new ByteArrayInputStream( dati ) );
+		final AudioFormat formato = flusso.getFormat();
+		assertEquals( 22050, formato.getSampleRate(), 0 );
+		assertEquals( 2, formato.getChannels() );
+		assertEquals( 16, formato.getSampleSizeInBits() );
+		assertEquals( 22050 + 11025, flusso.getFrameLength() );
+		int massimo = 0;
+		for ( int i = 44; i < dati.length; i += 2 ) massimo = Math.max( massimo, Math.abs( (short)( dati[ i ] & 0xFF | dati[ i + 1 ] << 8 ) ) );
+		assertTrue( massimo > 1000 ); // non è silenzio
+	}
+
+	private static final String[] MELODIE = { "DO,RE,MI,FA", "MI:1/2,SOL:1/2", "DO:1/8,_:1/8,DO:1/8,_:1/8,DO:1/8,_:1/8,DO:1/8,_:1/8" };
+
+	/* Un brano con le melodie date, la prima su tre canali distinti (l'ultima sulla batteria). */
+	private static Brano brano( final int... melodie ) {
+		final Brano b = new Brano();
+		for ( int m : melodie ) new Parte( b, m == 2 ? new Batteria() : new Strumento( m + 1, "Prova" ) ).accoda( Simbolo.simboli( MELODIE[ m ] ) );
+		return b;
+	}
+
+	/* I campioni di un file WAV (stereo, a 16 bit). */
+	private static short[] campioni( final byte[] wav ) {
+		final short[] campioni = new short[ ( wav.length - 44 ) / 2 ];
+		for ( int i = 0; i < campioni.length; i++ ) campioni[ i ] = (short)( wav[ 44 + 2 * i ] & 0xFF | wav[ 45 + 2 * i ] << 8 );
+		return campioni;
+	}
+
+	@Test
+	public void testParallelo() throws IOException, InterruptedException {
+		final Renderizzatore r = new Renderizzatore( 22050, 200 );
+		final ExecutorService esecutore = Executors.newFixedThreadPool( 3 );
+		try {
+			final ByteArrayOutputStream parallelo = new ByteArrayOutputStream(), muto = new ByteArrayOutputStream();
+			r.renderizza( brano( 0, 1, 2 ), esecutore, Channels.newChannel( parallelo ) );
+			r.renderizza( brano( 0, 1, 2 ), esecutore, new float[] { 0, 0, 0 }, Channels.newChannel( muto ) );
+			// il missaggio è la somma delle parti renderizzate separatamente
+			final short[] mix = campioni( parallelo.toByteArray() );
+			final int[] somma = new int[ mix.length ];
+			for ( int m = 0; m < MELODIE.length; m++ ) {
+				final ByteArrayOutputStream parte = new ByteArrayOutputStream();
+				r.renderizza( brano( m ), Channels.newChannel( parte ) );
+				final short[] campioni = campioni( parte.toByteArray() );
+				assertEquals( mix.length, campioni.length );
+				for ( int i = 0; i < campioni.length; i++ ) somma[ i ] += campioni[ i ];
+			}
+			for ( int i = 0; i < mix.length; i++ ) assertEquals( Math.max( -Short.MAX_VALUE, Math.min( Short.MAX_VALUE, somma[ i ] ) ), mix[ i ], 2 );
+			assertArrayEquals( new short[ mix.length ], campioni( muto.toByteArray() ) );
+		} finally {
+			esecutore.shutdownNow();
+		}
+	}
+
+	/* Renderizza sullo standard output il brano di testRenderizza (si veda testSenzaEsportazione). */
+	public static final class Renderizza {
+		public static void main( final String[] arg ) throws IOException {
+			final Brano b = new Brano();
+			new Parte( b, new Strumento( 1, "Prova" ) ).accoda( Simbolo.simboli( "DO,RE" ) );
+			new Renderizzatore( 22050, 500 ).renderizza( b, Channels.newChannel( System.out ) );
+			System.out.flush();
+		}
+	}
+
+	@Test
+	public void testSenzaEsportazione() throws IOException, InterruptedException {
+		// una JVM avviata senza --add-exports non può accedere al sintetizzatore di sistema, per cui si usano gli oscillatori
+		final String java = Paths.get( System.getProperty( "java.home" ), "bin", "java" ).toString();
+		final Process processo = new ProcessBuilder( java, "-cp", System.getProperty( "java.class.path" ), Renderizza.class.getName() ).redirectError( Redirect.INHERIT ).start();
+		final ByteArrayOutputStream wav = new ByteArrayOutputStream();
+		try ( InputStream in = processo.getInputStream() ) {
+			final byte[] buffer = new byte[ 8192 ];
+			for ( int l; ( l = in.read( buffer ) ) >= 0; ) wav.write( buffer, 0, l );
+		}
+		assertEquals( 0, processo.waitFor() );
+		assertEquals( 44 + 4 * ( 22050 + 11025 ), wav.size() );
+		int massimo = 0;
+		for ( short x : campioni( wav.toByteArray() ) ) massimo = Math.max( massimo, Math.abs( x ) );
+		assertTrue( massimo > 1000 ); // non è silenzio
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public void testGuadagni() throws IOException, InterruptedException {
+		final ExecutorService esecutore = Executors.newSingleThreadExecutor();
+		try {
+			new Renderizzatore().renderizza( brano( 0, 1 ), esecutore, new float[ 1 ], Channels.newChannel( new ByteArrayOutputStream() ) );
+		} finally {
+			esecutore.shutdownNow();
+		}
+	}
+
+}
@@ -0,0 +1,153 @@
+package it.unimi.di.j4im.riproduzione;
+
+/*
+ * Copyright 2014 Massimo Santini
+ * 
+ * This file is part of j4im.
+ *
+ * j4im is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j4im is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j4im.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.MidiUnavailableException;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.Sequencer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import it.unimi.di.j4im.notazione.Simbolo;
+
+/* Le riproduzioni usano un sequencer non collegato al sintetizzatore. */
+public class TestRiproduzione {
+
+	private Sequencer sequencer;
+	private Riproduttore riproduttore;
+
+	@Before
+	public void apri() throws MidiUnavailableException {
+		sequencer = MidiSystem.getSequencer( false );
+		sequencer.open();
+		riproduttore = new Riproduttore( sequencer );
+	}
+
+	@After
+	public void chiudi() {
+		sequencer.close();
+	}
+
+	private static Sequence sequenza( final String simboli ) {
+		final Brano b = new Brano();
+		new Parte( b, new Batteria() ).accoda( Simbolo.simboli( simboli ) );
+		return b.sequenza();
+	}
+
+	@Test
+	public void testTermine() throws Exception {
+		final AtomicInteger azioni = new AtomicInteger();
+		final CountDownLatch eseguita = new CountDownLatch( 1 );
+		final Riproduzione r = riproduttore.avvia( sequenza( "DO,RE" ), 1, 960 );
+		r.quandoTerminata( new Runnable() {
+			public void run() {
+				azioni.incrementAndGet();
+				eseguita.countDown();
+			}
+		} );
+		assertTrue( r.attendi() );
+		assertTrue( r.isDone() );
+		assertFalse( r.isCancelled() );
+		// l'azione è eseguita dal thread che completa la riproduzione, eventualmente dopo il ritorno di attendi()
+		assertTrue( eseguita.await( 1, TimeUnit.SECONDS ) );
+		assertEquals( 1, azioni.get() );
+		assertEquals( 2 * 960, r.tick() );
+		// le azioni aggiunte dopo il termine sono eseguite subito
+		r.quandoTerminata( new Runnable() {
+			public void run() {
+				azioni.incrementAndGet();
+			}
+		} );
+		assertEquals( 2, azioni.get() );
+	}
+
+	@Test
+	public void testPausaFerma() throws Exception {
+		final Riproduzione r = riproduttore.avvia( sequenza( "DO:4" ), 1, 240 );
+		Thread.sleep( 100 );
+		assertTrue( r.pausa() );
+		assertTrue( r.inPausa() );
+		final long tick = r.tick();
+		assertTrue( tick > 0 );
+		Thread.sleep( 100 );
+		assertEquals( tick, r.tick() );
+		assertTrue( r.riprendi() );
+		Thread.sleep( 100 );
+		assertTrue( r.tick() > tick );
+		final CountDownLatch fermata = new CountDownLatch( 1 );
+		r.quandoTerminata( new Runnable() {
+			public void run() {
+				fermata.countDown();
+			}
+		} );
+		assertTrue( r.ferma() );
+		assertTrue( fermata.await( 1, TimeUnit.SECONDS ) );
+		assertTrue( r.isCancelled() );
+		assertFalse( r.attendi() );
+		assertFalse( sequencer.isRunning() );
+		assertFalse( r.riprendi() );
+	}
+
+	@Test
+	public void testAvvioSuccessivo() throws Exception {
+		final Riproduzione prima = riproduttore.avvia( sequenza( "DO:4" ), 0, 240 );
+		final Riproduzione seconda = riproduttore.avvia( sequenza( "DO" ), 1, 960 );
+		assertTrue( prima.isCancelled() );
+		assertFalse( prima.pausa() );
+		assertTrue( seconda.attendi() );
+	}
+
+	@Test
+	public void testFinePrecedente() throws Exception {
+		// la fine traccia di una sequenza brevissima, consegnata dopo l'avvio della successiva, non deve terminarla
+		for ( int i = 0; i < 20; i++ ) {
+			final Riproduzione breve = riproduttore.avvia( sequenza( "DO:1/64" ), 1, 960 );
+			Thread.sleep( i % 5 );
+			final Riproduzione lunga = riproduttore.avvia( sequenza( "DO:4" ), 1, 240 );
+			Thread.sleep( 20 );
+			assertTrue( breve.isDone() );
+			assertFalse( lunga.isDone() );
+			assertTrue( lunga.ferma() );
+		}
+	}
+
+	@Test
+	public void testInterruzione() throws Exception {
+		final Riproduzione r = riproduttore.avvia( sequenza( "DO:4" ), 0, 240 );
+		Thread.currentThread().interrupt();
+		assertFalse( r.attendi() );
+		assertTrue( Thread.interrupted() );
+		assertTrue( r.isCancelled() );
+		assertFalse( sequencer.isRunning() );
+	}
+
+}
@@ -0,0 +1,124 @@
+package it.unimi.di.j4im.riproduzione;
+
+/*
+ * Copyright 2014 Massimo Santini
+ * 
+ * This file is part of j4im.
+ *
+ * j4im is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j4im is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j4im.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Track;
+
+import org.junit.Test;
+
+import it.unimi.di.j4im.notazione.Simbolo;
+
+/* Gli strumenti sono costruiti senza il Sintetizzatore. */
+public class TestScrittoreMidi {
+
+	private static Brano brano() {
+		final Brano b = new Brano();
+		final Parte p = new Parte( b, new Strumento( 1, "Prova" ) ), q = new Parte( b, new Batteria() );
+		p.accoda( Simbolo.simboli( "DO,_:1/8,RE:1/2:90,MI:1/8,FA:4" ) );
+		q.accodaAccordi( new Simbolo[][] { Simbolo.simboli( "DO:1/8,MI:1/8" ), Simbolo.simboli( "DO:1/8" ), Simbolo.simboli( "DO:1/8,MI:1/8" ) } );
+		return b;
+	}
+
+	private static byte[] scrivi( final Brano b, final int tipo ) throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		b.scrivi( Channels.newChannel( out ), tipo );
+		return out.toByteArray();
+	}
+
+	/* Restituisce i messaggi (tick, status, dati) di una traccia, ignorando i meta eventi. */
+	private static long[] messaggi( final Track track ) {
+		final MidiEvent[] eventi = new MidiEvent[ track.size() ];
+		for ( int i = 0; i < eventi.length; i++ ) eventi[ i ] = track.get( i );
+		return messaggi( eventi );
+	}
+
+	private static long[] messaggi( final MidiEvent[] eventi ) {
+		final List<Long> l = new ArrayList<Long>();
+		for ( MidiEvent e : eventi ) {
+			if ( !( e.getMessage() instanceof ShortMessage ) ) continue;
+			final ShortMessage m = (ShortMessage)e.getMessage();
+			l.add( Long.valueOf( e.getTick() << 24 | m.getStatus() | m.getData1() << 8 | m.getData2() << 16 ) );
+		}
+		final long[] a = new long[ l.size() ];
+		for ( int i = 0; i < a.length; i++ ) a[ i ] = l.get( i ).longValue();
+		return a;
+	}
+
+	@Test
+	public void testTipo1() throws IOException, InvalidMidiDataException {
+		final Brano b = brano();
+		final Sequence s = MidiSystem.getSequence( new ByteArrayInputStream( scrivi( b, 1 ) ) );
+		assertEquals( Brano.RESOLUTION, s.getResolution() );
+		assertEquals( 2, s.getTracks().length );
+		for ( int t = 0; t < 2; t++ ) assertArrayEquals( messaggi( b.parti.get( t ).eventi() ), messaggi( s.getTracks()[ t ] ) );
+	}
+
+	@Test
+	public void testTipo0() throws IOException, InvalidMidiDataException {
+		final Brano b = brano();
+		final Sequence s = MidiSystem.getSequence( new ByteArrayInputStream( scrivi( b, 0 ) ) );
+		assertEquals( 1, s.getTracks().length );
+		final long[] letti = messaggi( s.getTracks()[ 0 ] );
+		int i = 0;
+		for ( Cursore c = b.cursore(); c.avanza(); i++ ) assertEquals( c.tick() << 24 | c.comando() | c.canale() | c.dato1() << 8 | c.dato2() << 16, letti[ i ] );
+		assertEquals( letti.length, i );
+	}
+
+	@Test
+	public void testRunningStatus() throws IOException {
+		final Brano b = new Brano();
+		new Parte( b, new Strumento( 1, "Prova" ) ).accodaAccordo( Simbolo.simboli( "DO,MI" ) );
+		assertArrayEquals( new byte[] {
+				'M', 'T', 'h', 'd', 0, 0, 0, 6, 0, 1, 0, 1, 960 >> 8, (byte)( 960 & 0xFF ),
+				'M', 'T', 'r', 'k', 0, 0, 0, 19,
+				0, (byte)0x91, 60, 64, 0, 64, 64, // il secondo NOTE_ON omette lo status
+				(byte)0x87, 0x40, (byte)0x81, 60, 0, 0, 64, 0,
+				0, (byte)0xFF, 0x2F, 0
+			}, scrivi( b, 1 ) );
+	}
+
+	@Test
+	public void testVuoto() throws IOException, InvalidMidiDataException {
+		assertEquals( 0, MidiSystem.getSequence( new ByteArrayInputStream( scrivi( new Brano(), 1 ) ) ).getTracks().length );
+		assertEquals( 1, MidiSystem.getSequence( new ByteArrayInputStream( scrivi( new Brano(), 0 ) ) ).getTracks().length );
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public void testTipoErrato() throws IOException {
+		scrivi( brano(), 2 );
+	}
+
+}
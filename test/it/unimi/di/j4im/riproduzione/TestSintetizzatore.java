@@ -1,7 +1,15 @@
 package it.unimi.di.j4im.riproduzione;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import it.unimi.di.j4im.notazione.Durata;
 import it.unimi.di.j4im.notazione.Nota;
 
+import javax.sound.midi.ShortMessage;
+
 import org.junit.AfterClass;
 import org.junit.Before;
 import org.junit.BeforeClass;
@@ -9,26 +17,100 @@ import org.junit.Test;
 
 public class TestSintetizzatore {
 
+	private static final UscitaRegistrata uscita = new UscitaRegistrata();
+
 	@BeforeClass
 	public static void runOnceBefore() {
-		if ( System.getenv( "NOMIDI" ) == null )
-			Sintetizzatore.accendi();
+		Sintetizzatore.uscita( uscita );
 	}
 
 	@AfterClass
 	public static void runOnceAfter() {
-		if ( System.getenv( "NOMIDI" ) == null )
-			Sintetizzatore.spegni();
+		Sintetizzatore.spegni();
 	}
 
 	@Before
 	public void beforeMethod() {
-		org.junit.Assume.assumeTrue( "NO MIDI", System.getenv( "NOMIDI" ) == null );
+		uscita.azzera();
 	}
 
 	@Test
 	public void testBatteria() {
-		new Nota( Batteria.CRASH ).suonaCon( new Batteria() );
+		final Nota crash = new Nota( Batteria.CRASH );
+		final Batteria batteria = new Batteria();
+		final long inizio = Sintetizzatore.pianificatore().avanza( 0 );
+		crash.suonaCon( batteria ); // restituisce il controllo al termine della nota
+		assertArrayEquals( new int[] { 
+			ShortMessage.NOTE_ON | Batteria.CANALE | Batteria.CRASH << 8 | Nota.INTENSITA_DEFAULT << 16,
+			ShortMessage.NOTE_OFF | Batteria.CANALE | Batteria.CRASH << 8
+		}, uscita.codici() );
+		// gli istanti registrati sono quelli di ricezione, che non precedono le scadenze
+		assertTrue( uscita.scadenza( 0 ) >= inizio );
+		assertTrue( uscita.scadenza( 1 ) >= inizio + crash.durata().nanos( Sintetizzatore.bpm() ) );
+	}
+
+	@Test
+	public void testPolifonia() {
+		final int bpm = Sintetizzatore.bpm();
+		final Batteria batteria = new Batteria();
+		batteria.suona( new Nota[] { Nota.di( Batteria.KICK ), Nota.di( Batteria.CLOSED_HIHAT ) } );
+		for ( int i = 1; i <= 8; i++ ) batteria.suonaDopo( Nota.di( Batteria.CLOSED_HIHAT, Durata.CROMA, 64 ), Durata.di( i, 8 ) ); // le durate devono essere positive
+		Sintetizzatore.pianificatore().svuota();
+		assertEquals( 2 * 2 + 2 * 8, uscita.numeroMessaggi() );
+		// l'accordo è inviato come un solo gruppo, con le scadenze delle note
+		assertEquals( ShortMessage.NOTE_ON | Batteria.CANALE | Batteria.KICK << 8 | Nota.INTENSITA_DEFAULT << 16, uscita.codice( 0 ) );
+		assertEquals( uscita.scadenza( 0 ), uscita.scadenza( 1 ) );
+		final long fine = uscita.scadenza( 0 ) + Nota.di( Batteria.KICK ).durata().nanos( bpm );
+		assertEquals( fine, uscita.scadenza( 2 ) );
+		assertEquals( fine, uscita.scadenza( 3 ) );
+		// le voci iniziano dopo l'accordo e sono eseguite in ordine di scadenza (a parità 
+		// di scadenza, di pianificazione), per cui ciascuna termina prima che inizi la successiva
+		for ( int i = 1; i <= 8; i++ ) {
+			final int accesa = 2 + 2 * i, spenta = accesa + 1;
+			final long inizio = fine + Durata.di( i, 8 ).nanos( bpm );
+			assertEquals( ShortMessage.NOTE_ON | Batteria.CANALE | Batteria.CLOSED_HIHAT << 8 | 64 << 16, uscita.codice( accesa ) );
+			assertEquals( ShortMessage.NOTE_OFF | Batteria.CANALE | Batteria.CLOSED_HIHAT << 8, uscita.codice( spenta ) );
+			// gli istanti registrati sono quelli di ricezione, che non precedono le scadenze
+			assertTrue( uscita.scadenza( accesa ) >= inizio );
+			assertTrue( uscita.scadenza( spenta ) >= inizio + Durata.CROMA.nanos( bpm ) );
+		}
+	}
+
+	@Test
+	public void testCambioProgramma() {
+		final Strumento flauto = new Strumento( "Flute" );
+		final int canale = flauto.canale();
+		final int[] codici = uscita.codici();
+		assertEquals( 2, codici.length );
+		assertEquals( ShortMessage.CONTROL_CHANGE | canale | 123 << 8, codici[ 0 ] );
+		assertEquals( ShortMessage.PROGRAM_CHANGE | canale | 73 << 8, codici[ 1 ] );
+		flauto.close();
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public void testBpmNullo() {
+		Sintetizzatore.bpm( 0 );
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public void testCanaleNonAssegnato() {
+		final Strumento flauto = new Strumento( "Flute" );
+		final int canale = flauto.canale();
+		flauto.close();
+		Sintetizzatore.accendiNota( canale, 60, 64 );
+	}
+
+	@Test
+	public void testCanalePermanente() {
+		final int canale = Sintetizzatore.assegnaCanale( "Flute" );
+		// gli strumenti non sottraggono mai il canale assegnato permanentemente
+		for ( int i = 0; i < 32; i++ ) new Strumento( "Flute" ).close();
+		final Strumento[] strumenti = new Strumento[ 16 ];
+		for ( int i = 0; i < strumenti.length; i++ ) assertNotEquals( canale, ( strumenti[ i ] = new Strumento( "Flute" ) ).canale() );
+		for ( Strumento s : strumenti ) s.close();
+		uscita.azzera();
+		Sintetizzatore.accendiNota( canale, 60, 64 );
+		assertEquals( ShortMessage.NOTE_ON | canale | 60 << 8 | 64 << 16, uscita.codice( 0 ) );
 	}
 
 }
@@ -0,0 +1,161 @@
+package it.unimi.di.j4im.riproduzione;
+
+/*
+ * Copyright 2014 Massimo Santini
+ * 
+ * This file is part of j4im.
+ *
+ * j4im is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j4im is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j4im.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.ShortMessage;
+
+import org.junit.AfterClass;
+import org.junit.Test;
+
+import it.unimi.di.j4im.notazione.Durata;
+import it.unimi.di.j4im.notazione.Nota;
+import it.unimi.di.j4im.notazione.Simbolo;
+
+public class TestUscita {
+
+	@AfterClass
+	public static void runOnceAfter() {
+		Sintetizzatore.spegni();
+	}
+
+	/* Un ricevitore che conserva i messaggi ricevuti. */
+	private static final class Ricevitore implements Receiver {
+		final List<byte[]> messaggi = new ArrayList<byte[]>();
+		boolean chiuso;
+
+		@Override
+		public synchronized void send( final MidiMessage messaggio, final long tempo ) {
+			messaggi.add( messaggio.getMessage() );
+		}
+
+		@Override
+		public void close() {
+			chiuso = true;
+		}
+	}
+
+	@Test
+	public void testRiproduci() {
+		final UscitaRegistrata uscita = new UscitaRegistrata();
+		Sintetizzatore.uscita( uscita );
+		final int bpm = Sintetizzatore.bpm();
+		Sintetizzatore.bpm( 960 );
+		try {
+			final Brano b = new Brano();
+			final Strumento flauto = new Strumento( "Flute" );
+			new Parte( b, flauto ).accoda( Simbolo.simboli( "DO,RE,MI" ) );
+			b.riproduci();
+			final List<Integer> note = new ArrayList<Integer>();
+			for ( int codice : uscita.codici() ) if ( ( codice & 0xF0 ) == ShortMessage.NOTE_ON ) note.add( codice );
+			final int on = ShortMessage.NOTE_ON | flauto.canale() | Nota.INTENSITA_DEFAULT << 16;
+			assertEquals( 3, note.size() );
+			assertEquals( on | 60 << 8, (int)note.get( 0 ) );
+			assertEquals( on | 62 << 8, (int)note.get( 1 ) );
+			assertEquals( on | 64 << 8, (int)note.get( 2 ) );
+		} finally {
+			Sintetizzatore.bpm( bpm );
+			Sintetizzatore.uscita( null );
+		}
+	}
+
+	@Test
+	public void testRicevitore() {
+		final Ricevitore ricevitore = new Ricevitore();
+		final UscitaRicevitore uscita = new UscitaRicevitore( ricevitore );
+		uscita.accendiNota( 3, 60, 100 );
+		uscita.spegniNota( 3, 60 );
+		uscita.cambiaProgramma( 2, 73 );
+		final long adesso = System.nanoTime();
+		uscita.invia( new int[] { ShortMessage.NOTE_ON | 1 | 62 << 8 | 90 << 16, ShortMessage.NOTE_OFF | 1 | 62 << 8 }, new long[] { adesso, adesso + 20_000_000 }, 2 );
+		Sintetizzatore.pianificatore().svuota();
+		assertTrue( System.nanoTime() - adesso >= 20_000_000 );
+		final byte[][] attesi = {
+			{ (byte)0x93, 60, 100 },
+			{ (byte)0x83, 60, 0 },
+			{ (byte)0xB2, 123, 0 },
+			{ (byte)0xC2, 73 },
+			{ (byte)0x91, 62, 90 },
+			{ (byte)0x81, 62, 0 },
+		};
+		assertEquals( attesi.length, ricevitore.messaggi.size() );
+		for ( int i = 0; i < attesi.length; i++ ) assertArrayEquals( attesi[ i ], ricevitore.messaggi.get( i ) );
+		uscita.close();
+		assertTrue( ricevitore.chiuso );
+	}
+
+	@Test
+	public void testSostituzione() {
+		final UscitaRegistrata prima = new UscitaRegistrata(), seconda = new UscitaRegistrata();
+		final Strumento flauto = new Strumento( "Flute" );
+		Sintetizzatore.uscita( prima );
+		Sintetizzatore.accendiNota( flauto.canale(), 60, 100 );
+		Sintetizzatore.uscita( seconda );
+		Sintetizzatore.spegniNota( flauto.canale(), 60 );
+		// la nuova uscita riceve i programmi dei canali assegnati
+		final int[] codici = seconda.codici();
+		assertTrue( codici.length > 2 );
+		assertEquals( ShortMessage.NOTE_OFF | flauto.canale() | 60 << 8, codici[ codici.length - 1 ] );
+		boolean programma = false;
+		for ( int codice : codici ) programma |= codice == ( ShortMessage.PROGRAM_CHANGE | flauto.canale() | 73 << 8 );
+		assertTrue( programma );
+		assertEquals( ShortMessage.NOTE_ON | flauto.canale() | 60 << 8 | 100 << 16, prima.codice( prima.numeroMessaggi() - 1 ) );
+		Sintetizzatore.uscita( null );
+		flauto.close();
+	}
+
+	@Test
+	public void testRiaccensione() {
+		final UscitaRegistrata prima = new UscitaRegistrata(), seconda = new UscitaRegistrata();
+		final Batteria batteria = new Batteria();
+		Sintetizzatore.uscita( prima );
+		prima.azzera(); // i cambi di programma dei canali
+		final Pianificatore pianificatore = Sintetizzatore.pianificatore();
+		batteria.suonaDopo( Nota.di( Batteria.KICK ), Durata.SEMICROMA );
+		Sintetizzatore.spegni();
+		assertEquals( 2, prima.numeroMessaggi() ); // lo spegnimento attende le note in corso
+		assertFalse( Sintetizzatore.acceso() );
+		assertNotSame( pianificatore, Sintetizzatore.pianificatore() );
+		// dopo lo spegnimento il sintetizzatore può essere usato ancora
+		Sintetizzatore.uscita( seconda );
+		seconda.azzera();
+		batteria.suonaDopo( Nota.di( Batteria.KICK ), Durata.SEMICROMA );
+		Sintetizzatore.pianificatore().svuota();
+		assertEquals( 2, seconda.numeroMessaggi() );
+		Sintetizzatore.uscita( null );
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public void testGruppoNonValido() {
+		new UscitaNulla().invia( new int[ 2 ], new long[ 1 ], 2 );
+	}
+
+}